@@ -52,7 +52,8 @@ public class LuceneBenchmarkRunner extends BenchmarkRunner {
                                 benchmarkOptions.getWithStorage().value(options)),
                         new LuceneFacetSearchTest(benchmarkOptions.getWithStorage().value(options)),
                         new LuceneInsecureFacetSearchTest(benchmarkOptions.getWithStorage().value(options)),
-                        new LuceneStatisticalFacetSearchTest(benchmarkOptions.getWithStorage().value(options))
+                        new LuceneStatisticalFacetSearchTest(benchmarkOptions.getWithStorage().value(options)),
+                        new LuceneSimilaritySearchTest()
                 )
         );
 
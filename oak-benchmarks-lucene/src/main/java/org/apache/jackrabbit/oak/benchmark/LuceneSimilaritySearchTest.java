@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.HNSWGraph;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.LSHAnalyzer;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.SimSearchUtils;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.SimilarityGraphs;
+import org.apache.jackrabbit.oak.plugins.index.search.FieldNames;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * Searches the nearest neighbours of feature vectors, either with the LSH
+ * query (with the brute force reranking of the candidates, as done by the
+ * index), or with the similarity graph. The recall@10 is reported.
+ * <p>
+ * Use the system property {@code LuceneSimilaritySearchTest} to select the
+ * method ({@code graph} by default, or {@code lsh}), {@code docCount} to set
+ * the number of documents (10000 by default), and {@code dimension} to set
+ * the dimension of the vectors (128 by default). The index is not stored in
+ * the repository, so the fixture does not matter.
+ */
+public class LuceneSimilaritySearchTest extends AbstractTest<Object> {
+
+    private static final String TYPE = System.getProperty("LuceneSimilaritySearchTest", "graph");
+
+    private static final int DOC_COUNT = Integer.getInteger("docCount", 10000);
+
+    private static final int DIMENSION = Integer.getInteger("dimension", 128);
+
+    private static final int QUERIES = 100;
+
+    private static final int K = 10;
+
+    /**
+     * Number of LSH candidates that are reranked.
+     */
+    private static final int CANDIDATES = 100;
+
+    private static final String PROPERTY = "fv";
+
+    private static final String FIELD = FieldNames.createSimilarityFieldName(PROPERTY);
+
+    private static final String BIN_FIELD = FieldNames.createBinSimilarityFieldName(PROPERTY);
+
+    private final LSHAnalyzer analyzer = new LSHAnalyzer();
+
+    private final Random random = new Random(1);
+
+    private float[][] vectors;
+
+    private float[][] queries;
+
+    private final List<List<String>> nearest = new ArrayList<>();
+
+    private RAMDirectory directory;
+
+    private DirectoryReader reader;
+
+    private long found;
+
+    private long expected;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        vectors = clusteredVectors(random, DOC_COUNT, DIMENSION);
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = near(random, vectors[random.nextInt(vectors.length)]);
+            nearest.add(bruteForce(queries[i]));
+        }
+        directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_47, analyzer))) {
+            for (int i = 0; i < vectors.length; i++) {
+                Document doc = new Document();
+                doc.add(new StringField(FieldNames.PATH, "/n" + i, Field.Store.YES));
+                doc.add(new TextField(FIELD, toDoubleString(vectors[i]), Field.Store.NO));
+                doc.add(new StoredField(BIN_FIELD, SimSearchUtils.toByteArray(toDoubles(vectors[i]))));
+                writer.addDocument(doc);
+            }
+        }
+        if ("graph".equals(TYPE)) {
+            SimilarityGraphs.updateGraphs(Collections.singleton(PROPERTY), directory, true);
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        for (int i = 0; i < QUERIES; i++) {
+            float[] query = queries[i];
+            List<String> paths;
+            if ("lsh".equals(TYPE)) {
+                Query q = SimSearchUtils.getSimQuery(analyzer, FIELD, toDoubleString(query));
+                paths = rerank(searcher, searcher.search(q, CANDIDATES), query);
+            } else {
+                paths = new ArrayList<>();
+                for (HNSWGraph.Result r : SimilarityGraphs.search(reader, PROPERTY, query, K)) {
+                    paths.add(r.getPath());
+                }
+            }
+            found += found(nearest.get(i), paths);
+            expected += K;
+        }
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        reader.close();
+        directory.close();
+    }
+
+    @Override
+    protected String[] statsNames() {
+        return new String[]{"Recall"};
+    }
+
+    @Override
+    protected String[] statsFormats() {
+        return new String[]{"%6.3f"};
+    }
+
+    @Override
+    protected Object[] statsValues() {
+        return new Object[]{expected == 0 ? 0d : (double) found / expected};
+    }
+
+    @Override
+    protected String comment() {
+        return TYPE + ", " + DOC_COUNT + " docs, dimension " + DIMENSION;
+    }
+
+    private List<String> rerank(IndexSearcher searcher, TopDocs docs, float[] query) throws Exception {
+        List<String> candidates = new ArrayList<>();
+        double[] distances = new double[docs.scoreDocs.length];
+        for (ScoreDoc sd : docs.scoreDocs) {
+            Document doc = searcher.doc(sd.doc);
+            float[] v = SimilarityGraphs.toFloatArray(doc.getBinaryValue(BIN_FIELD));
+            distances[candidates.size()] = distance(v, query);
+            candidates.add(doc.get(FieldNames.PATH));
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            ids.add(i);
+        }
+        ids.sort(Comparator.comparingDouble(i -> distances[i]));
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < Math.min(K, ids.size()); i++) {
+            paths.add(candidates.get(ids.get(i)));
+        }
+        return paths;
+    }
+
+    private List<String> bruteForce(float[] query) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            ids.add(i);
+        }
+        ids.sort(Comparator.comparingDouble(i -> distance(vectors[i], query)));
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < K; i++) {
+            paths.add("/n" + ids.get(i));
+        }
+        return paths;
+    }
+
+    private static int found(List<String> expected, List<String> actual) {
+        Set<String> set = new HashSet<>(expected);
+        int found = 0;
+        for (String path : actual) {
+            if (set.contains(path)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Vectors around a few random centers, similar to image embeddings.
+     */
+    private static float[][] clusteredVectors(Random r, int count, int dimension) {
+        float[][] centers = new float[10][dimension];
+        for (float[] c : centers) {
+            for (int i = 0; i < dimension; i++) {
+                c[i] = r.nextFloat();
+            }
+        }
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = near(r, centers[r.nextInt(centers.length)]);
+        }
+        return vectors;
+    }
+
+    private static float[] near(Random r, float[] v) {
+        float[] x = new float[v.length];
+        for (int i = 0; i < v.length; i++) {
+            x[i] = v[i] + (float) r.nextGaussian() * 0.1f;
+        }
+        return x;
+    }
+
+    private static double distance(float[] x, float[] y) {
+        double d = 0;
+        for (int i = 0; i < x.length; i++) {
+            d += (x[i] - y[i]) * (x[i] - y[i]);
+        }
+        return d;
+    }
+
+    private static List<Double> toDoubles(float[] vector) {
+        List<Double> values = new ArrayList<>(vector.length);
+        for (float f : vector) {
+            values.add((double) f);
+        }
+        return values;
+    }
+
+    private static String toDoubleString(float[] vector) {
+        StringBuilder builder = new StringBuilder();
+        for (float f : vector) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append((double) f);
+        }
+        return builder.toString();
+    }
+}
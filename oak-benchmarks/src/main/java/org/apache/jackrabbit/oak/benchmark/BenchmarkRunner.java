@@ -200,10 +200,13 @@ public class BenchmarkRunner {
             new ConcurrentWriteReadTest(),
             new ConcurrentWriteTest(),
             new SimpleSearchTest(),
+            new ConstraintEvaluationTest(),
             new UUIDLookupTest(),
             new SQL2SearchTest(),
             new DescendantSearchTest(),
             new SQL2DescendantSearchTest(),
+            new JoinSearchTest(),
+            new DescendantJoinSearchTest(),
             new FlatTreeUpdateTest(),
             new CreateManyChildNodesTest(),
             new CompareManyChildNodesTest(),
@@ -365,6 +368,7 @@ public class BenchmarkRunner {
             ReadManyTest.uniform("UniformReadFiles", 1, ReadManyTest.FILES),
             ReadManyTest.uniform("UniformReadNodes", 1, ReadManyTest.NODES),
             new ConcurrentCreateNodesTest(),
+            new ConcurrentCreateIndexedNodesTest(),
             new SequentialCreateNodesTest(),
             new CreateManyIndexedNodesTest(),
                         new GetPoliciesTest(),
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.oak.benchmark.util.OakIndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
+
+/**
+ * Concurrently creates nodes that all have the same value of an indexed
+ * property (a "hot" value), and changes the value of older nodes, so that
+ * entries are added to and removed from the same value of the property
+ * index. Saves that fail because of a conflict are retried, and the number
+ * of conflicts is reported at the end.
+ * <p>
+ * Use the system property {@code shardCount} to set the number of shards of
+ * the property index (1 means no sharding).
+ */
+public class ConcurrentCreateIndexedNodesTest extends AbstractTest {
+
+    protected static final String ROOT_NODE_NAME = "test" + TEST_ID;
+    private static final String PROPERTY_NAME = "status";
+    private static final int WORKER_COUNT = Integer.getInteger("workerCount", 20);
+    private static final int SHARD_COUNT = Integer.getInteger("shardCount", 1);
+    private static final int NODE_COUNT_LEVEL2 = 50;
+    private static final int MAX_RETRIES = 100;
+
+    private final AtomicInteger saves = new AtomicInteger();
+    private final AtomicInteger conflicts = new AtomicInteger();
+    private Writer writer;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        Session session = loginWriter();
+        Node index = OakIndexUtils.propertyIndexDefinition(session,
+                "hotStatus", new String[] { PROPERTY_NAME }, false, null);
+        if (SHARD_COUNT > 1) {
+            index.setProperty(IndexConstants.SHARD_COUNT_PROPERTY_NAME, SHARD_COUNT);
+            index.setProperty(IndexConstants.REINDEX_PROPERTY_NAME, true);
+        }
+        Node rootNode = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        for (int i = 0; i < WORKER_COUNT; i++) {
+            rootNode.addNode("node" + i);
+        }
+        session.save();
+        for (int i = 1; i < WORKER_COUNT; i++) {
+            addBackgroundJob(new Writer(rootNode.getPath() + "/node" + i));
+        }
+        writer = new Writer(rootNode.getPath() + "/node" + 0);
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        System.out.println("Shards: " + SHARD_COUNT + ", saves: " + saves.get() +
+                ", conflicts: " + conflicts.get());
+    }
+
+    private class Writer implements Runnable {
+
+        private final Session session = loginWriter();
+        private final String path;
+        private int count;
+
+        private Writer(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            try {
+                session.refresh(false);
+                Node node = session.getNode(path).addNode("node" + count++);
+                session.save();
+                for (int j = 0; j < NODE_COUNT_LEVEL2; j++) {
+                    save(node.getPath(), j);
+                }
+            } catch (RepositoryException e) {
+                e.printStackTrace();
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Add a node with the hot value, and change the value of the
+         * previous sibling. Retry on conflicts.
+         */
+        private void save(String parentPath, int j) throws RepositoryException {
+            for (int retry = 0;; retry++) {
+                Node parent = session.getNode(parentPath);
+                Node n = parent.addNode("node" + j);
+                n.setProperty(PROPERTY_NAME, "hot");
+                if (j > 0) {
+                    parent.getNode("node" + (j - 1)).setProperty(PROPERTY_NAME, "done");
+                }
+                try {
+                    session.save();
+                    saves.incrementAndGet();
+                    return;
+                } catch (InvalidItemStateException e) {
+                    conflicts.incrementAndGet();
+                    session.refresh(false);
+                    if (retry >= MAX_RETRIES) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        writer.run();
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.RowIterator;
+
+/**
+ * Filters many rows with conditions that are not supported by an index:
+ * "in" with many values, "like", and range conditions. This measures the
+ * time needed to evaluate the conditions (and to read the nodes).
+ * <p>
+ * Use the system property {@code rowCount} to set the number of nodes (1
+ * million by default). As all nodes are traversed, the read limit needs to
+ * be increased, for example using {@code -Doak.queryLimitReads=10000000}.
+ * Use {@code -Doak.query.compileConstraints=false} to compare with the
+ * plain evaluation of the conditions.
+ */
+public class ConstraintEvaluationTest extends AbstractTest {
+
+    private static final int ROW_COUNT = Integer.getInteger("rowCount", 1000000);
+
+    private static final int NODES_PER_PARENT = 1000;
+
+    private static final String QUERY = "select [jcr:path] from [nt:unstructured] as a " +
+            "where isdescendantnode(a, '/%s') " +
+            "and [status] in('s1', 's3', 's5', 's7', 's11', 's13', 's17', 's19', 's23', 's29') " +
+            "and [title] like 'title%%7' " +
+            "and [count] >= 100";
+
+    private Session session;
+
+    private String rootName;
+
+    @Override
+    public void beforeSuite() throws RepositoryException {
+        session = loginWriter();
+        rootName = "testroot" + TEST_ID;
+        Node root = session.getRootNode().addNode(rootName, "nt:unstructured");
+        Node parent = null;
+        for (int i = 0; i < ROW_COUNT; i++) {
+            if (i % NODES_PER_PARENT == 0) {
+                session.save();
+                parent = root.addNode("node" + (i / NODES_PER_PARENT), "nt:unstructured");
+            }
+            Node n = parent.addNode("node" + i, "nt:unstructured");
+            n.setProperty("status", "s" + (i % 100));
+            n.setProperty("title", "title" + i);
+            n.setProperty("count", i % 1000);
+        }
+        session.save();
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        QueryManager manager = session.getWorkspace().getQueryManager();
+        Query query = manager.createQuery(String.format(QUERY, rootName), Query.JCR_SQL2);
+        RowIterator it = query.execute().getRows();
+        long count = 0;
+        while (it.hasNext()) {
+            it.nextRow();
+            count++;
+        }
+        if (count == 0 && ROW_COUNT >= NODES_PER_PARENT) {
+            throw new Exception("No rows found");
+        }
+    }
+
+    @Override
+    public void afterSuite() throws RepositoryException {
+        Node root = session.getRootNode().getNode(rootName);
+        for (int i = 0; i * NODES_PER_PARENT < ROW_COUNT; i++) {
+            root.getNode("node" + i).remove();
+            session.save();
+        }
+        root.remove();
+        session.save();
+        session.logout();
+    }
+
+}
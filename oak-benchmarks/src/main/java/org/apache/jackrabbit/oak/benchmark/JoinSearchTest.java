@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.oak.benchmark.util.OakIndexUtils;
+
+/**
+ * Performance test to check performance of equi-join queries, where the left
+ * hand side of the join returns many rows.
+ */
+public class JoinSearchTest extends AbstractTest {
+
+    static final int NODE_COUNT = 100;
+
+    private Session session;
+
+    private Node root;
+
+    String testNodeName = "test" + TEST_ID;
+
+    protected Query createQuery(QueryManager manager) throws RepositoryException {
+        return manager.createQuery(
+                "SELECT a.[jcr:path] FROM [nt:unstructured] AS a " +
+                "INNER JOIN [nt:unstructured] AS b ON a.[ref] = b.[key] " +
+                "WHERE ISDESCENDANTNODE(a, '/" + testNodeName + "/source') " +
+                "AND b.[key] IS NOT NULL",
+                "JCR-SQL2");
+    }
+
+    /**
+     * @return the expected number of rows
+     */
+    protected long getExpectedCount() {
+        return NODE_COUNT * NODE_COUNT;
+    }
+
+    @Override
+    public void beforeSuite() throws RepositoryException {
+        session = getRepository().login(getCredentials());
+
+        try {
+            ensurePropertyIndex();
+        } catch (InvalidItemStateException e) {
+            // some other oak instance probably created the same
+            // index definition concurrently. refresh and try again
+            // do not catch exception if it fails again.
+            session.refresh(false);
+            ensurePropertyIndex();
+        }
+
+        root = session.getRootNode().addNode(testNodeName, "nt:unstructured");
+        Node target = root.addNode("target", "nt:unstructured");
+        for (int i = 0; i < NODE_COUNT; i++) {
+            target.addNode("node" + i, "nt:unstructured").setProperty("key", "k" + i);
+        }
+        Node source = root.addNode("source", "nt:unstructured");
+        for (int i = 0; i < NODE_COUNT; i++) {
+            Node node = source.addNode("node" + i, "nt:unstructured");
+            for (int j = 0; j < NODE_COUNT; j++) {
+                node.addNode("node" + j, "nt:unstructured").setProperty("ref", "k" + j);
+            }
+            session.save();
+        }
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        QueryManager manager = session.getWorkspace().getQueryManager();
+        RowIterator it = createQuery(manager).execute().getRows();
+        long count = 0;
+        while (it.hasNext()) {
+            it.nextRow();
+            count++;
+        }
+        if (count != getExpectedCount()) {
+            throw new Exception("Invalid test result: " + count + " rows");
+        }
+    }
+
+    @Override
+    public void afterSuite() throws RepositoryException {
+        Node source = root.getNode("source");
+        for (int i = 0; i < NODE_COUNT; i++) {
+            source.getNode("node" + i).remove();
+            session.save();
+        }
+
+        root.remove();
+        session.save();
+        session.logout();
+    }
+
+    private void ensurePropertyIndex() throws RepositoryException {
+        new OakIndexUtils.PropertyIndex().
+                property("key").
+                create(session);
+        new OakIndexUtils.PropertyIndex().
+                property("ref").
+                create(session);
+    }
+}
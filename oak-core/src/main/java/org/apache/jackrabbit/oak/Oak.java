@@ -576,6 +576,12 @@ public class Oak {
             newSettings.setFastQuerySize(queryEngineSettings.isFastQuerySize());
             newSettings.setLimitInMemory(queryEngineSettings.getLimitInMemory());
             newSettings.setLimitReads(queryEngineSettings.getLimitReads());
+            newSettings.getQueryPlanCache().setMaxSize(
+                    queryEngineSettings.settings.getQueryPlanCache().getMaxSize());
+            newSettings.setParallelUnionThreads(queryEngineSettings.settings.getParallelUnionThreads());
+            newSettings.setQueryTimeout(queryEngineSettings.settings.getQueryTimeout());
+            newSettings.setProfileSampleRate(queryEngineSettings.settings.getProfileSampleRate());
+            newSettings.setLookupJoinMinRows(queryEngineSettings.settings.getLookupJoinMinRows());
             queryEngineSettings = new AnnotatedQueryEngineSettings(newSettings);
         }
 
@@ -210,6 +210,30 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
      */
     private long lastCheckpointCleanUpTime;
 
+    /**
+     * The number of threads that read the changes ahead of the index update
+     * (0 to disable).
+     */
+    private volatile int diffReadAheadThreads = Integer.getInteger("oak.async.diffReadAheadThreads", 0);
+
+    /**
+     * Guards diffReadAhead and diffReadAheadInUse.
+     */
+    private final Object diffReadAheadLock = new Object();
+
+    /**
+     * Reads the changes ahead of the index update, or null if not yet used.
+     * The threads are kept until this lane is closed, or the number of
+     * threads is changed.
+     */
+    private DiffReadAhead diffReadAhead;
+
+    /**
+     * The read-ahead used by the index update that is running, if any. It is
+     * only closed once the index update is done with it.
+     */
+    private DiffReadAhead diffReadAheadInUse;
+
     private List<ValidatorProvider> validatorProviders = Collections.emptyList();
 
     private TrackingCorruptIndexHandler corruptIndexHandler = new TrackingCorruptIndexHandler();
@@ -483,6 +507,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         } else {
             log.info("[{}] Closed", name);
         }
+        closeDiffReadAhead();
         closed = true;
     }
 
@@ -523,6 +548,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         // find the last indexed state, and check if there are recent changes
         NodeState before;
         String beforeCheckpoint = async.getString(name);
+        String beforeTime = async.getString(lastIndexedTo);
         AsyncUpdateCallback callback = newAsyncUpdateCallback(store,
                 name, leaseTimeOut, beforeCheckpoint, indexStats,
                 forcedStopFlag);
@@ -598,6 +624,12 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
             if (indexStats.didLastIndexingCycleFailed()) {
                 indexStats.fixed();
             }
+            Calendar beforeCal = beforeTime == null ? null : ISO8601.parse(beforeTime);
+            if (beforeCal != null) {
+                // the changes since the last indexed time are now indexed
+                indexStats.getExecutionStats().updateLag(
+                        System.currentTimeMillis() - beforeCal.getTimeInMillis());
+            }
 
             // the update succeeded, so we are sure we can release the earlier checkpoint -
             // otherwise the new checkpoint associated with the failed update
@@ -812,8 +844,18 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
                     new IndexUpdate(provider, name, after, builder, callback, callback, info, corruptIndexHandler)
                             .withMissingProviderStrategy(missingStrategy);
             configureRateEstimator(indexUpdate);
-            CommitFailedException exception =
-                    EditorDiff.process(VisibleEditor.wrap(indexUpdate), before, after);
+            CommitFailedException exception;
+            DiffReadAhead readAhead = acquireDiffReadAhead();
+            try {
+                if (readAhead != null) {
+                    // read at most a bounded number of nodes ahead of
+                    // the nodes the index update has traversed
+                    readAhead.start(before, after, indexStats::getNodesReadCount);
+                }
+                exception = EditorDiff.process(VisibleEditor.wrap(indexUpdate), before, after);
+            } finally {
+                releaseDiffReadAhead(readAhead);
+            }
             if (exception != null) {
                 throw exception;
             }
@@ -976,6 +1018,74 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         return leaseTimeOut;
     }
 
+    /**
+     * Set the number of threads that read the changes ahead of the index
+     * update, to speed up reading from the node store.
+     *
+     * @param threads the number of threads, 0 to disable
+     */
+    public void setDiffReadAheadThreads(int threads) {
+        synchronized (diffReadAheadLock) {
+            if (threads != diffReadAheadThreads) {
+                closeDiffReadAhead();
+            }
+            this.diffReadAheadThreads = threads;
+        }
+    }
+
+    /**
+     * Get the read-ahead for an index update, and mark it as in use.
+     *
+     * @return the read-ahead, or null if disabled
+     */
+    private DiffReadAhead acquireDiffReadAhead() {
+        synchronized (diffReadAheadLock) {
+            if (diffReadAheadThreads <= 0) {
+                return null;
+            }
+            if (diffReadAhead == null) {
+                diffReadAhead = new DiffReadAhead(name, diffReadAheadThreads,
+                        DiffReadAhead.DEFAULT_MAX_AHEAD);
+            }
+            diffReadAheadInUse = diffReadAhead;
+            return diffReadAhead;
+        }
+    }
+
+    /**
+     * Stop the read-ahead after an index update. If it was replaced or
+     * closed in the meantime, it is closed now.
+     */
+    private void releaseDiffReadAhead(@Nullable DiffReadAhead readAhead) {
+        if (readAhead == null) {
+            return;
+        }
+        readAhead.stop();
+        boolean close;
+        synchronized (diffReadAheadLock) {
+            diffReadAheadInUse = null;
+            close = readAhead != diffReadAhead;
+        }
+        if (close) {
+            readAhead.close();
+        }
+    }
+
+    private void closeDiffReadAhead() {
+        DiffReadAhead readAhead;
+        synchronized (diffReadAheadLock) {
+            readAhead = diffReadAhead;
+            diffReadAhead = null;
+            if (readAhead == diffReadAheadInUse) {
+                // closed by the index update once done
+                return;
+            }
+        }
+        if (readAhead != null) {
+            readAhead.close();
+        }
+    }
+
     protected AsyncIndexUpdate setCloseTimeOut(int timeOutInSec) {
         this.softTimeOutSecs = timeOutInSec;
         return this;
@@ -1319,6 +1429,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
             private final TimerStats indexerTimer;
             private final HistogramStats indexedNodePerCycleHisto;
             private final CounterStats lastIndexedTime;
+            private final HistogramStats indexerLagHisto;
             private StatisticsProvider statisticsProvider;
 
             private final String[] names = {"Executions", "Nodes"};
@@ -1334,6 +1445,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
                 indexedNodePerCycleHisto = statsProvider.getHistogram(stats("INDEXER_NODE_COUNT_HISTO"), StatsOptions
                         .METRICS_ONLY);
                 lastIndexedTime = statsProvider.getCounterStats(stats("LAST_INDEXED_TIME"), StatsOptions.DEFAULT);
+                indexerLagHisto = statsProvider.getHistogram(stats("INDEXER_LAG"), StatsOptions.METRICS_ONLY);
                 try {
                     consolidatedType = new CompositeType("ConsolidatedStats",
                             "Consolidated stats", names,
@@ -1353,6 +1465,15 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
                 lastIndexedTime.inc(System.currentTimeMillis() - previousLastIndexedTime);
             }
 
+            /**
+             * Record the lag of the lane, that is the time between the
+             * last indexed time of the previous cycle and the end of this
+             * cycle, in milliseconds.
+             */
+            public void updateLag(long lagInMillis) {
+                indexerLagHisto.update(lagInMillis);
+            }
+
             public Counting getExecutionCounter() {
                 return indexerExecutionCountMeter;
             }
@@ -97,6 +97,13 @@ public class AsyncIndexerService {
                         "This is done to avoid flooding the log in case of corrupted index."
         )
         long errorWarnIntervalSeconds() default 15 * 60;
+
+        @AttributeDefinition(
+                name = "Read-ahead threads",
+                description = "Number of threads that read the changes ahead of the async index update, " +
+                        "to speed up reading from the node store. The default is 0 (disabled)."
+        )
+        int diffReadAheadThreads() default 0;
     }
 
     private static final char CONFIG_SEP = ':';
@@ -142,6 +149,9 @@ public class AsyncIndexerService {
             task.setCorruptIndexHandler(corruptIndexHandler);
             task.setValidatorProviders(Collections.singletonList(validatorProvider));
             task.setLeaseTimeOut(TimeUnit.MINUTES.toMillis(leaseTimeOutMin));
+            if (config.diffReadAheadThreads() > 0) {
+                task.setDiffReadAheadThreads(config.diffReadAheadThreads());
+            }
 
             indexRegistration.registerAsyncIndexer(task, c.timeIntervalInSecs);
             closer.register(task);
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the changes between two node states using multiple threads, ahead of
+ * the (single threaded) index update of an async lane. The changes are split
+ * into subtrees (the changed child nodes of the root, or of the next levels
+ * if there are only a few), and each subtree is read by one task.
+ * <p>
+ * The index editors are not run concurrently, as they share the node builder
+ * of the index update, and the lease and checkpoint handling expects one
+ * diff. Instead, the node states that are needed by the index update are
+ * loaded concurrently, so that the index update mostly finds them in the
+ * cache of the node store. This helps if reading from the node store is
+ * slow (for example for a document node store after a bulk import).
+ * <p>
+ * The threads are kept for the lifetime of the lane (idle threads are
+ * stopped after a while). So that the nodes read ahead are not evicted from
+ * the cache before the index update needs them, the tasks wait if they have
+ * read more than the given maximum number of nodes ahead of the index
+ * update. Hidden nodes are not read, as they are not indexed.
+ */
+final class DiffReadAhead implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DiffReadAhead.class);
+
+    /**
+     * The default maximum number of nodes to read ahead of the index update.
+     */
+    static final int DEFAULT_MAX_AHEAD = Integer.getInteger("oak.async.diffReadAheadMaxNodes", 100000);
+
+    /**
+     * The maximum depth of the nodes that are used to split the changes into
+     * subtrees.
+     */
+    private static final int MAX_SPLIT_DEPTH = 3;
+
+    /**
+     * The time to wait for the index update to catch up, in milliseconds.
+     */
+    private static final int WAIT_MILLIS = 10;
+
+    private final String name;
+    private final int threads;
+    private final long maxAhead;
+    private final ThreadPoolExecutor executor;
+    private volatile Cycle current;
+
+    DiffReadAhead(final String name, int threads, long maxAhead) {
+        this.name = name;
+        this.threads = threads;
+        this.maxAhead = maxAhead;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "async-index-read-ahead-" + name + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Start reading the changes of an index update. Reading the changes of
+     * the previous index update is stopped.
+     *
+     * @param before the before state
+     * @param after the after state
+     * @param progress the number of nodes the index update has traversed
+     */
+    void start(NodeState before, NodeState after, LongSupplier progress) {
+        stop();
+        List<Change> changes = Collections.singletonList(new Change(before, after));
+        for (int depth = 0; depth < MAX_SPLIT_DEPTH && changes.size() < threads * 4; depth++) {
+            List<Change> children = new ArrayList<Change>();
+            for (Change c : changes) {
+                c.collectChildren(children);
+            }
+            changes = children;
+        }
+        log.debug("[{}] Reading {} subtrees ahead using {} threads", name, changes.size(), threads);
+        final Cycle cycle = new Cycle(progress, changes.size());
+        current = cycle;
+        for (final Change c : changes) {
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cycle.read(c.before, c.after);
+                    } catch (RuntimeException e) {
+                        // the index update will read the node again
+                        log.debug("[{}] Reading ahead failed", name, e);
+                    } finally {
+                        cycle.remaining.countDown();
+                    }
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // closed concurrently
+                cycle.remaining.countDown();
+            }
+        }
+    }
+
+    /**
+     * Stop reading the changes of the current index update (for example
+     * because the index update is done).
+     */
+    void stop() {
+        Cycle cycle = current;
+        if (cycle != null) {
+            cycle.stopped = true;
+            current = null;
+            log.debug("[{}] Read {} nodes ahead", name, cycle.readCount.get());
+        }
+    }
+
+    /**
+     * Get the number of nodes read so far for the current index update.
+     *
+     * @return the number of nodes
+     */
+    long getReadCount() {
+        Cycle cycle = current;
+        return cycle == null ? 0 : cycle.readCount.get();
+    }
+
+    /**
+     * Wait until all changes of the current index update are read (used for
+     * testing).
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true if all changes are read
+     */
+    boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        Cycle cycle = current;
+        return cycle == null || cycle.remaining.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop reading ahead, and stop the threads.
+     */
+    @Override
+    public void close() {
+        stop();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reading the changes of one index update.
+     */
+    private final class Cycle {
+
+        final LongSupplier progress;
+        final CountDownLatch remaining;
+        final AtomicLong readCount = new AtomicLong();
+        volatile boolean stopped;
+
+        Cycle(LongSupplier progress, int tasks) {
+            this.progress = progress;
+            this.remaining = new CountDownLatch(tasks);
+        }
+
+        /**
+         * Wait until the index update is close enough.
+         *
+         * @return false if reading was stopped
+         */
+        private boolean awaitProgress() {
+            while (!stopped) {
+                if (readCount.get() - progress.getAsLong() < maxAhead) {
+                    return true;
+                }
+                try {
+                    Thread.sleep(WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        boolean read(NodeState before, NodeState after) {
+            if (!awaitProgress()) {
+                return false;
+            }
+            readCount.incrementAndGet();
+            ReadDiff diff = new ReadDiff(this);
+            if (!before.exists()) {
+                return EmptyNodeState.compareAgainstEmptyState(after, diff);
+            } else if (!after.exists()) {
+                // the index editors may read the removed nodes
+                return EmptyNodeState.compareAgainstEmptyState(before, diff);
+            }
+            return after.compareAgainstBaseState(before, diff);
+        }
+
+    }
+
+    private static final class ReadDiff extends DefaultNodeStateDiff {
+
+        private final Cycle cycle;
+
+        ReadDiff(Cycle cycle) {
+            this.cycle = cycle;
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return NodeStateUtils.isHidden(name) || cycle.read(MISSING_NODE, after);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return NodeStateUtils.isHidden(name) || cycle.read(before, after);
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return NodeStateUtils.isHidden(name) || cycle.read(before, MISSING_NODE);
+        }
+
+    }
+
+    /**
+     * The before and after state of a changed (or added, or removed) node.
+     */
+    private static final class Change {
+
+        final NodeState before;
+        final NodeState after;
+
+        Change(NodeState before, NodeState after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        void collectChildren(final List<Change> target) {
+            DefaultNodeStateDiff diff = new DefaultNodeStateDiff() {
+
+                @Override
+                public boolean childNodeAdded(String name, NodeState after) {
+                    if (!NodeStateUtils.isHidden(name)) {
+                        target.add(new Change(MISSING_NODE, after));
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+                    if (!NodeStateUtils.isHidden(name)) {
+                        target.add(new Change(before, after));
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean childNodeDeleted(String name, NodeState before) {
+                    if (!NodeStateUtils.isHidden(name)) {
+                        target.add(new Change(before, MISSING_NODE));
+                    }
+                    return true;
+                }
+
+            };
+            if (!before.exists()) {
+                EmptyNodeState.compareAgainstEmptyState(after, diff);
+            } else if (!after.exists()) {
+                EmptyNodeState.compareAgainstEmptyState(before, diff);
+            } else {
+                after.compareAgainstBaseState(before, diff);
+            }
+        }
+
+    }
+
+}
@@ -87,6 +87,15 @@ public interface IndexConstants {
 
     String INDEX_CONTENT_NODE_NAME = ":index";
 
+    /**
+     * The number of shards per value of a (non-unique) property index. If
+     * larger than 1, the entries of each value are split into this many
+     * subtrees, so that concurrent commits that index nodes with the same
+     * value are less likely to conflict. Changing the value requires a
+     * reindex. Defaults to 1 (no sharding).
+     */
+    String SHARD_COUNT_PROPERTY_NAME = "shardCount";
+
     /**
      * MVP to define the paths for which the index can be used to perform
      * queries. Defaults to ['/'].
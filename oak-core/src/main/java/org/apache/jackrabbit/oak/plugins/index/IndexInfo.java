@@ -69,6 +69,15 @@ public interface IndexInfo {
      */
     long getEstimatedEntryCount();
 
+    /**
+     * An estimate of the number of distinct values (keys) in the index
+     *
+     * @return the estimated number of distinct values, or -1 if unknown
+     */
+    default long getEstimatedDistinctValueCount() {
+        return -1;
+    }
+
     /**
      * Index data storage size
 
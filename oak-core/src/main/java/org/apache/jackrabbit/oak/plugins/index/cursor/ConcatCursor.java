@@ -16,7 +16,6 @@
  */
 package org.apache.jackrabbit.oak.plugins.index.cursor;
 
-import java.util.HashSet;
 import java.util.List;
 
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
@@ -31,7 +30,7 @@ import org.apache.jackrabbit.oak.spi.query.QueryLimits;
  */
 class ConcatCursor extends AbstractCursor {
 
-    private final HashSet<String> seen = new HashSet<String>();
+    private final PathSet seen = new PathSet();
     private final List<Cursor> cursors;
     private final QueryLimits settings;
     private boolean init;
@@ -16,11 +16,15 @@
  */
 package org.apache.jackrabbit.oak.plugins.index.cursor;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.query.FilterIterators;
+import org.apache.jackrabbit.oak.query.stats.QueryProfile;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
@@ -45,6 +49,10 @@ public class Cursors {
         FilterIterators.checkReadLimit(count, settings);
     }    
 
+    public static void checkCancelled(QueryLimits settings) {
+        FilterIterators.checkCancelled(settings);
+    }
+
     public static Cursor newIntersectionCursor(Cursor a, Cursor b, QueryLimits settings) {
         return new IntersectionCursor(a, b, settings);
     }
@@ -58,6 +66,33 @@ public class Cursors {
         return new PrefetchCursor(cursor, store, prefetchCount, rootState, prefetchRelative);
     }
 
+    /**
+     * Creates a {@link Cursor} that reads the rows of the given cursor in
+     * batches, using the executor, while the rows of the previous batch are
+     * processed. The given cursor must not use the session state (see
+     * {@link ReadAheadCursor}).
+     *
+     * @param cursor the cursor to read from
+     * @param executor the executor
+     * @param batchSize the number of rows to read ahead
+     * @return the Cursor.
+     */
+    public static Cursor newReadAheadCursor(Cursor cursor, Executor executor, int batchSize) {
+        return new ReadAheadCursor(cursor, executor, batchSize);
+    }
+
+    /**
+     * Creates a {@link Cursor} that measures the time spent in the given
+     * cursor, and counts the rows.
+     *
+     * @param cursor the cursor to measure
+     * @param operator the operator of the query profile
+     * @return the Cursor.
+     */
+    public static Cursor newProfilingCursor(Cursor cursor, QueryProfile.Operator operator) {
+        return new ProfilingCursor(cursor, operator);
+    }
+
     /**
      * Creates a {@link Cursor} over paths.
      *
@@ -68,6 +103,29 @@ public class Cursors {
         return new PathCursor(paths.iterator(), true, settings);
     }
 
+    /**
+     * Creates a {@link Cursor} over the given rows.
+     *
+     * @param rows the rows to iterate over
+     * @return the Cursor.
+     */
+    public static Cursor newRowCursor(Iterable<IndexRow> rows) {
+        final Iterator<IndexRow> it = rows.iterator();
+        return new AbstractCursor() {
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public IndexRow next() {
+                return it.next();
+            }
+
+        };
+    }
+
     /**
      * Creates a {@link Cursor} over paths, and make the result distinct.
      * The iterator might return duplicate paths
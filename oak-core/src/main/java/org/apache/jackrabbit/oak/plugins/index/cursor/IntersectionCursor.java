@@ -16,9 +16,6 @@
  */
 package org.apache.jackrabbit.oak.plugins.index.cursor;
 
-import java.util.HashMap;
-import java.util.HashSet;
-
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
 import org.apache.jackrabbit.oak.query.FilterIterators;
 import org.apache.jackrabbit.oak.query.QueryImpl;
@@ -31,8 +28,8 @@ import org.apache.jackrabbit.oak.spi.query.QueryLimits;
  */
 class IntersectionCursor extends AbstractCursor {
 
-    private final HashMap<String, IndexRow> secondSet = new HashMap<String, IndexRow>();
-    private final HashSet<String> seen = new HashSet<String>();
+    private final PathSet secondSet = new PathSet();
+    private final PathSet seen = new PathSet(secondSet.getTable());
     private final Cursor first, second;
     private final QueryLimits settings;
     private boolean init;
@@ -83,7 +80,7 @@ class IntersectionCursor extends AbstractCursor {
             if (seen.contains(p)) {
                 continue;
             }
-            if (secondSet.remove(p) != null) {
+            if (secondSet.remove(p)) {
                 current = c;
                 markSeen(p);
                 return;
@@ -96,7 +93,7 @@ class IntersectionCursor extends AbstractCursor {
                     markSeen(p);
                     return;
                 }
-                secondSet.put(p2, s);
+                secondSet.add(p2);
                 FilterIterators.checkMemoryLimit(secondSet.size(), settings);
             }
         }
@@ -18,7 +18,6 @@ package org.apache.jackrabbit.oak.plugins.index.cursor;
 
 import static org.apache.jackrabbit.oak.commons.PathUtils.isAbsolute;
 
-import java.util.HashSet;
 import java.util.Iterator;
 
 import org.apache.jackrabbit.oak.query.FilterIterators;
@@ -44,7 +43,7 @@ public class PathCursor extends AbstractCursor {
         if (distinct) {
             it = Iterators.filter(it, new Predicate<String>() {
                 
-                private final HashSet<String> known = new HashSet<String>();
+                private final PathSet known = new PathSet();
 
                 @Override
                 public boolean apply(@Nullable String input) {
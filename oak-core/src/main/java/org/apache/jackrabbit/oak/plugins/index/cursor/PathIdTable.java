@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import java.util.Arrays;
+
+/**
+ * A table that assigns a dense id (0, 1, 2,...) to each path. Paths are
+ * stored as a tree of segments: each entry consists of the id of the parent
+ * and the last segment (the name). Paths with a common parent share the
+ * storage for the parent, so that many paths use much less memory than a set
+ * of path strings. Looking up a path does not allocate objects; only new
+ * segments are copied when adding a path.
+ * <p>
+ * Paths are split at each '/' character, and empty segments are kept, so
+ * that any two different strings get a different id (also relative paths,
+ * and paths that are not normalized). Entries are compared with the actual
+ * segment, so that hash collisions do not cause wrong results.
+ */
+final class PathIdTable {
+
+    private static final int NO_PARENT = -1;
+
+    private int[] parents = new int[64];
+    private int[] hashes = new int[64];
+    private String[] names = new String[64];
+    private int size;
+
+    /**
+     * The hash table: id + 1 of the entry, or 0 for empty slots.
+     */
+    private int[] table = new int[128];
+
+    /**
+     * Get the id of a path.
+     *
+     * @param path the path
+     * @return the id, or -1 if the path is not in the table
+     */
+    int getId(String path) {
+        return find(path, false);
+    }
+
+    /**
+     * Get the id of a path, and add the path if needed.
+     *
+     * @param path the path
+     * @return the id
+     */
+    int addPath(String path) {
+        return find(path, true);
+    }
+
+    /**
+     * Get the path of the given id.
+     *
+     * @param id the id
+     * @return the path
+     */
+    String getPath(int id) {
+        if (parents[id] == NO_PARENT) {
+            return names[id];
+        }
+        StringBuilder buff = new StringBuilder();
+        appendPath(buff, id);
+        return buff.toString();
+    }
+
+    /**
+     * Get the number of entries (the number of different paths and parent
+     * paths).
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    private void appendPath(StringBuilder buff, int id) {
+        int parent = parents[id];
+        if (parent != NO_PARENT) {
+            appendPath(buff, parent);
+            buff.append('/');
+        }
+        buff.append(names[id]);
+    }
+
+    private int find(String path, boolean add) {
+        int parent = NO_PARENT;
+        int start = 0;
+        int len = path.length();
+        while (true) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = len;
+            }
+            parent = findSegment(parent, path, start, end, add);
+            if (parent < 0 || end == len) {
+                return parent;
+            }
+            start = end + 1;
+        }
+    }
+
+    private int findSegment(int parent, String path, int start, int end, boolean add) {
+        int hash = parent * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        hash ^= hash >>> 16;
+        int len = end - start;
+        int mask = table.length - 1;
+        int index = hash & mask;
+        while (true) {
+            int e = table[index];
+            if (e == 0) {
+                break;
+            }
+            int id = e - 1;
+            if (hashes[id] == hash && parents[id] == parent) {
+                String name = names[id];
+                if (name.length() == len && name.regionMatches(0, path, start, len)) {
+                    return id;
+                }
+            }
+            index = (index + 1) & mask;
+        }
+        if (!add) {
+            return -1;
+        }
+        int id = size++;
+        if (id == parents.length) {
+            int newLength = parents.length * 2;
+            parents = Arrays.copyOf(parents, newLength);
+            hashes = Arrays.copyOf(hashes, newLength);
+            names = Arrays.copyOf(names, newLength);
+        }
+        parents[id] = parent;
+        hashes[id] = hash;
+        names[id] = path.substring(start, end);
+        table[index] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int newLength) {
+        int[] t = new int[newLength];
+        int mask = newLength - 1;
+        for (int id = 0; id < size; id++) {
+            int index = hashes[id] & mask;
+            while (t[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            t[index] = id + 1;
+        }
+        table = t;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import java.util.BitSet;
+
+/**
+ * A set of paths, used to filter duplicate rows and to intersect cursors. The
+ * paths are stored in a {@link PathIdTable}, and the set is a bitmap over the
+ * path ids. Multiple sets can share the same table, in which case each path
+ * is only stored once.
+ */
+final class PathSet {
+
+    private final PathIdTable table;
+    private final BitSet bits = new BitSet();
+    private int size;
+
+    PathSet() {
+        this(new PathIdTable());
+    }
+
+    PathSet(PathIdTable table) {
+        this.table = table;
+    }
+
+    PathIdTable getTable() {
+        return table;
+    }
+
+    /**
+     * Add a path.
+     *
+     * @param path the path
+     * @return true if the path was added, false if it was already in the set
+     */
+    boolean add(String path) {
+        int id = table.addPath(path);
+        if (bits.get(id)) {
+            return false;
+        }
+        bits.set(id);
+        size++;
+        return true;
+    }
+
+    boolean contains(String path) {
+        int id = table.getId(path);
+        return id >= 0 && bits.get(id);
+    }
+
+    /**
+     * Remove a path.
+     *
+     * @param path the path
+     * @return true if the path was removed, false if it was not in the set
+     */
+    boolean remove(String path) {
+        int id = table.getId(path);
+        if (id < 0 || !bits.get(id)) {
+            return false;
+        }
+        bits.clear(id);
+        size--;
+        return true;
+    }
+
+    /**
+     * Get the number of paths in this set.
+     *
+     * @return the number of paths
+     */
+    int size() {
+        return size;
+    }
+
+}
@@ -37,6 +37,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A cursor that is able to prefetch nodes from the node store.
+ * <p>
+ * The rows are read in batches, and the nodes of a batch (and their ancestors,
+ * and the given relative nodes) are prefetched with one call. The first batch
+ * contains the given number of rows, so that queries that only read a few
+ * rows are fast. The size of each following batch is doubled, up to a
+ * maximum, so that large results need fewer round trips to the backend.
  */
 public class PrefetchCursor extends AbstractCursor {
 
@@ -46,9 +52,16 @@ public class PrefetchCursor extends AbstractCursor {
     // } inside {...} need to be escaped: ${...\}...} 
     private static final Pattern FUNCTION = Pattern.compile("\\$\\{((\\}|[^}])*)\\}");
 
+    /**
+     * The maximum number of rows in a batch (unless the initial number of
+     * rows is larger).
+     */
+    static final int MAX_PREFETCH_COUNT = Integer.getInteger("oak.prefetchMaxCount", 1000);
+
     private final Cursor cursor;
     private final PrefetchNodeStore store;
-    private final int prefetchCount;
+    private final int maxPrefetchCount;
+    private int prefetchCount;
     private final NodeState rootState;
     private Iterator<IndexRow> prefetched;
     private final List<String> prefetchRelative;
@@ -57,6 +70,7 @@ public class PrefetchCursor extends AbstractCursor {
         this.cursor = cursor;
         this.store = store;
         this.prefetchCount = prefetchCount;
+        this.maxPrefetchCount = Math.max(prefetchCount, MAX_PREFETCH_COUNT);
         this.rootState = rootState;
         this.prefetched = Collections.emptyIterator();
         this.prefetchRelative = prefetchRelative;
@@ -91,6 +105,7 @@ public class PrefetchCursor extends AbstractCursor {
             }
             store.prefetch(paths, rootState);
             prefetched = rows.iterator();
+            prefetchCount = (int) Math.min(2L * prefetchCount, maxPrefetchCount);
         }
         return prefetched.next();
     }
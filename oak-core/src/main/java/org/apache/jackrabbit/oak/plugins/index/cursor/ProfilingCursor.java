@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.query.stats.QueryProfile;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+
+/**
+ * A cursor that measures the time spent in another cursor, and counts the
+ * rows it returned.
+ */
+class ProfilingCursor extends AbstractCursor {
+
+    private final Cursor cursor;
+    private final QueryProfile.Operator operator;
+
+    ProfilingCursor(Cursor cursor, QueryProfile.Operator operator) {
+        this.cursor = cursor;
+        this.operator = operator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        long start = System.nanoTime();
+        boolean result = cursor.hasNext();
+        operator.add(System.nanoTime() - start, 0, 0);
+        return result;
+    }
+
+    @Override
+    public IndexRow next() {
+        long start = System.nanoTime();
+        IndexRow row = cursor.next();
+        operator.add(System.nanoTime() - start, 1, 1);
+        return row;
+    }
+
+    @Override
+    public long getSize(SizePrecision precision, long max) {
+        return cursor.getSize(precision, max);
+    }
+
+}
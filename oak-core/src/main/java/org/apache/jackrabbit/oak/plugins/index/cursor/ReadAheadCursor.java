@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+
+/**
+ * A cursor that reads the rows of another cursor in the background, in
+ * batches. While the rows of one batch are processed, the next batch is read
+ * by the executor. This allows to run the (index) part of multiple queries
+ * concurrently, for example the branches of a union.
+ * <p>
+ * The underlying cursor is only accessed by one thread at a time: the next
+ * batch is only requested once the previous batch was read. No thread is
+ * blocked if the rows are not consumed; at most one batch is read ahead. If
+ * the executor rejects the task, the batch is read by the calling thread.
+ * <p>
+ * Only cursors that do not use the (not thread-safe) session state may be
+ * wrapped: index cursors, the traversing cursor, and the prefetch cursor,
+ * which read from the immutable root node state and the node store. Rows are
+ * filtered for access rights and read as trees by the calling thread, after
+ * they are returned by this cursor. The state of the wrapped cursor, such as
+ * the read count used for the query limits, is handed over between threads
+ * by the future of the batch, which makes the changes of the background
+ * thread visible to the calling thread. An exception of the wrapped cursor,
+ * for example if the read limit is exceeded or the query was cancelled, is
+ * thrown by the calling thread when it reaches the failed batch.
+ */
+class ReadAheadCursor extends AbstractCursor {
+
+    private final Cursor cursor;
+    private final Executor executor;
+    private final int batchSize;
+    private Iterator<IndexRow> current = Collections.emptyIterator();
+    private FutureTask<List<IndexRow>> pending;
+
+    ReadAheadCursor(Cursor cursor, Executor executor, int batchSize) {
+        this.cursor = cursor;
+        this.executor = executor;
+        this.batchSize = Math.max(1, batchSize);
+        this.pending = readNextBatch();
+    }
+
+    /**
+     * Start reading the next batch. Must only be called once the previous
+     * batch is read, so that the wrapped cursor is not used concurrently.
+     *
+     * @return the task that reads the batch
+     */
+    private FutureTask<List<IndexRow>> readNextBatch() {
+        FutureTask<List<IndexRow>> task = new FutureTask<List<IndexRow>>(() -> {
+            ArrayList<IndexRow> rows = new ArrayList<IndexRow>(batchSize);
+            while (rows.size() < batchSize && cursor.hasNext()) {
+                rows.add(cursor.next());
+            }
+            return rows;
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+        return task;
+    }
+
+    private List<IndexRow> await(FutureTask<List<IndexRow>> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the index", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (pending == null) {
+                return false;
+            }
+            List<IndexRow> rows = await(pending);
+            // a batch that is not full means the cursor is at the end
+            pending = rows.size() < batchSize ? null : readNextBatch();
+            current = rows.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public IndexRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public long getSize(SizePrecision precision, long max) {
+        if (pending != null) {
+            // wait until the background task is done with the cursor
+            await(pending);
+        }
+        return cursor.getSize(precision, max);
+    }
+
+}
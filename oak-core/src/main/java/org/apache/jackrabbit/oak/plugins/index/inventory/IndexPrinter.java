@@ -158,6 +158,10 @@ public class IndexPrinter implements InventoryPrinter {
             po.text("Estimated entry count", info.getEstimatedEntryCount());
         }
 
+        if (info.getEstimatedDistinctValueCount() >= 0) {
+            po.text("Estimated distinct value count", info.getEstimatedDistinctValueCount());
+        }
+
         if ("lucene".equals(info.getType())) {
             // Only valid for lucene type indexes, for others it will simply show false.
             po.text("Has hidden oak mount", info.hasHiddenOakLibsMount());
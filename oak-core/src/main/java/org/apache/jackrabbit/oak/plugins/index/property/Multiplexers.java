@@ -19,13 +19,17 @@
 package org.apache.jackrabbit.oak.plugins.index.property;
 
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.SHARD_COUNT_PROPERTY_NAME;
 
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.FilteringIndexStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ShardedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
 import org.apache.jackrabbit.oak.spi.mount.Mount;
 import org.apache.jackrabbit.oak.spi.mount.MountInfoProvider;
@@ -50,6 +54,9 @@ public class Multiplexers {
         RO_PRIVATE_UNIQUE_INDEX = Boolean.parseBoolean(ro);
     }
 
+    /** The maximum number of shards per value */
+    private static final int MAX_SHARD_COUNT = 1024;
+
     /** Index storage strategy */
     private static final IndexStoreStrategy UNIQUE = new UniqueEntryStoreStrategy(
             INDEX_CONTENT_NODE_NAME);
@@ -62,19 +69,34 @@ public class Multiplexers {
             MountInfoProvider mountInfoProvider, NodeBuilder definition,
             String defaultName) {
         Iterable<String> children = definition.getChildNodeNames();
-        return getStrategies(unique, mountInfoProvider, children, defaultName);
+        int shardCount = getShardCount(definition.getProperty(SHARD_COUNT_PROPERTY_NAME));
+        return getStrategies(unique, mountInfoProvider, children, defaultName, shardCount);
     }
 
     public static Set<IndexStoreStrategy> getStrategies(boolean unique,
             MountInfoProvider mountInfoProvider, NodeState definition,
             String defaultName) {
         Iterable<String> children = definition.getChildNodeNames();
-        return getStrategies(unique, mountInfoProvider, children, defaultName);
+        int shardCount = getShardCount(definition.getProperty(SHARD_COUNT_PROPERTY_NAME));
+        return getStrategies(unique, mountInfoProvider, children, defaultName, shardCount);
+    }
+
+    private static int getShardCount(PropertyState ps) {
+        if (ps == null || ps.isArray()) {
+            return 1;
+        }
+        long count;
+        try {
+            count = ps.getValue(Type.LONG);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(count, MAX_SHARD_COUNT));
     }
 
     private static Set<IndexStoreStrategy> getStrategies(boolean unique,
             MountInfoProvider mountInfoProvider, Iterable<String> children,
-            String defaultName) {
+            String defaultName, int shardCount) {
         if (mountInfoProvider.hasNonDefaultMounts()) {
             Set<String> names = new HashSet<String>();
             // TODO should this be collected from the index def?
@@ -88,21 +110,21 @@ public class Multiplexers {
             for (Mount m : mountInfoProvider.getNonDefaultMounts()) {
                 String n = getNodeForMount(m, defaultName);
                 names.remove(n);
-                strategies.add(newStrategy(unique, false, n, m));
+                strategies.add(newStrategy(unique, false, n, m, shardCount));
             }
 
             Mount defMount = mountInfoProvider.getDefaultMount();
             // TODO what to do with non-default names that are not covered by
             // the mount?
             for (String n : names) {
-                strategies.add(newStrategy(unique, true, n, defMount));
+                strategies.add(newStrategy(unique, true, n, defMount, shardCount));
             }
             // default mount
-            strategies.add(newStrategy(unique, true, defaultName, defMount));
+            strategies.add(newStrategy(unique, true, defaultName, defMount, shardCount));
             return strategies;
         } else {
             return unique ? ImmutableSet.of(newUniqueStrategy(defaultName))
-                    : ImmutableSet.of(newMirrorStrategy(defaultName));
+                    : ImmutableSet.of(newMirrorStrategy(defaultName, shardCount));
         }
     }
 
@@ -114,8 +136,10 @@ public class Multiplexers {
         }
     }
 
-    private static IndexStoreStrategy newMirrorStrategy(String defaultName) {
-        if (INDEX_CONTENT_NODE_NAME.equals(defaultName)) {
+    private static IndexStoreStrategy newMirrorStrategy(String defaultName, int shardCount) {
+        if (shardCount > 1) {
+            return new ShardedContentMirrorStoreStrategy(defaultName, shardCount);
+        } else if (INDEX_CONTENT_NODE_NAME.equals(defaultName)) {
             return MIRROR;
         } else {
             return new ContentMirrorStoreStrategy(defaultName);
@@ -123,13 +147,17 @@ public class Multiplexers {
     }
 
     private static IndexStoreStrategy newStrategy(boolean unique,
-            boolean defaultMount, String name, Mount m) {
+            boolean defaultMount, String name, Mount m, int shardCount) {
         Predicate<String> filter = newFilter(m);
         boolean readOnly = unique && !m.isDefault() && RO_PRIVATE_UNIQUE_INDEX;
-        return unique ? new FilteringIndexStoreStrategy(
-                new UniqueEntryStoreStrategy(name), filter, readOnly)
-                : new FilteringIndexStoreStrategy(
-                        new ContentMirrorStoreStrategy(name), filter);
+        if (unique) {
+            return new FilteringIndexStoreStrategy(
+                    new UniqueEntryStoreStrategy(name), filter, readOnly);
+        }
+        ContentMirrorStoreStrategy s = shardCount > 1
+                ? new ShardedContentMirrorStoreStrategy(name, shardCount)
+                : new ContentMirrorStoreStrategy(name);
+        return new FilteringIndexStoreStrategy(s, filter);
     }
 
     private static Predicate<String> newFilter(final Mount m) {
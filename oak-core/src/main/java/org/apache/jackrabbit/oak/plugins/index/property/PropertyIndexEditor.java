@@ -44,6 +44,7 @@ import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditor;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.apache.jackrabbit.oak.plugins.nodetype.TypePredicate;
@@ -113,6 +114,13 @@ class PropertyIndexEditor implements IndexEditor {
 
     private final MountInfoProvider mountInfoProvider;
 
+    /**
+     * The names of the index content nodes that did not exist when the root
+     * editor was entered (a new index, or a reindex), or null. Only used by
+     * the root editor.
+     */
+    private Set<String> newIndexNodeNames;
+
     public PropertyIndexEditor(NodeBuilder definition, NodeState root,
                                IndexUpdateCallback updateCallback, MountInfoProvider mountInfoProvider) {
         this.parent = null;
@@ -235,6 +243,19 @@ class PropertyIndexEditor implements IndexEditor {
         
         beforeKeys = null;
         afterKeys = null;
+
+        if (parent == null && keysToCheckForUniqueness == null) {
+            // the content mirror strategies (not unique) count the keys
+            for (IndexStoreStrategy s : getStrategies(false)) {
+                String indexNodeName = s.getIndexNodeName();
+                if (!definition.hasChildNode(indexNodeName)) {
+                    if (newIndexNodeNames == null) {
+                        newIndexNodeNames = newHashSet();
+                    }
+                    newIndexNodeNames.add(indexNodeName);
+                }
+            }
+        }
     }
 
     @Override
@@ -246,7 +267,21 @@ class PropertyIndexEditor implements IndexEditor {
             updateIndex(before, after);
         }
         checkUniquenessConstraints();
-        
+        markKeyCountReindexed();
+    }
+
+    private void markKeyCountReindexed() {
+        if (parent != null || newIndexNodeNames == null) {
+            return;
+        }
+        for (String indexNodeName : newIndexNodeNames) {
+            if (definition.hasChildNode(indexNodeName)) {
+                // the index content was built from scratch,
+                // so all distinct keys were counted
+                definition.child(indexNodeName).setProperty(
+                        ContentMirrorStoreStrategy.KEY_COUNT_REINDEXED_PROPERTY, true);
+            }
+        }
     }
     
     private void applyTypeRestrictions(NodeState before, NodeState after) {
@@ -25,6 +25,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexInfo;
 import org.apache.jackrabbit.oak.plugins.index.IndexInfoProvider;
 import org.apache.jackrabbit.oak.plugins.index.counter.ApproximateCounter;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
@@ -67,11 +68,16 @@ public class PropertyIndexInfoProvider implements IndexInfoProvider {
 
     private void computeCountEstimate(PropertyIndexInfo info, NodeState idxState) {
         long count = -1;
+        long keyCount = -1;
 
         for (ChildNodeEntry cne : idxState.getChildNodeEntries()) {
             //In multiplexing setups there can be multiple index nodes
             if (NodeStateUtils.isHidden(cne.getName())) {
                 NodeState indexData = cne.getNodeState();
+                long keyEstimate = ContentMirrorStoreStrategy.getApproximateKeyCount(indexData);
+                if (keyEstimate >= 0) {
+                    keyCount = Math.max(keyCount, 0) + keyEstimate;
+                }
                 long estimate = ApproximateCounter.getCountSync(indexData);
                 if (estimate > 0) {
                     if (count < 0) {
@@ -86,6 +92,7 @@ public class PropertyIndexInfoProvider implements IndexInfoProvider {
             }
         }
         info.estimatedCount = count;
+        info.estimatedKeyCount = keyCount;
     }
 
     @Override
@@ -96,6 +103,7 @@ public class PropertyIndexInfoProvider implements IndexInfoProvider {
     private static class PropertyIndexInfo implements IndexInfo {
         private final String indexPath;
         long estimatedCount = -1;
+        long estimatedKeyCount = -1;
 
         public PropertyIndexInfo(String indexPath) {
             this.indexPath = indexPath;
@@ -131,6 +139,11 @@ public class PropertyIndexInfoProvider implements IndexInfoProvider {
             return estimatedCount;
         }
 
+        @Override
+        public long getEstimatedDistinctValueCount() {
+            return estimatedKeyCount;
+        }
+
         @Override
         public long getSizeInBytes() {
             return -1;
@@ -81,9 +81,23 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
      */
     public static final int TRAVERSING_WARN = Integer.getInteger("oak.traversing.warn", 10000);
 
+    /**
+     * The prefix of the approximate counter of the number of distinct keys
+     * (values), which is kept in the index content node.
+     */
+    public static final String KEY_COUNT_PROPERTY_PREFIX = ":keyCount_";
+
+    /**
+     * Set in the index content node if the index content was built from
+     * scratch (by a reindex) with the distinct key counter. Indexes that were
+     * built before don't count their existing keys, so the counter is not
+     * used for them.
+     */
+    public static final String KEY_COUNT_REINDEXED_PROPERTY = ":keyCountReindexed";
+
     private final String indexName;
-    private final String pathPrefix;
-    private final boolean prependPathPrefix;
+    final String pathPrefix;
+    final boolean prependPathPrefix;
 
     public ContentMirrorStoreStrategy() {
         this(INDEX_CONTENT_NODE_NAME);
@@ -147,11 +161,17 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
 
             // Prune all index nodes that are no longer needed
             prune(index, builders, key);
+            if (!index.hasChildNode(key)) {
+                ApproximateCounter.adjustCountSync(index, -1, KEY_COUNT_PROPERTY_PREFIX);
+            }
         }
     }
 
     private void insert(NodeBuilder index, String key, String value) {
         ApproximateCounter.adjustCountSync(index, 1);
+        if (!index.hasChildNode(key)) {
+            ApproximateCounter.adjustCountSync(index, 1, KEY_COUNT_PROPERTY_PREFIX);
+        }
         // NodeBuilder builder = index.child(key);
         NodeBuilder builder = fetchKeyNode(index, key);
         ApproximateCounter.adjustCountSync(builder, 1);
@@ -199,6 +219,21 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
         return query(filter, name, indexMeta, this.indexName, values);
     }
 
+    /**
+     * Get the approximate number of distinct keys of the index content node.
+     * The counter is only used if the index was reindexed since the counter
+     * was introduced, as otherwise the existing keys were not counted.
+     *
+     * @param index the index content node
+     * @return the approximate number of distinct keys, or -1 if not available
+     */
+    public static long getApproximateKeyCount(NodeState index) {
+        if (!index.hasProperty(KEY_COUNT_REINDEXED_PROPERTY)) {
+            return -1;
+        }
+        return ApproximateCounter.getCountSync(index, KEY_COUNT_PROPERTY_PREFIX);
+    }
+
     @Override
     public long count(NodeState root, NodeState indexMeta, Set<String> values, int max) {
         return count(null, root, indexMeta, this.indexName, values, max);
@@ -248,6 +283,12 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                     ec = indexMeta.getProperty(KEY_COUNT_PROPERTY_NAME);
                     if (ec != null) {
                         keyCount = ec.getValue(Type.LONG);
+                    } else {
+                        // use the number of distinct keys, if available
+                        long approxKeyCount = getApproximateKeyCount(index);
+                        if (approxKeyCount > 0) {
+                            keyCount = approxKeyCount;
+                        }
                     }
                     // cast to double to avoid overflow 
                     // (entryCount could be Long.MAX_VALUE)
@@ -263,6 +304,13 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                 if (approxCount != -1) {
                     // approximate count is available for the index:
                     // check approximate counts for each value
+                    long missingKeyCount = 10 * NodeCounterEditor.DEFAULT_RESOLUTION;
+                    long approxKeyCount = getApproximateKeyCount(index);
+                    if (approxKeyCount > 0) {
+                        // keys without approximate count are not frequent:
+                        // assume at most the average number of entries per key
+                        missingKeyCount = Math.max(1, Math.min(missingKeyCount, approxCount / approxKeyCount));
+                    }
                     for (String p : values) {
                         NodeState s = index.getChildNode(p);
                         if (s.exists()) {
@@ -271,7 +319,7 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                                 approxMax += a;
                             } else if (approxMax > 0) {
                                 // in absence of approx count for a key we should be conservative
-                                approxMax += 10 * NodeCounterEditor.DEFAULT_RESOLUTION;
+                                approxMax += missingKeyCount;
                             }
                         }
                     }
@@ -350,6 +398,7 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
         private String parentPath;
         private String currentPath;
         private boolean pathContainsValue;
+        private boolean distinct;
         private final boolean prependPathPrefix;
         
         /**
@@ -388,6 +437,20 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
             this.pathContainsValue = pathContainsValue;
         }
 
+        /**
+         * Don't return the same path twice, even if the path does not contain
+         * the value. This is needed if the enqueued nodes can contain the same
+         * path, for example for multi-valued properties.
+         *
+         * @param distinct whether to filter duplicate paths
+         */
+        void setDistinct(boolean distinct) {
+            if (init) {
+                throw new IllegalStateException("This iterator is already initialized");
+            }
+            this.distinct = distinct;
+        }
+
         @Override
         public boolean hasNext() {
             if (!closed && !init) {
@@ -412,6 +475,8 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                     if (!knownPaths.add(currentPath)) {
                         continue;
                     }
+                } else if (distinct && !knownPaths.add(currentPath)) {
+                    continue;
                 }
                 break;
             }
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.guava.common.collect.Queues.newArrayDeque;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.counter.ApproximateCounter;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.jetbrains.annotations.Nullable;
+
+import org.apache.jackrabbit.guava.common.base.Function;
+import org.apache.jackrabbit.guava.common.base.Supplier;
+import org.apache.jackrabbit.guava.common.collect.Iterators;
+
+/**
+ * A content mirror store strategy that splits the entries of each value into
+ * a number of shards, based on the hash code of the path. For a node that is
+ * under {@code /test/node}, with the value {@code x}, the index structure will
+ * be {@code /oak:index/index/:index/x/:s3/test/node}:
+ *
+ * <pre>
+ * {@code
+ * /
+ *   test
+ *     node
+ *   oak:index
+ *     index
+ *       :index
+ *         x
+ *           :s3
+ *             test
+ *               node
+ * }
+ * </pre>
+ *
+ * With the plain content mirror strategy, all writers that index nodes with a
+ * common value and common parent nodes add and remove the same index nodes
+ * (for example {@code x/test}), which causes conflicts for concurrent
+ * commits. With shards, such writers most likely change different subtrees.
+ * <p>
+ * The shard nodes are hidden, so that entries that were written with the
+ * plain content mirror strategy (before sharding was enabled) are still
+ * found, and removed when needed. Reindexing moves all entries to the
+ * shards. Changing the number of shards requires a reindex.
+ */
+public class ShardedContentMirrorStoreStrategy extends ContentMirrorStoreStrategy {
+
+    /**
+     * The prefix of the shard node names.
+     */
+    static final String SHARD_PREFIX = ":s";
+
+    private final int shardCount;
+
+    public ShardedContentMirrorStoreStrategy(String indexName, int shardCount) {
+        this(indexName, "", true, shardCount);
+    }
+
+    /**
+     * Constructs a ShardedContentMirrorStoreStrategy
+     *
+     * @param indexName name of sub node under which paths are stored
+     * @param pathPrefix path of the index in repository, see
+     *            {@link ContentMirrorStoreStrategy#ContentMirrorStoreStrategy(String, String, boolean)}
+     * @param prependPathPrefix Should the path prefix be added to the query result
+     * @param shardCount the number of shards per value (at least 1)
+     */
+    public ShardedContentMirrorStoreStrategy(String indexName, String pathPrefix,
+            boolean prependPathPrefix, int shardCount) {
+        super(indexName, pathPrefix, prependPathPrefix);
+        checkArgument(shardCount > 0, "Invalid shard count: %s", shardCount);
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Get the name of the shard node for the given path.
+     *
+     * @param path the path of the indexed node
+     * @return the shard node name
+     */
+    String getShardName(String path) {
+        return SHARD_PREFIX + (path.hashCode() & Integer.MAX_VALUE) % shardCount;
+    }
+
+    @Override
+    public void update(
+            Supplier<NodeBuilder> index, String path,
+            @Nullable final String indexName,
+            @Nullable final NodeBuilder indexMeta,
+            Set<String> beforeKeys, Set<String> afterKeys) {
+        for (String key : beforeKeys) {
+            remove(index.get(), key, path);
+        }
+        for (String key : afterKeys) {
+            insert(index.get(), key, path);
+        }
+    }
+
+    private void remove(NodeBuilder index, String key, String value) {
+        ApproximateCounter.adjustCountSync(index, -1);
+        NodeBuilder keyNode = index.getChildNode(key);
+        if (keyNode.exists()) {
+            ApproximateCounter.adjustCountSync(keyNode, -1);
+            Deque<NodeBuilder> builders = newArrayDeque();
+            builders.addFirst(keyNode);
+            NodeBuilder builder = keyNode.getChildNode(getShardName(value));
+            builders.addFirst(builder);
+            builder = descend(builder, builders, value);
+            if (!builder.getBoolean("match")) {
+                // the entry might have been written before sharding was enabled
+                builders.clear();
+                builders.addFirst(keyNode);
+                builder = descend(keyNode, builders, value);
+            }
+            // Drop the match value,  if present
+            if (builder.exists()) {
+                builder.removeProperty("match");
+            }
+            // Prune all index nodes that are no longer needed
+            prune(index, builders, key);
+            if (!index.hasChildNode(key)) {
+                ApproximateCounter.adjustCountSync(index, -1, KEY_COUNT_PROPERTY_PREFIX);
+            }
+        }
+    }
+
+    private static NodeBuilder descend(NodeBuilder builder, Deque<NodeBuilder> builders, String path) {
+        for (String name : PathUtils.elements(path)) {
+            builder = builder.getChildNode(name);
+            builders.addFirst(builder);
+        }
+        return builder;
+    }
+
+    private void insert(NodeBuilder index, String key, String value) {
+        ApproximateCounter.adjustCountSync(index, 1);
+        if (!index.hasChildNode(key)) {
+            ApproximateCounter.adjustCountSync(index, 1, KEY_COUNT_PROPERTY_PREFIX);
+        }
+        NodeBuilder builder = fetchKeyNode(index, key);
+        ApproximateCounter.adjustCountSync(builder, 1);
+        builder = builder.child(getShardName(value));
+        for (String name : PathUtils.elements(value)) {
+            builder = builder.child(name);
+        }
+        builder.setProperty("match", true);
+    }
+
+    @Override
+    public Iterable<String> query(final Filter filter, final String indexName,
+            final NodeState indexMeta, final String indexStorageNodeName,
+            final Iterable<String> values) {
+        final NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                PathIterator it = new PathIterator(filter, indexName, pathPrefix, prependPathPrefix);
+                if (values == null) {
+                    // a node with a multi-valued property is indexed
+                    // for each value
+                    it.setDistinct(true);
+                    it.enqueue(Iterators.concat(Iterators.transform(
+                            getChildNodeEntries(index).iterator(),
+                            new Function<ChildNodeEntry, Iterator<ChildNodeEntry>>() {
+                                @Override
+                                public Iterator<ChildNodeEntry> apply(ChildNodeEntry input) {
+                                    if (NodeStateUtils.isHidden(input.getName())) {
+                                        return Collections.emptyIterator();
+                                    }
+                                    return getKeyEntries(input.getNodeState()).iterator();
+                                }
+                            })));
+                } else {
+                    for (String p : values) {
+                        NodeState property = index.getChildNode(p);
+                        if (property.exists()) {
+                            // we have an entry for this value, so use it
+                            it.enqueue(getKeyEntries(property).iterator());
+                        }
+                    }
+                }
+                return it;
+            }
+        };
+    }
+
+    /**
+     * Get the nodes that contain the entries of a value: the node of the
+     * value itself (for entries written before sharding was enabled), and
+     * the shards. The nodes have an empty name, so that the name is not part
+     * of the returned paths.
+     *
+     * @param keyNode the node of the value
+     * @return the nodes
+     */
+    private List<ChildNodeEntry> getKeyEntries(NodeState keyNode) {
+        List<ChildNodeEntry> list = new ArrayList<ChildNodeEntry>();
+        list.add(new MemoryChildNodeEntry("", keyNode));
+        for (int i = 0; i < shardCount; i++) {
+            NodeState shard = keyNode.getChildNode(SHARD_PREFIX + i);
+            if (shard.exists()) {
+                list.add(new MemoryChildNodeEntry("", shard));
+            }
+        }
+        return list;
+    }
+
+}
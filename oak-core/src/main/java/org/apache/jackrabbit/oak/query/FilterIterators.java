@@ -13,14 +13,34 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Function;
 
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+import org.apache.jackrabbit.guava.common.collect.Iterators;
+import org.apache.jackrabbit.oak.commons.sort.ExternalSort;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +52,12 @@ public class FilterIterators {
     
     private static final Logger LOG = LoggerFactory.getLogger(FilterIterators.class);
 
+    /**
+     * Deletes the temporary files of iterators that were not read until the
+     * end.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
     private FilterIterators() {
     }
 
@@ -61,8 +87,10 @@ public class FilterIterators {
      * @param count the number of read operations
      * @param settings the query engine settings
      * @throws RuntimeNodeTraversalException if the limit was exceeded
+     * @throws QueryCancelledException if the query was cancelled
      */
     public static void checkReadLimit(long count, QueryLimits settings) {
+        checkCancelled(settings);
         long maxReadEntries = settings.getLimitReads();
         if (count > maxReadEntries) {
             String message = "The query read or traversed more than " + 
@@ -75,18 +103,42 @@ public class FilterIterators {
         }
     }
 
+    /**
+     * Verify the query was not cancelled, and did not run for longer than
+     * allowed.
+     *
+     * @param settings the query limits
+     * @throws QueryCancelledException if the query was cancelled
+     */
+    public static void checkCancelled(QueryLimits settings) {
+        if (settings.isCancelled()) {
+            String message = "The query was cancelled, or ran for longer than the timeout.";
+            QueryCancelledException e = new QueryCancelledException(
+                    message + " Processing was stopped.");
+            LOG.warn(message, e);
+            throw e;
+        }
+    }
+
     public static <K> Iterator<K> newCombinedFilter(
             Iterator<K> it, boolean distinct, long limit, long offset, 
             Comparator<K> orderBy, QueryLimits settings) {
+        return newCombinedFilter(it, distinct, limit, offset, orderBy, settings, null);
+    }
+
+    public static <K> Iterator<K> newCombinedFilter(
+            Iterator<K> it, boolean distinct, long limit, long offset, 
+            Comparator<K> orderBy, QueryLimits settings,
+            @Nullable SpillSupport<K> spill) {
         if (distinct) {
-            it = FilterIterators.newDistinct(it, settings);
+            it = FilterIterators.newDistinct(it, settings, spill);
         }
         if (orderBy != null) {
             // avoid overflow (both offset and limit could be Long.MAX_VALUE)
             int max = (int) Math.min(Integer.MAX_VALUE, 
                     Math.min(Integer.MAX_VALUE, offset) + 
                     Math.min(Integer.MAX_VALUE, limit));
-            it = FilterIterators.newSort(it, orderBy, max, settings);
+            it = FilterIterators.newSort(it, orderBy, max, settings, spill);
         }
         if (offset != 0) {
             it = FilterIterators.newOffset(it, offset);
@@ -98,7 +150,12 @@ public class FilterIterators {
     }
     
     public static <K> DistinctIterator<K> newDistinct(Iterator<K> it, QueryLimits settings) {
-        return new DistinctIterator<K>(it, settings);
+        return newDistinct(it, settings, null);
+    }
+
+    public static <K> DistinctIterator<K> newDistinct(Iterator<K> it, QueryLimits settings,
+                                                      @Nullable SpillSupport<K> spill) {
+        return new DistinctIterator<K>(it, settings, spill);
     }
     
     public static <K> Iterator<K> newLimit(Iterator<K> it, long limit) {
@@ -110,27 +167,137 @@ public class FilterIterators {
     }
     
     public static <K> Iterator<K> newSort(Iterator<K> it, Comparator<K> orderBy, int max, QueryLimits settings) {
-        return new SortIterator<K>(it, orderBy, max, settings);
+        return newSort(it, orderBy, max, settings, null);
+    }
+
+    public static <K> Iterator<K> newSort(Iterator<K> it, Comparator<K> orderBy, int max, QueryLimits settings,
+                                          @Nullable SpillSupport<K> spill) {
+        return new SortIterator<K>(it, orderBy, max, settings, spill);
+    }
+
+    /**
+     * Support for writing entries to temporary files, so that sorting and
+     * distinct filtering are not limited by the number of entries that can be
+     * kept in memory. Without spill support (or if spilling is disabled), the
+     * number of entries kept in memory is limited by
+     * {@link QueryLimits#getLimitInMemory()}.
+     *
+     * @param <K> the entry type
+     */
+    public interface SpillSupport<K> {
+
+        /**
+         * The maximum number of entries to keep in memory. If more entries
+         * are needed, they are written to a temporary file.
+         *
+         * @return the number of entries, or 0 if spilling is disabled
+         */
+        long getSpillThreshold();
+
+        /**
+         * Serialize an entry to a single line of ASCII text. Entries that can
+         * not be serialized are kept in memory.
+         *
+         * @param entry the entry
+         * @return the serialized entry, or null if the entry can not be
+         *         serialized
+         */
+        @Nullable
+        String serialize(@NotNull K entry);
+
+        /**
+         * Read an entry that was serialized with {@link #serialize(Object)}.
+         *
+         * @param data the serialized entry
+         * @return the entry
+         */
+        @NotNull
+        K deserialize(@NotNull String data);
+
+        /**
+         * Get the key of an entry as used for distinct filtering. Two entries
+         * are equal if and only if their keys are equal. The key is a single
+         * line of ASCII text without control characters.
+         *
+         * @param entry the entry
+         * @return the key, or null if no key can be computed for the entry
+         */
+        @Nullable
+        String getDistinctKey(@NotNull K entry);
+
+        /**
+         * Called after entries were written to a temporary file.
+         *
+         * @param count the number of entries written
+         */
+        void spilled(long count);
+
     }
 
     /**
      * An iterator that filters duplicate entries, that is, it only returns each
      * unique entry once. The internal set of unique entries is filled only when
      * needed (on demand).
+     * <p>
+     * If spilling is enabled and the set of unique entries reaches the spill
+     * threshold, the keys of the entries returned so far are written to a
+     * temporary file, and the remaining entries are filtered using an external
+     * sort. In this case, the remaining unique entries are returned in the
+     * order of their keys, once the source iterator is exhausted. Entries that
+     * can not be serialized are kept in memory, and are subject to the
+     * in-memory limit.
      * 
      * @param <K> the entry type
      */
     static class DistinctIterator<K> implements Iterator<K> {
 
+        /**
+         * Marks a key of an entry that was already returned.
+         */
+        private static final char RETURNED = '0';
+
+        /**
+         * Marks a key of an entry that was not returned yet, followed by the
+         * serialized entry.
+         */
+        private static final char PENDING = '1';
+
+        /**
+         * Marks a key of an entry that was not returned yet, and that is kept
+         * in memory as it can not be serialized.
+         */
+        private static final char IN_MEMORY = '2';
+
         private final Iterator<K> source;
         private final QueryLimits settings;
-        private final HashSet<K> distinctSet;
+        private final SpillSupport<K> spill;
+        private long spillThreshold;
+        private HashSet<K> distinctSet;
+        private SpillFiles runs;
+        private Iterator<K> spilled;
+
+        /**
+         * Pending entries that can not be serialized, by key.
+         */
+        private HashMap<String, K> inMemory;
+
+        /**
+         * Pending entries that have no key. They can not be equal to any
+         * entry that has a key.
+         */
+        private HashSet<K> unkeyed;
         private K current;
         private boolean end;
 
         DistinctIterator(Iterator<K> source, QueryLimits settings) {
+            this(source, settings, null);
+        }
+
+        DistinctIterator(Iterator<K> source, QueryLimits settings, SpillSupport<K> spill) {
             this.source = source;
             this.settings = settings;
+            this.spill = spill;
+            this.spillThreshold = spill == null ? 0 : spill.getSpillThreshold();
             distinctSet = new HashSet<K>();
         }
 
@@ -138,10 +305,23 @@ public class FilterIterators {
             if (end) {
                 return;
             }
-            while (source.hasNext()) {
-                current = source.next();
-                if (distinctSet.add(current)) {
-                    checkMemoryLimit(distinctSet.size(), settings);
+            if (runs == null) {
+                while (source.hasNext()) {
+                    current = source.next();
+                    if (distinctSet.add(current)) {
+                        if (spillThreshold <= 0 || distinctSet.size() < spillThreshold
+                                || !spillReturned()) {
+                            checkMemoryLimit(distinctSet.size(), settings);
+                        }
+                        return;
+                    }
+                }
+            } else {
+                if (spilled == null) {
+                    spilled = spillPending();
+                }
+                if (spilled.hasNext()) {
+                    current = spilled.next();
                     return;
                 }
             }
@@ -149,6 +329,116 @@ public class FilterIterators {
             end = true;
         }
 
+        /**
+         * Write the keys of the entries returned so far to a temporary file.
+         *
+         * @return whether the keys were written, false if the keys of some
+         *         entries are not available (spilling is then disabled)
+         */
+        private boolean spillReturned() {
+            if (spillThreshold <= 0) {
+                return false;
+            }
+            ArrayList<String> lines = new ArrayList<String>(distinctSet.size());
+            for (K k : distinctSet) {
+                String key = spill.getDistinctKey(k);
+                if (key == null) {
+                    LOG.debug("Unable to spill entry {}, spilling is disabled", k);
+                    spillThreshold = 0;
+                    return false;
+                }
+                lines.add(key + '\t' + RETURNED);
+            }
+            runs = new SpillFiles(this);
+            inMemory = new HashMap<String, K>();
+            unkeyed = new HashSet<K>();
+            writeRun(lines);
+            distinctSet = new HashSet<K>();
+            return true;
+        }
+
+        /**
+         * Read the remaining entries from the source, and write the unique
+         * entries to temporary files.
+         *
+         * @return an iterator over the unique entries not returned yet
+         */
+        private Iterator<K> spillPending() {
+            try {
+                while (source.hasNext()) {
+                    if (distinctSet.add(source.next()) && distinctSet.size() >= spillThreshold) {
+                        writePending();
+                    }
+                }
+                writePending();
+            } catch (RuntimeException e) {
+                runs.deleteAll();
+                throw e;
+            }
+            distinctSet = null;
+            File merged = mergeRuns(runs.takeAll(), ExternalSort.defaultcomparator,
+                    Function.identity(), Function.identity());
+            Iterator<K> it = new SpillFileIterator<K>(merged, Long.MAX_VALUE) {
+
+                private String lastKey;
+
+                @Override
+                protected K read(String line) {
+                    int sep = line.indexOf('\t');
+                    String key = line.substring(0, sep);
+                    if (key.equals(lastKey)) {
+                        return null;
+                    }
+                    lastKey = key;
+                    char type = line.charAt(sep + 1);
+                    if (type == IN_MEMORY) {
+                        return inMemory.remove(key);
+                    }
+                    inMemory.remove(key);
+                    if (type != PENDING) {
+                        return null;
+                    }
+                    return spill.deserialize(line.substring(sep + 2));
+                }
+
+            };
+            return Iterators.concat(it, unkeyed.iterator());
+        }
+
+        private void writePending() {
+            if (distinctSet.isEmpty()) {
+                return;
+            }
+            ArrayList<String> lines = new ArrayList<String>(distinctSet.size());
+            for (K k : distinctSet) {
+                String key = spill.getDistinctKey(k);
+                if (key == null) {
+                    unkeyed.add(k);
+                    continue;
+                }
+                String data = spill.serialize(k);
+                if (data == null) {
+                    // the key is still written, for duplicate detection
+                    inMemory.put(key, k);
+                    lines.add(key + '\t' + IN_MEMORY);
+                } else {
+                    lines.add(key + '\t' + PENDING + data);
+                }
+            }
+            checkMemoryLimit(inMemory.size() + unkeyed.size(), settings);
+            writeRun(lines);
+            distinctSet.clear();
+        }
+
+        private void writeRun(List<String> lines) {
+            if (lines.isEmpty()) {
+                return;
+            }
+            Collections.sort(lines);
+            runs.add(writeTempFile(lines));
+            spill.spilled(lines.size());
+        }
+
         @Override
         public boolean hasNext() {
             if (current == null) {
@@ -181,6 +471,13 @@ public class FilterIterators {
      * An iterator that returns entries in sorted order. The internal list of
      * sorted entries can be limited to a given number of entries, and the
      * entries are only read when needed (on demand).
+     * <p>
+     * If the number of entries to keep is below the in-memory limit, only the
+     * top entries are kept, in a heap. Otherwise, if spilling is enabled,
+     * sorted runs of entries are written to temporary files whenever the spill
+     * threshold is reached, and merged once the source iterator is exhausted.
+     * Entries that can not be serialized are then kept in memory, and are
+     * subject to the in-memory limit.
      * 
      * @param <K> the entry type
      */
@@ -189,24 +486,59 @@ public class FilterIterators {
         private final Iterator<K> source;
         private final QueryLimits settings;
         private final Comparator<K> orderBy;
+        private final SpillSupport<K> spill;
+        private long spillThreshold;
+        private SpillFiles runs;
+
+        /**
+         * The entries that could not be written to disk, once spilled.
+         */
+        private ArrayList<K> unspilled;
         private Iterator<K> result;
         private final int max;
 
         SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings) {
+            this(source, orderBy, max, settings, null);
+        }
+
+        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings,
+                     SpillSupport<K> spill) {
             this.source = source;
             this.orderBy = orderBy;
             this.max = max;
             this.settings = settings;
+            this.spill = spill;
+            this.spillThreshold = spill == null ? 0 : spill.getSpillThreshold();
         }
         
         private void init() {
             if (result != null) {
                 return;
             }
+            try {
+                read();
+            } catch (RuntimeException e) {
+                if (runs != null) {
+                    runs.deleteAll();
+                }
+                throw e;
+            }
+        }
+
+        private void read() {
+            long maxInMemory = spillThreshold > 0 ? spillThreshold : settings.getLimitInMemory();
+            boolean keepTop = max < maxInMemory;
             ArrayList<K> list = new ArrayList<K>();
             while (source.hasNext()) {
                 K x = source.next();
                 list.add(x);
+                if (keepTop && list.size() > max) {
+                    result = selectTop(list);
+                    return;
+                }
+                if (spillThreshold > 0 && list.size() >= spillThreshold && spill(list)) {
+                    continue;
+                }
                 checkMemoryLimit(list.size(), settings);
                 // from time to time, sort and truncate
                 // this should need less than O(n*log(3*keep)) operations,
@@ -217,10 +549,118 @@ public class FilterIterators {
                     keepFirst(list, max);
                 }
             }
+            if (runs != null) {
+                spill(list);
+                File merged = mergeRuns(runs.takeAll(), orderBy, spill::serialize, spill::deserialize);
+                Iterator<K> it = new SpillFileIterator<K>(merged, max) {
+
+                    @Override
+                    protected K read(String line) {
+                        return spill.deserialize(line);
+                    }
+
+                };
+                if (!unspilled.isEmpty()) {
+                    it = Iterators.limit(Iterators.mergeSorted(
+                            ImmutableList.of(it, unspilled.iterator()), orderBy), max);
+                }
+                result = it;
+                return;
+            }
             Collections.sort(list, orderBy);
             keepFirst(list, max);
             result = list.iterator();
         }
+
+        /**
+         * Select the top entries, using a heap that contains at most the
+         * maximum number of entries to keep. The source iterator is read until
+         * the end.
+         *
+         * @param list the entries read so far
+         * @return the top entries, in sorted order
+         */
+        private Iterator<K> selectTop(ArrayList<K> list) {
+            // entries that are equal are ordered by the sequence number,
+            // so that the result is the same as with a stable sort
+            Comparator<Entry<K>> comp = new Comparator<Entry<K>>() {
+
+                @Override
+                public int compare(Entry<K> o1, Entry<K> o2) {
+                    int c = orderBy.compare(o1.value, o2.value);
+                    return c != 0 ? c : Long.compare(o1.seq, o2.seq);
+                }
+
+            };
+            PriorityQueue<Entry<K>> heap = new PriorityQueue<Entry<K>>(
+                    list.size(), Collections.reverseOrder(comp));
+            long seq = 0;
+            for (K x : list) {
+                heap.add(new Entry<K>(x, seq++));
+            }
+            list.clear();
+            // the list contained one entry more than needed
+            heap.poll();
+            while (source.hasNext()) {
+                K x = source.next();
+                if (!heap.isEmpty() && orderBy.compare(x, heap.peek().value) < 0) {
+                    heap.poll();
+                    heap.add(new Entry<K>(x, seq++));
+                }
+            }
+            ArrayList<Entry<K>> top = new ArrayList<Entry<K>>(heap);
+            Collections.sort(top, comp);
+            ArrayList<K> sorted = new ArrayList<K>(top.size());
+            for (Entry<K> e : top) {
+                sorted.add(e.value);
+            }
+            return sorted.iterator();
+        }
+
+        /**
+         * Sort and truncate the list, and write it to a temporary file.
+         *
+         * @param list the list
+         * @return whether the list was written, false if spilling is disabled
+         */
+        private boolean spill(ArrayList<K> list) {
+            if (spillThreshold <= 0 || list.isEmpty()) {
+                return false;
+            }
+            Collections.sort(list, orderBy);
+            keepFirst(list, max);
+            ArrayList<String> lines = new ArrayList<String>(list.size());
+            ArrayList<K> failed = new ArrayList<K>();
+            for (K k : list) {
+                String data = spill.serialize(k);
+                if (data == null) {
+                    if (runs == null) {
+                        LOG.debug("Unable to spill entry {}, spilling is disabled", k);
+                        spillThreshold = 0;
+                        return false;
+                    }
+                    failed.add(k);
+                } else {
+                    lines.add(data);
+                }
+            }
+            if (runs == null) {
+                runs = new SpillFiles(this);
+                unspilled = new ArrayList<K>();
+            }
+            if (!failed.isEmpty()) {
+                unspilled.addAll(failed);
+                Collections.sort(unspilled, orderBy);
+                keepFirst(unspilled, max);
+                checkMemoryLimit(unspilled.size(), settings);
+            }
+            if (!lines.isEmpty()) {
+                runs.add(writeTempFile(lines));
+                spill.spilled(lines.size());
+            }
+            list.clear();
+            return true;
+        }
         
         /**
          * Truncate a list.
@@ -255,6 +695,243 @@ public class FilterIterators {
         
     }
     
+    /**
+     * An entry together with the order in which it was read.
+     *
+     * @param <K> the entry type
+     */
+    private static class Entry<K> {
+
+        final K value;
+        final long seq;
+
+        Entry(K value, long seq) {
+            this.value = value;
+            this.seq = seq;
+        }
+
+    }
+
+    /**
+     * Write lines to a new temporary file.
+     *
+     * @param lines the lines
+     * @return the file
+     */
+    static File writeTempFile(List<String> lines) {
+        File file = null;
+        try {
+            file = File.createTempFile("oak-query-", ".tmp");
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            return file;
+        } catch (IOException e) {
+            if (file != null) {
+                file.delete();
+            }
+            throw new UncheckedIOException("Unable to write query result to disk", e);
+        }
+    }
+
+    /**
+     * Merge sorted temporary files into a new temporary file. The merged
+     * files are deleted, also if merging fails.
+     *
+     * @param runs the sorted files
+     * @param comp the comparator
+     * @param toString the function to serialize an entry
+     * @param fromString the function to read an entry
+     * @return the merged file
+     */
+    static <T> File mergeRuns(List<File> runs, Comparator<T> comp,
+            Function<T, String> toString, Function<String, T> fromString) {
+        File merged = null;
+        try {
+            merged = File.createTempFile("oak-query-", ".tmp");
+            // the end of a file is signaled with a null line
+            ExternalSort.mergeSortedFiles(runs, merged, comp, StandardCharsets.UTF_8,
+                    false, false, false, toString,
+                    line -> line == null ? null : fromString.apply(line));
+            return merged;
+        } catch (IOException e) {
+            if (merged != null) {
+                merged.delete();
+            } else {
+                // the runs are only deleted by the merge
+                for (File f : runs) {
+                    f.delete();
+                }
+            }
+            throw new UncheckedIOException("Unable to merge query result on disk", e);
+        }
+    }
+
+    /**
+     * The sorted runs of an iterator that were not merged yet. They are
+     * deleted when merged, or when the iterator is no longer referenced.
+     */
+    static final class SpillFiles implements Runnable {
+
+        private final List<File> files = new ArrayList<File>();
+        private final Cleaner.Cleanable cleanable;
+
+        SpillFiles(Object owner) {
+            cleanable = CLEANER.register(owner, this);
+        }
+
+        synchronized void add(File file) {
+            files.add(file);
+        }
+
+        /**
+         * Get the files, which are then no longer deleted by this object.
+         *
+         * @return the files
+         */
+        synchronized List<File> takeAll() {
+            List<File> list = new ArrayList<File>(files);
+            files.clear();
+            return list;
+        }
+
+        void deleteAll() {
+            cleanable.clean();
+        }
+
+        @Override
+        public synchronized void run() {
+            for (File f : files) {
+                if (!f.delete()) {
+                    LOG.debug("Unable to delete {}", f);
+                }
+            }
+            files.clear();
+        }
+
+    }
+
+    /**
+     * Closes the reader of a temporary file, and deletes the file.
+     */
+    private static final class CloseAndDelete implements Runnable {
+
+        private final File file;
+        private final BufferedReader reader;
+
+        CloseAndDelete(File file, BufferedReader reader) {
+            this.file = file;
+            this.reader = reader;
+        }
+
+        @Override
+        public void run() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing {}", file, e);
+            }
+            if (!file.delete()) {
+                LOG.debug("Unable to delete {}", file);
+            }
+        }
+
+    }
+
+    /**
+     * An iterator over the entries of a temporary file. The file is deleted
+     * once the entries were read, or when the iterator is no longer
+     * referenced.
+     *
+     * @param <K> the entry type
+     */
+    abstract static class SpillFileIterator<K> implements Iterator<K> {
+
+        private final BufferedReader reader;
+        private final Cleaner.Cleanable cleanable;
+        private long remaining;
+        private K current;
+        private boolean end;
+
+        SpillFileIterator(File file, long limit) {
+            this.remaining = limit;
+            try {
+                reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(file), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                file.delete();
+                throw new UncheckedIOException("Unable to read query result from disk", e);
+            }
+            cleanable = CLEANER.register(this, new CloseAndDelete(file, reader));
+        }
+
+        /**
+         * Read an entry.
+         *
+         * @param line the line
+         * @return the entry, or null if the line is to be skipped
+         */
+        @Nullable
+        protected abstract K read(@NotNull String line);
+
+        private void fetchNext() {
+            if (end) {
+                return;
+            }
+            try {
+                String line;
+                while (remaining > 0 && (line = reader.readLine()) != null) {
+                    current = read(line);
+                    if (current != null) {
+                        remaining--;
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Unable to read query result from disk", e);
+            }
+            close();
+            current = null;
+            end = true;
+        }
+
+        private void close() {
+            cleanable.clean();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (current == null) {
+                fetchNext();
+            }
+            return !end;
+        }
+
+        @Override
+        public K next() {
+            if (end) {
+                throw new NoSuchElementException();
+            }
+            if (current == null) {
+                fetchNext();
+            }
+            K r = current;
+            current = null;
+            return r;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
     /**
      * An iterator that ignores the first number of entries. Entries are only
      * read when needed (on demand).
@@ -19,6 +19,11 @@
 package org.apache.jackrabbit.oak.query;
 
 import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.oak.api.StrictPathRestriction;
 import org.apache.jackrabbit.oak.api.jmx.QueryEngineSettingsMBean;
@@ -47,12 +52,80 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     public static final boolean SQL2_OPTIMIZATION_2 = 
             Boolean.parseBoolean(System.getProperty(SQL2_OPTIMISATION_FLAG_2, "true"));
 
+    /**
+     * Whether conditions are evaluated in a specialized way: literals are
+     * converted to the property type once (and not for each row), like
+     * patterns are parsed once, "in" conditions with many literals use a hash
+     * set, and the conditions of an "and" are evaluated in the order of
+     * their (measured) selectivity and cost.
+     * {@code -Doak.query.compileConstraints}
+     */
+    public static final boolean COMPILE_CONSTRAINTS =
+            Boolean.parseBoolean(System.getProperty("oak.query.compileConstraints", "true"));
+
     public static final String OAK_QUERY_LIMIT_IN_MEMORY = "oak.queryLimitInMemory";
 
     // should be the same as QueryEngineSettingsService.DEFAULT_QUERY_LIMIT_IN_MEMORY
     public static final long DEFAULT_QUERY_LIMIT_IN_MEMORY =
             Long.getLong(OAK_QUERY_LIMIT_IN_MEMORY, 500000);
 
+    public static final String OAK_QUERY_SPILL_THRESHOLD = "oak.query.spillThreshold";
+
+    /**
+     * The number of result rows kept in memory when sorting or filtering
+     * duplicate rows, before they are written to a temporary file. 0 means
+     * rows are never written to disk, and the query fails if more than
+     * limitInMemory rows are needed.
+     */
+    public static final long DEFAULT_QUERY_SPILL_THRESHOLD =
+            Long.getLong(OAK_QUERY_SPILL_THRESHOLD, 0);
+
+    public static final String OAK_QUERY_PARALLEL_UNION_THREADS = "oak.query.parallelUnionThreads";
+
+    /**
+     * The maximum number of threads used to read the index rows of the
+     * branches of a union concurrently. 0 means the branches are executed
+     * sequentially.
+     */
+    public static final int DEFAULT_QUERY_PARALLEL_UNION_THREADS =
+            Integer.getInteger(OAK_QUERY_PARALLEL_UNION_THREADS, 0);
+
+    /**
+     * The number of index rows that are read ahead for each branch of a union,
+     * if the branches are executed in parallel.
+     */
+    public static final int READ_AHEAD_BATCH_SIZE =
+            Integer.getInteger("oak.query.readAheadBatchSize", 100);
+
+    public static final String OAK_QUERY_LOOKUP_JOIN_MIN_ROWS = "oak.query.hashJoinMinRows";
+
+    /**
+     * The minimum estimated number of rows of the left hand side of a join,
+     * for a lookup join (hash join) to be considered. For smaller inputs,
+     * executing the right hand side once per row is typically fast enough.
+     */
+    public static final long DEFAULT_QUERY_LOOKUP_JOIN_MIN_ROWS =
+            Long.getLong(OAK_QUERY_LOOKUP_JOIN_MIN_ROWS, 1000);
+
+    public static final String OAK_QUERY_TIMEOUT = "oak.query.timeout";
+
+    /**
+     * The maximum time in milliseconds a query may run, measured from the
+     * time the query was parsed, until the last row is read. 0 means there
+     * is no limit.
+     */
+    public static final long DEFAULT_QUERY_TIMEOUT =
+            Long.getLong(OAK_QUERY_TIMEOUT, 0);
+
+    public static final String OAK_QUERY_PROFILE_SAMPLE_RATE = "oak.query.profileSampleRate";
+
+    /**
+     * Profile every nth query: measure the time spent in each operator. 0
+     * means queries are only profiled if "measure" is used.
+     */
+    public static final int DEFAULT_QUERY_PROFILE_SAMPLE_RATE =
+            Integer.getInteger(OAK_QUERY_PROFILE_SAMPLE_RATE, 0);
+
     public static final String OAK_QUERY_LIMIT_READS = "oak.queryLimitReads";
 
     // should be the same as QueryEngineSettingsService.DEFAULT_QUERY_LIMIT_READS
@@ -76,8 +149,20 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     
     private long limitReads = DEFAULT_QUERY_LIMIT_READS;
 
+    private long spillThreshold = DEFAULT_QUERY_SPILL_THRESHOLD;
+
+    private long lookupJoinMinRows = DEFAULT_QUERY_LOOKUP_JOIN_MIN_ROWS;
+
+    private volatile long queryTimeout = DEFAULT_QUERY_TIMEOUT;
+
+    private volatile int profileSampleRate = DEFAULT_QUERY_PROFILE_SAMPLE_RATE;
+
     private int prefetchCount = DEFAULT_PREFETCH_COUNT;
 
+    private int parallelUnionThreads = DEFAULT_QUERY_PARALLEL_UNION_THREADS;
+
+    private ThreadPoolExecutor parallelUnionExecutor;
+
     private boolean failTraversal = DEFAULT_FAIL_TRAVERSAL;
     
     private boolean fullTextComparisonWithoutIndex = 
@@ -94,6 +179,9 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private final QueryStatsMBeanImpl queryStats = new QueryStatsMBeanImpl(this);
 
+    private final QueryPlanCache queryPlanCache =
+            new QueryPlanCache(QueryPlanCache.DEFAULT_QUERY_PLAN_CACHE_SIZE);
+
     /**
      * StatisticsProvider used to record query side metrics.
      */
@@ -155,6 +243,117 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         this.limitReads = limitReads;
     }
 
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public long getLookupJoinMinRows() {
+        return lookupJoinMinRows;
+    }
+
+    /**
+     * Set the minimum estimated number of rows of the left hand side of a
+     * join, for a lookup join to be considered.
+     *
+     * @param lookupJoinMinRows the number of rows (Long.MAX_VALUE to disable)
+     */
+    public void setLookupJoinMinRows(long lookupJoinMinRows) {
+        this.lookupJoinMinRows = lookupJoinMinRows;
+    }
+
+    public long getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * Set the maximum time a query may run. Queries that run longer are
+     * cancelled.
+     *
+     * @param queryTimeout the timeout in milliseconds (0 to disable)
+     */
+    public void setQueryTimeout(long queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+
+    public int getProfileSampleRate() {
+        return profileSampleRate;
+    }
+
+    /**
+     * Set how many queries are profiled.
+     *
+     * @param profileSampleRate profile every nth query (0 to disable)
+     */
+    public void setProfileSampleRate(int profileSampleRate) {
+        this.profileSampleRate = profileSampleRate;
+    }
+
+    public int getParallelUnionThreads() {
+        return parallelUnionThreads;
+    }
+
+    /**
+     * Set the maximum number of threads used to execute the branches of a
+     * union in parallel.
+     *
+     * @param parallelUnionThreads the number of threads (0 to disable)
+     */
+    public synchronized void setParallelUnionThreads(int parallelUnionThreads) {
+        this.parallelUnionThreads = parallelUnionThreads;
+        ThreadPoolExecutor e = parallelUnionExecutor;
+        if (e != null && parallelUnionThreads > 0) {
+            if (parallelUnionThreads > e.getMaximumPoolSize()) {
+                e.setMaximumPoolSize(parallelUnionThreads);
+                e.setCorePoolSize(parallelUnionThreads);
+            } else {
+                e.setCorePoolSize(parallelUnionThreads);
+                e.setMaximumPoolSize(parallelUnionThreads);
+            }
+        }
+    }
+
+    /**
+     * Get the executor used to execute the branches of a union in parallel.
+     * The number of threads is bounded; if all threads are busy, tasks are
+     * rejected, and the caller reads the rows itself. Idle threads are
+     * stopped after one minute.
+     *
+     * @return the executor, or null if parallel execution is disabled
+     */
+    @Nullable
+    public synchronized Executor getParallelUnionExecutor() {
+        if (parallelUnionThreads <= 0) {
+            return null;
+        }
+        if (parallelUnionExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor e = new ThreadPoolExecutor(parallelUnionThreads,
+                    parallelUnionThreads, 1, TimeUnit.MINUTES,
+                    new SynchronousQueue<Runnable>(), r -> {
+                        Thread t = new Thread(r, "oak-query-union-" + counter.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            e.allowCoreThreadTimeOut(true);
+            parallelUnionExecutor = e;
+        }
+        return parallelUnionExecutor;
+    }
+
+    /**
+     * Get the cache for the indexes selected for queries.
+     *
+     * @return the plan cache
+     */
+    @NotNull
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
+
     @Override
     public void setPrefetchCount(int prefetchCount) {
         this.prefetchCount = prefetchCount;
@@ -264,6 +463,12 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return "QueryEngineSettings{" +
                 "limitInMemory=" + limitInMemory +
                 ", limitReads=" + limitReads +
+                ", spillThreshold=" + spillThreshold +
+                ", lookupJoinMinRows=" + lookupJoinMinRows +
+                ", queryTimeout=" + queryTimeout +
+                ", profileSampleRate=" + profileSampleRate +
+                ", planCacheSize=" + queryPlanCache.getMaxSize() +
+                ", parallelUnionThreads=" + parallelUnionThreads +
                 ", failTraversal=" + failTraversal +
                 ", fullTextComparisonWithoutIndex=" + fullTextComparisonWithoutIndex +
                 ", sql2Optimisation=" + sql2Optimisation +
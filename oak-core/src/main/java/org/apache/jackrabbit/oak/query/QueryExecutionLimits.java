@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
+import org.apache.jackrabbit.oak.spi.query.QueryLimits;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The limits of one execution of a query: the limits of the query engine,
+ * and whether this query was cancelled (or timed out).
+ */
+final class QueryExecutionLimits implements QueryLimits {
+
+    private final QueryLimits settings;
+    private final QueryExecutionStats stats;
+
+    QueryExecutionLimits(QueryLimits settings, QueryExecutionStats stats) {
+        this.settings = settings;
+        this.stats = stats;
+    }
+
+    @Override
+    public long getLimitInMemory() {
+        return settings.getLimitInMemory();
+    }
+
+    @Override
+    public long getLimitReads() {
+        return settings.getLimitReads();
+    }
+
+    @Override
+    public boolean getFullTextComparisonWithoutIndex() {
+        return settings.getFullTextComparisonWithoutIndex();
+    }
+
+    @Override
+    public boolean getFailTraversal() {
+        return settings.getFailTraversal();
+    }
+
+    @Override
+    public String getStrictPathRestriction() {
+        return settings.getStrictPathRestriction();
+    }
+
+    @Override
+    public @NotNull String[] getIgnoredClassNamesInCallTrace() {
+        return settings.getIgnoredClassNamesInCallTrace();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return stats.isCancelled();
+    }
+
+}
@@ -30,6 +30,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
@@ -39,6 +40,7 @@ import org.apache.jackrabbit.oak.namepath.NamePathMapper;
 import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.apache.jackrabbit.oak.query.QueryOptions.Traversal;
+import org.apache.jackrabbit.oak.query.QueryPlanCache.CachedPlan;
 import org.apache.jackrabbit.oak.query.ast.AndImpl;
 import org.apache.jackrabbit.oak.query.ast.AstVisitorBase;
 import org.apache.jackrabbit.oak.query.ast.BindVariableValueImpl;
@@ -84,6 +86,7 @@ import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.query.index.TraversingIndex;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
+import org.apache.jackrabbit.oak.query.stats.QueryProfile;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.Filter.PathRestriction;
@@ -94,12 +97,14 @@ import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry.Order;
 import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.query.QueryLimits;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -191,12 +196,28 @@ public class QueryImpl implements Query {
 
     private final QueryEngineSettings settings;
 
+    /**
+     * The limits of this query execution, or null if not yet created.
+     */
+    private QueryExecutionLimits limits;
+
     private boolean warnedHidden;
 
     private boolean isInternal;
 
     private boolean potentiallySlowTraversalQuery;
 
+    /**
+     * The key of this query in the plan cache (without the filter), or null
+     * if not yet calculated.
+     */
+    private String planCacheKey;
+
+    /**
+     * The executor used to read the index rows in the background, or null.
+     */
+    private Executor readAheadExecutor;
+
     QueryImpl(String statement, SourceImpl source, ConstraintImpl constraint,
         ColumnImpl[] columns, NamePathMapper mapper, QueryEngineSettings settings,
         QueryExecutionStats stats) {
@@ -491,6 +512,24 @@ public class QueryImpl implements Query {
         return source;
     }
 
+    /**
+     * Set the executor used to read the index rows of this query in the
+     * background, so that the rows of multiple queries (the branches of a
+     * union) are read concurrently. This is only supported if there is no
+     * join, otherwise the executor is ignored.
+     *
+     * @param executor the executor, or null to read the rows in the calling
+     *            thread
+     */
+    void setReadAheadExecutor(@Nullable Executor executor) {
+        readAheadExecutor = source instanceof SelectorImpl ? executor : null;
+    }
+
+    @Nullable
+    public Executor getReadAheadExecutor() {
+        return readAheadExecutor;
+    }
+
     @Override
     public void bindValue(String varName, PropertyValue value) {
         bindVariableMap.put(varName, value);
@@ -615,7 +654,17 @@ public class QueryImpl implements Query {
             logDebug("query execute " + statement);
             logDebug("query plan " + getPlan());
         }
+        QueryProfile profile = stats.getProfile();
+        if (profile == null && measure) {
+            profile = new QueryProfile(settings.getStatisticsProvider());
+            stats.setProfile(profile);
+        }
         final RowIterator rowIt = new RowIterator(context.getBaseState());
+        if (readAheadExecutor != null) {
+            // start reading the index rows now, and not on the first call
+            // to hasNext, so that all branches of the union run in parallel
+            rowIt.start();
+        }
         Comparator<ResultRowImpl> orderBy;
         if (isSortedByIndex) {
             orderBy = null;
@@ -625,7 +674,12 @@ public class QueryImpl implements Query {
         long localLimit = limit.orElse(Long.MAX_VALUE);
         long localOffset = offset.orElse(0L);
         Iterator<ResultRowImpl> it =
-                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings);
+                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings,
+                        new ResultRowSpillSupport(this, distinctColumns, settings));
+        if (profile != null && it != rowIt) {
+            it = new ProfilingIterator(it, rowIt,
+                    profile.newOperator(QueryProfile.Kind.SORT, "sort, distinct, offset, limit"));
+        }
         if (orderBy != null) {
             // this will force the rows to be read, so that the size is known
             it.hasNext();
@@ -901,6 +955,53 @@ public class QueryImpl implements Query {
         }
     }
 
+    /**
+     * An iterator that measures the time spent in another iterator (sorting,
+     * removing duplicates, offset and limit), excluding the time needed to
+     * read the rows.
+     */
+    static class ProfilingIterator implements Iterator<ResultRowImpl> {
+
+        private final Iterator<ResultRowImpl> it;
+        private final RowIterator rowIt;
+        private final QueryProfile.Operator operator;
+        private boolean end;
+
+        ProfilingIterator(Iterator<ResultRowImpl> it, RowIterator rowIt, QueryProfile.Operator operator) {
+            this.it = it;
+            this.rowIt = rowIt;
+            this.operator = operator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            long readNanos = rowIt.getNanos();
+            boolean result = it.hasNext();
+            operator.add(System.nanoTime() - start - (rowIt.getNanos() - readNanos), 0, 0);
+            if (!result && !end) {
+                end = true;
+                operator.add(0, rowIt.getReadCount(), 0);
+            }
+            return result;
+        }
+
+        @Override
+        public ResultRowImpl next() {
+            long start = System.nanoTime();
+            long readNanos = rowIt.getNanos();
+            ResultRowImpl r = it.next();
+            operator.add(System.nanoTime() - start - (rowIt.getNanos() - readNanos), 0, 1);
+            return r;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
     /**
      * An iterator over result rows.
      */
@@ -910,6 +1011,7 @@ public class QueryImpl implements Query {
         private ResultRowImpl current;
         private boolean started, end;
         private long rowIndex;
+        private long totalNanos;
 
         RowIterator(NodeState rootState) {
             this.rootState = rootState;
@@ -919,17 +1021,31 @@ public class QueryImpl implements Query {
             return rowIndex;
         }
 
+        /**
+         * Get the time spent reading the rows so far.
+         *
+         * @return the time in nanoseconds
+         */
+        long getNanos() {
+            return totalNanos;
+        }
+
+        void start() {
+            if (!started) {
+                source.execute(rootState);
+                started = true;
+            }
+        }
+
         private void fetchNext() {
             if (end) {
                 return;
             }
             long nanos = System.nanoTime();
             long oldIndex = rowIndex;
-            if (!started) {
-                source.execute(rootState);
-                started = true;
-            }
+            start();
             while (true) {
+                FilterIterators.checkCancelled(getQueryLimits());
                 if (source.next()) {
                     if (constraint == null || constraint.evaluate()) {
                         current = currentRow();
@@ -948,6 +1064,7 @@ public class QueryImpl implements Query {
                 }
             }
             nanos = System.nanoTime() - nanos;
+            totalNanos += nanos;
             stats.read(rowIndex - oldIndex, rowIndex, nanos);
         }
 
@@ -1069,8 +1186,145 @@ public class QueryImpl implements Query {
     }
 
     public SelectorExecutionPlan getBestSelectorExecutionPlan(FilterImpl filter) {
-        return getBestSelectorExecutionPlan(context.getBaseState(), filter,
-                context.getIndexProvider(), traversalEnabled);
+        NodeState rootState = context.getBaseState();
+        QueryIndexProvider indexProvider = context.getIndexProvider();
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        if (!cache.isEnabled()) {
+            return getBestSelectorExecutionPlan(rootState, filter,
+                    indexProvider, traversalEnabled);
+        }
+        String key = getPlanCacheKey() + QueryPlanCache.getFilterShape(filter);
+        long generation = getIndexGeneration(cache, rootState, filter, indexProvider);
+        CachedPlan cached = cache.get(key, generation);
+        if (cached != null) {
+            SelectorExecutionPlan plan = getCachedSelectorExecutionPlan(
+                    rootState, filter, indexProvider, cached);
+            if (plan != null) {
+                return plan;
+            }
+            // the index is no longer available
+            cache.remove(key);
+        }
+        SelectorExecutionPlan plan = getBestSelectorExecutionPlan(rootState, filter,
+                indexProvider, traversalEnabled);
+        QueryIndex index = plan.getIndex();
+        if (index != null) {
+            IndexPlan p = plan.getIndexPlan();
+            cache.put(key, new CachedPlan(generation, index.getIndexName(),
+                    index.getClass().getName(), p == null ? null : p.getPlanName(),
+                    potentiallySlowTraversalQuery));
+        }
+        return plan;
+    }
+
+    private String getPlanCacheKey() {
+        if (planCacheKey == null) {
+            // the normalized statement, without bind variable values
+            StringBuilder buff = new StringBuilder(toString());
+            buff.append('\n').append(QueryPlanCache.getBindVariableShape(bindVariableMap));
+            buff.append("\nlimit=").append(limit).append(" offset=").append(offset);
+            buff.append(" traversal=").append(traversalEnabled);
+            buff.append(" indexName=").append(queryOptions.indexName);
+            buff.append(" indexTag=").append(queryOptions.indexTag);
+            buff.append('\n');
+            planCacheKey = buff.toString();
+        }
+        return planCacheKey;
+    }
+
+    private static long getIndexGeneration(QueryPlanCache cache, NodeState rootState,
+            FilterImpl filter, QueryIndexProvider indexProvider) {
+        // nested index definitions are only used for queries below them,
+        // so only the ones along the path of the filter are relevant
+        return 31 * indexProvider.getGeneration() +
+                cache.getIndexDefinitionsHash(rootState, filter.getPath());
+    }
+
+    /**
+     * Get the execution plan using the index that was selected before. Only
+     * this index is asked for the plan and cost.
+     *
+     * @param rootState the root
+     * @param filter the filter
+     * @param indexProvider the index provider
+     * @param cached the cached plan
+     * @return the execution plan, or null if the index is not available
+     */
+    private SelectorExecutionPlan getCachedSelectorExecutionPlan(
+            NodeState rootState, FilterImpl filter,
+            QueryIndexProvider indexProvider, CachedPlan cached) {
+        QueryIndex bestIndex = null;
+        IndexPlan bestPlan = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        TraversingIndex traversal = new TraversingIndex();
+        if (traversal.getIndexName().equals(cached.indexName)
+                && TraversingIndex.class.getName().equals(cached.indexClassName)) {
+            if (!traversalEnabled) {
+                return null;
+            }
+            bestIndex = traversal;
+            bestCost = traversal.getCost(filter, rootState);
+        } else {
+            for (QueryIndex index : indexProvider.getQueryIndexes(rootState)) {
+                if (!cached.indexName.equals(index.getIndexName())
+                        || !cached.indexClassName.equals(index.getClass().getName())) {
+                    continue;
+                }
+                if (index instanceof AdvancedQueryIndex) {
+                    long maxEntryCount = saturatedAdd(offset.orElse(0L), limit.orElse(Long.MAX_VALUE));
+                    List<OrderEntry> sortOrder = getSortOrder(filter);
+                    List<IndexPlan> ipList = ((AdvancedQueryIndex) index).getPlans(
+                            filter, sortOrder, rootState);
+                    for (IndexPlan p : ipList) {
+                        if (cached.planName != null && !cached.planName.equals(p.getPlanName())) {
+                            continue;
+                        }
+                        double c = getIndexPlanCost(p, rootState, filter, sortOrder, maxEntryCount);
+                        if (c < bestCost) {
+                            bestCost = c;
+                            bestPlan = p;
+                        }
+                    }
+                    if (bestPlan == null) {
+                        return null;
+                    }
+                } else {
+                    bestCost = index.getCost(filter, rootState);
+                }
+                bestIndex = index;
+                break;
+            }
+        }
+        if (bestIndex == null || bestCost == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        if (LOG.isDebugEnabled()) {
+            logDebug("cached plan for " + cached.indexName + " with cost " + bestCost);
+        }
+        potentiallySlowTraversalQuery = cached.potentiallySlow;
+        if (potentiallySlowTraversalQuery) {
+            indexUnavailable(filter);
+        }
+        return new SelectorExecutionPlan(filter.getSelector(), bestIndex,
+                bestPlan, bestCost);
+    }
+
+    /**
+     * Get the best execution plan for an alternative way to execute a
+     * selector. Unlike {@link #getBestSelectorExecutionPlan(FilterImpl)}, this
+     * does not change whether the query is considered a potentially slow
+     * traversal query, as the plan is only used if it is cheaper.
+     *
+     * @param filter the filter
+     * @return the execution plan
+     */
+    public SelectorExecutionPlan getAlternativeSelectorExecutionPlan(FilterImpl filter) {
+        boolean slow = potentiallySlowTraversalQuery;
+        try {
+            return getBestSelectorExecutionPlan(filter);
+        } finally {
+            potentiallySlowTraversalQuery = slow;
+        }
     }
 
     private SelectorExecutionPlan getBestSelectorExecutionPlan(
@@ -1121,17 +1375,7 @@ public class QueryImpl implements Query {
                 cost = Double.POSITIVE_INFINITY;
                 for (IndexPlan p : ipList) {
                     
-                    long entryCount = p.getEstimatedEntryCount();
-                    if (p.getSupportsPathRestriction()) {
-                        entryCount = scaleEntryCount(rootState, filter, entryCount);
-                    }
-                    if (sortOrder == null || p.getSortOrder() != null) {
-                        // if the query is unordered, or
-                        // if the query contains "order by" and the index can sort on that,
-                        // then we don't need to read all entries from the index
-                        entryCount = Math.min(maxEntryCount, entryCount);
-                    }
-                    double c = p.getCostPerExecution() + entryCount * p.getCostPerEntry();
+                    double c = getIndexPlanCost(p, rootState, filter, sortOrder, maxEntryCount);
 
                     if (LOG.isDebugEnabled()) {
                         String plan = advIndex.getPlanDescription(p, rootState);
@@ -1206,25 +1450,44 @@ public class QueryImpl implements Query {
         }
 
         if (potentiallySlowTraversalQuery || bestIndex == null) {
-            // Log warning for fulltext queries without index, since these cannot return results
-            if(!filter.getFulltextConditions().isEmpty()) { 
-                LOG.warn("Fulltext query without index for filter {}; no results will be returned", filter);
-            } else {
-                LOG.debug("no proper index was found for filter {}", filter);      
-            }
-            
-            StatisticsProvider statisticsProvider = getSettings().getStatisticsProvider();
-            if (statisticsProvider != null) {
-                HistogramStats histogram = statisticsProvider.getHistogram(INDEX_UNAVAILABLE, StatsOptions.METRICS_ONLY);
-                if (histogram != null) {
-                    histogram.update(1);
-                }
-            }
+            indexUnavailable(filter);
         }
 
         return new SelectorExecutionPlan(filter.getSelector(), bestIndex,
                 bestPlan, bestCost);
     }
+
+    private double getIndexPlanCost(IndexPlan p, NodeState rootState, FilterImpl filter,
+            List<OrderEntry> sortOrder, long maxEntryCount) {
+        long entryCount = p.getEstimatedEntryCount();
+        if (p.getSupportsPathRestriction()) {
+            entryCount = scaleEntryCount(rootState, filter, entryCount);
+        }
+        if (sortOrder == null || p.getSortOrder() != null) {
+            // if the query is unordered, or
+            // if the query contains "order by" and the index can sort on that,
+            // then we don't need to read all entries from the index
+            entryCount = Math.min(maxEntryCount, entryCount);
+        }
+        return p.getCostPerExecution() + entryCount * p.getCostPerEntry();
+    }
+
+    private void indexUnavailable(FilterImpl filter) {
+        // Log warning for fulltext queries without index, since these cannot return results
+        if(!filter.getFulltextConditions().isEmpty()) { 
+            LOG.warn("Fulltext query without index for filter {}; no results will be returned", filter);
+        } else {
+            LOG.debug("no proper index was found for filter {}", filter);      
+        }
+        
+        StatisticsProvider statisticsProvider = getSettings().getStatisticsProvider();
+        if (statisticsProvider != null) {
+            HistogramStats histogram = statisticsProvider.getHistogram(INDEX_UNAVAILABLE, StatsOptions.METRICS_ONLY);
+            if (histogram != null) {
+                histogram.update(1);
+            }
+        }
+    }
     
     private long scaleEntryCount(NodeState rootState, FilterImpl filter, long count) {
         PathRestriction r = filter.getPathRestriction();
@@ -1427,6 +1690,20 @@ public class QueryImpl implements Query {
         return settings;
     }
 
+    /**
+     * Get the limits of this query execution, which are passed to the
+     * indexes and cursors. Unlike the settings, they also tell whether the
+     * query was cancelled.
+     *
+     * @return the limits
+     */
+    public QueryLimits getQueryLimits() {
+        if (limits == null) {
+            limits = new QueryExecutionLimits(settings, stats);
+        }
+        return limits;
+    }
+
     @Override
     public void setInternal(boolean isInternal) {
         this.isInternal = isInternal;
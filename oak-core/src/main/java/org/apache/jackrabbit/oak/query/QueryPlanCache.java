@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * A cache for the index selected for a selector of a query. Selecting the
+ * index requires asking all indexes for their plans and cost, which is
+ * expensive for short queries that are executed often. With this cache, only
+ * the index that was selected before is asked for its plan.
+ * <p>
+ * The key is the normalized query statement, the types of the bind variables,
+ * and the shape of the filter (the restrictions, but not the values). Entries
+ * are only valid for the same generation of the indexes, which changes when
+ * index definitions (in /oak:index, or nested along the path of the filter)
+ * change, or when the index trackers open, close, or re-open an index because
+ * its definition changed. The least recently used entries are evicted if there are more
+ * than the maximum number of entries.
+ */
+public class QueryPlanCache {
+
+    public static final String OAK_QUERY_PLAN_CACHE_SIZE = "oak.query.planCacheSize";
+
+    /**
+     * The default maximum number of entries. 0 means the cache is disabled.
+     */
+    public static final int DEFAULT_QUERY_PLAN_CACHE_SIZE =
+            Integer.getInteger(OAK_QUERY_PLAN_CACHE_SIZE, 0);
+
+    /**
+     * The properties of index definitions that are included in the
+     * generation.
+     */
+    private static final String[] DEFINITION_PROPERTIES = {
+        "type", "reindex", "reindexCount", "refresh", "async"
+    };
+
+    private final LinkedHashMap<String, CachedPlan> map =
+            new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, CachedPlan> eldest) {
+            if (size() > maxSize) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+    };
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private volatile int maxSize;
+
+    /**
+     * The hashes of the index definitions, for the root state that was used
+     * last. Many queries use the same root state, so that the index
+     * definitions do not need to be read for each query.
+     */
+    private volatile IndexDefinitionsHashes indexDefinitionsHashes;
+
+    public QueryPlanCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Change the maximum number of entries. If the new size is smaller, the
+     * least recently used entries are evicted.
+     *
+     * @param maxSize the new maximum (0 to disable the cache)
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        synchronized (map) {
+            Iterator<String> it = map.keySet().iterator();
+            while (map.size() > maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get the cached plan.
+     *
+     * @param key the key
+     * @param generation the current generation of the indexes
+     * @return the plan, or null if not found or outdated
+     */
+    CachedPlan get(String key, long generation) {
+        CachedPlan p;
+        synchronized (map) {
+            p = map.get(key);
+            if (p != null && p.generation != generation) {
+                map.remove(key);
+                invalidationCount.incrementAndGet();
+                p = null;
+            }
+        }
+        if (p == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return p;
+    }
+
+    void put(String key, CachedPlan plan) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (map) {
+            map.put(key, plan);
+        }
+    }
+
+    /**
+     * Remove the entry, for example because the cached index is no longer
+     * available.
+     *
+     * @param key the key
+     */
+    void remove(String key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+        invalidationCount.set(0);
+    }
+
+    /**
+     * Get the shape of the bind variables: the names and the types of the
+     * values, but not the values themselves.
+     *
+     * @param bindVariables the bind variables
+     * @return the shape
+     */
+    static String getBindVariableShape(Map<String, PropertyValue> bindVariables) {
+        StringBuilder buff = new StringBuilder();
+        for (Entry<String, PropertyValue> e :
+                new TreeMap<String, PropertyValue>(bindVariables).entrySet()) {
+            buff.append(e.getKey()).append(':');
+            PropertyValue v = e.getValue();
+            if (v == null) {
+                buff.append("null");
+            } else {
+                buff.append(v.getType());
+            }
+            buff.append(' ');
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Get the shape of a filter: the selector, the path restriction, and the
+     * kind of the property restrictions, but not the property values.
+     *
+     * @param filter the filter
+     * @return the shape
+     */
+    static String getFilterShape(FilterImpl filter) {
+        StringBuilder buff = new StringBuilder();
+        buff.append(filter.getSelector().getSelectorName());
+        if (filter.isAlwaysFalse()) {
+            return buff.append(" false").toString();
+        }
+        buff.append(' ').append(filter.getPathPlan());
+        if (filter.getFullTextConstraint() != null) {
+            buff.append(" fullText");
+        }
+        if (filter.containsNativeConstraint()) {
+            buff.append(" native");
+        }
+        TreeMap<String, StringBuilder> restrictions = new TreeMap<String, StringBuilder>();
+        for (PropertyRestriction pr : filter.getPropertyRestrictions()) {
+            StringBuilder r = restrictions.get(pr.propertyName);
+            if (r == null) {
+                r = new StringBuilder();
+                restrictions.put(pr.propertyName, r);
+            }
+            r.append(pr.first == null ? '-' : pr.firstIncluding ? '[' : '(').
+                append(pr.last == null ? '-' : pr.lastIncluding ? ']' : ')').
+                append(pr.firstIncluding ? 'i' : '-').
+                append(pr.lastIncluding ? 'i' : '-').
+                append(pr.isNot ? 'n' : '-').
+                append(pr.isLike ? 'l' : '-').
+                append(pr.list == null ? "" : "list" + pr.list.size()).
+                append(pr.propertyType).
+                append(';');
+        }
+        for (Entry<String, StringBuilder> e : restrictions.entrySet()) {
+            buff.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Get the hash of the index definitions for the given path, see
+     * {@link #computeIndexDefinitionsHash(NodeState, String)}. The hashes are
+     * cached for the root state that was used last.
+     *
+     * @param rootState the root node
+     * @param path the path of the filter
+     * @return the hash
+     */
+    long getIndexDefinitionsHash(NodeState rootState, String path) {
+        IndexDefinitionsHashes hashes = indexDefinitionsHashes;
+        if (hashes == null || hashes.rootState.get() != rootState) {
+            hashes = new IndexDefinitionsHashes(rootState);
+            indexDefinitionsHashes = hashes;
+        }
+        Long hash = hashes.hashes.get(path);
+        if (hash == null) {
+            hash = computeIndexDefinitionsHash(rootState, path);
+            if (hashes.hashes.size() >= IndexDefinitionsHashes.MAX_PATHS) {
+                hashes.hashes.clear();
+            }
+            hashes.hashes.put(path, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Get a hash of the index definitions in /oak:index, and in the oak:index
+     * nodes of the given path and its ancestors (nested index definitions
+     * that can be used for queries on this path), so that creating,
+     * removing, re-indexing, or disabling an index invalidates the cache.
+     *
+     * @param rootState the root node
+     * @param path the path of the filter
+     * @return the hash
+     */
+    static long computeIndexDefinitionsHash(NodeState rootState, String path) {
+        long hash = getIndexDefinitionsHash(rootState.getChildNode("oak:index"));
+        NodeState node = rootState;
+        for (String name : PathUtils.elements(path)) {
+            node = node.getChildNode(name);
+            if (!node.exists()) {
+                break;
+            }
+            hash = 31 * hash + getIndexDefinitionsHash(node.getChildNode("oak:index"));
+        }
+        return hash;
+    }
+
+    private static long getIndexDefinitionsHash(NodeState oakIndex) {
+        long hash = 0;
+        for (ChildNodeEntry e : oakIndex.getChildNodeEntries()) {
+            hash = 31 * hash + e.getName().hashCode();
+            NodeState def = e.getNodeState();
+            for (String name : DEFINITION_PROPERTIES) {
+                PropertyState p = def.getProperty(name);
+                if (p != null) {
+                    hash = 31 * hash + p.toString().hashCode();
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * The hashes of the index definitions of a root state, by path.
+     */
+    private static final class IndexDefinitionsHashes {
+
+        static final int MAX_PATHS = 1000;
+
+        /**
+         * The root state, weakly referenced so that old revisions are not
+         * kept in memory.
+         */
+        final WeakReference<NodeState> rootState;
+
+        final Map<String, Long> hashes = new ConcurrentHashMap<>();
+
+        IndexDefinitionsHashes(NodeState rootState) {
+            this.rootState = new WeakReference<>(rootState);
+        }
+
+    }
+
+    /**
+     * A cached plan: the index that was selected.
+     */
+    static class CachedPlan {
+
+        /**
+         * The generation of the indexes.
+         */
+        final long generation;
+
+        /**
+         * The name of the selected index.
+         */
+        final String indexName;
+
+        /**
+         * The class name of the selected index.
+         */
+        final String indexClassName;
+
+        /**
+         * The name of the selected plan of the index, or null.
+         */
+        final String planName;
+
+        /**
+         * Whether the query is potentially slow, if using this index.
+         */
+        final boolean potentiallySlow;
+
+        CachedPlan(long generation, String indexName, String indexClassName,
+                String planName, boolean potentiallySlow) {
+            this.generation = generation;
+            this.indexName = indexName;
+            this.indexClassName = indexClassName;
+            this.planName = planName;
+            this.potentiallySlow = potentiallySlow;
+        }
+
+    }
+
+}
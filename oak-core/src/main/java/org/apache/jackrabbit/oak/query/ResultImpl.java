@@ -69,7 +69,30 @@ public class ResultImpl implements Result {
 
             @Override
             public Iterator<ResultRowImpl> iterator() {
-                return query.getRows();
+                final Iterator<ResultRowImpl> it = query.getRows();
+                return new Iterator<ResultRowImpl>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        boolean hasNext = it.hasNext();
+                        if (!hasNext) {
+                            // the query is no longer listed as running
+                            query.getQueryExecutionStats().finished();
+                        }
+                        return hasNext;
+                    }
+
+                    @Override
+                    public ResultRowImpl next() {
+                        return it.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        it.remove();
+                    }
+
+                };
             }
 
         };
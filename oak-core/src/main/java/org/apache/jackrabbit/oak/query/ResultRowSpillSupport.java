@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.ArrayList;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopReader;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Serializes the rows of a query result, so that they can be written to
+ * temporary files when sorting the rows or filtering duplicate rows.
+ * <p>
+ * A row is serialized as a Json array that contains the paths of the
+ * selected nodes, the column values, and the order values. Each value is
+ * stored with its type, and converted back when reading the row. Rows with
+ * binary values can not be serialized.
+ */
+class ResultRowSpillSupport implements FilterIterators.SpillSupport<ResultRowImpl> {
+
+    private final Query query;
+    private final boolean[] distinctValues;
+    private final QueryEngineSettings settings;
+
+    ResultRowSpillSupport(Query query, boolean[] distinctValues, QueryEngineSettings settings) {
+        this.query = query;
+        this.distinctValues = distinctValues;
+        this.settings = settings;
+    }
+
+    @Override
+    public long getSpillThreshold() {
+        return settings.getSpillThreshold();
+    }
+
+    @Nullable
+    @Override
+    public String serialize(@NotNull ResultRowImpl row) {
+        JsopBuilder buff = new JsopBuilder();
+        buff.array();
+        appendPaths(buff, row.getPaths());
+        if (!appendValues(buff, row.getValues(), null)) {
+            return null;
+        }
+        PropertyValue[] orderValues = row.getOrderValues();
+        if (orderValues == null) {
+            buff.encodedValue("null");
+        } else if (!appendValues(buff, orderValues, null)) {
+            return null;
+        }
+        buff.endArray();
+        return asciiOnly(buff.toString());
+    }
+
+    @NotNull
+    @Override
+    public ResultRowImpl deserialize(@NotNull String data) {
+        JsopTokenizer t = new JsopTokenizer(data);
+        t.read('[');
+        t.read('[');
+        ArrayList<Tree> trees = new ArrayList<Tree>();
+        if (!t.matches(']')) {
+            do {
+                if (t.matches(JsopReader.NULL)) {
+                    trees.add(null);
+                } else {
+                    trees.add(query.getTree(t.readString()));
+                }
+            } while (t.matches(','));
+            t.read(']');
+        }
+        t.read(',');
+        PropertyValue[] values = readValues(t);
+        t.read(',');
+        PropertyValue[] orderValues = null;
+        if (!t.matches(JsopReader.NULL)) {
+            orderValues = readValues(t);
+        }
+        t.read(']');
+        return new ResultRowImpl(query, trees.toArray(new Tree[0]),
+                values, distinctValues, orderValues);
+    }
+
+    @Nullable
+    @Override
+    public String getDistinctKey(@NotNull ResultRowImpl row) {
+        JsopBuilder buff = new JsopBuilder();
+        buff.array();
+        appendPaths(buff, row.getPaths());
+        if (!appendValues(buff, row.getValues(), distinctValues)) {
+            return null;
+        }
+        buff.endArray();
+        return asciiOnly(buff.toString());
+    }
+
+    @Override
+    public void spilled(long count) {
+        settings.getQueryStatsReporter().spilled(count);
+    }
+
+    private static void appendPaths(JsopBuilder buff, String[] paths) {
+        buff.array();
+        for (String p : paths) {
+            buff.value(p);
+        }
+        buff.endArray();
+    }
+
+    /**
+     * Append the values.
+     *
+     * @param buff the target buffer
+     * @param values the values
+     * @param include which values to include, or null to include all values
+     * @return false if a value can not be serialized
+     */
+    private static boolean appendValues(JsopBuilder buff, PropertyValue[] values,
+            boolean[] include) {
+        buff.array();
+        for (int i = 0; i < values.length; i++) {
+            if (include != null && !include[i]) {
+                continue;
+            }
+            PropertyValue v = values[i];
+            if (v == null) {
+                buff.encodedValue("null");
+                continue;
+            }
+            Type<?> type = v.getType();
+            if (type.tag() == PropertyType.BINARY) {
+                return false;
+            }
+            buff.array();
+            buff.value(type.tag());
+            buff.value(type.isArray());
+            if (type.isArray()) {
+                for (String s : v.getValue(Type.STRINGS)) {
+                    buff.value(s);
+                }
+            } else {
+                buff.value(v.getValue(Type.STRING));
+            }
+            buff.endArray();
+        }
+        buff.endArray();
+        return true;
+    }
+
+    private static PropertyValue[] readValues(JsopTokenizer t) {
+        t.read('[');
+        ArrayList<PropertyValue> values = new ArrayList<PropertyValue>();
+        if (!t.matches(']')) {
+            do {
+                values.add(readValue(t));
+            } while (t.matches(','));
+            t.read(']');
+        }
+        return values.toArray(new PropertyValue[0]);
+    }
+
+    private static PropertyValue readValue(JsopTokenizer t) {
+        if (t.matches(JsopReader.NULL)) {
+            return null;
+        }
+        t.read('[');
+        int tag = Integer.parseInt(t.read(JsopReader.NUMBER));
+        t.read(',');
+        boolean isArray = t.matches(JsopReader.TRUE);
+        if (!isArray) {
+            t.read(JsopReader.FALSE);
+        }
+        PropertyState state;
+        if (isArray) {
+            ArrayList<String> list = new ArrayList<String>();
+            while (t.matches(',')) {
+                list.add(t.readString());
+            }
+            state = PropertyStates.createProperty("", list, Type.STRINGS);
+        } else {
+            t.read(',');
+            state = PropertyStates.createProperty("", t.readString(), Type.STRING);
+        }
+        t.read(']');
+        return PropertyValues.create(
+                PropertyStates.convert(state, Type.fromTag(tag, isArray)));
+    }
+
+    /**
+     * Escape all non-ASCII characters, so that the result does not depend on
+     * the character encoding used for the temporary files.
+     *
+     * @param json the Json text
+     * @return the Json text with only ASCII characters
+     */
+    private static String asciiOnly(String json) {
+        StringBuilder buff = null;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c < 0x7f) {
+                if (buff != null) {
+                    buff.append(c);
+                }
+                continue;
+            }
+            if (buff == null) {
+                buff = new StringBuilder(json.length() + 16);
+                buff.append(json, 0, i);
+            }
+            buff.append(String.format("\\u%04x", (int) c));
+        }
+        return buff == null ? json : buff.toString();
+    }
+
+}
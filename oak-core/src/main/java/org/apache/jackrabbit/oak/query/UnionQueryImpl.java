@@ -21,6 +21,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result;
@@ -311,6 +312,12 @@ public class UnionQueryImpl implements Query {
         boolean distinct = !unionAll;
         Comparator<ResultRowImpl> orderBy = ResultRowImpl.getComparator(orderings);
 
+        // if enabled, the index rows of all branches are read in parallel,
+        // while the rows are merged in this thread
+        Executor executor = settings.getParallelUnionExecutor();
+        setReadAheadExecutor(left, executor);
+        setReadAheadExecutor(right, executor);
+
         FacetMerger facetMerger = new FacetMerger(left, right);
 
         Iterator<ResultRowImpl> it;
@@ -498,6 +505,16 @@ public class UnionQueryImpl implements Query {
         }
     }
 
+    private static void setReadAheadExecutor(Query q, Executor executor) {
+        if (q instanceof UnionQueryImpl) {
+            UnionQueryImpl u = (UnionQueryImpl) q;
+            setReadAheadExecutor(u.left, executor);
+            setReadAheadExecutor(u.right, executor);
+        } else if (q instanceof QueryImpl) {
+            ((QueryImpl) q).setReadAheadExecutor(executor);
+        }
+    }
+
     static class MappingRowIterator extends AbstractIterator<ResultRowImpl> {
 
         private final Map<String, String> columnToFacetMap;
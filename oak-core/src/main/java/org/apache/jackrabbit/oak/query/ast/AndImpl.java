@@ -27,6 +27,7 @@ import static org.apache.jackrabbit.oak.query.ast.AstElementFactory.copyElementA
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -44,8 +45,26 @@ import org.apache.jackrabbit.guava.common.collect.Sets;
  */
 public class AndImpl extends ConstraintImpl {
 
+    /**
+     * The number of evaluations after which the evaluation order is
+     * adjusted.
+     */
+    private static final int REORDER_INTERVAL = 1024;
+
+    /**
+     * Measure the time of each xth evaluation of a condition.
+     */
+    private static final int TIMER_SAMPLE_RATE = 16;
+
     private final List<ConstraintImpl> constraints;
 
+    /**
+     * The order in which the conditions are evaluated, or null if not yet
+     * initialized.
+     */
+    private ConstraintStats[] evaluationOrder;
+    private int evaluationCount;
+
     public AndImpl(List<ConstraintImpl> constraints) {
         checkArgument(!constraints.isEmpty());
         this.constraints = constraints;
@@ -139,13 +158,101 @@ public class AndImpl extends ConstraintImpl {
 
     @Override
     public boolean evaluate() {
-        for (ConstraintImpl constraint : constraints) {
-            if (!constraint.evaluate()) {
+        if (!QueryEngineSettings.COMPILE_CONSTRAINTS) {
+            for (ConstraintImpl constraint : constraints) {
+                if (!constraint.evaluate()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        ConstraintStats[] order = evaluationOrder;
+        if (order == null) {
+            order = new ConstraintStats[constraints.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = new ConstraintStats(constraints.get(i));
+            }
+            evaluationOrder = order;
+        }
+        boolean measure = (evaluationCount & (TIMER_SAMPLE_RATE - 1)) == 0;
+        if (++evaluationCount % REORDER_INTERVAL == 0) {
+            reorder(order);
+        }
+        for (ConstraintStats c : order) {
+            if (!c.evaluate(measure)) {
                 return false;
             }
         }
         return true;
     }
+
+    /**
+     * Sort the conditions so that the ones that are cheap to evaluate and
+     * that filter out many rows are evaluated first. The result is the same
+     * in any order.
+     *
+     * @param order the conditions
+     */
+    private static void reorder(ConstraintStats[] order) {
+        for (ConstraintStats c : order) {
+            c.updateRank();
+        }
+        Arrays.sort(order, new Comparator<ConstraintStats>() {
+            @Override
+            public int compare(ConstraintStats o1, ConstraintStats o2) {
+                return Double.compare(o1.rank, o2.rank);
+            }
+        });
+    }
+
+    /**
+     * A condition, with the number of evaluations, the number of times it
+     * was true, and the measured time. The counts are halved each time the
+     * rank is updated, so that recent rows weigh more.
+     */
+    private static class ConstraintStats {
+
+        final ConstraintImpl constraint;
+        long evaluated, passed, measured, nanos;
+        double rank;
+
+        ConstraintStats(ConstraintImpl constraint) {
+            this.constraint = constraint;
+        }
+
+        boolean evaluate(boolean measure) {
+            boolean result;
+            if (measure) {
+                long start = System.nanoTime();
+                result = constraint.evaluate();
+                nanos += System.nanoTime() - start;
+                measured++;
+            } else {
+                result = constraint.evaluate();
+            }
+            evaluated++;
+            if (result) {
+                passed++;
+            }
+            return result;
+        }
+
+        void updateRank() {
+            if (evaluated == 0 || measured == 0) {
+                // not evaluated recently: keep the position
+                return;
+            }
+            // the expected cost per row that is filtered out
+            double cost = (double) Math.max(1, nanos) / measured;
+            double rejected = 1.0 - (double) passed / evaluated;
+            rank = cost / Math.max(rejected, 0.001);
+            evaluated >>= 1;
+            passed >>= 1;
+            measured >>= 1;
+            nanos >>= 1;
+        }
+
+    }
     
     @Override
     public boolean evaluateStop() {
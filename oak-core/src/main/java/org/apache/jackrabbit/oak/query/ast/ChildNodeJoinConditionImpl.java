@@ -18,11 +18,13 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
 
 /**
  * The "ischildnode(...)" join condition.
@@ -103,6 +105,42 @@ public class ChildNodeJoinConditionImpl extends JoinConditionImpl {
         return available.contains(childSelector) && available.contains(parentSelector);
     }
 
+    @Override
+    JoinLookup newLookup(SelectorImpl s) {
+        if (s.equals(childSelector) || s.equals(parentSelector)) {
+            return new JoinLookup(false);
+        }
+        return null;
+    }
+
+    @Override
+    void addToLookup(SelectorImpl s, JoinLookup lookup) {
+        String path = s.currentPath();
+        if (s.equals(childSelector)) {
+            // rows of the child selector are stored by parent path
+            if (!PathUtils.denotesRoot(path)) {
+                lookup.add(PathUtils.getParentPath(path), s.currentIndexRow());
+            }
+        } else {
+            lookup.add(path, s.currentIndexRow());
+        }
+    }
+
+    @Override
+    void lookup(SelectorImpl s, JoinLookup lookup, Collection<IndexRow> target) {
+        if (s.equals(childSelector)) {
+            String p = parentSelector.currentPath();
+            if (p != null) {
+                lookup.get(p, target);
+            }
+        } else {
+            String c = childSelector.currentPath();
+            if (c != null && !PathUtils.denotesRoot(c)) {
+                lookup.get(PathUtils.getParentPath(c), target);
+            }
+        }
+    }
+
     @Override
     public AstElement copyOf() {
         return new ChildNodeJoinConditionImpl(childSelectorName, parentSelectorName);
@@ -27,6 +27,7 @@ import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.ValueConverter;
 import org.apache.jackrabbit.oak.spi.query.fulltext.LikePattern;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
@@ -41,6 +42,20 @@ public class ComparisonImpl extends ConstraintImpl {
     private final Operator operator;
     private final StaticOperandImpl operand2;
 
+    /**
+     * The last value of operand2 that was converted, the type it was
+     * converted to, and the result of the conversion.
+     */
+    private PropertyValue convertedFrom;
+    private int convertedType;
+    private PropertyValue converted;
+
+    /**
+     * The last like pattern, or null.
+     */
+    private LikePattern likePattern;
+    private String likePatternString;
+
     public ComparisonImpl(DynamicOperandImpl operand1, Operator operator, StaticOperandImpl operand2) {
         this.operand1 = operand1;
         this.operator = operator;
@@ -89,7 +104,7 @@ public class ComparisonImpl extends ConstraintImpl {
         }
         // "the value of operand2 is converted to the
         // property type of the value of operand1" if possible
-        p2 = convertValueToType(p2, p1);
+        p2 = convertStaticValue(p2, p1);
         // if not possible, convert to the same type
         if (p1.getType().tag() != p2.getType().tag()) {
             // conversion failed: convert both to binary or string
@@ -97,6 +112,16 @@ public class ComparisonImpl extends ConstraintImpl {
             p1 = convertToType(p1, targetType);
             p2 = convertToType(p2, targetType);
         }
+        if (operator == Operator.LIKE && QueryEngineSettings.COMPILE_CONSTRAINTS) {
+            // like the operator, but parse the pattern only once
+            LikePattern like = getLikePattern(p2.getValue(Type.STRING));
+            for (String s : p1.getValue(Type.STRINGS)) {
+                if (like.matches(s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
         if (p1.isArray()) {
             // JCR 2.0 spec, 6.7.16 Comparison:
             // "... constraint is satisfied as a whole if the comparison
@@ -115,6 +140,35 @@ public class ComparisonImpl extends ConstraintImpl {
         }
     }
     
+    /**
+     * Convert the value of operand2 to the type of operand1. The value is
+     * usually the same for all rows, so the result is kept.
+     *
+     * @param v the value of operand2
+     * @param targetType a value of the target type
+     * @return the converted value, or the value if conversion is not possible
+     */
+    private PropertyValue convertStaticValue(PropertyValue v, PropertyValue targetType) {
+        if (!QueryEngineSettings.COMPILE_CONSTRAINTS) {
+            return convertValueToType(v, targetType);
+        }
+        int type = targetType.getType().tag();
+        if (v != convertedFrom || type != convertedType) {
+            converted = convertValueToType(v, targetType);
+            convertedFrom = v;
+            convertedType = type;
+        }
+        return converted;
+    }
+
+    private LikePattern getLikePattern(String pattern) {
+        if (likePattern == null || !pattern.equals(likePatternString)) {
+            likePattern = new LikePattern(pattern);
+            likePatternString = pattern;
+        }
+        return likePattern;
+    }
+
     private static int getCommonType(PropertyValue p1, PropertyValue p2) {
         if (p1.getType().tag() == PropertyType.BINARY || p2.getType().tag() == PropertyType.BINARY) {
             return PropertyType.BINARY;
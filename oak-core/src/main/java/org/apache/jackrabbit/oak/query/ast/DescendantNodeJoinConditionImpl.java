@@ -18,11 +18,13 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
 
 /**
  * The "isdescendantnode(...)" join condition.
@@ -97,6 +99,38 @@ public class DescendantNodeJoinConditionImpl extends JoinConditionImpl {
         return available.contains(descendantSelector) && available.contains(ancestorSelector);
     }
 
+    @Override
+    JoinLookup newLookup(SelectorImpl s) {
+        if (s.equals(descendantSelector)) {
+            // descendants are found using a range scan over the sorted paths
+            return new JoinLookup(true);
+        } else if (s.equals(ancestorSelector)) {
+            return new JoinLookup(false);
+        }
+        return null;
+    }
+
+    @Override
+    void addToLookup(SelectorImpl s, JoinLookup lookup) {
+        lookup.add(s.currentPath(), s.currentIndexRow());
+    }
+
+    @Override
+    void lookup(SelectorImpl s, JoinLookup lookup, Collection<IndexRow> target) {
+        if (s.equals(descendantSelector)) {
+            String a = ancestorSelector.currentPath();
+            if (a != null) {
+                lookup.getDescendants(a, target);
+            }
+        } else {
+            String d = descendantSelector.currentPath();
+            while (d != null && !PathUtils.denotesRoot(d)) {
+                d = PathUtils.getParentPath(d);
+                lookup.get(d, target);
+            }
+        }
+    }
+
     @Override
     public AstElement copyOf() {
         return new DescendantNodeJoinConditionImpl(descendantSelectorName, ancestorSelectorName);
@@ -18,11 +18,16 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
 import java.util.Set;
 
+import javax.jcr.PropertyType;
+
 import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
 
 /**
  * The "a.x = b.y" join condition.
@@ -172,6 +177,73 @@ public class EquiJoinConditionImpl extends JoinConditionImpl {
         return available.contains(selector1) && available.contains(selector2);
     }
 
+    @Override
+    JoinLookup newLookup(SelectorImpl s) {
+        if (s.equals(selector1) || s.equals(selector2)) {
+            return new JoinLookup(false);
+        }
+        return null;
+    }
+
+    @Override
+    void addToLookup(SelectorImpl s, JoinLookup lookup) {
+        PropertyValue v = s.equals(selector1) ?
+                selector1.currentProperty(property1Name) :
+                selector2.currentProperty(property2Name);
+        if (v == null) {
+            // can not match
+            return;
+        }
+        if (!isLookupType(v.getType())) {
+            lookup.addUnkeyed(s.currentIndexRow());
+            return;
+        }
+        for (String k : v.getValue(Type.STRINGS)) {
+            lookup.add(k, s.currentIndexRow());
+        }
+    }
+
+    @Override
+    void lookup(SelectorImpl s, JoinLookup lookup, Collection<IndexRow> target) {
+        PropertyValue v = s.equals(selector1) ?
+                selector2.currentProperty(property2Name) :
+                selector1.currentProperty(property1Name);
+        if (v == null) {
+            return;
+        }
+        if (!isLookupType(v.getType())) {
+            lookup.getAll(target);
+            return;
+        }
+        for (String k : v.getValue(Type.STRINGS)) {
+            lookup.get(k, target);
+        }
+        lookup.getUnkeyed(target);
+    }
+
+    /**
+     * Whether values of this type can be looked up using their string
+     * representation. For other types (for example numbers and dates), 
+     * values with a different string representation may be equal after
+     * conversion.
+     * 
+     * @param type the type
+     * @return true if the string representation can be used
+     */
+    private static boolean isLookupType(Type<?> type) {
+        switch (type.tag()) {
+        case PropertyType.STRING:
+        case PropertyType.NAME:
+        case PropertyType.PATH:
+        case PropertyType.REFERENCE:
+        case PropertyType.WEAKREFERENCE:
+        case PropertyType.URI:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     @Override
     public AstElement copyOf() {
         return new EquiJoinConditionImpl(selector1Name, property1Name, selector2Name, property2Name);
@@ -23,12 +23,17 @@ import static org.apache.jackrabbit.guava.common.collect.Sets.newHashSet;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.jcr.PropertyType;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.ValueConverter;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
@@ -38,12 +43,31 @@ import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
  */
 public class InImpl extends ConstraintImpl {
 
+    /**
+     * The minimum number of values to use a hash set.
+     */
+    private static final int MIN_HASHED_SIZE = 4;
+
     private final DynamicOperandImpl operand1;
     private final List<StaticOperandImpl> operand2;
 
+    /**
+     * Whether all values are literals (and not bind variables), so that they
+     * don't change.
+     */
+    private final boolean literalsOnly;
+
+    /**
+     * The string representation of the literals, converted to the property
+     * type, by property type. Calculated when first needed for a type, as
+     * the type of operand1 may differ from row to row.
+     */
+    private final Map<Integer, Set<String>> hashedValues = new HashMap<Integer, Set<String>>();
+
     public InImpl(DynamicOperandImpl operand1, List<StaticOperandImpl> operand2) {
         this.operand1 = operand1;
         this.operand2 = operand2;
+        this.literalsOnly = isLiteralList(operand2);
     }
 
     public DynamicOperandImpl getOperand1() {
@@ -94,6 +118,16 @@ public class InImpl extends ConstraintImpl {
         if (p1 == null) {
             return false;
         }
+        if (operand2.size() >= MIN_HASHED_SIZE && QueryEngineSettings.COMPILE_CONSTRAINTS
+                && literalsOnly && isHashable(p1.getType().tag())) {
+            Set<String> set = getHashedValues(p1);
+            for (String v : p1.getValue(Type.STRINGS)) {
+                if (set.contains(v)) {
+                    return true;
+                }
+            }
+            return false;
+        }
         for (StaticOperandImpl s : operand2) {
             PropertyValue p2 = s.currentValue();
             if (p2 == null) {
@@ -110,6 +144,66 @@ public class InImpl extends ConstraintImpl {
         return false;
     }
 
+    /**
+     * Whether two values of the given type are equal exactly if their
+     * string representation is equal.
+     *
+     * @param type the property type
+     * @return true if a hash set of strings can be used
+     */
+    private static boolean isHashable(int type) {
+        switch (type) {
+        case PropertyType.STRING:
+        case PropertyType.NAME:
+        case PropertyType.PATH:
+        case PropertyType.REFERENCE:
+        case PropertyType.WEAKREFERENCE:
+        case PropertyType.URI:
+        case PropertyType.LONG:
+        case PropertyType.BOOLEAN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isLiteralList(List<StaticOperandImpl> operand2) {
+        for (StaticOperandImpl s : operand2) {
+            if (!(s instanceof LiteralImpl)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the values, converted to the type of operand1, as a set of strings.
+     * Values that can not be converted never match, and are not included.
+     *
+     * @param p1 the value of operand1
+     * @return the set
+     */
+    private Set<String> getHashedValues(PropertyValue p1) {
+        int type = p1.getType().tag();
+        Set<String> set = hashedValues.get(type);
+        if (set == null) {
+            set = new HashSet<String>();
+            for (StaticOperandImpl s : operand2) {
+                PropertyValue p2 = s.currentValue();
+                if (p2 == null) {
+                    continue;
+                }
+                p2 = convertValueToType(p2, p1);
+                if (p2.getType().tag() != type) {
+                    continue;
+                }
+                set.addAll(p2.getValue(Type.STRINGS));
+            }
+            hashedValues.put(type, set);
+        }
+        return set;
+    }
+
     @Override
     boolean accept(AstVisitor v) {
         return v.visit(this);
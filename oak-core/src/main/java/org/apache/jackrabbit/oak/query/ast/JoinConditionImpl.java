@@ -13,9 +13,11 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
 
 /**
  * The base class for join conditions.
@@ -81,4 +83,40 @@ public abstract class JoinConditionImpl extends AstElement {
      */
     public abstract boolean canEvaluate(Set<SourceImpl> available);
 
+    /**
+     * Create a lookup table for the rows of the given selector, if this join
+     * condition supports finding the matching rows of the selector in a
+     * lookup table (instead of executing the selector once for each row of
+     * the other selectors).
+     * 
+     * If null is returned, the selector is executed once for each row of the
+     * other selectors (nested loop join).
+     * 
+     * @param s the selector
+     * @return the empty lookup table, or null if not supported
+     */
+    abstract JoinLookup newLookup(SelectorImpl s);
+
+    /**
+     * Add the current row of the given selector to the lookup table. Only
+     * called if {@link #newLookup(SelectorImpl)} returned a table for the
+     * selector.
+     * 
+     * @param s the selector
+     * @param lookup the lookup table
+     */
+    abstract void addToLookup(SelectorImpl s, JoinLookup lookup);
+
+    /**
+     * Find the rows of the given selector that may match the current rows of
+     * the other selectors. The candidates still need to be evaluated. Only
+     * called if {@link #newLookup(SelectorImpl)} returned a table for the
+     * selector.
+     * 
+     * @param s the selector
+     * @param lookup the lookup table
+     * @param target the collection to add the candidate rows to
+     */
+    abstract void lookup(SelectorImpl s, JoinLookup lookup, Collection<IndexRow> target);
+
 }
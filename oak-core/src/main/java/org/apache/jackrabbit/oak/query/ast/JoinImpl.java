@@ -16,12 +16,18 @@ package org.apache.jackrabbit.oak.query.ast;
 import static org.apache.jackrabbit.oak.query.ast.AstElementFactory.copyElementAndCheckReference;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.index.TraversingIndex;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan;
+import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 
 /**
@@ -29,6 +35,7 @@ import org.apache.jackrabbit.oak.spi.state.NodeState;
  * source, the join type, and the join condition.
  */
 public class JoinImpl extends SourceImpl {
+
     private final JoinConditionImpl joinCondition;
     private JoinType joinType;
     private SourceImpl left;
@@ -42,6 +49,11 @@ public class JoinImpl extends SourceImpl {
     
     private JoinExecutionPlan plan;
 
+    /**
+     * The lookup table for the right hand side, if a lookup join is used.
+     */
+    private JoinLookup lookup;
+
     public JoinImpl(SourceImpl left, SourceImpl right, JoinType joinType,
             JoinConditionImpl joinCondition) {
         this.left = left;
@@ -107,6 +119,9 @@ public class JoinImpl extends SourceImpl {
             append(right.getPlan(rootState)).
             append(" on ").
             append(joinCondition);
+        if (plan != null && plan.getLookupPlan() != null) {
+            buff.append(" /* lookup */");
+        }
         return buff.toString();
     }
 
@@ -133,6 +148,7 @@ public class JoinImpl extends SourceImpl {
         left.unprepare();
         right.unprepare();
         plan = null;
+        lookup = null;
     }
     
     private void applyJoinConditions() {
@@ -191,10 +207,58 @@ public class JoinImpl extends SourceImpl {
         ExecutionPlan leftPlan = left.prepare();
         ExecutionPlan rightPlan = right.prepare();
         double cost = leftPlan.getEstimatedCost() + 2 * rightPlan.getEstimatedCost();
-        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost);
+        SelectorExecutionPlan lookupPlan = getLookupPlan(leftPlan, rightPlan);
+        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost, lookupPlan);
         return plan;
     }
 
+    /**
+     * Get the plan to read the right hand side once, to build a lookup table,
+     * if this is expected to be cheaper than executing the right hand side
+     * once for each row of the left hand side.
+     * 
+     * @param leftPlan the plan of the left hand side
+     * @param rightPlan the plan of the right hand side
+     * @return the plan, or null if a nested loop join should be used
+     */
+    private SelectorExecutionPlan getLookupPlan(ExecutionPlan leftPlan, ExecutionPlan rightPlan) {
+        if (!(right instanceof SelectorImpl)) {
+            return null;
+        }
+        SelectorImpl s = (SelectorImpl) right;
+        if (joinCondition.newLookup(s) == null) {
+            return null;
+        }
+        double leftRows = getEstimatedRows(leftPlan);
+        QueryEngineSettings settings = s.getQuery().getSettings();
+        if (leftRows < settings.getLookupJoinMinRows()) {
+            return null;
+        }
+        SelectorExecutionPlan lookupPlan = s.prepareWithoutJoinCondition();
+        if (lookupPlan == null || lookupPlan.getIndex() == null 
+                || lookupPlan.getIndex() instanceof TraversingIndex) {
+            // never traverse the repository to build the lookup table
+            return null;
+        }
+        if (getEstimatedRows(lookupPlan) > settings.getLimitInMemory()) {
+            return null;
+        }
+        if (lookupPlan.getEstimatedCost() >= leftRows * rightPlan.getEstimatedCost()) {
+            return null;
+        }
+        return lookupPlan;
+    }
+
+    private static double getEstimatedRows(ExecutionPlan p) {
+        if (p instanceof SelectorExecutionPlan) {
+            IndexPlan indexPlan = ((SelectorExecutionPlan) p).getIndexPlan();
+            if (indexPlan != null) {
+                return indexPlan.getEstimatedEntryCount();
+            }
+        }
+        return p.getEstimatedCost();
+    }
+
     @Override
     public SelectorImpl getSelector(String selectorName) {
         SelectorImpl s = left.getSelector(selectorName);
@@ -241,6 +305,10 @@ public class JoinImpl extends SourceImpl {
             return false;
         }
         if (leftNeedExecute) {
+            lookup = null;
+            if (plan != null && plan.getLookupPlan() != null) {
+                lookup = buildLookup(plan.getLookupPlan());
+            }
             left.execute(rootState);
             leftNeedExecute = false;
             leftNeedNext = true;
@@ -255,7 +323,14 @@ public class JoinImpl extends SourceImpl {
                 rightNeedExecute = true;
             }
             if (rightNeedExecute) {
-                right.execute(rootState);
+                if (lookup != null) {
+                    SelectorImpl s = (SelectorImpl) right;
+                    LinkedHashSet<IndexRow> candidates = new LinkedHashSet<IndexRow>();
+                    joinCondition.lookup(s, lookup, candidates);
+                    s.executeRows(candidates);
+                } else {
+                    right.execute(rootState);
+                }
                 foundJoinedRow = false;
                 rightNeedExecute = false;
             }
@@ -275,6 +350,27 @@ public class JoinImpl extends SourceImpl {
         }
     }
     
+    /**
+     * Read all rows of the right hand side into a lookup table.
+     * 
+     * @param lookupPlan the plan to read the rows
+     * @return the lookup table, or null if a nested loop join needs to be
+     *         used (if there are too many rows)
+     */
+    private JoinLookup buildLookup(SelectorExecutionPlan lookupPlan) {
+        SelectorImpl s = (SelectorImpl) right;
+        JoinLookup l = joinCondition.newLookup(s);
+        long limit = s.getQuery().getSettings().getLimitInMemory();
+        s.executeWithoutJoinCondition(rootState, lookupPlan);
+        while (s.next()) {
+            if (s.isVirtualRow() || l.size() >= limit) {
+                return null;
+            }
+            joinCondition.addToLookup(s, l);
+        }
+        return l;
+    }
+
     @Override
     public boolean isOuterJoinRightHandSide() {
         return left.isOuterJoinRightHandSide() || right.isOuterJoinRightHandSide();
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+
+/**
+ * A lookup table for the rows of the right hand side selector of a join. The
+ * table is built by reading the rows of the selector once, and is then used
+ * to find the candidate rows for each row of the left hand side, instead of
+ * executing the selector again for each row of the left hand side.
+ * <p>
+ * Rows are stored by key, which is a property value (for equi-joins) or a
+ * path (for joins on the node hierarchy). If the keys are sorted, the
+ * rows of all descendants of a path can be found with a range scan. Rows
+ * that may match any key (for example because the value can not be compared
+ * as a string) are stored separately, and are candidates for all lookups.
+ * Candidates are evaluated again using the join condition.
+ */
+final class JoinLookup {
+
+    private final Map<String, List<IndexRow>> rows;
+    private final List<IndexRow> unkeyed = new ArrayList<IndexRow>();
+    private long size;
+
+    /**
+     * Create a new lookup table.
+     *
+     * @param sorted whether the keys are paths that need to be kept in
+     *            sorted order, to support {@link #getDescendants}
+     */
+    JoinLookup(boolean sorted) {
+        if (sorted) {
+            rows = new TreeMap<String, List<IndexRow>>();
+        } else {
+            rows = new HashMap<String, List<IndexRow>>();
+        }
+    }
+
+    void add(String key, IndexRow row) {
+        List<IndexRow> list = rows.get(key);
+        if (list == null) {
+            list = new ArrayList<IndexRow>(1);
+            rows.put(key, list);
+        }
+        list.add(row);
+        size++;
+    }
+
+    void addUnkeyed(IndexRow row) {
+        unkeyed.add(row);
+        size++;
+    }
+
+    /**
+     * Get the number of entries in this table.
+     *
+     * @return the number of entries
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Add the rows with the given key to the target collection.
+     *
+     * @param key the key
+     * @param target the target collection
+     */
+    void get(String key, Collection<IndexRow> target) {
+        List<IndexRow> list = rows.get(key);
+        if (list != null) {
+            target.addAll(list);
+        }
+    }
+
+    /**
+     * Add the rows of all descendants of the given path, in path order, to
+     * the target collection. This requires a sorted table.
+     *
+     * @param path the ancestor path
+     * @param target the target collection
+     */
+    void getDescendants(String path, Collection<IndexRow> target) {
+        TreeMap<String, List<IndexRow>> map = (TreeMap<String, List<IndexRow>>) rows;
+        String prefix = PathUtils.denotesRoot(path) ? path : path + '/';
+        // all paths that start with the prefix are smaller than this
+        String end = prefix.substring(0, prefix.length() - 1) + (char) ('/' + 1);
+        for (Map.Entry<String, List<IndexRow>> e :
+                map.subMap(prefix, true, end, false).entrySet()) {
+            if (!e.getKey().equals(path)) {
+                target.addAll(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Add the rows without key to the target collection.
+     *
+     * @param target the target collection
+     */
+    void getUnkeyed(Collection<IndexRow> target) {
+        target.addAll(unkeyed);
+    }
+
+    /**
+     * Add all rows to the target collection.
+     *
+     * @param target the target collection
+     */
+    void getAll(Collection<IndexRow> target) {
+        for (List<IndexRow> list : rows.values()) {
+            target.addAll(list);
+        }
+        target.addAll(unkeyed);
+    }
+
+}
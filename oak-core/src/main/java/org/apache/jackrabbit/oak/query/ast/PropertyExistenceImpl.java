@@ -43,6 +43,10 @@ public class PropertyExistenceImpl extends ConstraintImpl {
         this.propertyName = propertyName;
     }
 
+    public String getPropertyName() {
+        return propertyName;
+    }
+
     @Override
     public boolean evaluate() {
         return selector.currentProperty(propertyName) != null;
@@ -18,11 +18,13 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
 
 /**
  * The "issamenode(...)" join condition.
@@ -126,4 +128,51 @@ public class SameNodeJoinConditionImpl extends JoinConditionImpl {
         return available.contains(selector1) && available.contains(selector2);
     }
 
+    @Override
+    JoinLookup newLookup(SelectorImpl s) {
+        if (s.equals(selector1) || s.equals(selector2)) {
+            return new JoinLookup(false);
+        }
+        return null;
+    }
+
+    @Override
+    void addToLookup(SelectorImpl s, JoinLookup lookup) {
+        String path = s.currentPath();
+        if (s.equals(selector1)) {
+            lookup.add(path, s.currentIndexRow());
+        } else {
+            // rows of selector 2 are stored by the path of the matching node
+            lookup.add(getSelector1Path(path), s.currentIndexRow());
+        }
+    }
+
+    @Override
+    void lookup(SelectorImpl s, JoinLookup lookup, Collection<IndexRow> target) {
+        if (s.equals(selector1)) {
+            String p2 = selector2.currentPath();
+            if (p2 != null) {
+                lookup.get(getSelector1Path(p2), target);
+            }
+        } else {
+            String p1 = selector1.currentPath();
+            if (p1 != null) {
+                lookup.get(p1, target);
+            }
+        }
+    }
+
+    /**
+     * Get the path of selector 1 that matches the given path of selector 2.
+     * 
+     * @param p2 the path of selector 2
+     * @return the path of selector 1
+     */
+    private String getSelector1Path(String p2) {
+        if (selector2Path.equals(".")) {
+            return p2;
+        }
+        return PathUtils.concat(p2, normalizePath(selector2Path));
+    }
+
 }
@@ -24,9 +24,11 @@ import static org.apache.jackrabbit.JcrConstants.NT_BASE;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -41,6 +43,8 @@ import org.apache.jackrabbit.oak.plugins.memory.PropertyBuilder;
 import org.apache.jackrabbit.oak.plugins.metric.util.StatsProviderUtil;
 import org.apache.jackrabbit.oak.plugins.tree.TreeUtil;
 import org.apache.jackrabbit.oak.query.ExecutionContext;
+import org.apache.jackrabbit.oak.query.FilterIterators;
+import org.apache.jackrabbit.oak.query.QueryCancelledException;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.QueryImpl;
 import org.apache.jackrabbit.oak.query.QueryOptions;
@@ -49,6 +53,7 @@ import org.apache.jackrabbit.oak.spi.query.fulltext.FullTextExpression;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
+import org.apache.jackrabbit.oak.query.stats.QueryProfile;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
@@ -180,9 +185,22 @@ public class SelectorImpl extends SourceImpl {
     private IndexRow currentRow;
     private int scanCount;
 
+    /**
+     * Whether the join condition of this selector is ignored, because all
+     * rows are read to build a lookup table for a join.
+     */
+    private boolean joinConditionIgnored;
+
     private String planIndexName;
     private TimerStats timerDuration;
 
+    /**
+     * The operators of the query profile, or null if the query is not
+     * profiled.
+     */
+    private QueryProfile.Operator cursorOperator, readOperator;
+    private QueryProfile.Operator[] constraintOperators;
+
     private CachedTree cachedTree;
 
     private boolean updateTotalQueryHistogram = true;
@@ -340,17 +358,72 @@ public class SelectorImpl extends SourceImpl {
         }
     }
     
+    /**
+     * Get the best execution plan to read the rows of this selector, ignoring
+     * the join condition. Such a plan is used to build a lookup table for a
+     * join, instead of executing the selector once for each row of the other
+     * side of the join.
+     *
+     * @return the execution plan
+     */
+    SelectorExecutionPlan prepareWithoutJoinCondition() {
+        joinConditionIgnored = true;
+        try {
+            return query.getAlternativeSelectorExecutionPlan(createFilter(true));
+        } finally {
+            joinConditionIgnored = false;
+        }
+    }
+
     @Override
     public void execute(NodeState rootState) {
         long start = startTimer();
         try {
-            executeInternal(rootState);
+            joinConditionIgnored = false;
+            executeInternal(rootState, plan);
+        } finally {
+            stopTimer(start, true);
+        }
+    }
+
+    /**
+     * Execute the selector using the given plan, ignoring the join condition.
+     *
+     * @param rootState the root state
+     * @param p the plan, as returned by {@link #prepareWithoutJoinCondition()}
+     */
+    void executeWithoutJoinCondition(NodeState rootState, SelectorExecutionPlan p) {
+        long start = startTimer();
+        try {
+            joinConditionIgnored = true;
+            executeInternal(rootState, p);
         } finally {
             stopTimer(start, true);
         }
     }
+
+    /**
+     * Iterate over the given rows, that were read before. The rows are
+     * evaluated again, including the join condition.
+     *
+     * @param rows the rows
+     */
+    void executeRows(Iterable<IndexRow> rows) {
+        joinConditionIgnored = false;
+        cursor = Cursors.newRowCursor(rows);
+    }
+
+    /**
+     * Get the current row.
+     *
+     * @return the row, or null
+     */
+    @Nullable
+    IndexRow currentIndexRow() {
+        return cursor == null ? null : currentRow;
+    }
     
-    private void executeInternal(NodeState rootState) {
+    private void executeInternal(NodeState rootState, SelectorExecutionPlan plan) {
         QueryIndex index = plan.getIndex();
         timerDuration = null;
         if (index == null) {
@@ -374,10 +447,77 @@ public class SelectorImpl extends SourceImpl {
         if (prefetchCount > 0) {
             PrefetchNodeStore store = query.getExecutionContext().getPrefetchNodeStore();
             cursor = Cursors.newPrefetchCursor(cursor, store, prefetchCount,
-                    rootState, query.getQueryOptions().prefetch);
+                    rootState, getPrefetchRelativePaths());
+        }
+        Executor readAhead = query.getReadAheadExecutor();
+        if (readAhead != null) {
+            cursor = Cursors.newReadAheadCursor(cursor, readAhead,
+                    QueryEngineSettings.READ_AHEAD_BATCH_SIZE);
+        }
+        QueryProfile profile = query.getQueryExecutionStats().getProfile();
+        if (profile != null) {
+            startProfile(profile);
         }
     }
+
+    private void startProfile(QueryProfile profile) {
+        if (cursorOperator == null) {
+            // for joins, the selector can be executed multiple times
+            String name = quote(selectorName);
+            cursorOperator = profile.newOperator(QueryProfile.Kind.CURSOR,
+                    name + " " + planIndexName);
+            readOperator = profile.newOperator(QueryProfile.Kind.READ,
+                    name + " read");
+            constraintOperators = new QueryProfile.Operator[selectorConstraints.size()];
+            for (int i = 0; i < constraintOperators.length; i++) {
+                constraintOperators[i] = profile.newOperator(QueryProfile.Kind.CONSTRAINT,
+                        selectorConstraints.get(i).toString());
+            }
+        }
+        cursor = Cursors.newProfilingCursor(cursor, cursorOperator);
+    }
     
+    /**
+     * Get the relative paths of the nodes to prefetch for each row: the paths
+     * set in the query options, and the parent nodes of relative properties
+     * that are needed to evaluate the conditions of this selector or the
+     * order, for example "jcr:content" for "[jcr:content/title] = $title".
+     *
+     * @return the relative paths
+     */
+    List<String> getPrefetchRelativePaths() {
+        Set<String> paths = new LinkedHashSet<String>(query.getQueryOptions().prefetch);
+        for (ConstraintImpl c : selectorConstraints) {
+            for (PropertyExistenceImpl p : c.getPropertyExistenceConditions()) {
+                addPrefetchRelativePath(paths, p);
+            }
+        }
+        OrderingImpl[] orderings = query.getOrderings();
+        if (orderings != null) {
+            for (OrderingImpl o : orderings) {
+                addPrefetchRelativePath(paths, o.getOperand().getPropertyExistence());
+            }
+        }
+        return new ArrayList<String>(paths);
+    }
+
+    private void addPrefetchRelativePath(Set<String> target, PropertyExistenceImpl p) {
+        if (p == null || !p.getSelectors().contains(this)) {
+            return;
+        }
+        String name = p.getPropertyName();
+        if (name.indexOf('/') < 0 || name.indexOf('*') >= 0) {
+            return;
+        }
+        String relativePath = PathUtils.getParentPath(normalizePropertyName(name));
+        for (String e : PathUtils.elements(relativePath)) {
+            if (e.equals("..") || e.equals(".")) {
+                return;
+            }
+        }
+        target.add(relativePath);
+    }
+
     private long startTimer() {
         if (TIMER_DISABLED) {
             return -1;
@@ -463,9 +603,9 @@ public class SelectorImpl extends SourceImpl {
      */
     @Override
     public FilterImpl createFilter(boolean preparing) {
-        FilterImpl f = new FilterImpl(this, query.getStatement(), query.getSettings());
+        FilterImpl f = new FilterImpl(this, query.getStatement(), query.getQueryLimits());
         f.setPreparing(preparing);
-        if (joinCondition != null) {
+        if (joinCondition != null && !joinConditionIgnored) {
             joinCondition.restrict(f);
         }
         // rep:excerpt handling: create a (fake) restriction
@@ -531,8 +671,9 @@ public class SelectorImpl extends SourceImpl {
             query.getQueryExecutionStats().scan(1, scanCount);
             try {
                 totalQueryStats(query.getSettings());
+                FilterIterators.checkCancelled(query.getQueryLimits());
                 currentRow = cursor.next();
-            } catch (RuntimeNodeTraversalException e) {
+            } catch (RuntimeNodeTraversalException | QueryCancelledException e) {
                 addSlowQueryStats(query.getSettings());
                 LOG.warn(e.getMessage() + " for query " + query.getStatement());
                 throw e;
@@ -560,7 +701,7 @@ public class SelectorImpl extends SourceImpl {
                 // where [a].[jcr:path] = $path"
                 // because not checking would reveal existence
                 // of the child node
-                if (!getCachedTree(currentRow.getPath()).exists()) {
+                if (!isReadable(currentRow.getPath())) {
                     continue;
                 }
             }
@@ -573,6 +714,16 @@ public class SelectorImpl extends SourceImpl {
         return false;
     }
 
+    private boolean isReadable(String path) {
+        if (readOperator == null) {
+            return getCachedTree(path).exists();
+        }
+        long start = System.nanoTime();
+        boolean result = getCachedTree(path).exists();
+        readOperator.add(System.nanoTime() - start, 1, result ? 1 : 0);
+        return result;
+    }
+
     private void totalQueryStats(QueryEngineSettings queryEngineSettings) {
         if (updateTotalQueryHistogram) {
             updateTotalQueryHistogram = false;
@@ -588,6 +739,16 @@ public class SelectorImpl extends SourceImpl {
         slowQueryCounter.inc();
     }
 
+    private boolean evaluate(ConstraintImpl constraint, int index) {
+        if (constraintOperators == null) {
+            return constraint.evaluate();
+        }
+        long start = System.nanoTime();
+        boolean result = constraint.evaluate();
+        constraintOperators[index].add(System.nanoTime() - start, 1, result ? 1 : 0);
+        return result;
+    }
+
     private boolean evaluateCurrentRow() {
         if (currentRow.isVirtualRow()) {
             //null path implies that all checks are already done -- we just need to pass it through
@@ -596,8 +757,9 @@ public class SelectorImpl extends SourceImpl {
         if (!matchesAllTypes && !evaluateTypeMatch()) {
             return false;
         }
-        for (ConstraintImpl constraint : selectorConstraints) {
-            if (!constraint.evaluate()) {
+        for (int i = 0; i < selectorConstraints.size(); i++) {
+            ConstraintImpl constraint = selectorConstraints.get(i);
+            if (!evaluate(constraint, i)) {
                 if (constraint.evaluateStop()) {
                     // stop processing from now on
                     cursor = null;
@@ -605,7 +767,7 @@ public class SelectorImpl extends SourceImpl {
                 return false;
             }
         }
-        if (joinCondition != null && !joinCondition.evaluate()) {
+        if (joinCondition != null && !joinConditionIgnored && !joinCondition.evaluate()) {
             return false;
         }
         return true;
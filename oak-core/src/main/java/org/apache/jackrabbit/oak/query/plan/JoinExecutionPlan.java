@@ -27,12 +27,19 @@ public class JoinExecutionPlan implements ExecutionPlan {
     private final JoinImpl join;
     private final ExecutionPlan leftPlan, rightPlan;
     private final double estimatedCost;
+    private final SelectorExecutionPlan lookupPlan;
     
     public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan, double estimatedCost) {
+        this(join, leftPlan, rightPlan, estimatedCost, null);
+    }
+    
+    public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan,
+            double estimatedCost, SelectorExecutionPlan lookupPlan) {
         this.join = join;
         this.leftPlan = leftPlan;
         this.rightPlan = rightPlan;
         this.estimatedCost = estimatedCost;
+        this.lookupPlan = lookupPlan;
     }
     
     @Override
@@ -52,4 +59,16 @@ public class JoinExecutionPlan implements ExecutionPlan {
         return rightPlan;
     }
 
+    /**
+     * Get the plan to read all rows of the right hand side selector once, in
+     * order to build a lookup table (hash join), instead of executing the
+     * right hand side once for each row of the left hand side (nested loop
+     * join).
+     *
+     * @return the plan, or null if a nested loop join is used
+     */
+    public SelectorExecutionPlan getLookupPlan() {
+        return lookupPlan;
+    }
+
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.stats.HistogramStats;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.jackrabbit.oak.stats.StatsOptions;
+
+/**
+ * The time spent and the number of rows processed by each operator of one
+ * query execution, similar to "explain analyze" in relational databases.
+ * Profiles are only collected for a sample of the queries (and for "measure"
+ * queries), as measuring the time of each row is not free.
+ * <p>
+ * Each operator is only updated by one thread at a time.
+ */
+public class QueryProfile {
+
+    /**
+     * The kind of an operator. The time of each kind is also recorded in a
+     * histogram.
+     */
+    public enum Kind {
+
+        /**
+         * Reading the rows from the index (or traversing).
+         */
+        CURSOR("QUERY_PROFILE_CURSOR"),
+
+        /**
+         * Loading the nodes, including the access control check.
+         */
+        READ("QUERY_PROFILE_READ"),
+
+        /**
+         * Evaluating a condition.
+         */
+        CONSTRAINT("QUERY_PROFILE_CONSTRAINT"),
+
+        /**
+         * Sorting, removing duplicates, offset and limit.
+         */
+        SORT("QUERY_PROFILE_SORT");
+
+        private final String histogramName;
+
+        Kind(String histogramName) {
+            this.histogramName = histogramName;
+        }
+
+    }
+
+    /**
+     * The statistics of one operator.
+     */
+    public static class Operator {
+
+        private final Kind kind;
+        private final String name;
+        private long nanos;
+        private long rowsIn;
+        private long rowsOut;
+
+        Operator(Kind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        /**
+         * Record that rows were processed.
+         *
+         * @param nanos the time in nanoseconds
+         * @param in the number of rows that were processed
+         * @param out the number of rows that were returned
+         */
+        public void add(long nanos, long in, long out) {
+            this.nanos += nanos;
+            this.rowsIn += in;
+            this.rowsOut += out;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getRowsIn() {
+            return rowsIn;
+        }
+
+        public long getRowsOut() {
+            return rowsOut;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.3f ms, rows %d -> %d",
+                    name, nanos / 1000000.0, rowsIn, rowsOut);
+        }
+
+    }
+
+    private final StatisticsProvider statisticsProvider;
+    private final List<Operator> operators = new ArrayList<Operator>();
+
+    public QueryProfile(StatisticsProvider statisticsProvider) {
+        this.statisticsProvider = statisticsProvider;
+    }
+
+    /**
+     * Add an operator. Operators with the same name (for example the
+     * selectors of different branches of a union) are kept separately.
+     *
+     * @param kind the kind
+     * @param name the name, for example the selector and the index
+     * @return the operator
+     */
+    public synchronized Operator newOperator(Kind kind, String name) {
+        Operator op = new Operator(kind, name);
+        operators.add(op);
+        return op;
+    }
+
+    public synchronized List<Operator> getOperators() {
+        return new ArrayList<Operator>(operators);
+    }
+
+    /**
+     * Record the time of each operator in the histograms.
+     */
+    void recordHistograms() {
+        for (Operator op : getOperators()) {
+            HistogramStats h = statisticsProvider.getHistogram(
+                    op.kind.histogramName, StatsOptions.METRICS_ONLY);
+            h.update(TimeUnit.NANOSECONDS.toMicros(op.nanos));
+        }
+    }
+
+    /**
+     * Get the profile as text, one operator per line.
+     *
+     * @return the text
+     */
+    @Override
+    public String toString() {
+        StringBuilder buff = new StringBuilder();
+        for (Operator op : getOperators()) {
+            if (buff.length() > 0) {
+                buff.append('\n');
+            }
+            buff.append(op);
+        }
+        return buff.toString();
+    }
+
+}
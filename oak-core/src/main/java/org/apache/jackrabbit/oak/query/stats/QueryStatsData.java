@@ -16,9 +16,13 @@
  */
 package org.apache.jackrabbit.oak.query.stats;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 
 public class QueryStatsData {
+
+    private static final AtomicLong NEXT_EXECUTION_ID = new AtomicLong();
     
     private final String query;
     private final String language;
@@ -44,6 +48,11 @@ public class QueryStatsData {
     private long maxTimeNanos;
     private boolean captureStackTraces;
 
+    /**
+     * The profile of the last profiled execution, or null.
+     */
+    private volatile String lastProfile;
+
     public QueryStatsData(String query, String language) {
         this.query = query;
         this.language = language;
@@ -114,6 +123,10 @@ public class QueryStatsData {
     public long getLastExecutedMillis() {
         return lastExecutedMillis;
     }
+
+    public String getLastProfile() {
+        return lastProfile;
+    }
     
     @Override
     public String toString() {
@@ -132,6 +145,7 @@ public class QueryStatsData {
             key("query").value(query).
             key("language").value(language).
             key("lastThreadName").value(lastThreadName).
+            key("lastProfile").value(lastProfile).
         endObject().toString();
     }
     
@@ -139,9 +153,21 @@ public class QueryStatsData {
         return String.format("%tF %tT", timeMillis, timeMillis);
     }
 
+    /**
+     * The statistics of one execution of a query. This is also the handle
+     * used to cancel the query.
+     */
     public class QueryExecutionStats {
         
         long time;
+
+        private final long id = NEXT_EXECUTION_ID.incrementAndGet();
+        private final long startMillis = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private volatile long timeoutMillis;
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile QueryProfile profile;
         
         public void execute(long nanos) {
             QueryRecorder.record(query, internal);
@@ -179,6 +205,101 @@ public class QueryStatsData {
             totalRowsScanned += count;
             maxRowsScanned = Math.max(maxRowsScanned, max);
         }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public QueryStatsData getQueryStatsData() {
+            return QueryStatsData.this;
+        }
+
+        /**
+         * Set the maximum time the query may run, measured from the time the
+         * query was parsed.
+         *
+         * @param timeoutMillis the timeout in milliseconds, or 0 for no timeout
+         */
+        public void setTimeout(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * Cancel the query. Reading more rows will fail.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Whether the query was cancelled, or ran for longer than the timeout.
+         *
+         * @return true if the query should stop
+         */
+        public boolean isCancelled() {
+            if (cancelled) {
+                return true;
+            }
+            long timeout = timeoutMillis;
+            if (timeout > 0 && System.currentTimeMillis() - startMillis > timeout) {
+                cancelled = true;
+            }
+            return cancelled;
+        }
+
+        /**
+         * Collect a profile for this execution.
+         *
+         * @param profile the (empty) profile
+         */
+        public void setProfile(QueryProfile profile) {
+            this.profile = profile;
+        }
+
+        /**
+         * Get the profile of this execution.
+         *
+         * @return the profile, or null if this execution is not profiled
+         */
+        public QueryProfile getProfile() {
+            return profile;
+        }
+
+        /**
+         * Mark the query as finished (all rows were read).
+         */
+        public void finished() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            QueryProfile p = profile;
+            if (p != null) {
+                p.recordHistograms();
+                lastProfile = p.toString();
+            }
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public String toString() {
+            return new JsopBuilder().object().
+                key("id").value(id).
+                key("startMillis").value(getTimeString(startMillis)).
+                key("elapsedMillis").value(System.currentTimeMillis() - startMillis).
+                key("cancelled").value(cancelled).
+                key("query").value(query).
+                key("language").value(language).
+                key("thread").value(threadName).
+            endObject().toString();
+        }
     }
 
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package org.apache.jackrabbit.oak.query.stats;
 import javax.management.openmbean.TabularData;
 
 import org.apache.jackrabbit.oak.api.jmx.Description;
+import org.apache.jackrabbit.oak.api.jmx.Name;
 
 public interface QueryStatsMBean {
 
@@ -54,5 +55,95 @@ public interface QueryStatsMBean {
     void setCaptureStackTraces(boolean captureStackTraces);
     
     boolean getCaptureStackTraces();
+
+    @Description("Get the number of times query result rows were written to a temporary file, because they did not fit in memory.")
+    long getSpillCount();
+
+    @Description("Get the number of query result rows that were written to temporary files.")
+    long getSpilledRowCount();
+
+    @Description("Get the number of times the index for a query was found in the plan cache.")
+    long getPlanCacheHitCount();
+
+    @Description("Get the number of times the index for a query was not found in the plan cache.")
+    long getPlanCacheMissCount();
+
+    @Description("Get the number of plan cache entries that were evicted, because the cache was full.")
+    long getPlanCacheEvictionCount();
+
+    @Description("Get the number of plan cache entries that were removed, because the indexes changed.")
+    long getPlanCacheInvalidationCount();
+
+    @Description("Get the number of entries in the plan cache.")
+    int getPlanCacheSize();
+
+    @Description("Get the maximum number of entries in the plan cache (0 if disabled).")
+    int getPlanCacheMaxSize();
+
+    /**
+     * Change the maximum number of entries in the plan cache. The least
+     * recently used entries are evicted first.
+     * 
+     * @param maxSize the new maximum, or 0 to disable the cache
+     */
+    @Description("Set the maximum number of entries in the plan cache (0 to disable).")
+    void setPlanCacheMaxSize(int maxSize);
+
+    @Description("Remove all entries from the plan cache.")
+    void clearPlanCache();
+
+    /**
+     * Get the queries that are currently running, that is, queries where not
+     * all rows were read yet, and the result is still in use.
+     *
+     * @return the running queries as Json
+     */
+    @Description("Get the queries that are currently running, as Json.")
+    String getRunningQueries();
+
+    /**
+     * Cancel a running query. Reading more rows of the result fails, and
+     * index lookups and traversals of the query stop.
+     *
+     * @param id the id of the query, as listed in the running queries
+     * @return true if the query was found
+     */
+    @Description("Cancel a running query. Returns false if the query is not running.")
+    boolean cancelQuery(@Name("id") @Description("the id of the query") long id);
+
+    @Description("Get the maximum time in milliseconds a query may run (0 for no limit).")
+    long getQueryTimeout();
+
+    /**
+     * Change the maximum time a query may run. Queries that run longer are
+     * cancelled. This applies to queries that are parsed after the change.
+     *
+     * @param timeoutMillis the timeout in milliseconds, or 0 for no limit
+     */
+    @Description("Set the maximum time in milliseconds a query may run (0 for no limit).")
+    void setQueryTimeout(long timeoutMillis);
+
+    /**
+     * Get the profiles of the queries that were profiled: the time spent and
+     * the number of rows processed by each operator (reading the index,
+     * loading the nodes, evaluating each condition, sorting), of the last
+     * profiled execution of each query.
+     *
+     * @return the profiles as Json, slowest queries first
+     */
+    @Description("Get the time and number of rows of each operator of the profiled queries, as Json.")
+    String getQueryProfiles();
+
+    @Description("Get the sample rate for query profiles (0 if disabled).")
+    int getProfileSampleRate();
+
+    /**
+     * Change how many queries are profiled.
+     *
+     * @param sampleRate 1 to profile every query, n to profile every nth
+     *            query, or 0 to disable profiling
+     */
+    @Description("Set the sample rate for query profiles: profile every nth query (0 to disable).")
+    void setProfileSampleRate(int sampleRate);
     
 }
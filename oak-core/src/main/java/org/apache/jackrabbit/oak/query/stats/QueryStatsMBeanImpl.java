@@ -16,10 +16,14 @@
  */
 package org.apache.jackrabbit.oak.query.stats;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.CompositeType;
@@ -31,6 +35,7 @@ import javax.management.openmbean.TabularDataSupport;
 import javax.management.openmbean.TabularType;
 
 import org.apache.jackrabbit.oak.commons.jmx.AnnotatedStandardMBean;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
 import org.slf4j.Logger;
@@ -50,7 +55,16 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
             Integer.getInteger("oak.query.maxQuerySize", 2048);
     private final ConcurrentSkipListMap<String, QueryStatsData> statistics = 
             new ConcurrentSkipListMap<String, QueryStatsData>();
+    /**
+     * The queries that are running. Weak references are used, so that
+     * queries where the result is no longer used are removed.
+     */
+    private final ConcurrentHashMap<Long, WeakReference<QueryExecutionStats>> running =
+            new ConcurrentHashMap<Long, WeakReference<QueryExecutionStats>>();
     private final QueryEngineSettings settings;
+    private final AtomicLong spillCount = new AtomicLong();
+    private final AtomicLong spilledRowCount = new AtomicLong();
+    private final AtomicLong executionCount = new AtomicLong();
     private boolean captureStackTraces;
     private int evictionCount;
 
@@ -95,6 +109,9 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
     @Override
     public void resetStats() {
         statistics.clear();
+        spillCount.set(0);
+        spilledRowCount.set(0);
+        settings.getQueryPlanCache().resetStats();
     }
     
     @Override
@@ -107,6 +124,161 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         return captureStackTraces;
     }
     
+    @Override
+    public long getSpillCount() {
+        return spillCount.get();
+    }
+
+    @Override
+    public long getSpilledRowCount() {
+        return spilledRowCount.get();
+    }
+
+    @Override
+    public void spilled(long count) {
+        spillCount.incrementAndGet();
+        spilledRowCount.addAndGet(count);
+    }
+
+    @Override
+    public long getPlanCacheHitCount() {
+        return settings.getQueryPlanCache().getHitCount();
+    }
+
+    @Override
+    public long getPlanCacheMissCount() {
+        return settings.getQueryPlanCache().getMissCount();
+    }
+
+    @Override
+    public long getPlanCacheEvictionCount() {
+        return settings.getQueryPlanCache().getEvictionCount();
+    }
+
+    @Override
+    public long getPlanCacheInvalidationCount() {
+        return settings.getQueryPlanCache().getInvalidationCount();
+    }
+
+    @Override
+    public int getPlanCacheSize() {
+        return settings.getQueryPlanCache().size();
+    }
+
+    @Override
+    public int getPlanCacheMaxSize() {
+        return settings.getQueryPlanCache().getMaxSize();
+    }
+
+    @Override
+    public void setPlanCacheMaxSize(int maxSize) {
+        settings.getQueryPlanCache().setMaxSize(maxSize);
+    }
+
+    @Override
+    public void clearPlanCache() {
+        settings.getQueryPlanCache().clear();
+    }
+
+    @Override
+    public String getRunningQueries() {
+        ArrayList<QueryExecutionStats> list = getRunning();
+        Collections.sort(list, new Comparator<QueryExecutionStats>() {
+            @Override
+            public int compare(QueryExecutionStats o1, QueryExecutionStats o2) {
+                return Long.compare(o1.getStartMillis(), o2.getStartMillis());
+            }
+        });
+        StringBuilder buff = new StringBuilder();
+        buff.append("[\n");
+        int i = 0;
+        for (QueryExecutionStats e : list) {
+            if (i++ > 0) {
+                buff.append(",\n");
+            }
+            buff.append(e.toString());
+        }
+        return buff.append("\n]\n").toString();
+    }
+
+    @Override
+    public boolean cancelQuery(long id) {
+        WeakReference<QueryExecutionStats> ref = running.get(id);
+        QueryExecutionStats e = ref == null ? null : ref.get();
+        if (e == null || e.isFinished()) {
+            return false;
+        }
+        log.info("Cancelling query {}", e);
+        e.cancel();
+        return true;
+    }
+
+    @Override
+    public long getQueryTimeout() {
+        return settings.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(long timeoutMillis) {
+        settings.setQueryTimeout(timeoutMillis);
+    }
+
+    @Override
+    public String getQueryProfiles() {
+        ArrayList<QueryStatsData> list = new ArrayList<QueryStatsData>();
+        for (QueryStatsData s : statistics.values()) {
+            if (s.getLastProfile() != null) {
+                list.add(s);
+            }
+        }
+        Collections.sort(list, new Comparator<QueryStatsData>() {
+            @Override
+            public int compare(QueryStatsData o1, QueryStatsData o2) {
+                return -Long.compare(o1.getMaxTimeNanos(), o2.getMaxTimeNanos());
+            }
+        });
+        JsopBuilder buff = new JsopBuilder().array();
+        for (QueryStatsData s : list) {
+            buff.object().
+                key("query").value(s.getQuery()).
+                key("language").value(s.getLanguage()).
+                key("maxTimeMillis").value(s.getMaxTimeNanos() / 1000000).
+                key("profile").value(s.getLastProfile()).
+            endObject();
+        }
+        return buff.endArray().toString();
+    }
+
+    @Override
+    public int getProfileSampleRate() {
+        return settings.getProfileSampleRate();
+    }
+
+    @Override
+    public void setProfileSampleRate(int sampleRate) {
+        settings.setProfileSampleRate(sampleRate);
+    }
+
+    /**
+     * Get the running queries, and remove the entries of queries that are
+     * no longer running.
+     *
+     * @return the running queries
+     */
+    private ArrayList<QueryExecutionStats> getRunning() {
+        ArrayList<QueryExecutionStats> list = new ArrayList<QueryExecutionStats>();
+        Iterator<WeakReference<QueryExecutionStats>> it = running.values().iterator();
+        while (it.hasNext()) {
+            QueryExecutionStats e = it.next().get();
+            if (e == null || e.isFinished()) {
+                it.remove();
+            } else {
+                list.add(e);
+            }
+        }
+        return list;
+    }
+
     @Override
     public String asJson() {
         ArrayList<QueryStatsData> list = new ArrayList<QueryStatsData>(statistics.values());
@@ -149,7 +321,17 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
             stats = s2;
         }
         stats.setCaptureStackTraces(captureStackTraces);
-        return stats.new QueryExecutionStats();
+        if (running.size() > MAX_STATS_DATA) {
+            getRunning();
+        }
+        QueryExecutionStats execution = stats.new QueryExecutionStats();
+        execution.setTimeout(settings.getQueryTimeout());
+        int sampleRate = settings.getProfileSampleRate();
+        if (sampleRate > 0 && executionCount.getAndIncrement() % sampleRate == 0) {
+            execution.setProfile(new QueryProfile(settings.getStatisticsProvider()));
+        }
+        running.put(execution.getId(), new WeakReference<QueryExecutionStats>(execution));
+        return execution;
     }
 
     private void evict() {
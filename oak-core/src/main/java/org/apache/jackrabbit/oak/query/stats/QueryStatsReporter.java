@@ -21,5 +21,13 @@ import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
 public interface QueryStatsReporter {
 
     QueryExecutionStats getQueryExecution(String statement, String language);
+
+    /**
+     * Record that query result rows were written to a temporary file, because
+     * they did not fit in memory.
+     *
+     * @param count the number of rows
+     */
+    void spilled(long count);
     
 }
@@ -55,6 +55,8 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.openmbean.CompositeData;
 
+import com.codahale.metrics.Histogram;
+
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
@@ -170,6 +172,111 @@ public class AsyncIndexUpdateTest {
         assertEquals(ImmutableSet.of("testRoot"), find(lookup, "foo", "abc"));
     }
 
+    @Test
+    public void testAsyncWithReadAhead() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        IndexEditorProvider provider = new PropertyIndexEditorProvider();
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        for (int i = 0; i < 10; i++) {
+            builder.child("testRoot" + i).child("child").setProperty("foo", "abc" + i);
+        }
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, provider);
+        async.setDiffReadAheadThreads(2);
+        async.run();
+
+        builder = store.getRoot().builder();
+        builder.child("testRoot1").child("child").setProperty("foo", "def");
+        builder.child("testRoot2").remove();
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        async.run();
+
+        PropertyIndexLookup lookup = new PropertyIndexLookup(store.getRoot());
+        assertEquals(ImmutableSet.of("testRoot0/child"), find(lookup, "foo", "abc0"));
+        assertEquals(ImmutableSet.of("testRoot1/child"), find(lookup, "foo", "def"));
+        assertEquals(ImmutableSet.of(), find(lookup, "foo", "abc1"));
+        assertEquals(ImmutableSet.of(), find(lookup, "foo", "abc2"));
+        async.close();
+    }
+
+    @Test
+    public void changeReadAheadThreadsWhileRunning() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        AtomicReference<AsyncIndexUpdate> asyncRef = new AtomicReference<>();
+        IndexEditorProvider provider = new PropertyIndexEditorProvider() {
+            @Override
+            public Editor getIndexEditor(@NotNull String type, @NotNull NodeBuilder definition,
+                                         @NotNull NodeState root, @NotNull IndexUpdateCallback callback) {
+                // the threads in use must not be closed while the index is updated
+                asyncRef.get().setDiffReadAheadThreads(1);
+                return super.getIndexEditor(type, definition, root, callback);
+            }
+        };
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        for (int i = 0; i < 100; i++) {
+            builder.child("testRoot" + i).child("child").setProperty("foo", "abc" + i);
+        }
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, provider);
+        asyncRef.set(async);
+        async.setDiffReadAheadThreads(2);
+        async.run();
+        assertFalse(async.isFailing());
+
+        builder = store.getRoot().builder();
+        builder.child("testRoot1").child("child").setProperty("foo", "def");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        async.run();
+        assertFalse(async.isFailing());
+
+        PropertyIndexLookup lookup = new PropertyIndexLookup(store.getRoot());
+        assertEquals(ImmutableSet.of("testRoot0/child"), find(lookup, "foo", "abc0"));
+        assertEquals(ImmutableSet.of("testRoot1/child"), find(lookup, "foo", "def"));
+        async.close();
+    }
+
+    @Test
+    public void indexerLag() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        IndexEditorProvider provider = new PropertyIndexEditorProvider();
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        builder.child("testRoot").setProperty("foo", "abc");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, provider, statsProvider, false);
+        Histogram lag = statsProvider.getRegistry().histogram("async.INDEXER_LAG");
+        // the first cycle has no previous indexed time
+        async.run();
+        assertEquals(0, lag.getCount());
+
+        // the changes since the previous indexed time (an hour ago) are indexed
+        Calendar hourAgo = Calendar.getInstance();
+        hourAgo.setTimeInMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        builder = store.getRoot().builder();
+        builder.child(ASYNC).setProperty(AsyncIndexUpdate.lastIndexedTo("async"),
+                ISO8601.format(hourAgo), Type.DATE);
+        builder.child("testRoot").setProperty("foo", "def");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        async.run();
+        assertEquals(1, lag.getCount());
+        assertTrue(lag.getSnapshot().getMax() >= TimeUnit.HOURS.toMillis(1));
+        async.close();
+    }
+
     /**
      * Async Index Test with 2 index defs at the same location
      * <ul>
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+public class DiffReadAheadTest {
+
+    @Test
+    public void readAdded() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder a = builder.child("a" + i);
+            for (int j = 0; j < 10; j++) {
+                a.child("b" + j);
+            }
+        }
+        // hidden nodes are not read
+        NodeBuilder hidden = builder.child(":hidden");
+        for (int i = 0; i < 100; i++) {
+            hidden.child("c" + i);
+        }
+        NodeState after = builder.getNodeState();
+
+        DiffReadAhead readAhead = new DiffReadAhead("async", 4, Long.MAX_VALUE);
+        readAhead.start(MISSING_NODE, after, () -> 0);
+        assertTrue(readAhead.awaitCompletion(10000));
+        // the nodes that are used to split the changes are not counted
+        assertEquals(100, readAhead.getReadCount());
+
+        // the threads are reused for the next index update
+        readAhead.start(MISSING_NODE, after, () -> 0);
+        assertTrue(readAhead.awaitCompletion(10000));
+        assertEquals(100, readAhead.getReadCount());
+        readAhead.close();
+    }
+
+    @Test
+    public void readChanged() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 10; i++) {
+            builder.child("content").child("n" + i).child("x");
+        }
+        NodeState before = builder.getNodeState();
+        builder = before.builder();
+        builder.child("content").child("n1").child("x").setProperty("p", 1);
+        builder.child("content").child("n2").remove();
+        builder.child("content").child("n3").child("y").child("z");
+        NodeState after = builder.getNodeState();
+
+        DiffReadAhead readAhead = new DiffReadAhead("async", 1, Long.MAX_VALUE);
+        readAhead.start(before, after, () -> 0);
+        assertTrue(readAhead.awaitCompletion(10000));
+        // n1/x, n2/x, n3/y, n3/y/z
+        assertEquals(4, readAhead.getReadCount());
+        readAhead.close();
+    }
+
+    @Test
+    public void bounded() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.child("n" + i);
+        }
+        NodeState after = builder.getNodeState();
+
+        AtomicLong progress = new AtomicLong();
+        DiffReadAhead readAhead = new DiffReadAhead("async", 1, 10);
+        readAhead.start(MISSING_NODE, after, progress::get);
+        // at most 10 nodes ahead of the index update
+        assertFalse(readAhead.awaitCompletion(500));
+        assertEquals(10, readAhead.getReadCount());
+        progress.set(50);
+        assertFalse(readAhead.awaitCompletion(500));
+        assertEquals(60, readAhead.getReadCount());
+        progress.set(100);
+        assertTrue(readAhead.awaitCompletion(10000));
+        assertEquals(100, readAhead.getReadCount());
+
+        // stopping releases the waiting threads
+        progress.set(0);
+        readAhead.start(MISSING_NODE, after, progress::get);
+        assertFalse(readAhead.awaitCompletion(100));
+        readAhead.stop();
+        readAhead.start(MISSING_NODE, after, () -> 100);
+        assertTrue(readAhead.awaitCompletion(10000));
+        assertEquals(100, readAhead.getReadCount());
+        readAhead.close();
+    }
+
+}
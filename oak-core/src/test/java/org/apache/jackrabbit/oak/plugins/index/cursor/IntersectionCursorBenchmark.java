@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+
+/**
+ * Compares intersecting large index results using the path set with the
+ * same operation using sets of path strings, and measures concatenating. The
+ * results are similar to property index results: many paths below a few
+ * common parents.
+ */
+public class IntersectionCursorBenchmark {
+
+    public static void main(String... args) {
+        for (int i = 0; i < 5; i++) {
+            test(1000000);
+        }
+    }
+
+    private static void test(int count) {
+        Random r = new Random(1);
+        List<String> a = new ArrayList<String>(count);
+        List<String> b = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            String p = "/content/site" + r.nextInt(10) + "/page" + i + "/jcr:content";
+            if (r.nextBoolean()) {
+                a.add(p);
+            }
+            if (r.nextBoolean()) {
+                b.add(p);
+            }
+        }
+        Collections.shuffle(a, r);
+        Collections.shuffle(b, r);
+        QueryEngineSettings settings = new QueryEngineSettings();
+        settings.setLimitInMemory(Long.MAX_VALUE);
+
+        long time = System.nanoTime();
+        Cursor c = Cursors.newIntersectionCursor(
+                new TestCursor(a.iterator()), new TestCursor(b.iterator()), settings);
+        int rows = 0;
+        while (c.hasNext()) {
+            c.next();
+            rows++;
+        }
+        time = System.nanoTime() - time;
+        System.out.println("intersection (path set): " + rows + " rows, " +
+                time / 1000000 + " ms");
+
+        time = System.nanoTime();
+        rows = intersectWithStrings(new TestCursor(a.iterator()), new TestCursor(b.iterator()));
+        time = System.nanoTime() - time;
+        System.out.println("intersection (strings): " + rows + " rows, " +
+                time / 1000000 + " ms");
+
+        time = System.nanoTime();
+        c = Cursors.newConcatCursor(Arrays.<Cursor>asList(
+                new TestCursor(a.iterator()), new TestCursor(b.iterator())), settings);
+        rows = 0;
+        while (c.hasNext()) {
+            c.next();
+            rows++;
+        }
+        time = System.nanoTime() - time;
+        System.out.println("concat (path set): " + rows + " rows, " +
+                time / 1000000 + " ms");
+    }
+
+    /**
+     * The algorithm of the intersection cursor, using sets of path strings.
+     */
+    private static int intersectWithStrings(Cursor first, Cursor second) {
+        HashMap<String, IndexRow> secondSet = new HashMap<String, IndexRow>();
+        HashSet<String> seen = new HashSet<String>();
+        int rows = 0;
+        outer:
+        while (first.hasNext()) {
+            String p = first.next().getPath();
+            if (seen.contains(p)) {
+                continue;
+            }
+            if (secondSet.remove(p) != null) {
+                seen.add(p);
+                rows++;
+                continue;
+            }
+            while (second.hasNext()) {
+                IndexRow s = second.next();
+                if (p.equals(s.getPath())) {
+                    seen.add(p);
+                    rows++;
+                    continue outer;
+                }
+                secondSet.put(s.getPath(), s);
+            }
+        }
+        return rows;
+    }
+
+}
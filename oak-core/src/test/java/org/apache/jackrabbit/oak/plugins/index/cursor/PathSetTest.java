@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the path set used to filter duplicate rows.
+ */
+public class PathSetTest {
+
+    @Test
+    public void differentStrings() {
+        String[] paths = { "", "/", "//", "a", "/a", "a/", "/a/", "//a",
+                "/a/b", "/a//b", "/ab", "/a/b/c" };
+        PathSet set = new PathSet();
+        for (String p : paths) {
+            assertTrue(p, set.add(p));
+        }
+        for (String p : paths) {
+            assertFalse(p, set.add(p));
+            assertTrue(p, set.contains(p));
+            assertEquals(p, set.getTable().getPath(set.getTable().getId(p)));
+        }
+        assertEquals(paths.length, set.size());
+        assertFalse(set.contains("/a/b/c/d"));
+        assertFalse(set.contains("/b"));
+    }
+
+    @Test
+    public void parentsAreNotContained() {
+        PathSet set = new PathSet();
+        set.add("/content/a/b");
+        assertFalse(set.contains("/content/a"));
+        assertFalse(set.contains("/content"));
+        assertTrue(set.add("/content"));
+        assertTrue(set.remove("/content"));
+        assertFalse(set.remove("/content"));
+        assertFalse(set.remove("/other"));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void sharedTable() {
+        PathSet a = new PathSet();
+        PathSet b = new PathSet(a.getTable());
+        a.add("/x");
+        assertFalse(b.contains("/x"));
+        assertTrue(b.add("/x"));
+        // the empty segment before the first '/', and "x"
+        assertEquals(2, a.getTable().size());
+    }
+
+    @Test
+    public void random() {
+        Random r = new Random(1);
+        PathSet set = new PathSet();
+        HashSet<String> expected = new HashSet<String>();
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder buff = new StringBuilder();
+            int depth = r.nextInt(5);
+            for (int j = 0; j < depth; j++) {
+                buff.append('/').append("n").append(r.nextInt(20));
+            }
+            String p = buff.toString();
+            if (r.nextInt(10) == 0) {
+                assertEquals(expected.remove(p), set.remove(p));
+            } else {
+                assertEquals(expected.add(p), set.add(p));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (String p : expected) {
+            assertTrue(set.contains(p));
+        }
+    }
+
+}
@@ -197,6 +197,8 @@ public class PrefetchCursorTest {
             assertEquals("/test/n" + i, pc.next().getPath().toString());
         }
         assertFalse(pc.hasNext());
+        // batches of 10, 20, 40, 80, 160, 320, and 640 rows
+        assertEquals(7, ns.getCalls());
     }
 
 }
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import static org.junit.Assert.assertEquals;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.RuntimeNodeTraversalException;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+public class ReadAheadCursorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void readAll() {
+        for (int count : new int[] { 0, 1, 9, 10, 11, 100 }) {
+            for (int batchSize : new int[] { 1, 3, 10 }) {
+                List<String> expected = paths(count);
+                Cursor c = Cursors.newReadAheadCursor(
+                        new TestCursor(expected.iterator()), executor, batchSize);
+                assertEquals(expected, read(c));
+                assertFalse(c.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void rejected() {
+        List<String> expected = paths(25);
+        Cursor c = Cursors.newReadAheadCursor(new TestCursor(expected.iterator()), r -> {
+            throw new RejectedExecutionException();
+        }, 10);
+        assertEquals(expected, read(c));
+    }
+
+    @Test
+    public void exception() {
+        Iterator<String> it = paths(15).iterator();
+        Cursor c = Cursors.newReadAheadCursor(new TestCursor(new Iterator<String>() {
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public String next() {
+                if (!it.hasNext()) {
+                    throw new IllegalArgumentException("failed");
+                }
+                return it.next();
+            }
+
+        }), executor, 10);
+        for (int i = 0; i < 10; i++) {
+            c.next();
+        }
+        try {
+            c.next();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void readLimit() {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.child("n" + i);
+        }
+        QueryEngineSettings settings = new QueryEngineSettings();
+        settings.setLimitReads(2500);
+        FilterImpl filter = new FilterImpl(null, null, settings);
+        filter.setPath("/");
+        Set<Thread> readers = ConcurrentHashMap.newKeySet();
+        Cursor traversing = Cursors.newTraversingCursor(filter, builder.getNodeState());
+        Cursor c = Cursors.newReadAheadCursor(new Cursor() {
+
+            @Override
+            public boolean hasNext() {
+                readers.add(Thread.currentThread());
+                return traversing.hasNext();
+            }
+
+            @Override
+            public IndexRow next() {
+                return traversing.next();
+            }
+
+            @Override
+            public long getSize(SizePrecision precision, long max) {
+                return traversing.getSize(precision, max);
+            }
+
+        }, executor, 100);
+        int count = 0;
+        try {
+            while (c.hasNext()) {
+                c.next();
+                count++;
+            }
+            fail();
+        } catch (RuntimeNodeTraversalException e) {
+            // thrown by the background thread, reported to the query thread
+            assertTrue(e.getMessage(), e.getMessage().contains("2500"));
+        }
+        assertTrue(count >= 2000 && count <= 3000);
+        assertFalse(readers.contains(Thread.currentThread()));
+    }
+
+    private static List<String> paths(int count) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add("/n" + i);
+        }
+        return list;
+    }
+
+    private static List<String> read(Cursor c) {
+        List<String> list = new ArrayList<>();
+        while (c.hasNext()) {
+            IndexRow r = c.next();
+            list.add(r.getPath());
+        }
+        return list;
+    }
+
+}
@@ -25,14 +25,21 @@ import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
 public class TestPrefetchNodeStore implements PrefetchNodeStore {
     
     private final TreeSet<String> prefetched = new TreeSet<String>();
+    private int calls;
 
     @Override
     public void prefetch(Collection<String> paths, NodeState rootState) {
         prefetched.addAll(paths);
+        calls++;
     }
     
     public void reset() {
         prefetched.clear();
+        calls = 0;
+    }
+
+    public int getCalls() {
+        return calls;
     }
     
     public String toString() {
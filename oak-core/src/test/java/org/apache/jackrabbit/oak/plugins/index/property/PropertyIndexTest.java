@@ -150,6 +150,36 @@ public class PropertyIndexTest {
      * The cost estimation is then verified to be same as that in {@code costEstimation} for query under {@code path1}
      * @throws Exception
      */
+    @Test
+    public void keyCountReindexed() throws Exception {
+        NodeState root = INITIAL_CONTENT;
+
+        NodeBuilder builder = root.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null);
+        NodeState before = builder.getNodeState();
+        builder.child("n0").setProperty("foo", "x");
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+
+        // the index content was built from scratch
+        NodeState content = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME);
+        assertTrue(content.hasProperty(ContentMirrorStoreStrategy.KEY_COUNT_REINDEXED_PROPERTY));
+
+        // an index content node without the marker (built before the key
+        // counter existed) is not marked by later changes
+        builder = indexed.builder();
+        builder.child(INDEX_DEFINITIONS_NAME).child("foo").child(INDEX_CONTENT_NODE_NAME)
+                .removeProperty(ContentMirrorStoreStrategy.KEY_COUNT_REINDEXED_PROPERTY);
+        before = builder.getNodeState();
+        builder.child("n1").setProperty("foo", "y");
+        indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        content = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME);
+        assertFalse(content.hasProperty(ContentMirrorStoreStrategy.KEY_COUNT_REINDEXED_PROPERTY));
+        assertEquals(-1, ContentMirrorStoreStrategy.getApproximateKeyCount(content));
+    }
+
     @Test
     public void pathBasedCostEstimation() throws Exception {
         NodeState root = INITIAL_CONTENT;
@@ -37,6 +37,7 @@ import org.apache.jackrabbit.guava.common.base.Supplier;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.counter.ApproximateCounter;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
@@ -323,6 +324,38 @@ public class ContentMirrorStoreStrategyTest {
         assertThat(copyOf(paths), containsInAnyOrder("/content/a", "/content/a/c"));
     }
 
+    @Test
+    public void distinctKeyCount() {
+        ContentMirrorStoreStrategy store = new ContentMirrorStoreStrategy();
+        NodeBuilder indexMeta = EMPTY_NODE.builder();
+        Supplier<NodeBuilder> index = memoize(() -> indexMeta.child(INDEX_CONTENT_NODE_NAME));
+        // 10000 distinct keys, with 5 entries each
+        for (int i = 0; i < 50000; i++) {
+            store.update(index, "n" + i, null, null, EMPTY, newHashSet("k" + i % 10000));
+        }
+        long keyCount = ApproximateCounter.getCountSync(
+                index.get().getNodeState(), ContentMirrorStoreStrategy.KEY_COUNT_PROPERTY_PREFIX);
+        assertInRange("Distinct key count", 10000, keyCount, 0.5);
+
+        indexMeta.setProperty(ENTRY_COUNT_PROPERTY_NAME, 50000L, Type.LONG);
+        // the index was not reindexed, so the keys that existed before
+        // might not be counted: the key counter is not used
+        long count = store.count(EMPTY_NODE, indexMeta.getNodeState(), newHashSet("k1"), 100);
+        Assert.assertEquals(50000 / 5 + 1, count);
+
+        // with the entry count set, the number of distinct keys is used
+        // to estimate the number of entries per key
+        index.get().setProperty(ContentMirrorStoreStrategy.KEY_COUNT_REINDEXED_PROPERTY, true);
+        count = store.count(EMPTY_NODE, indexMeta.getNodeState(), newHashSet("k1"), 100);
+        Assert.assertEquals(50000 / keyCount + 1, count);
+    }
+
+    private static void assertInRange(String msg, double expected, double actual, double allowedError) {
+        double diff = Math.abs(expected - actual);
+        Assert.assertTrue(msg + "; expected about " + expected + ", got " + actual, 
+                diff < expected * allowedError);
+    }
+
     private static void assertInRange(String msg, double expected, double actual) {
         double allowedError = 0.1;
         double diff = Math.abs(expected - actual);
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.apache.jackrabbit.guava.common.base.Suppliers.memoize;
+import static org.apache.jackrabbit.guava.common.collect.ImmutableList.copyOf;
+import static org.apache.jackrabbit.guava.common.collect.Sets.newHashSet;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.apache.jackrabbit.guava.common.base.Supplier;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Test;
+
+/**
+ * Test the sharded content mirror strategy
+ */
+public class ShardedContentMirrorStoreStrategyTest {
+
+    private static final Set<String> EMPTY = newHashSet();
+
+    private static final Set<String> KEY = newHashSet("key");
+
+    private static final Set<String> KEY2 = newHashSet("key2");
+
+    private final NodeBuilder indexMeta = EMPTY_NODE.builder();
+
+    private final Supplier<NodeBuilder> index =
+            memoize(() -> indexMeta.child(INDEX_CONTENT_NODE_NAME));
+
+    @Test
+    public void insertQueryRemove() {
+        ShardedContentMirrorStoreStrategy store =
+                new ShardedContentMirrorStoreStrategy(INDEX_CONTENT_NODE_NAME, 4);
+        for (int i = 0; i < 20; i++) {
+            store.update(index, "/content/n" + i, null, null, EMPTY, KEY);
+        }
+        store.update(index, "/content/n0", null, null, EMPTY, KEY2);
+
+        // the value node only contains shards
+        NodeBuilder key = index.get().getChildNode("key");
+        assertEquals(4, key.getChildNodeCount(10));
+        for (String name : key.getChildNodeNames()) {
+            assertTrue(name, name.startsWith(ShardedContentMirrorStoreStrategy.SHARD_PREFIX));
+        }
+        NodeBuilder shard = key.getChildNode(store.getShardName("/content/n3"));
+        assertTrue(shard.getChildNode("content").getChildNode("n3").getBoolean("match"));
+
+        assertEquals(20, copyOf(query(store, KEY)).size());
+        assertThat(copyOf(query(store, KEY2)), containsInAnyOrder("content/n0"));
+        // n0 is indexed for both values, but only returned once
+        assertEquals(20, copyOf(query(store, null)).size());
+
+        FilterImpl filter = FilterImpl.newTestInstance();
+        filter.restrictPath("/content/n1", Filter.PathRestriction.ALL_CHILDREN);
+        assertThat(copyOf(store.query(filter, null, indexMeta.getNodeState(), KEY)),
+                containsInAnyOrder("content/n1"));
+        store.update(index, "/content/n1/a", null, null, EMPTY, KEY);
+        assertThat(copyOf(store.query(filter, null, indexMeta.getNodeState(), KEY)),
+                containsInAnyOrder("content/n1", "content/n1/a"));
+
+        // remove everything: the index content is pruned
+        for (int i = 0; i < 20; i++) {
+            store.update(index, "/content/n" + i, null, null, KEY, EMPTY);
+        }
+        store.update(index, "/content/n1/a", null, null, KEY, EMPTY);
+        store.update(index, "/content/n0", null, null, KEY2, EMPTY);
+        assertEquals(0, index.get().getChildNodeCount(1));
+    }
+
+    @Test
+    public void entriesBeforeSharding() {
+        IndexStoreStrategy legacy = new ContentMirrorStoreStrategy();
+        legacy.update(index, "/a", null, null, EMPTY, KEY);
+        legacy.update(index, "/b/c", null, null, EMPTY, KEY);
+
+        ShardedContentMirrorStoreStrategy store =
+                new ShardedContentMirrorStoreStrategy(INDEX_CONTENT_NODE_NAME, 8);
+        store.update(index, "/b/d", null, null, EMPTY, KEY);
+        assertThat(copyOf(query(store, KEY)), containsInAnyOrder("a", "b/c", "b/d"));
+        assertThat(copyOf(query(store, null)), containsInAnyOrder("a", "b/c", "b/d"));
+
+        // readers that don't know about shards only see the old entries
+        assertThat(copyOf(query(legacy, KEY)), containsInAnyOrder("a", "b/c"));
+
+        // old entries are removed as well
+        store.update(index, "/b/c", null, null, KEY, EMPTY);
+        assertFalse(index.get().getChildNode("key").hasChildNode("b"));
+        assertThat(copyOf(query(store, KEY)), containsInAnyOrder("a", "b/d"));
+    }
+
+    private Iterable<String> query(IndexStoreStrategy store, Set<String> values) {
+        return store.query(FilterImpl.newTestInstance(), null, indexMeta.getNodeState(), values);
+    }
+
+}
@@ -21,8 +21,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
@@ -194,6 +196,196 @@ public class IteratorsTest {
 
 }
 
+    @Test
+    public void sortTopStable() {
+        // entries that are equal must be returned in the order they were read
+        Comparator<String> firstChar = new Comparator<String>() {
+
+            @Override
+            public int compare(String o1, String o2) {
+                return Character.compare(o1.charAt(0), o2.charAt(0));
+            }
+
+        };
+        assertEquals("a1, a2",
+                toString(FilterIterators.newSort(
+                it("c1", "b1", "a1", "b2", "a2", "c2", "a3"), firstChar, 2, settings)));
+        assertEquals("a1, a2, a3, b1",
+                toString(FilterIterators.newSort(
+                it("c1", "b1", "a1", "b2", "a2", "c2", "a3"), firstChar, 4, settings)));
+    }
+
+    @Test
+    public void sortSpill() {
+        IntegerSpill spill = new IntegerSpill(10);
+        Integer[] list = new Integer[1000];
+        Random r = new Random(1);
+        for (int i = 0; i < list.length; i++) {
+            list[i] = r.nextInt(500);
+        }
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(100);
+        Iterator<Integer> it = FilterIterators.newSort(it(list), INT_COMP, Integer.MAX_VALUE, s, spill);
+        int count = 0;
+        int old = Integer.MIN_VALUE;
+        while (it.hasNext()) {
+            int x = it.next();
+            assertTrue(x >= old);
+            old = x;
+            count++;
+        }
+        assertEquals(list.length, count);
+        assertEquals(list.length, spill.spilled);
+
+        // offset and limit
+        spill = new IntegerSpill(3);
+        assertEquals("2, 2",
+                toString(FilterIterators.newCombinedFilter(
+                it(9, 3, 8, 1, 7, 2, 6, 5, 4, 3, 2, 1, 0, 15, 14, 13, 12, 11, 10),
+                false, 2, 3, INT_COMP, s, spill)));
+        assertTrue(spill.spilled > 0);
+
+        // without spilling, the memory limit applies
+        try {
+            toString(FilterIterators.newSort(it(list), INT_COMP, Integer.MAX_VALUE, s));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void distinctSpill() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(100);
+        IntegerSpill spill = new IntegerSpill(10);
+        Integer[] list = new Integer[1000];
+        Random r = new Random(1);
+        for (int i = 0; i < list.length; i++) {
+            list[i] = r.nextInt(300);
+        }
+        Iterator<Integer> it = FilterIterators.newDistinct(it(list), s, spill);
+        HashSet<Integer> seen = new HashSet<Integer>();
+        while (it.hasNext()) {
+            assertTrue(seen.add(it.next()));
+        }
+        assertEquals(new HashSet<Integer>(Arrays.asList(list)), seen);
+        assertTrue(spill.spilled > 0);
+
+        // entries returned before spilling are not returned again
+        spill = new IntegerSpill(3);
+        assertEquals("3, 1, 2, 0, 4",
+                toString(FilterIterators.newDistinct(it(3, 1, 2, 1, 3, 0, 4, 2, 0), s, spill)));
+
+        // distinct & order by
+        spill = new IntegerSpill(3);
+        assertEquals("0, 1, 2, 3, 4",
+                toString(FilterIterators.newCombinedFilter(
+                it(3, 1, 2, 1, 3, 0, 4, 2, 0), true, Long.MAX_VALUE, 0, INT_COMP, s, spill)));
+    }
+
+    @Test
+    public void spillDisabled() {
+        // entries that can not be serialized disable spilling
+        IntegerSpill spill = new IntegerSpill(2) {
+
+            @Override
+            public String serialize(Integer entry) {
+                return null;
+            }
+
+            @Override
+            public String getDistinctKey(Integer entry) {
+                return null;
+            }
+
+        };
+        assertEquals("0, 1, 2, 3",
+                toString(FilterIterators.newSort(it(3, 2, 1, 0), INT_COMP, Integer.MAX_VALUE, settings, spill)));
+        assertEquals("3, 2, 1, 0",
+                toString(FilterIterators.newDistinct(it(3, 2, 3, 1, 0), settings, spill)));
+        assertEquals(0, spill.spilled);
+    }
+
+    @Test
+    public void spillPartially() {
+        // once spilling started, entries that can not be serialized are kept in memory
+        IntegerSpill spill = new IntegerSpill(3) {
+
+            @Override
+            public String serialize(Integer entry) {
+                return entry % 2 == 1 ? null : entry.toString();
+            }
+
+            @Override
+            public String getDistinctKey(Integer entry) {
+                return entry > 10 ? null : "k" + entry;
+            }
+
+        };
+        assertEquals("0, 1, 2, 3, 4, 5, 6, 7, 8, 9",
+                toString(FilterIterators.newSort(
+                it(8, 6, 4, 9, 2, 7, 0, 5, 3, 1), INT_COMP, Integer.MAX_VALUE, settings, spill)));
+        assertEquals("0, 1, 2",
+                toString(FilterIterators.newSort(
+                it(8, 6, 4, 9, 2, 7, 0, 5, 3, 1), INT_COMP, 3, settings, spill)));
+        assertEquals("8, 6, 4, 0, 2, 3, 5, 7, 9, 11, 12",
+                toString(FilterIterators.newDistinct(
+                it(8, 6, 4, 8, 9, 2, 7, 0, 5, 3, 9, 11, 7, 12, 11), settings, spill)));
+        assertTrue(spill.spilled > 0);
+
+        // the in-memory limit applies to the entries kept in memory
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(2);
+        try {
+            toString(FilterIterators.newSort(
+                    it(8, 6, 4, 9, 2, 7, 0, 5, 3, 1), INT_COMP, Integer.MAX_VALUE, s, spill));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Spill support for integers. The distinct key is the number with a
+     * prefix, so that it differs from the serialized entry.
+     */
+    private static class IntegerSpill implements FilterIterators.SpillSupport<Integer> {
+
+        private final long threshold;
+        long spilled;
+
+        IntegerSpill(long threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public long getSpillThreshold() {
+            return threshold;
+        }
+
+        @Override
+        public String serialize(Integer entry) {
+            return entry.toString();
+        }
+
+        @Override
+        public Integer deserialize(String data) {
+            return Integer.valueOf(data);
+        }
+
+        @Override
+        public String getDistinctKey(Integer entry) {
+            return "k" + entry;
+        }
+
+        @Override
+        public void spilled(long count) {
+            spilled += count;
+        }
+
+    }
+
     private static <K> Iterator<K> it(K... x) {
         return Collections.unmodifiableCollection(Lists.newArrayList(x)).iterator();
     }
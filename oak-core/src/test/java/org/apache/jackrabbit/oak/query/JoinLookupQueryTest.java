@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.nodetype.NodeTypeIndexProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.spi.lifecycle.RepositoryInitializer;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests joins that read the right hand side once into a lookup table, by
+ * comparing the result with the result of the nested loop join.
+ */
+public class JoinLookupQueryTest extends AbstractQueryTest {
+
+    private static final String LOOKUP = "/* lookup */";
+
+    private QueryEngineSettings qeSettings;
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak().with(new InitialContent())
+                .with(new RepositoryInitializer() {
+                    @Override
+                    public void initialize(@NotNull NodeBuilder builder) {
+                        NodeBuilder index = IndexUtils.getOrCreateOakIndex(builder);
+                        IndexUtils.createIndexDefinition(
+                                index, "l", true, false,
+                                ImmutableList.of("l"), null);
+                        IndexUtils.createIndexDefinition(
+                                index, "r", true, false,
+                                ImmutableList.of("r"), null);
+                    }
+                })
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider())
+                .with(new NodeTypeIndexProvider())
+                .createContentRepository();
+    }
+
+    @Before
+    @Override
+    public void before() throws Exception {
+        super.before();
+        // the settings used by the query engine of this repository
+        qeSettings = ((QueryEngineImpl) qe).getExecutionContext().getSettings();
+        // /test/p<i> are left rows, some also right rows;
+        // /test/q<j> are right rows, some matching no left row;
+        // /test/p<i>/c are both, /test/p<i>/c/d are right rows
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 20; i++) {
+            Tree p = test.addChild("p" + i);
+            p.setProperty("l", "yes");
+            p.setProperty("x", "v" + (i % 9));
+            if (i % 3 == 0) {
+                p.setProperty("r", "yes");
+            }
+            Tree c = p.addChild("c");
+            c.setProperty("l", "yes");
+            c.setProperty("r", "yes");
+            if (i % 2 == 0) {
+                c.addChild("d").setProperty("r", "yes");
+            }
+        }
+        for (int j = 0; j < 10; j++) {
+            Tree q = test.addChild("q" + j);
+            q.setProperty(JCR_PRIMARYTYPE, "nt:folder", Type.NAME);
+            q.setProperty("r", "yes");
+            q.setProperty("y", "v" + (j % 5));
+        }
+        root.commit();
+    }
+
+    @Test
+    public void equiJoin() throws Exception {
+        assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on [a].[x] = [b].[y] " +
+                "where [a].[l] = 'yes' and [b].[r] = 'yes'");
+    }
+
+    @Test
+    public void sameNodeJoin() throws Exception {
+        assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on issamenode([a], [b]) " +
+                "where [a].[l] = 'yes' and [b].[r] = 'yes'");
+    }
+
+    @Test
+    public void childNodeJoin() throws Exception {
+        assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on ischildnode([b], [a]) " +
+                "where [a].[l] = 'yes' and [b].[r] = 'yes'");
+        assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on ischildnode([a], [b]) " +
+                "where [a].[l] = 'yes' and [b].[r] = 'yes'");
+    }
+
+    @Test
+    public void descendantNodeJoin() throws Exception {
+        assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on isdescendantnode([b], [a]) " +
+                "where [a].[l] = 'yes' and [b].[r] = 'yes'");
+        assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on isdescendantnode([a], [b]) " +
+                "where [a].[l] = 'yes' and [b].[r] = 'yes'");
+    }
+
+    @Test
+    public void outerJoin() throws Exception {
+        List<String> result = assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] left outer join [nt:folder] as [b] on [a].[x] = [b].[y] " +
+                "where [a].[l] = 'yes'");
+        // left rows without matching right row are returned once
+        assertTrue(result.toString(), result.contains("/test/p5, null"));
+        assertTrue(result.toString(), result.contains("/test/p0/c, null"));
+        assertTrue(result.toString(), result.contains("/test/p0, /test/q0"));
+        assertTrue(result.toString(), result.contains("/test/p0, /test/q5"));
+    }
+
+    @Test
+    public void tooManyRowsInMemory() throws Exception {
+        // the index estimates very few rows, so that the lookup join is
+        // used; while building the lookup table, the limit is reached,
+        // and the nested loop join is used instead
+        root.getTree("/" + INDEX_DEFINITIONS_NAME + "/r").setProperty(ENTRY_COUNT_PROPERTY_NAME, 0L);
+        root.commit();
+        long limit = qeSettings.getLimitInMemory();
+        try {
+            qeSettings.setLimitInMemory(5);
+            assertSameResult("select [a].[jcr:path], [b].[jcr:path] " +
+                    "from [nt:base] as [a] inner join [nt:base] as [b] on [a].[x] = [b].[y] " +
+                    "where [a].[l] = 'yes' and [b].[r] = 'yes'");
+        } finally {
+            qeSettings.setLimitInMemory(limit);
+        }
+    }
+
+    /**
+     * Run the query with the nested loop join and with the lookup join, and
+     * verify the results are the same.
+     *
+     * @param query the query
+     * @return the (sorted) result
+     */
+    private List<String> assertSameResult(String query) {
+        long minRows = qeSettings.getLookupJoinMinRows();
+        try {
+            qeSettings.setLookupJoinMinRows(Long.MAX_VALUE);
+            String plan = executeQuery("explain " + query, SQL2).get(0);
+            assertFalse(plan, plan.contains(LOOKUP));
+            List<String> expected = executeQuery(query, SQL2);
+            assertFalse(expected.isEmpty());
+
+            qeSettings.setLookupJoinMinRows(0);
+            plan = executeQuery("explain " + query, SQL2).get(0);
+            assertTrue(plan, plan.contains(LOOKUP));
+            List<String> result = executeQuery(query, SQL2);
+            assertEquals(expected, result);
+            return result;
+        } finally {
+            qeSettings.setLookupJoinMinRows(minRows);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.query.QueryPlanCache.CachedPlan;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+/**
+ * Tests the query plan cache.
+ */
+public class QueryPlanCacheTest {
+
+    @Test
+    public void disabled() {
+        QueryPlanCache cache = new QueryPlanCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put("a", newPlan(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void hitAndMiss() {
+        QueryPlanCache cache = new QueryPlanCache(10);
+        assertTrue(cache.isEnabled());
+        assertNull(cache.get("a", 1));
+        cache.put("a", newPlan(1));
+        CachedPlan p = cache.get("a", 1);
+        assertNotNull(p);
+        assertEquals("test", p.indexName);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        cache.resetStats();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void invalidation() {
+        QueryPlanCache cache = new QueryPlanCache(10);
+        cache.put("a", newPlan(1));
+        // the indexes changed
+        assertNull(cache.get("a", 2));
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void eviction() {
+        QueryPlanCache cache = new QueryPlanCache(3);
+        cache.put("a", newPlan(1));
+        cache.put("b", newPlan(1));
+        cache.put("c", newPlan(1));
+        // "a" is now the most recently used entry
+        assertNotNull(cache.get("a", 1));
+        cache.put("d", newPlan(1));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("b", 1));
+        assertNotNull(cache.get("a", 1));
+        cache.setMaxSize(1);
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getEvictionCount());
+        assertNotNull(cache.get("a", 1));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void bindVariableShape() {
+        HashMap<String, PropertyValue> map = new HashMap<String, PropertyValue>();
+        map.put("b", PropertyValues.newString("x"));
+        map.put("a", null);
+        String s1 = QueryPlanCache.getBindVariableShape(map);
+        map.put("b", PropertyValues.newString("y"));
+        assertEquals(s1, QueryPlanCache.getBindVariableShape(map));
+        map.put("b", PropertyValues.newLong(1L));
+        assertNotEquals(s1, QueryPlanCache.getBindVariableShape(map));
+    }
+
+    @Test
+    public void indexDefinitionsHash() {
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        builder.child("oak:index").child("foo").setProperty("type", "property");
+        NodeState s1 = builder.getNodeState();
+        long h1 = QueryPlanCache.computeIndexDefinitionsHash(s1, "/");
+        // changes to the index data don't change the hash
+        builder.child("oak:index").child("foo").child(":index").child("x");
+        assertEquals(h1, QueryPlanCache.computeIndexDefinitionsHash(builder.getNodeState(), "/"));
+        builder.child("oak:index").child("foo").setProperty("type", "disabled");
+        assertNotEquals(h1, QueryPlanCache.computeIndexDefinitionsHash(builder.getNodeState(), "/"));
+        builder.child("oak:index").child("foo").setProperty("type", "property");
+        builder.child("oak:index").child("bar").setProperty("type", "property");
+        assertNotEquals(h1, QueryPlanCache.computeIndexDefinitionsHash(builder.getNodeState(), "/"));
+    }
+
+    @Test
+    public void nestedIndexDefinitionsHash() {
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        builder.child("oak:index").child("foo").setProperty("type", "property");
+        builder.child("content").child("a").child("b");
+        NodeState s1 = builder.getNodeState();
+        long h1 = QueryPlanCache.computeIndexDefinitionsHash(s1, "/content/a/b");
+        builder.child("content").child("a").child("oak:index").child("bar")
+                .setProperty("type", "lucene");
+        // a nested index on the path of the filter
+        NodeState s2 = builder.getNodeState();
+        assertNotEquals(h1, QueryPlanCache.computeIndexDefinitionsHash(s2, "/content/a/b"));
+        assertNotEquals(QueryPlanCache.computeIndexDefinitionsHash(s1, "/content/a"),
+                QueryPlanCache.computeIndexDefinitionsHash(s2, "/content/a"));
+        // not relevant for other paths
+        assertEquals(QueryPlanCache.computeIndexDefinitionsHash(s1, "/content"),
+                QueryPlanCache.computeIndexDefinitionsHash(s2, "/content"));
+        assertEquals(QueryPlanCache.computeIndexDefinitionsHash(s1, "/other"),
+                QueryPlanCache.computeIndexDefinitionsHash(s2, "/other"));
+        builder.child("content").child("a").child("oak:index").child("bar")
+                .setProperty("reindexCount", 2L);
+        assertNotEquals(QueryPlanCache.computeIndexDefinitionsHash(s2, "/content/a/b"),
+                QueryPlanCache.computeIndexDefinitionsHash(builder.getNodeState(), "/content/a/b"));
+    }
+
+    @Test
+    public void indexDefinitionsHashCachedPerRoot() {
+        QueryPlanCache cache = new QueryPlanCache(10);
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        builder.child("oak:index").child("foo").setProperty("type", "property");
+        NodeState s1 = builder.getNodeState();
+        assertEquals(QueryPlanCache.computeIndexDefinitionsHash(s1, "/content"),
+                cache.getIndexDefinitionsHash(s1, "/content"));
+        assertEquals(cache.getIndexDefinitionsHash(s1, "/content"),
+                cache.getIndexDefinitionsHash(s1, "/content"));
+        // a different root state is not served from the cache
+        builder.child("oak:index").child("foo").setProperty("type", "disabled");
+        NodeState s2 = builder.getNodeState();
+        assertNotEquals(cache.getIndexDefinitionsHash(s1, "/content"),
+                cache.getIndexDefinitionsHash(s2, "/content"));
+        assertEquals(QueryPlanCache.computeIndexDefinitionsHash(s2, "/content"),
+                cache.getIndexDefinitionsHash(s2, "/content"));
+    }
+
+    private static CachedPlan newPlan(long generation) {
+        return new CachedPlan(generation, "test", "TestIndex", null, false);
+    }
+
+}
@@ -231,6 +231,44 @@ public class UnionQueryTest extends AbstractQueryTest {
         }
     }
 
+    @Test
+    public void testParallel() throws Exception {
+        String left = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest')";
+        String right = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest2')";
+        String[] expected = {
+                "/UnionQueryTest/a",
+                "/UnionQueryTest/a/b",
+                "/UnionQueryTest/a/b/c",
+                "/UnionQueryTest/a/b/c/d",
+                "/UnionQueryTest/a/b/c/d/e",
+                "/UnionQueryTest2/a"
+        };
+        qeSettings.setParallelUnionThreads(2);
+        try {
+            // ordered merge
+            String union = String.format("%s UNION %s ORDER BY [jcr:path]", left, right);
+            Result result = qe.executeQuery(union, QueryEngineImpl.SQL2,
+                    QueryEngine.NO_BINDINGS, QueryEngine.NO_MAPPINGS);
+            int i = 0;
+            for (ResultRow rr : result.getRows()) {
+                assertEquals(expected[i++], rr.getPath());
+            }
+            assertEquals(expected.length, i);
+
+            // duplicate rows are removed
+            union = String.format("%s UNION %s UNION %s", left, right, left);
+            result = qe.executeQuery(union, QueryEngineImpl.SQL2,
+                    QueryEngine.NO_BINDINGS, QueryEngine.NO_MAPPINGS);
+            List<String> paths = Lists.newArrayList();
+            for (ResultRow rr : result.getRows()) {
+                paths.add(rr.getPath());
+            }
+            assertEquals(Arrays.asList(expected), paths);
+        } finally {
+            qeSettings.setParallelUnionThreads(0);
+        }
+    }
+
     @Test
     public void testOrderLimitOption() throws Exception {
         String left = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest')";
@@ -21,7 +21,10 @@ import static org.apache.jackrabbit.guava.common.collect.ImmutableSet.of;
 import static java.util.Collections.emptySet;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Set;
@@ -64,6 +67,21 @@ public class AndImplTest {
         assertThat(and.convertToUnion(), is(expected));
 }
     
+    @Test
+    public void evaluateSelectiveFirst() {
+        ConstraintImpl op1 = mockConstraint("op1", ComparisonImpl.class);
+        ConstraintImpl op2 = mockConstraint("op2", ComparisonImpl.class);
+        when(op1.evaluate()).thenReturn(true);
+        when(op2.evaluate()).thenReturn(false);
+        ConstraintImpl and = new AndImpl(op1, op2);
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(and.evaluate());
+        }
+        // op2 is evaluated first after the first 1023 rows
+        verify(op1, times(1023)).evaluate();
+        verify(op2, times(10000)).evaluate();
+    }
+
     /**
      * convenience method for having better assertion messages 
      * 
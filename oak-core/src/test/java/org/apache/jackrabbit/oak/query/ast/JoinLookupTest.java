@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.query.index.IndexRowImpl;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.junit.Test;
+
+/**
+ * Tests the lookup table used for joins.
+ */
+public class JoinLookupTest {
+
+    @Test
+    public void get() {
+        JoinLookup lookup = new JoinLookup(false);
+        lookup.add("x", new IndexRowImpl("/a"));
+        lookup.add("y", new IndexRowImpl("/b"));
+        lookup.add("x", new IndexRowImpl("/c"));
+        lookup.addUnkeyed(new IndexRowImpl("/d"));
+        assertEquals(4, lookup.size());
+        assertEquals("[/a, /c]", getPaths(lookup, "x"));
+        assertEquals("[]", getPaths(lookup, "z"));
+        List<IndexRow> list = new ArrayList<IndexRow>();
+        lookup.getUnkeyed(list);
+        assertEquals("[/d]", toString(list));
+        list.clear();
+        lookup.getAll(list);
+        assertEquals(4, list.size());
+    }
+
+    @Test
+    public void getDescendants() {
+        JoinLookup lookup = new JoinLookup(true);
+        for (String p : new String[] { "/", "/a", "/a/b", "/a/b/c", "/a0",
+                "/a-b", "/ab", "/a/c", "/b" }) {
+            lookup.add(p, new IndexRowImpl(p));
+        }
+        assertEquals("[/a/b, /a/b/c, /a/c]", getDescendants(lookup, "/a"));
+        assertEquals("[/a/b/c]", getDescendants(lookup, "/a/b"));
+        assertEquals("[]", getDescendants(lookup, "/a/c"));
+        assertEquals("[/a, /a-b, /a/b, /a/b/c, /a/c, /a0, /ab, /b]",
+                getDescendants(lookup, "/"));
+    }
+
+    private static String getPaths(JoinLookup lookup, String key) {
+        List<IndexRow> list = new ArrayList<IndexRow>();
+        lookup.get(key, list);
+        return toString(list);
+    }
+
+    private static String getDescendants(JoinLookup lookup, String path) {
+        List<IndexRow> list = new ArrayList<IndexRow>();
+        lookup.getDescendants(path, list);
+        return toString(list);
+    }
+
+    private static String toString(Collection<IndexRow> rows) {
+        List<String> paths = new ArrayList<String>();
+        for (IndexRow r : rows) {
+            paths.add(r.getPath());
+        }
+        return paths.toString();
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+
+import org.apache.jackrabbit.oak.query.QueryImpl;
+import org.apache.jackrabbit.oak.query.SQL2Parser;
+import org.apache.jackrabbit.oak.query.SQL2ParserTest;
+import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
+import org.junit.Test;
+
+/**
+ * Tests the relative paths that are prefetched for the rows of a selector.
+ */
+public class SelectorImplTest {
+
+    private final SQL2Parser p = SQL2ParserTest.createTestSQL2Parser();
+
+    @Test
+    public void prefetchRelativePaths() throws ParseException {
+        assertEquals("[]", getPrefetchRelativePaths(
+                "select * from [nt:base] as s where [title] = 'x'", "s"));
+        assertEquals("[jcr:content]", getPrefetchRelativePaths(
+                "select * from [nt:base] as s where [jcr:content/title] = 'x'", "s"));
+        assertEquals("[jcr:content/metadata]", getPrefetchRelativePaths(
+                "select * from [nt:base] as s " +
+                "where [jcr:content/metadata/x] is not null", "s"));
+        assertEquals("[jcr:content, jcr:content/metadata]", getPrefetchRelativePaths(
+                "select * from [nt:base] as s where [jcr:content/title] = 'x' " +
+                "order by [jcr:content/metadata/date]", "s"));
+        // the paths of the query option are kept
+        assertEquals("[a/b, jcr:content]", getPrefetchRelativePaths(
+                "select * from [nt:base] as s where [jcr:content/title] = 'x' " +
+                "option(prefetch ('a/b'))", "s"));
+        // parent nodes are not prefetched
+        assertEquals("[]", getPrefetchRelativePaths(
+                "select * from [nt:base] as s where [../title] = 'x'", "s"));
+    }
+
+    @Test
+    public void prefetchRelativePathsJoin() throws ParseException {
+        String sql = "select * from [nt:base] as a " +
+                "inner join [nt:base] as b on ischildnode(b, a) " +
+                "where a.[x/y] = 1 and b.[z/w] is not null";
+        assertEquals("[x]", getPrefetchRelativePaths(sql, "a"));
+        assertEquals("[z]", getPrefetchRelativePaths(sql, "b"));
+    }
+
+    private String getPrefetchRelativePaths(String sql, String selectorName)
+            throws ParseException {
+        QueryImpl q = (QueryImpl) p.parse(sql);
+        SelectorImpl s = q.getSource().getSelector(selectorName);
+        // push down the conditions to the selector
+        s.prepare(new SelectorExecutionPlan(s, null, null, 0));
+        return s.getPrefetchRelativePaths().toString();
+    }
+
+}
@@ -19,13 +19,26 @@ package org.apache.jackrabbit.oak.query.stats;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentSession;
+import org.apache.jackrabbit.oak.api.QueryEngine;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Root;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.query.QueryCancelledException;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Iterator;
 import java.util.Properties;
 
 public class QueryStatsTest {
@@ -94,4 +107,102 @@ public class QueryStatsTest {
                 .toString();
         assertTrue(data.contains(statLog));
     }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        QueryEngineSettings qes = new QueryEngineSettings();
+        QueryStatsMBeanImpl bean = new QueryStatsMBeanImpl(qes);
+        QueryExecutionStats e = bean.getQueryExecution("select 1", "");
+        assertTrue(bean.getRunningQueries().contains("select 1"));
+        assertFalse(e.isCancelled());
+        assertTrue(bean.cancelQuery(e.getId()));
+        assertTrue(e.isCancelled());
+        e.finished();
+        assertFalse(bean.getRunningQueries().contains("select 1"));
+        assertFalse(bean.cancelQuery(e.getId()));
+
+        bean.setQueryTimeout(1);
+        assertEquals(1, qes.getQueryTimeout());
+        e = bean.getQueryExecution("select 2", "");
+        Thread.sleep(10);
+        assertTrue(e.isCancelled());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        QueryEngineSettings qes = new QueryEngineSettings();
+        ContentSession s = new Oak().with(new OpenSecurityProvider()).with(new InitialContent())
+                .with(qes).createContentRepository().login(null, null);
+        Root r = s.getLatestRoot();
+        Tree t = r.getTree("/").addChild("test");
+        for (int i = 0; i < 100; i++) {
+            t.addChild("node" + i);
+        }
+        r.commit();
+
+        String query = "select [jcr:path] from [nt:base] where isdescendantnode('/test')";
+        Iterator<? extends ResultRow> it = execute(r, query);
+        assertTrue(it.hasNext());
+        assertTrue(qes.getQueryStats().getRunningQueries().contains(query));
+        while (it.hasNext()) {
+            it.next();
+        }
+        assertFalse(qes.getQueryStats().getRunningQueries().contains(query));
+
+        qes.setQueryTimeout(1);
+        it = execute(r, query);
+        Thread.sleep(10);
+        try {
+            while (it.hasNext()) {
+                it.next();
+            }
+            fail();
+        } catch (QueryCancelledException e) {
+            // expected
+        }
+    }
+
+    private static Iterator<? extends ResultRow> execute(Root r, String query) throws Exception {
+        Result result = r.getQueryEngine().executeQuery(query, "JCR-SQL2",
+                QueryEngine.NO_BINDINGS, QueryEngine.NO_MAPPINGS);
+        return result.getRows().iterator();
+    }
+
+    @Test
+    public void testProfile() throws Exception {
+        QueryEngineSettings qes = new QueryEngineSettings();
+        ContentSession s = new Oak().with(new OpenSecurityProvider()).with(new InitialContent())
+                .with(qes).createContentRepository().login(null, null);
+        Root r = s.getLatestRoot();
+        Tree t = r.getTree("/").addChild("test");
+        for (int i = 0; i < 100; i++) {
+            t.addChild("node" + i).setProperty("x", i % 10);
+        }
+        r.commit();
+
+        String query = "select [jcr:path] from [nt:base] as a " +
+                "where isdescendantnode(a, '/test') and [x] = 1 order by [jcr:path]";
+        Iterator<? extends ResultRow> it = execute(r, query);
+        while (it.hasNext()) {
+            it.next();
+        }
+        // not sampled
+        assertEquals("[]", qes.getQueryStats().getQueryProfiles());
+
+        qes.getQueryStats().setProfileSampleRate(1);
+        it = execute(r, query);
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(10, count);
+        String profiles = qes.getQueryStats().getQueryProfiles();
+        assertTrue(profiles, profiles.contains("[a] read: "));
+        assertTrue(profiles, profiles.contains("rows 100 -> 100"));
+        assertTrue(profiles, profiles.contains("[a].[x] = 1: "));
+        assertTrue(profiles, profiles.contains("rows 100 -> 10"));
+        assertTrue(profiles, profiles.contains("sort, distinct, offset, limit: "));
+        assertTrue(profiles, profiles.contains("rows 10 -> 10"));
+    }
 }
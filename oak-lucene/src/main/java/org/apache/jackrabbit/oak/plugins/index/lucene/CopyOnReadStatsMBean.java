@@ -80,4 +80,36 @@ public interface CopyOnReadStatsMBean {
     String getGarbageCollectedSize();
 
     String getSkippedFromUploadSize();
+
+    /**
+     * @return for each index, the files uploaded by the most recently closed
+     * index writer
+     */
+    String[] getLastUploadCycleDetails();
+
+    /**
+     * @return the maximum rate in bytes per second at which merged segment
+     * files are uploaded, or 0 if not limited
+     */
+    long getMergedUploadRate();
+
+    /**
+     * @return the time in milliseconds it took for the most recently opened
+     * index until it was first read from the local copy
+     */
+    long getLastTimeToFirstLocalQuery();
+
+    long getMaxTimeToFirstLocalQuery();
+
+    String getBlockCacheMaxSize();
+
+    String getBlockCacheSize();
+
+    long getBlockCacheHitCount();
+
+    long getBlockCacheMissCount();
+
+    long getBlockCacheEvictionCount();
+
+    double getBlockCacheHitRate();
 }
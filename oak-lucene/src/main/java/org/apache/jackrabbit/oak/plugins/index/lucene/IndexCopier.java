@@ -22,12 +22,15 @@ package org.apache.jackrabbit.oak.plugins.index.lucene;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -53,6 +56,7 @@ import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexRootDirecto
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexSanityChecker;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.LocalIndexDir;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.LocalIndexFile;
+import org.apache.jackrabbit.oak.plugins.index.lucene.directory.OakIndexBlockCache;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -75,6 +79,11 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     public static final Set<String> REMOTE_ONLY = ImmutableSet.of("segments.gen");
     private static final int MAX_FAILURE_ENTRIES = 10000;
     private static final String WORK_DIR_NAME = "indexWriterDir";
+    /**
+     * The upload rate is shared, so more threads would only help if the
+     * directories of several indexes are closed at the same time
+     */
+    private static final int THROTTLED_UPLOAD_THREADS = 2;
 
     private static final Logger log = LoggerFactory.getLogger(IndexCopier.class);
     private final Executor executor;
@@ -99,6 +108,8 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     private final AtomicLong skippedFromUploadSize = new AtomicLong();
     private final AtomicLong downloadTime = new AtomicLong();
     private final AtomicLong uploadTime = new AtomicLong();
+    private final AtomicLong lastTimeToFirstLocalRead = new AtomicLong();
+    private final AtomicLong maxTimeToFirstLocalRead = new AtomicLong();
 
     private final Monitor copyCompletionMonitor = new Monitor();
 
@@ -110,6 +121,20 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     private final IndexRootDirectory indexRootDirectory;
     private final Set<String> validatedIndexPaths = Sets.newConcurrentHashSet();
     private final IndexSanityChecker.IndexSanityStatistics indexSanityStatistics = new IndexSanityChecker.IndexSanityStatistics();
+    private final Map<String, String> lastUploadCycles = newConcurrentMap();
+
+    /**
+     * Maximum rate in bytes per second at which merged segment files are
+     * uploaded. If 0, merged files are uploaded like any other file.
+     */
+    private volatile long mergedUploadRate;
+    private final Object uploadRateLock = new Object();
+    private long nextUploadNanos;
+
+    /**
+     * Executor for the throttled uploads of merged files, created on first use
+     */
+    private ThreadPoolExecutor throttledUploadExecutor;
 
     public IndexCopier(Executor executor, File indexRootDir) throws IOException {
         this(executor, indexRootDir, false);
@@ -145,12 +170,84 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     @Override
     public void close() throws IOException {
         this.closed = true;
+        synchronized (this) {
+            if (throttledUploadExecutor != null) {
+                throttledUploadExecutor.shutdown();
+            }
+        }
     }
 
     public boolean isClosed() {
         return closed;
     }
 
+    /**
+     * Enables the throttled upload of merged segment files. Copy-on-write
+     * directories then upload files written by a merge only when the
+     * directory is closed (so that segments merged away in the meantime are
+     * not uploaded at all), and the upload of all such files is limited
+     * to the given rate.
+     *
+     * @param bytesPerSecond the maximum upload rate, or 0 to disable
+     */
+    public void setMergedUploadRate(long bytesPerSecond) {
+        this.mergedUploadRate = Math.max(0, bytesPerSecond);
+    }
+
+    public boolean isMergedUploadThrottled() {
+        return mergedUploadRate > 0;
+    }
+
+    /**
+     * Returns the executor for the throttled uploads of merged files. These
+     * uploads wait in {@link #throttleMergedUpload(int)}, possibly for
+     * minutes, so they do not run on the shared executor, which is also used
+     * for copy-on-read and near real time indexing.
+     */
+    public synchronized Executor getThrottledUploadExecutor() {
+        if (throttledUploadExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            throttledUploadExecutor = new ThreadPoolExecutor(THROTTLED_UPLOAD_THREADS, THROTTLED_UPLOAD_THREADS,
+                    1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "oak-lucene-upload-" + counter.getAndIncrement());
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+                        return t;
+                    });
+            throttledUploadExecutor.allowCoreThreadTimeOut(true);
+            if (closed) {
+                throttledUploadExecutor.shutdown();
+            }
+        }
+        return throttledUploadExecutor;
+    }
+
+    /**
+     * Waits until the given number of bytes of a merged file may be uploaded.
+     * The rate is shared by all indexes.
+     */
+    public void throttleMergedUpload(int bytes) throws IOException {
+        long rate = mergedUploadRate;
+        if (rate <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (uploadRateLock) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextUploadNanos);
+            nextUploadNanos = start + bytes * TimeUnit.SECONDS.toNanos(1) / rate;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to upload");
+            }
+        }
+    }
+
     File getIndexWorkDir() {
         return indexWorkDir;
     }
@@ -489,6 +586,18 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
         skippedFromUploadSize.addAndGet(skippedFilesSize);
     }
 
+    /**
+     * Records the uploads done by a copy-on-write directory between it
+     * being opened and closed.
+     */
+    public void uploadCycleDone(String indexPath, int uploadCount, long uploadSize, int deferredCount,
+                                long deferredSize, long skippedSize, long timeMillis) {
+        lastUploadCycles.put(indexPath, String.format("%s: uploaded %d files (%s), thereof %d merged " +
+                        "files (%s) uploaded on close, skipped %s in %d ms", indexPath, uploadCount,
+                humanReadableByteCount(uploadSize), deferredCount, humanReadableByteCount(deferredSize),
+                humanReadableByteCount(skippedSize), timeMillis));
+    }
+
     public void scheduledForCopy() {
         updateMaxScheduled(scheduledForCopyCount.incrementAndGet());
     }
@@ -517,6 +626,20 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
         invalidFileCount.incrementAndGet();
     }
 
+    /**
+     * Records the time it took after opening an index until its files
+     * were first read from the local copy.
+     *
+     * @param timeMillis the time in milliseconds
+     */
+    public void firstLocalRead(long timeMillis) {
+        lastTimeToFirstLocalRead.set(timeMillis);
+        long max;
+        do {
+            max = maxTimeToFirstLocalRead.get();
+        } while (timeMillis > max && !maxTimeToFirstLocalRead.compareAndSet(max, timeMillis));
+    }
+
     //~------------------------------------------< CopyOnReadStatsMBean >
 
     @Override
@@ -658,6 +781,16 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
         return humanReadableByteCount(skippedFromUploadSize.get());
     }
 
+    @Override
+    public String[] getLastUploadCycleDetails() {
+        return toArray(lastUploadCycles.values(), String.class);
+    }
+
+    @Override
+    public long getMergedUploadRate() {
+        return mergedUploadRate;
+    }
+
     @Override
     public String[] getCopyInProgressDetails() {
         return toArray(transform(copyInProgressFiles,
@@ -679,6 +812,46 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
         return humanReadableByteCount(garbageCollectedSize.get());
     }
 
+    @Override
+    public long getLastTimeToFirstLocalQuery() {
+        return lastTimeToFirstLocalRead.get();
+    }
+
+    @Override
+    public long getMaxTimeToFirstLocalQuery() {
+        return maxTimeToFirstLocalRead.get();
+    }
+
+    @Override
+    public String getBlockCacheMaxSize() {
+        return humanReadableByteCount(OakIndexBlockCache.getInstance().getMaxSize());
+    }
+
+    @Override
+    public String getBlockCacheSize() {
+        return humanReadableByteCount(OakIndexBlockCache.getInstance().getSize());
+    }
+
+    @Override
+    public long getBlockCacheHitCount() {
+        return OakIndexBlockCache.getInstance().getHitCount();
+    }
+
+    @Override
+    public long getBlockCacheMissCount() {
+        return OakIndexBlockCache.getInstance().getMissCount();
+    }
+
+    @Override
+    public long getBlockCacheEvictionCount() {
+        return OakIndexBlockCache.getInstance().getEvictionCount();
+    }
+
+    @Override
+    public double getBlockCacheHitRate() {
+        return OakIndexBlockCache.getInstance().getHitRate();
+    }
+
     private static class IndexMappingData {
         static final String[] FIELD_NAMES = new String[]{
                 "jcrPath",
@@ -88,6 +88,12 @@ public class IndexTracker {
 
     private volatile Map<String, LuceneIndexNodeManager> indices = emptyMap();
 
+    /**
+     * Incremented whenever an index is opened or closed, or re-opened
+     * because its definition changed.
+     */
+    private volatile long generation;
+
     private volatile boolean refresh;
     private volatile long nextAutoRefresh = System.currentTimeMillis() + AUTO_REFRESH_MILLIS;
 
@@ -115,6 +121,7 @@ public class IndexTracker {
     public synchronized void close() {
         Map<String, LuceneIndexNodeManager> indices = this.indices;
         this.indices = emptyMap();
+        generation++;
 
         for (Map.Entry<String, LuceneIndexNodeManager> entry : indices.entrySet()) {
             try {
@@ -158,6 +165,7 @@ public class IndexTracker {
 
         Map<String, LuceneIndexNodeManager> original = indices;
         final Map<String, LuceneIndexNodeManager> updates = newHashMap();
+        final Set<String> changedIndexes = Sets.newHashSet();
 
         Set<String> indexPaths = Sets.newHashSet();
         indexPaths.addAll(original.keySet());
@@ -174,6 +182,10 @@ public class IndexTracker {
                             LuceneIndexNodeManager index = LuceneIndexNodeManager.open(path, root, after, readerFactory, nrtFactory);
                             PERF_LOGGER.end(start, -1, "[{}] Index found to be updated. Reopening the LuceneIndexNode", path);
                             updates.put(path, index); // index can be null
+                            if (index == null || !original.containsKey(path)
+                                    || isIndexDefinitionChanged(before, after)) {
+                                changedIndexes.add(path);
+                            }
                         }
                     } catch (IOException e) {
                         badIndexTracker.markBadPersistedIndex(path, e);
@@ -185,6 +197,13 @@ public class IndexTracker {
         EditorDiff.process(CompositeEditor.compose(editors), this.root, root);
         this.root = root;
 
+        if (!changedIndexes.isEmpty()) {
+            // an index was opened, closed, or its definition changed;
+            // re-opening an index because its data changed does not
+            // affect which indexes can be used for a query
+            generation++;
+        }
+
         if (!updates.isEmpty()) {
             indices = ImmutableMap.<String, LuceneIndexNodeManager>builder()
                     .putAll(Maps.filterKeys(original, not(in(updates.keySet()))))
@@ -210,6 +229,17 @@ public class IndexTracker {
         }
     }
 
+    /**
+     * Get the generation of the opened indexes. The generation changes when
+     * an index is opened or closed, or re-opened because its definition
+     * changed, but not when an index is re-opened because it was updated.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
     public void refresh() {
         log.info("Marked tracker to refresh upon next cycle");
         refresh = true;
@@ -267,6 +297,7 @@ public class IndexTracker {
                             .putAll(indices)
                             .put(path, index)
                             .build();
+                    generation++;
                     badIndexTracker.markGoodIndex(path);
                     return indexNode;
                 }
@@ -336,7 +336,7 @@ public class LuceneDocumentMaker extends FulltextDocumentMaker<Document> {
         for (Field f : FieldFactory.newSimilarityFields(pd.name, value)) {
             doc.add(f);
         }
-        if (pd.similarityRerank) {
+        if (pd.similarityRerank || pd.similarityGraph) {
             for (Field f : FieldFactory.newBinSimilarityFields(pd.name, value)) {
                 doc.add(f);
             }
@@ -348,7 +348,7 @@ public class LuceneDocumentMaker extends FulltextDocumentMaker<Document> {
         for (Field f : FieldFactory.newSimilarityFields(pd.name, blob)) {
             doc.add(f);
         }
-        if (pd.similarityRerank) {
+        if (pd.similarityRerank || pd.similarityGraph) {
             for (Field f : FieldFactory.newBinSimilarityFields(pd.name, blob)) {
                 doc.add(f);
             }
@@ -22,6 +22,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.IndexingContext;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.FacetHelper;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.FacetsConfigProvider;
+import org.apache.jackrabbit.oak.plugins.index.lucene.writer.DefaultIndexWriterFactory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.LuceneIndexWriter;
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
@@ -38,6 +39,8 @@ public class LuceneIndexEditorContext extends FulltextIndexEditorContext impleme
 
     private final IndexAugmentorFactory augmentorFactory;
 
+    private final boolean concurrentWrites;
+
     LuceneIndexEditorContext(NodeState root, NodeBuilder definition,
                              @Nullable IndexDefinition indexDefinition,
                              IndexUpdateCallback updateCallback,
@@ -48,6 +51,8 @@ public class LuceneIndexEditorContext extends FulltextIndexEditorContext impleme
         super(root, definition, indexDefinition, updateCallback, indexWriterFactory, extractedTextCache,
             indexingContext, asyncIndexing);
         this.augmentorFactory = augmentorFactory;
+        this.concurrentWrites = indexWriterFactory instanceof DefaultIndexWriterFactory
+                && ((DefaultIndexWriterFactory) indexWriterFactory).supportsConcurrentWrites();
     }
 
     @Override
@@ -63,13 +68,18 @@ public class LuceneIndexEditorContext extends FulltextIndexEditorContext impleme
             definition, rule, path);
     }
 
+    @Override
+    protected boolean supportsConcurrentWrites() {
+        return concurrentWrites;
+    }
+
     @Override
     public LuceneIndexWriter getWriter() {
         return (LuceneIndexWriter)super.getWriter();
     }
 
     @Override
-    public FacetsConfig getFacetsConfig() {
+    public synchronized FacetsConfig getFacetsConfig() {
         if (facetsConfig == null){
             facetsConfig = FacetHelper.getFacetsConfig(definitionBuilder);
         }
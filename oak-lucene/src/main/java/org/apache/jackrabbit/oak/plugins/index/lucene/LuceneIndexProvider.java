@@ -76,6 +76,11 @@ public class LuceneIndexProvider implements QueryIndexProvider, Observer, Closea
         return ImmutableList.of(new AggregateIndex(newLuceneIndex()), newLucenePropertyIndex());
     }
 
+    @Override
+    public long getGeneration() {
+        return tracker.getGeneration();
+    }
+
     protected LuceneIndex newLuceneIndex() {
         return new LuceneIndex(tracker, aggregator);
     }
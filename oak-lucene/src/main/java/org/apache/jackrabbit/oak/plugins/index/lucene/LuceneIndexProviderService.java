@@ -60,6 +60,7 @@ import org.apache.jackrabbit.oak.plugins.index.lucene.directory.ActiveDeletedBlo
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.BufferedOakDirectory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.LuceneIndexFileSystemStatistics;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.LuceneIndexImporter;
+import org.apache.jackrabbit.oak.plugins.index.lucene.directory.OakIndexBlockCache;
 import org.apache.jackrabbit.oak.plugins.index.lucene.hybrid.DocumentQueue;
 import org.apache.jackrabbit.oak.plugins.index.lucene.hybrid.ExternalObserverBuilder;
 import org.apache.jackrabbit.oak.plugins.index.lucene.hybrid.LocalIndexObserver;
@@ -68,6 +69,7 @@ import org.apache.jackrabbit.oak.plugins.index.lucene.hybrid.NRTIndexFactory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.property.PropertyIndexCleaner;
 import org.apache.jackrabbit.oak.plugins.index.lucene.reader.DefaultIndexReaderFactory;
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
+import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextStore;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.search.TextExtractionStatsMBean;
 import org.apache.jackrabbit.oak.spi.blob.GarbageCollectableBlobStore;
@@ -186,6 +188,16 @@ public class LuceneIndexProviderService {
     )
     private static final String PROP_PREFETCH_INDEX_FILES = "prefetchIndexFiles";
 
+    private static final int PROP_COW_MERGED_UPLOAD_RATE_DEFAULT = 0;
+    @Property(
+            intValue = PROP_COW_MERGED_UPLOAD_RATE_DEFAULT,
+            label = "Merged files upload rate (MB/s)",
+            description = "Maximum rate in MB per second at which segment files created by merges are uploaded " +
+                    "when CopyOnWrite is enabled. Such files are then only uploaded when the index writer is " +
+                    "closed. When set to 0 they are uploaded right away, without limit"
+    )
+    private static final String PROP_COW_MERGED_UPLOAD_RATE = "cowMergedUploadRateInMBPerSec";
+
     private static final int PROP_EXTRACTED_TEXT_CACHE_SIZE_DEFAULT = 20;
     @Property(
             intValue = PROP_EXTRACTED_TEXT_CACHE_SIZE_DEFAULT,
@@ -212,6 +224,27 @@ public class LuceneIndexProviderService {
     )
     private static final String PROP_PRE_EXTRACTED_TEXT_ALWAYS_USE = "alwaysUsePreExtractedCache";
 
+    private static final long PROP_RESULT_CACHE_SIZE_DEFAULT = 0;
+    @Property(
+            longValue = PROP_RESULT_CACHE_SIZE_DEFAULT,
+            label = "Query result cache size (MB)",
+            description = "Maximum size in MB of the cache for the first page of results of Lucene queries. " +
+                    "Cached results are used until the index is updated. Access control is still checked for " +
+                    "each query. When set to 0 then the cache would be disabled"
+    )
+    private static final String PROP_RESULT_CACHE_SIZE = "resultCacheSizeInMB";
+
+    private static final int PROP_EXTRACTED_TEXT_STORE_SIZE_DEFAULT = 0;
+    @Property(
+            intValue = PROP_EXTRACTED_TEXT_STORE_SIZE_DEFAULT,
+            label = "Extracted text store size (MB)",
+            description = "Maximum size in MB of the persistent store for extracted text, which is kept in the " +
+                    "local index directory and shared by all indexes. Text stored there is not extracted again, " +
+                    "also not when reindexing. Once full, the older half of the entries is discarded. " +
+                    "When set to 0 then the store would be disabled"
+    )
+    private static final String PROP_EXTRACTED_TEXT_STORE_SIZE = "extractedTextStoreSizeInMB";
+
     private static final int PROP_BOOLEAN_CLAUSE_LIMIT_DEFAULT = 1024;
     @Property(
             intValue = PROP_BOOLEAN_CLAUSE_LIMIT_DEFAULT,
@@ -292,6 +325,15 @@ public class LuceneIndexProviderService {
     )
     private static final String PROP_NAME_ENABLE_SINGLE_BLOB_PER_INDEX_FILE = "enableSingleBlobIndexFiles";
 
+    private static final long PROP_INDEX_BLOCK_CACHE_SIZE_DEFAULT = 0;
+    @Property(
+            longValue = PROP_INDEX_BLOCK_CACHE_SIZE_DEFAULT,
+            label = "Index block cache size (in MB)",
+            description = "Size of the off-heap cache for index file blocks read from the repository. Useful with " +
+                    "CopyOnRead disabled, to avoid reading hot blocks again. Set to 0 to disable the cache"
+    )
+    private static final String PROP_INDEX_BLOCK_CACHE_SIZE = "indexBlockCacheSizeInMB";
+
     private static final long PROP_INDEX_FILESYSTEM_STATS_INTERVAL_DEFAULT = 300;
     @Property(
             longValue = PROP_INDEX_FILESYSTEM_STATS_INTERVAL_DEFAULT,
@@ -391,11 +433,14 @@ public class LuceneIndexProviderService {
         } else {
             log.info("Not setting config for single blob for an index file as it's set by command line!");
         }
+        OakIndexBlockCache.setCacheSizeInMB(PropertiesUtil.toLong(config.get(PROP_INDEX_BLOCK_CACHE_SIZE),
+                PROP_INDEX_BLOCK_CACHE_SIZE_DEFAULT));
 
         whiteboard = new OsgiWhiteboard(bundleContext);
         threadPoolSize = PropertiesUtil.toInteger(config.get(PROP_THREAD_POOL_SIZE), PROP_THREAD_POOL_SIZE_DEFAULT);
         initializeIndexDir(bundleContext, config);
         initializeExtractedTextCache(bundleContext, config, statisticsProvider);
+        initializeResultCache(config);
         tracker = createTracker(bundleContext, config);
         indexProvider = new LuceneIndexProvider(tracker, augmentorFactory);
         initializeActiveBlobCollector(whiteboard, config);
@@ -579,6 +624,13 @@ public class LuceneIndexProviderService {
 
         indexCopier = new IndexCopier(getExecutorService(), indexDir, prefetchEnabled);
 
+        int mergedUploadRate = PropertiesUtil.toInteger(config.get(PROP_COW_MERGED_UPLOAD_RATE),
+                PROP_COW_MERGED_UPLOAD_RATE_DEFAULT);
+        if (mergedUploadRate > 0) {
+            log.info("Upload of merged index files limited to {} MB/s", mergedUploadRate);
+            indexCopier.setMergedUploadRate(mergedUploadRate * ONE_MB);
+        }
+
         oakRegs.add(registerMBean(whiteboard,
                 CopyOnReadStatsMBean.class,
                 indexCopier,
@@ -717,6 +769,18 @@ public class LuceneIndexProviderService {
         if (extractedTextProvider != null){
             registerExtractedTextProvider(extractedTextProvider);
         }
+        int storeSizeInMB = PropertiesUtil.toInteger(config.get(PROP_EXTRACTED_TEXT_STORE_SIZE),
+                PROP_EXTRACTED_TEXT_STORE_SIZE_DEFAULT);
+        if (storeSizeInMB > 0) {
+            File storeDir = new File(indexDir, "extracted-text");
+            try {
+                extractedTextCache.setTextStore(new ExtractedTextStore(storeDir, storeSizeInMB * ONE_MB));
+                log.info("Extracted text store enabled at {} with maxSize {} MB",
+                        storeDir.getAbsolutePath(), storeSizeInMB);
+            } catch (IOException e) {
+                log.warn("Could not open the extracted text store at {}", storeDir.getAbsolutePath(), e);
+            }
+        }
         CacheStats stats = extractedTextCache.getCacheStats();
         if (stats != null){
             oakRegs.add(registerMBean(whiteboard,
@@ -727,6 +791,17 @@ public class LuceneIndexProviderService {
         }
     }
 
+    private void initializeResultCache(Map<String, ?> config) {
+        LuceneResultCache.setCacheSizeInMB(PropertiesUtil.toLong(config.get(PROP_RESULT_CACHE_SIZE),
+                PROP_RESULT_CACHE_SIZE_DEFAULT));
+        CacheStats stats = LuceneResultCache.getInstance().getCacheStats();
+        if (stats != null) {
+            oakRegs.add(registerMBean(whiteboard,
+                    CacheStatsMBean.class, stats,
+                    CacheStatsMBean.TYPE, stats.getName()));
+        }
+    }
+
     private void registerExtractedTextProvider(PreExtractedTextProvider provider){
         if (extractedTextCache != null){
             if (provider != null){
@@ -372,11 +372,10 @@ public class LucenePropertyIndex extends FulltextIndex {
                                 }
                             } else {
                                 LOG.debug("loading the first {} entries for query {}", nextBatchSize, query);
-                                if (sort == null) {
-                                    docs = searcher.search(query, nextBatchSize);
-                                } else {
-                                    docs = searcher.search(query, nextBatchSize, sort);
-                                }
+                                //The first page of the same query is often requested repeatedly,
+                                //so it's cached per searcher generation
+                                docs = LuceneResultCache.getInstance().search(indexNode.getDefinition().getIndexPath(),
+                                        indexNodeId, searcher, query, sort, nextBatchSize);
                             }
                             PERF_LOGGER.end(start, -1, "{} ...", docs.scoreDocs.length);
                             nextBatchSize = (int) Math.min(nextBatchSize * 2L, 100000);
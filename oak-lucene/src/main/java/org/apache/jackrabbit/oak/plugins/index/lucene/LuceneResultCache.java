@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jackrabbit.guava.common.cache.Cache;
+import org.apache.jackrabbit.guava.common.cache.CacheBuilder;
+import org.apache.jackrabbit.guava.common.cache.Weigher;
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A size bounded cache of the first page of Lucene query results, shared by
+ * all indexes. Entries are keyed by the index, the searcher generation (see
+ * {@link LuceneIndexNode#getIndexNodeId()}), the query and the sort order.
+ * <p>
+ * A new generation is used whenever the {@link IndexTracker} opens an
+ * updated index, or the NRT readers are refreshed. Document ids are stable
+ * within a generation, so the cached top documents can be used with the
+ * searcher of the same generation. Once a newer generation of an index is
+ * seen, results of older searchers are no longer cached. The entries of older
+ * generations are not removed right away, as the NRT readers are refreshed
+ * often and the cache is shared: they are never read again, so they are the
+ * first to be evicted once the cache is full.
+ * <p>
+ * The Lucene queries do not contain access control restrictions; these are
+ * still applied to each result row for the session running the query. The
+ * cache is disabled by default.
+ */
+public final class LuceneResultCache {
+    public static final String RESULT_CACHE_SIZE_PARAM = "oak.lucene.resultCacheSizeInMB";
+
+    private static final Logger LOG = LoggerFactory.getLogger(LuceneResultCache.class);
+
+    private static final long MB = 1024 * 1024;
+
+    private static volatile LuceneResultCache instance =
+            new LuceneResultCache(Long.getLong(RESULT_CACHE_SIZE_PARAM, 0) * MB);
+
+    /**
+     * Sets the size of the shared cache. A size of 0 disables the cache. A
+     * size set via the system property takes precedence.
+     *
+     * @param sizeInMB the maximum size in MB
+     */
+    public static void setCacheSizeInMB(long sizeInMB) {
+        String cliValStr = System.getProperty(RESULT_CACHE_SIZE_PARAM);
+        if (cliValStr != null && Long.parseLong(cliValStr) != sizeInMB) {
+            LOG.warn("Ignoring configuration {} as CLI param overrides with a different value", sizeInMB);
+            return;
+        }
+        if (instance.maxSize != sizeInMB * MB) {
+            instance.invalidateAll();
+            instance = new LuceneResultCache(sizeInMB * MB);
+            LOG.info("Lucene result cache size set to {} MB", sizeInMB);
+        }
+    }
+
+    @NotNull
+    public static LuceneResultCache getInstance() {
+        return instance;
+    }
+
+    private final long maxSize;
+
+    private final Cache<Key, TopDocs> cache;
+
+    private final CacheStats cacheStats;
+
+    /**
+     * The latest generation seen, by index path.
+     */
+    private final Map<String, Integer> generations = new ConcurrentHashMap<>();
+
+    LuceneResultCache(long maxSize) {
+        this.maxSize = maxSize;
+        if (maxSize > 0) {
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(maxSize)
+                    .weigher(EntryWeigher.INSTANCE)
+                    .recordStats()
+                    .build();
+            cacheStats = new CacheStats(cache, "LuceneResultCache", EntryWeigher.INSTANCE, maxSize);
+        } else {
+            cache = null;
+            cacheStats = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the top {@code n} documents for the given query, from the cache
+     * if possible.
+     *
+     * @param indexPath the index path
+     * @param generation the generation of the searcher
+     * @param searcher the searcher
+     * @param query the query
+     * @param sort the sort order, or null to sort by score
+     * @param n the number of documents
+     * @return the top documents
+     */
+    TopDocs search(String indexPath, int generation, IndexSearcher searcher,
+                   Query query, @Nullable Sort sort, int n) throws IOException {
+        if (cache == null || !isCurrent(indexPath, generation)) {
+            return doSearch(searcher, query, sort, n);
+        }
+        Key key = new Key(indexPath, generation, query, sort, n);
+        TopDocs docs = cache.getIfPresent(key);
+        if (docs == null) {
+            docs = doSearch(searcher, query, sort, n);
+            cache.put(key, copy(docs));
+            return docs;
+        }
+        // the caller may modify the documents, for example for re-ranking
+        return copy(docs);
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        generations.clear();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Nullable
+    public CacheStats getCacheStats() {
+        return cacheStats;
+    }
+
+    /**
+     * Checks whether the given generation is the latest one of the index.
+     */
+    private boolean isCurrent(String indexPath, int generation) {
+        Integer current = generations.get(indexPath);
+        if (current != null && current == generation) {
+            return true;
+        }
+        if (current != null && current > generation) {
+            // a query that still uses an older searcher
+            return false;
+        }
+        if (current == null) {
+            current = generations.putIfAbsent(indexPath, generation);
+            if (current == null) {
+                return true;
+            }
+        }
+        // generations are increasing
+        if (current < generation && generations.replace(indexPath, current, generation)) {
+            return true;
+        }
+        return generations.get(indexPath) == generation;
+    }
+
+    private static TopDocs doSearch(IndexSearcher searcher, Query query, @Nullable Sort sort, int n)
+            throws IOException {
+        return sort == null ? searcher.search(query, n) : searcher.search(query, n, sort);
+    }
+
+    private static TopDocs copy(TopDocs docs) {
+        ScoreDoc[] scoreDocs = new ScoreDoc[docs.scoreDocs.length];
+        for (int i = 0; i < scoreDocs.length; i++) {
+            ScoreDoc d = docs.scoreDocs[i];
+            if (d instanceof FieldDoc) {
+                FieldDoc f = (FieldDoc) d;
+                scoreDocs[i] = new FieldDoc(f.doc, f.score, f.fields, f.shardIndex);
+            } else {
+                scoreDocs[i] = new ScoreDoc(d.doc, d.score, d.shardIndex);
+            }
+        }
+        return new TopDocs(docs.totalHits, scoreDocs, docs.getMaxScore());
+    }
+
+    private static final class Key {
+        final String indexPath;
+        final int generation;
+        final Query query;
+        final Sort sort;
+        final int n;
+        final int hash;
+
+        Key(String indexPath, int generation, Query query, @Nullable Sort sort, int n) {
+            this.indexPath = indexPath;
+            this.generation = generation;
+            this.query = query;
+            this.sort = sort;
+            this.n = n;
+            this.hash = Objects.hash(indexPath, generation, query, sort, n);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return generation == other.generation
+                    && n == other.n
+                    && indexPath.equals(other.indexPath)
+                    && query.equals(other.query)
+                    && Objects.equals(sort, other.sort);
+        }
+    }
+
+    private static class EntryWeigher implements Weigher<Key, TopDocs> {
+        static final EntryWeigher INSTANCE = new EntryWeigher();
+
+        @Override
+        public int weigh(Key key, TopDocs value) {
+            long size = 168;                                // overhead for each cache entry
+            size += 64 + 2L * key.indexPath.length();       // key
+            size += 64 + 2L * key.query.toString().length(); // query (estimated)
+            size += 32 + 48L * value.scoreDocs.length;      // top docs
+            return (int) Math.min(size, Integer.MAX_VALUE);
+        }
+    }
+}
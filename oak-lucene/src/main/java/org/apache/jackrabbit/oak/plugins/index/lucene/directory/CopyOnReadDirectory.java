@@ -24,11 +24,16 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.ImmutableSet;
@@ -36,6 +41,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.apache.jackrabbit.oak.commons.PerfLogger;
 import org.apache.jackrabbit.oak.plugins.index.lucene.IndexCopier;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IOContext;
@@ -59,6 +65,22 @@ public class CopyOnReadDirectory extends FilterDirectory {
     public static final String DELETE_MARGIN_MILLIS_NAME = "oak.lucene.delete.margin";
     public final long DELETE_MARGIN_MILLIS = Long.getLong(DELETE_MARGIN_MILLIS_NAME, TimeUnit.MINUTES.toMillis(5));
 
+    public static final String PREFETCH_THREADS_NAME = "oak.lucene.prefetchThreads";
+    private static final int PREFETCH_THREADS = Math.max(1, Integer.getInteger(PREFETCH_THREADS_NAME, 4));
+
+    /**
+     * The number of attempts to copy a file locally, before it is only read
+     * from remote.
+     */
+    static final int MAX_COPY_ATTEMPTS = 3;
+
+    /**
+     * Extensions of the files which are small, and read when an index is
+     * opened or for most queries. They are prefetched first.
+     */
+    private static final Set<String> HOT_EXTENSIONS = ImmutableSet.of(
+            "si", "fnm", "tii", "tip", "fdx", "del", "liv", "nvm", "dvm", "cfe");
+
     private final IndexCopier indexCopier;
     private final Directory remote;
     private final Directory local;
@@ -66,6 +88,8 @@ public class CopyOnReadDirectory extends FilterDirectory {
     private final String indexPath;
     private final Executor executor;
     private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean localRead = new AtomicBoolean();
+    private final long openTime = System.currentTimeMillis();
 
     // exported as package private to be useful in tests
     static final String WAIT_OTHER_COPY_SYSPROP_NAME = "cor.waitCopyMillis";
@@ -108,6 +132,10 @@ public class CopyOnReadDirectory extends FilterDirectory {
 
         CORFileReference ref = files.get(name);
         if (ref != null) {
+            if (ref.retryCopy()) {
+                log.debug("[{}] scheduled local copy for {} again, as the previous attempt failed", indexPath, name);
+                copy(ref);
+            }
             if (ref.isLocalValid()) {
                 log.trace("[{}] opening existing local file {}", indexPath, name);
                 return files.get(name).openLocalInput(context);
@@ -165,25 +193,57 @@ public class CopyOnReadDirectory extends FilterDirectory {
 
     private void prefetchIndexFiles() throws IOException {
         long start = PERF_LOGGER.start();
-        long totalSize = 0;
-        int copyCount = 0;
-        List<String> copiedFileNames = Lists.newArrayList();
+        List<PrefetchFile> toCopy = Lists.newArrayList();
         for (String name : remote.listAll()) {
             if (IndexCopier.REMOTE_ONLY.contains(name)) {
                 continue;
             }
             CORFileReference fileRef = new CORFileReference(name);
             files.putIfAbsent(name, fileRef);
-            long fileSize = copyFilesToLocal(fileRef, false, false);
-            if (fileSize > 0) {
-                copyCount++;
-                totalSize += fileSize;
-                copiedFileNames.add(name);
+            toCopy.add(new PrefetchFile(fileRef, remote.fileLength(name)));
+        }
+
+        //Copy the small and frequently accessed files first, so that a failure
+        //or slow download of a large stored fields file delays them the least
+        Collections.sort(toCopy);
+
+        final Queue<PrefetchFile> queue = new ConcurrentLinkedQueue<>(toCopy);
+        final CountDownLatch done = new CountDownLatch(toCopy.size());
+        final AtomicLong totalSize = new AtomicLong();
+        final List<String> copiedFileNames = Collections.synchronizedList(Lists.<String>newArrayList());
+        Runnable copier = () -> {
+            PrefetchFile file;
+            while ((file = queue.poll()) != null) {
+                try {
+                    long fileSize = copyFilesToLocal(file.reference, false, false);
+                    if (fileSize > 0) {
+                        totalSize.addAndGet(fileSize);
+                        copiedFileNames.add(file.reference.name);
+                    }
+                } finally {
+                    done.countDown();
+                }
             }
+        };
+
+        //The current thread takes part in copying, and only waits for copies
+        //already started by helpers. So this completes even if the executor
+        //is busy
+        int helpers = Math.min(PREFETCH_THREADS, toCopy.size()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(copier);
+        }
+        copier.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while prefetching index files of " + indexPath, e);
         }
 
         local.sync(copiedFileNames);
-        PERF_LOGGER.end(start, -1, "[{}] Copied {} files totaling {}", indexPath, copyCount, humanReadableByteCount(totalSize));
+        PERF_LOGGER.end(start, -1, "[{}] Copied {} files totaling {}", indexPath, copiedFileNames.size(),
+                humanReadableByteCount(totalSize.get()));
     }
 
     private long copyFilesToLocal(CORFileReference reference, boolean sync, boolean logDuration) {
@@ -245,8 +305,9 @@ public class CopyOnReadDirectory extends FilterDirectory {
             }
             success = true;
         } catch (IOException e) {
-            //TODO In case of exception there would not be any other attempt
-            //to download the file. Look into support for retry
+            //The copy is attempted again on the next access of the file,
+            //up to MAX_COPY_ATTEMPTS
+            reference.copyFailed();
             log.warn("[{}] Error occurred while copying file [{}] from {} to {}", indexPath, name, remote, local, e);
         } finally {
             if (copyAttempted && !success){
@@ -371,6 +432,8 @@ public class CopyOnReadDirectory extends FilterDirectory {
     private class CORFileReference {
         final String name;
         private volatile boolean valid;
+        private final AtomicInteger failedAttempts = new AtomicInteger();
+        private final AtomicBoolean retryPending = new AtomicBoolean();
 
         private CORFileReference(String name) {
             this.name = name;
@@ -382,11 +445,51 @@ public class CopyOnReadDirectory extends FilterDirectory {
 
         IndexInput openLocalInput( IOContext context) throws IOException {
             indexCopier.readFromLocal(true);
+            if (localRead.compareAndSet(false, true)) {
+                indexCopier.firstLocalRead(System.currentTimeMillis() - openTime);
+            }
             return local.openInput(name, context);
         }
 
         void markValid(){
             this.valid = true;
         }
+
+        void copyFailed() {
+            if (failedAttempts.incrementAndGet() < MAX_COPY_ATTEMPTS) {
+                retryPending.set(true);
+            }
+        }
+
+        boolean retryCopy() {
+            return retryPending.compareAndSet(true, false);
+        }
+    }
+
+    private static class PrefetchFile implements Comparable<PrefetchFile> {
+        final CORFileReference reference;
+        final long size;
+        final boolean hot;
+
+        PrefetchFile(CORFileReference reference, long size) {
+            this.reference = reference;
+            this.size = size;
+            this.hot = isHotFile(reference.name);
+        }
+
+        @Override
+        public int compareTo(PrefetchFile o) {
+            if (hot != o.hot) {
+                return hot ? -1 : 1;
+            }
+            return Long.compare(size, o.size);
+        }
+
+        private static boolean isHotFile(String name) {
+            if (name.startsWith(IndexFileNames.SEGMENTS)) {
+                return true;
+            }
+            return HOT_EXTENSIONS.contains(IndexFileNames.getExtension(name));
+        }
     }
 }
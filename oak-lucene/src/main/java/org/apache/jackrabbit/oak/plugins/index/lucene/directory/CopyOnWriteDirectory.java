@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -33,6 +35,8 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.collect.Iterables;
@@ -57,6 +61,7 @@ import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
 public class CopyOnWriteDirectory extends FilterDirectory {
     private static final Logger log = LoggerFactory.getLogger(CopyOnWriteDirectory.class);
     private static final PerfLogger PERF_LOGGER = new PerfLogger(LoggerFactory.getLogger(log.getName() + ".perf"));
+    private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
     private final IndexCopier indexCopier;
     /**
      * Signal for the background thread to stop processing changes.
@@ -73,6 +78,16 @@ public class CopyOnWriteDirectory extends FilterDirectory {
     private final ConcurrentMap<String, COWFileReference> fileMap = newConcurrentMap();
     private final Set<String> deletedFilesLocal = Sets.newConcurrentHashSet();
     private final Set<String> skippedFiles = Sets.newConcurrentHashSet();
+    /**
+     * Copy tasks of merged files, which are only scheduled on close if the
+     * upload of merged files is throttled
+     */
+    private final Map<String, Callable<Void>> deferredCopies = new LinkedHashMap<String, Callable<Void>>();
+    private final AtomicInteger uploadCount = new AtomicInteger();
+    private final AtomicLong uploadSize = new AtomicLong();
+    private final AtomicInteger deferredUploadCount = new AtomicInteger();
+    private final AtomicLong deferredUploadSize = new AtomicLong();
+    private final long openTime = System.currentTimeMillis();
 
     private final BlockingQueue<Callable<Void>> queue = new LinkedBlockingQueue<Callable<Void>>();
     private final AtomicReference<Throwable> errorInCopy = new AtomicReference<Throwable>();
@@ -88,44 +103,60 @@ public class CopyOnWriteDirectory extends FilterDirectory {
 
     /**
      * Completion handler: set the current task to the next task and schedules that one
-     * on the background thread.
+     * on the background thread. Throttled uploads of merged files are run on
+     * a separate executor, as they wait to limit the upload rate.
      */
     private final Runnable completionHandler = new Runnable() {
-        Callable<Void> task = new Callable<Void>() {
-            @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
-            @Override
-            public Void call() throws Exception {
-                try {
-                    Callable<Void> task = queue.poll();
-                    if (task != null && task != STOP) {
-                        if (errorInCopy.get() != null) {
-                            log.trace("[COW][{}] Skipping task {} as some exception occurred in previous run",
-                                    indexPath, task);
-                        } else {
-                            task.call();
+        final Callable<Void> task = newTask(false);
+        final Callable<Void> throttledTask = newTask(true);
+
+        Callable<Void> newTask(final boolean throttled) {
+            return new Callable<Void>() {
+                @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        if (!throttled && queue.peek() instanceof DeferredCopyTask) {
+                            //Continue on the executor for throttled uploads
+                            currentTask.onComplete(completionHandler);
+                            return null;
+                        }
+                        Callable<Void> task = queue.poll();
+                        if (task != null && task != STOP) {
+                            if (errorInCopy.get() != null) {
+                                log.trace("[COW][{}] Skipping task {} as some exception occurred in previous run",
+                                        indexPath, task);
+                            } else {
+                                task.call();
+                            }
+                            currentTask.onComplete(completionHandler);
                         }
-                        currentTask.onComplete(completionHandler);
-                    }
 
-                    //Signal that all tasks completed
-                    if (task == STOP){
-                        copyDone.countDown();
+                        //Signal that all tasks completed
+                        if (task == STOP){
+                            copyDone.countDown();
+                        }
+                    } catch (Throwable t) {
+                        errorInCopy.set(t);
+                        log.debug("[COW][{}] Error occurred while copying files. Further processing would " +
+                                "be skipped", indexPath, t);
+                        currentTask.onComplete(completionHandler);
                     }
-                } catch (Throwable t) {
-                    errorInCopy.set(t);
-                    log.debug("[COW][{}] Error occurred while copying files. Further processing would " +
-                            "be skipped", indexPath, t);
-                    currentTask.onComplete(completionHandler);
+                    return null;
                 }
-                return null;
-            }
-        };
+            };
+        }
 
         @Override
         public void run() {
-            currentTask = new NotifyingFutureTask(task);
+            boolean throttled = queue.peek() instanceof DeferredCopyTask;
+            currentTask = new NotifyingFutureTask(throttled ? throttledTask : task);
             try {
-                executor.execute(currentTask);
+                if (throttled) {
+                    indexCopier.getThrottledUploadExecutor().execute(currentTask);
+                } else {
+                    executor.execute(currentTask);
+                }
             } catch (RejectedExecutionException e){
                 checkIfClosed(false);
                 throw e;
@@ -214,6 +245,7 @@ public class CopyOnWriteDirectory extends FilterDirectory {
             return;
         }
 
+        scheduleDeferredCopies();
         int pendingCopies = queue.size();
         addTask(STOP);
 
@@ -252,12 +284,17 @@ public class CopyOnWriteDirectory extends FilterDirectory {
         }
 
         indexCopier.skippedUpload(skippedFilesSize);
+        indexCopier.uploadCycleDone(indexPath, uploadCount.get(), uploadSize.get(), deferredUploadCount.get(),
+                deferredUploadSize.get(), skippedFilesSize, System.currentTimeMillis() - openTime);
 
-        String msg = "[COW][{}] CopyOnWrite stats : Skipped copying {} files with total size {}";
+        String msg = "[COW][{}] CopyOnWrite stats : Skipped copying {} files with total size {}, " +
+                "uploaded {} files with total size {}";
+        Object[] args = {indexPath, skippedFiles.size(), humanReadableByteCount(skippedFilesSize),
+                uploadCount.get(), humanReadableByteCount(uploadSize.get())};
         if ((reindexMode && skippedFilesSize > 0) || skippedFilesSize > 10 * FileUtils.ONE_MB){
-            log.info(msg, indexPath, skippedFiles.size(), humanReadableByteCount(skippedFilesSize));
+            log.info(msg, args);
         } else {
-            log.debug(msg, indexPath, skippedFiles.size(), humanReadableByteCount(skippedFilesSize));
+            log.debug(msg, args);
         }
 
         if (log.isTraceEnabled()){
@@ -303,9 +340,10 @@ public class CopyOnWriteDirectory extends FilterDirectory {
         }
     }
 
-    private void addCopyTask(final String name){
+    private void addCopyTask(final String name, boolean merged){
+        final boolean deferred = merged && indexCopier.isMergedUploadThrottled();
         indexCopier.scheduledForCopy();
-        addTask(new Callable<Void>() {
+        Callable<Void> task = new Callable<Void>() {
             @Override
             public Void call() throws Exception {
                 indexCopier.copyDone();
@@ -319,9 +357,17 @@ public class CopyOnWriteDirectory extends FilterDirectory {
                 long perfStart = PERF_LOGGER.start();
                 long start = indexCopier.startCopy(file);
 
-                local.copy(remote, name, name, IOContext.DEFAULT);
+                if (deferred) {
+                    copyThrottled(name);
+                    deferredUploadCount.incrementAndGet();
+                    deferredUploadSize.addAndGet(fileSize);
+                } else {
+                    local.copy(remote, name, name, IOContext.DEFAULT);
+                }
 
                 indexCopier.doneCopy(file, start);
+                uploadCount.incrementAndGet();
+                uploadSize.addAndGet(fileSize);
                 PERF_LOGGER.end(perfStart, 0, "[COW][{}] Copied to remote {} -- size: {}",
                         indexPath, name, IOUtils.humanReadableByteCount(fileSize));
                 return null;
@@ -331,7 +377,93 @@ public class CopyOnWriteDirectory extends FilterDirectory {
             public String toString() {
                 return "Copy: " + name;
             }
-        });
+        };
+
+        if (deferred) {
+            //Merged files are often merged away again before the writer is closed,
+            //so only upload the ones which are still present upon close
+            log.trace("[COW][{}] Deferring copy of merged file {}", indexPath, name);
+            synchronized (deferredCopies) {
+                deferredCopies.put(name, task);
+            }
+        } else {
+            addTask(task);
+        }
+    }
+
+    /**
+     * Removes the deferred copy task of the given file, if any.
+     *
+     * @return true if the file was not copied yet, and never will be
+     */
+    private boolean cancelDeferredCopy(String name) {
+        synchronized (deferredCopies) {
+            if (deferredCopies.remove(name) == null) {
+                return false;
+            }
+        }
+        indexCopier.copyDone();
+        skippedFiles.add(name);
+        log.trace("[COW][{}] Skip copying of deleted merged file {}", indexPath, name);
+        return true;
+    }
+
+    private void scheduleDeferredCopies() {
+        synchronized (deferredCopies) {
+            for (Callable<Void> task : deferredCopies.values()) {
+                addTask(new DeferredCopyTask(task));
+            }
+            deferredCopies.clear();
+        }
+    }
+
+    /**
+     * Copies the file to remote in chunks, at the rate allowed by the IndexCopier.
+     */
+    private void copyThrottled(String name) throws IOException {
+        byte[] buffer = new byte[UPLOAD_BUFFER_SIZE];
+        boolean success = false;
+        try (IndexInput in = local.openInput(name, IOContext.READONCE);
+             IndexOutput out = remote.createOutput(name, IOContext.DEFAULT)) {
+            long remaining = in.length();
+            while (remaining > 0) {
+                int len = (int) Math.min(buffer.length, remaining);
+                indexCopier.throttleMergedUpload(len);
+                in.readBytes(buffer, 0, len);
+                out.writeBytes(buffer, 0, len);
+                remaining -= len;
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                try {
+                    remote.deleteFile(name);
+                } catch (IOException ignore) {
+                    // the file might not have been created
+                }
+            }
+        }
+    }
+
+    /**
+     * A copy of a merged file, which is uploaded at a limited rate.
+     */
+    private static final class DeferredCopyTask implements Callable<Void> {
+        private final Callable<Void> copy;
+
+        DeferredCopyTask(Callable<Void> copy) {
+            this.copy = copy;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            return copy.call();
+        }
+
+        @Override
+        public String toString() {
+            return copy.toString();
+        }
     }
 
     private void addDeleteTask(final String name){
@@ -467,12 +599,15 @@ public class CopyOnWriteDirectory extends FilterDirectory {
         @Override
         public IndexOutput createOutput(IOContext context) throws IOException {
             log.debug("[COW][{}] Creating output {}", indexPath, name);
-            return new CopyOnCloseIndexOutput(local.createOutput(name, context));
+            return new CopyOnCloseIndexOutput(local.createOutput(name, context),
+                    context.context == IOContext.Context.MERGE);
         }
 
         @Override
         public void delete() throws IOException {
-            addDeleteTask(name);
+            if (!cancelDeferredCopy(name)) {
+                addDeleteTask(name);
+            }
             deletedFilesLocal.add(name);
         }
 
@@ -488,9 +623,11 @@ public class CopyOnWriteDirectory extends FilterDirectory {
          */
         private class CopyOnCloseIndexOutput extends IndexOutput {
             private final IndexOutput delegate;
+            private final boolean merged;
 
-            public CopyOnCloseIndexOutput(IndexOutput delegate) {
+            public CopyOnCloseIndexOutput(IndexOutput delegate, boolean merged) {
                 this.delegate = delegate;
+                this.merged = merged;
             }
 
             @Override
@@ -502,7 +639,7 @@ public class CopyOnWriteDirectory extends FilterDirectory {
             public void close() throws IOException {
                 delegate.close();
                 //Schedule this file to be copied in background
-                addCopyTask(name);
+                addCopyTask(name, merged);
             }
 
             @Override
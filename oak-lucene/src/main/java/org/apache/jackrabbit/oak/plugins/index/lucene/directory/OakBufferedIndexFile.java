@@ -164,11 +164,16 @@ class OakBufferedIndexFile implements OakIndexFile {
             checkState(!blobModified);
 
             int n = (int) Math.min(blobSize, length - (long)i * blobSize);
-            InputStream stream = data.get(i).getNewStream();
-            try {
-                ByteStreams.readFully(stream, blob, 0, n);
-            } finally {
-                stream.close();
+            if (!dataModified) {
+                // the blob is read as stored, so it can be shared via the block cache
+                OakIndexBlockCache.getInstance().readFully(data.get(i), blob, n);
+            } else {
+                InputStream stream = data.get(i).getNewStream();
+                try {
+                    ByteStreams.readFully(stream, blob, 0, n);
+                } finally {
+                    stream.close();
+                }
             }
             index = i;
         }
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
+import org.apache.jackrabbit.oak.api.Blob;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A size bounded cache of index file blocks, shared by all {@link OakDirectory}
+ * instances. The blocks are kept in direct (off-heap) memory, keyed by the
+ * content identity of the blob they were read from. As blobs are immutable,
+ * no invalidation is needed; cold blocks are evicted once the maximum size
+ * is reached.
+ * <p>
+ * This allows reading index files from the repository with close to local
+ * latency, without keeping a full local copy (copy-on-read) of each index.
+ * The cache is disabled by default.
+ */
+public final class OakIndexBlockCache {
+    public static final String BLOCK_CACHE_SIZE_PARAM = "oak.lucene.blockCacheSizeInMB";
+
+    private static final Logger LOG = LoggerFactory.getLogger(OakIndexBlockCache.class);
+
+    private static final long MB = 1024 * 1024;
+
+    private static volatile OakIndexBlockCache instance =
+            new OakIndexBlockCache(Long.getLong(BLOCK_CACHE_SIZE_PARAM, 0) * MB);
+
+    /**
+     * Sets the size of the shared cache. A size of 0 disables the cache. A
+     * size set via the system property takes precedence.
+     *
+     * @param sizeInMB the maximum size in MB
+     */
+    public static void setCacheSizeInMB(long sizeInMB) {
+        String cliValStr = System.getProperty(BLOCK_CACHE_SIZE_PARAM);
+        if (cliValStr != null && Long.parseLong(cliValStr) != sizeInMB) {
+            LOG.warn("Ignoring configuration {} as CLI param overrides with a different value", sizeInMB);
+            return;
+        }
+        if (instance.maxSize != sizeInMB * MB) {
+            instance.invalidateAll();
+            instance = new OakIndexBlockCache(sizeInMB * MB);
+            LOG.info("Index block cache size set to {} MB", sizeInMB);
+        }
+    }
+
+    @NotNull
+    public static OakIndexBlockCache getInstance() {
+        return instance;
+    }
+
+    private final long maxSize;
+
+    private final Cache<String, ByteBuffer> cache;
+
+    private final AtomicLong size = new AtomicLong();
+
+    OakIndexBlockCache(long maxSize) {
+        this.maxSize = maxSize;
+        if (maxSize > 0) {
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(maxSize)
+                    .weigher((Weigher<String, ByteBuffer>) (key, value) -> value.capacity())
+                    .removalListener((RemovalListener<String, ByteBuffer>) notification ->
+                            size.addAndGet(-notification.getValue().capacity()))
+                    .recordStats()
+                    .build();
+        } else {
+            cache = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Reads the first {@code len} bytes of the given blob into {@code dest},
+     * from the cache if possible.
+     *
+     * @param blob the blob to read
+     * @param dest the target array
+     * @param len the number of bytes to read
+     */
+    void readFully(Blob blob, byte[] dest, int len) throws IOException {
+        String key = cache == null ? null : blob.getContentIdentity();
+        if (key == null) {
+            read(blob, dest, len);
+            return;
+        }
+        ByteBuffer block = cache.getIfPresent(key);
+        if (block != null && block.capacity() == len) {
+            // duplicate, as the position is not shared between readers
+            block.duplicate().get(dest, 0, len);
+            return;
+        }
+        read(blob, dest, len);
+        block = ByteBuffer.allocateDirect(len);
+        block.put(dest, 0, len);
+        block.flip();
+        size.addAndGet(len);
+        cache.put(key, block);
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getHitCount() {
+        return stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return stats().evictionCount();
+    }
+
+    public double getHitRate() {
+        return stats().hitRate();
+    }
+
+    private CacheStats stats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    private static void read(Blob blob, byte[] dest, int len) throws IOException {
+        try (InputStream stream = blob.getNewStream()) {
+            ByteStreams.readFully(stream, dest, 0, len);
+        }
+    }
+}
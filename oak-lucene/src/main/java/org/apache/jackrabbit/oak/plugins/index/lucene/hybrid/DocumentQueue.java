@@ -26,15 +26,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Striped;
 import org.apache.jackrabbit.oak.commons.PerfLogger;
@@ -43,27 +44,40 @@ import org.apache.jackrabbit.oak.plugins.index.lucene.IndexTracker;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexNode;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexProviderService;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.LuceneIndexWriter;
+import org.apache.jackrabbit.oak.plugins.metric.util.StatsProviderUtil;
 import org.apache.jackrabbit.oak.stats.CounterStats;
 import org.apache.jackrabbit.oak.stats.MeterStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
+import org.apache.jackrabbit.oak.stats.TimerStats;
 import org.apache.lucene.index.IndexableField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkState;
 
+/**
+ * Queue of documents to be added to the local (NRT and sync) indexes.
+ * <p>
+ * Each index has its own lane. The lanes are lock free queues, and each lane
+ * is processed by at most one task at a time on the shared executor, so that
+ * different indexes are updated in parallel, while the documents of an index
+ * are added in order, and in batches. The capacity of the queue is shared by
+ * all lanes. A lane is removed once it is empty and its index is no longer
+ * tracked, for example because the index was removed.
+ */
 public class DocumentQueue implements Closeable, IndexingQueue {
     private static final PerfLogger PERF_LOGGER =
             new PerfLogger(LoggerFactory.getLogger(DocumentQueue.class.getName() + ".perf"));
-    private static final LuceneDoc STOP = LuceneDoc.forUpdate("", "", Collections.<IndexableField>emptyList());
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final IndexTracker tracker;
-    private final BlockingQueue<LuceneDoc> docsQueue;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Semaphore capacity;
     private final Executor executor;
     private final CounterStats queueSizeStats;
     private final MeterStats added;
     private final MeterStats dropped;
+    private final StatsProviderUtil statsProviderUtil;
     private final Striped<Lock> locks = Striped.lock(64);
     private UncaughtExceptionHandler delegate = (t, e) -> {};
 
@@ -85,83 +99,31 @@ public class DocumentQueue implements Closeable, IndexingQueue {
         }
     };
 
-    /**
-     * Current background task
-     */
-    private volatile NotifyingFutureTask currentTask = NotifyingFutureTask.completed();
-
-    /**
-     * Completion handler: set the current task to the next task and schedules that one
-     * on the background thread.
-     */
-    private final Runnable completionHandler = new Runnable() {
-        private final Callable<Void> task = new Callable<Void>() {
-            @Override
-            public Void call() throws Exception {
-                try {
-                    long start = PERF_LOGGER.start();
-                    int maxSize = docsQueue.size();
-                    List<LuceneDoc> docs = Lists.newArrayListWithCapacity(maxSize);
-                    ListMultimap<String, LuceneDoc> docsPerIndex = ArrayListMultimap.create();
-
-                    //Do the processing in batches
-                    int count = docsQueue.drainTo(docs, maxSize);
-                    if (count == 0) {
-                        return null;
-                    }
-
-                    queueSizeStats.dec(count);
-
-                    for (int i = 0; i < count; i++) {
-                        LuceneDoc doc = docs.get(i);
-                        if (doc == STOP) {
-                            return null;
-                        }
-                        docsPerIndex.get(doc.indexPath).add(doc);
-                    }
-
-                    addDocsToIndex(docsPerIndex.asMap(), true);
-
-                    scheduleQueuedDocsProcessing();
-                    PERF_LOGGER.end(start, 1, "Processed {} docs from queue", count);
-                } catch (Throwable t) {
-                    exceptionHandler.uncaughtException(Thread.currentThread(), t);
-                    delegate.uncaughtException(Thread.currentThread(), t);
-                }
-                return null;
-            }
-        };
-
-        @Override
-        public void run() {
-            currentTask = new NotifyingFutureTask(task);
-            executor.execute(currentTask);
-        }
-    };
-
     public DocumentQueue(int maxQueueSize, IndexTracker tracker, Executor executor) {
         this(maxQueueSize, LuceneIndexProviderService.PROP_HYBRID_QUEUE_TIMEOUT_DEFAULT,
                 tracker, executor, StatisticsProvider.NOOP);
     }
 
     public DocumentQueue(int maxQueueSize, long queueOfferTimeoutMillis, IndexTracker tracker, Executor executor, StatisticsProvider sp) {
-        this.docsQueue = new LinkedBlockingDeque<>(maxQueueSize);
+        this.capacity = new Semaphore(maxQueueSize);
         this.tracker = tracker;
         this.executor = executor;
         this.queueOfferTimeoutMillis = queueOfferTimeoutMillis;
         this.queueSizeStats = sp.getCounterStats("HYBRID_QUEUE_SIZE", StatsOptions.DEFAULT);
         this.added = sp.getMeter("HYBRID_ADDED", StatsOptions.DEFAULT);
         this.dropped = sp.getMeter("HYBRID_DROPPED", StatsOptions.DEFAULT);
+        this.statsProviderUtil = new StatsProviderUtil(sp);
     }
 
     @Override
     public boolean addIfNotFullWithoutWait(LuceneDoc doc){
         checkState(!stopped);
-        boolean added = docsQueue.offer(doc);
+        boolean added = capacity.tryAcquire();
         if (added) {
+            getLane(doc.indexPath).offer(doc);
             queueSizeStats.inc();
             if (log.isTraceEnabled()){
-                log.trace("Adding {} without wait to queue at size {}", doc, docsQueue.size());
+                log.trace("Adding {} without wait to queue at size {}", doc, queueSizeStats.getCount());
             }
         }
         return added;
@@ -172,34 +134,40 @@ public class DocumentQueue implements Closeable, IndexingQueue {
         checkState(!stopped);
         boolean added = false;
         try {
-            added = docsQueue.offer(doc, queueOfferTimeoutMillis, TimeUnit.MILLISECONDS);
+            added = capacity.tryAcquire(queueOfferTimeoutMillis, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        scheduleQueuedDocsProcessing();
 
+        Lane lane = getLane(doc.indexPath);
         if (added) {
+            lane.offer(doc);
             queueSizeStats.inc();
             if (log.isTraceEnabled()){
-                log.trace("Adding {} to queue at size {}", doc, docsQueue.size());
+                log.trace("Adding {} to queue at size {}", doc, queueSizeStats.getCount());
             }
         } else {
             dropped.mark();
+            lane.dropped.mark();
         }
+        lane.schedule();
         return added;
     }
 
     @Override
     public void scheduleQueuedDocsProcessing() {
-        // Set the completion handler on the currently running task. Multiple calls
-        // to onComplete are not a problem here since we always pass the same value.
-        // Thus there is no question as to which of the handlers will effectively run.
-        currentTask.onComplete(completionHandler);
+        for (Lane lane : lanes.values()) {
+            if (!lane.removeIfUnused()) {
+                lane.schedule();
+            }
+        }
     }
 
     @Override
     public void addAllSynchronously(Map<String, Collection<LuceneDoc>> docsPerIndex) {
-        addDocsToIndex(docsPerIndex, false);
+        for (Map.Entry<String, Collection<LuceneDoc>> e : docsPerIndex.entrySet()) {
+            addDocsToIndex(e.getKey(), e.getValue(), false);
+        }
     }
 
     /**
@@ -210,33 +178,40 @@ public class DocumentQueue implements Closeable, IndexingQueue {
         this.delegate = delegate;
     }
 
-    private void addDocsToIndex(Map<String, Collection<LuceneDoc>> docsPerIndex, boolean docsFromQueue) {
-        //If required it can optimized by indexing diff indexes in parallel
-        //Something to consider if it becomes a bottleneck
-        for (Map.Entry<String, Collection<LuceneDoc>> e : docsPerIndex.entrySet()) {
-            //In NRT case the indexing would be single threaded as it always happens via queue
-            //For sync case it can happen that indexing is requested by LocalIndexObserver and also
-            //via elements in queue. So we need to lock the indexing path
-            //Lock contention should not happen much as in most cases elements added
-            //to queue would get processed before observer is invoked
-            String indexPath = e.getKey();
-            Lock indexingLock = locks.get(indexPath);
-            indexingLock.lock();
-            try {
-                processDocs(indexPath, e.getValue(), docsFromQueue);
-            } finally {
-                indexingLock.unlock();
-            }
-            added.mark(e.getValue().size());
+    private void addDocsToIndex(String indexPath, Collection<LuceneDoc> docs, boolean docsFromQueue) {
+        //In NRT case the indexing would be single threaded as it always happens via the lane
+        //For sync case it can happen that indexing is requested by LocalIndexObserver and also
+        //via elements in queue. So we need to lock the indexing path
+        //Lock contention should not happen much as in most cases elements added
+        //to queue would get processed before observer is invoked
+        Lock indexingLock = locks.get(indexPath);
+        indexingLock.lock();
+        try {
+            processDocs(indexPath, docs, docsFromQueue);
+        } finally {
+            indexingLock.unlock();
         }
+        added.mark(docs.size());
     }
 
     List<LuceneDoc> getQueuedDocs(){
         List<LuceneDoc> docs = Lists.newArrayList();
-        docs.addAll(docsQueue);
+        for (Lane lane : lanes.values()) {
+            for (QueuedDoc d : lane.docs) {
+                docs.add(d.doc);
+            }
+        }
         return docs;
     }
 
+    int getLaneCount() {
+        return lanes.size();
+    }
+
+    private Lane getLane(String indexPath) {
+        return lanes.computeIfAbsent(indexPath, Lane::new);
+    }
+
     private void processDocs(String indexPath, Iterable<LuceneDoc> docs, boolean docsFromQueue){
 
         //Drop the write call if stopped
@@ -252,15 +227,18 @@ public class DocumentQueue implements Closeable, IndexingQueue {
 
         try{
             LuceneIndexWriter writer = indexNode.getLocalWriter();
+            if (writer == null) {
+                //IndexDefinition per LuceneIndexNode might have changed and local
+                //indexing is disabled. Ignore
+                log.debug("No local IndexWriter found for index [{}]. Skipping {} index " +
+                        "entries", indexPath, Iterables.size(docs));
+                return;
+            }
+            //The NRT writer only adds documents, so all of them are added at once
+            List<Iterable<? extends IndexableField>> batch =
+                    writer instanceof NRTIndex.NRTIndexWriter ? Lists.newArrayList() : null;
             boolean docAdded = false;
             for (LuceneDoc doc : docs) {
-                if (writer == null) {
-                    //IndexDefinition per LuceneIndexNode might have changed and local
-                    //indexing is disabled. Ignore
-                    log.debug("No local IndexWriter found for index [{}]. Skipping index " +
-                            "entry for [{}]", indexPath, doc.docPath);
-                    return;
-                }
                 if (doc.isProcessed()){
                     //Skip already processed doc entry
                     continue;
@@ -269,6 +247,8 @@ public class DocumentQueue implements Closeable, IndexingQueue {
                 }
                 if (doc.delete) {
                     writer.deleteDocuments(doc.docPath);
+                } else if (batch != null) {
+                    batch.add(doc.doc);
                 } else {
                     writer.updateDocument(doc.docPath, doc.doc);
                 }
@@ -276,6 +256,9 @@ public class DocumentQueue implements Closeable, IndexingQueue {
                 String prefix = docsFromQueue ? "Queued" : "Direct";
                 log.trace("[{}] Updated index with doc {}", prefix, doc);
             }
+            if (batch != null && !batch.isEmpty()) {
+                ((NRTIndex.NRTIndexWriter) writer).addDocuments(batch);
+            }
             if (docAdded) {
                 indexNode.refreshReadersOnWriteIfRequired();
             }
@@ -293,8 +276,147 @@ public class DocumentQueue implements Closeable, IndexingQueue {
     public void close() throws IOException {
         //Its fine to "drop" any entry in queue as
         //local index is meant for running state only
-        docsQueue.clear();
-        docsQueue.add(STOP);
         stopped = true;
+        for (Lane lane : lanes.values()) {
+            lane.clear();
+        }
+    }
+
+    private static final class QueuedDoc {
+        final LuceneDoc doc;
+        final long queuedAt = System.nanoTime();
+
+        QueuedDoc(LuceneDoc doc) {
+            this.doc = doc;
+        }
+    }
+
+    /**
+     * The queued documents of one index.
+     */
+    private final class Lane {
+        private final String indexPath;
+        private final Queue<QueuedDoc> docs = new ConcurrentLinkedQueue<>();
+        private final MeterStats dropped;
+        private final TimerStats latency;
+
+        /**
+         * Current background task
+         */
+        private volatile NotifyingFutureTask currentTask = NotifyingFutureTask.completed();
+
+        /**
+         * Whether the lane was removed from the queue
+         */
+        private volatile boolean removed;
+
+        private final Callable<Void> task = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    processQueuedDocs();
+                } catch (Throwable t) {
+                    exceptionHandler.uncaughtException(Thread.currentThread(), t);
+                    delegate.uncaughtException(Thread.currentThread(), t);
+                }
+                return null;
+            }
+        };
+
+        /**
+         * Completion handler: set the current task to the next task and schedules that one
+         * on the background thread.
+         */
+        private final Runnable completionHandler = new Runnable() {
+            @Override
+            public void run() {
+                currentTask = new NotifyingFutureTask(task);
+                executor.execute(currentTask);
+            }
+        };
+
+        Lane(String indexPath) {
+            this.indexPath = indexPath;
+            Map<String, String> labels = Collections.singletonMap("index", indexPath);
+            this.dropped = statsProviderUtil.getMeterStats().apply("HYBRID_DROPPED", labels);
+            this.latency = statsProviderUtil.getTimerStats().apply("HYBRID_QUEUE_LATENCY", labels);
+        }
+
+        void offer(LuceneDoc doc) {
+            docs.offer(new QueuedDoc(doc));
+            if (removed) {
+                // the index is not tracked: drop the document, as it
+                // would be dropped when processed
+                clear();
+            }
+        }
+
+        void schedule() {
+            // Set the completion handler on the currently running task. Multiple calls
+            // to onComplete are not a problem here since we always pass the same value.
+            // Thus there is no question as to which of the handlers will effectively run.
+            currentTask.onComplete(completionHandler);
+        }
+
+        void clear() {
+            int count = 0;
+            while (docs.poll() != null) {
+                count++;
+            }
+            release(count);
+        }
+
+        /**
+         * Remove this lane if it is empty and its index is no longer tracked.
+         * The labelled metrics stay registered, and are used again if a lane
+         * is created for the same index later.
+         *
+         * @return whether the lane was removed
+         */
+        boolean removeIfUnused() {
+            if (!docs.isEmpty() || tracker.getIndexNodePaths().contains(indexPath)) {
+                return false;
+            }
+            removed = true;
+            lanes.remove(indexPath, this);
+            // documents offered concurrently
+            clear();
+            return true;
+        }
+
+        private void processQueuedDocs() {
+            if (stopped) {
+                return;
+            }
+            long start = PERF_LOGGER.start();
+            //Do the processing in batches of what is queued now
+            List<LuceneDoc> batch = Lists.newArrayList();
+            long now = System.nanoTime();
+            QueuedDoc d;
+            while ((d = docs.poll()) != null) {
+                batch.add(d.doc);
+                latency.update(now - d.queuedAt, TimeUnit.NANOSECONDS);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            release(batch.size());
+
+            addDocsToIndex(indexPath, batch, true);
+
+            if (!docs.isEmpty()) {
+                schedule();
+            } else {
+                removeIfUnused();
+            }
+            PERF_LOGGER.end(start, 1, "[{}] Processed {} docs from queue", indexPath, batch.size());
+        }
+
+        private void release(int count) {
+            if (count > 0) {
+                capacity.release(count);
+                queueSizeStats.dec(count);
+            }
+        }
     }
 }
@@ -0,0 +1,495 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.util.fv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An in memory hierarchical navigable small world (HNSW) graph, for
+ * approximate nearest neighbour search of feature vectors by euclidean
+ * distance. See "Efficient and robust approximate nearest neighbor search
+ * using Hierarchical Navigable Small World graphs", Malkov and Yashunin.
+ * <p>
+ * Each node is identified by the path of the indexed document. Nodes can not
+ * be removed from the graph, but they can be marked as deleted: deleted nodes
+ * are still used to navigate the graph, but are not returned by searches.
+ * <p>
+ * The graph is not thread safe while it is built; once built, concurrent
+ * searches are supported.
+ */
+public class HNSWGraph {
+
+    static final String CODEC = "OakHNSWGraph";
+
+    static final int VERSION = 0;
+
+    /**
+     * Default maximum number of neighbours of each node on the upper layers
+     * (twice as many on the lowest layer).
+     */
+    public static final int DEFAULT_M = 16;
+
+    /**
+     * Default size of the dynamic candidate list when adding nodes.
+     */
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+
+    private final int dimension;
+
+    private final int m;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final Random random;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * The id of the live (not deleted) node, by path.
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    /**
+     * The ids of the nodes marked as deleted.
+     */
+    private final BitSet deleted = new BitSet();
+
+    public HNSWGraph(int dimension) {
+        this(dimension, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, 42);
+    }
+
+    public HNSWGraph(int dimension, int m, int efConstruction, long seed) {
+        if (dimension <= 0 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("Invalid graph parameters: dimension=" + dimension +
+                    ", m=" + m + ", efConstruction=" + efConstruction);
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Add a vector. If a node with the same path already exists, it is
+     * marked as deleted.
+     *
+     * @param path the path of the document
+     * @param vector the feature vector
+     */
+    public void add(@NotNull String path, @NotNull float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + dimension +
+                    ", got " + vector.length + " for " + path);
+        }
+        delete(path);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        Node node = new Node(path, vector, level, m);
+        int id = nodes.size();
+        nodes.add(node);
+        ids.put(path, id);
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+
+        int ep = entryPoint;
+        for (int lc = maxLevel; lc > level; lc--) {
+            ep = greedySearch(vector, ep, lc);
+        }
+        for (int lc = Math.min(level, maxLevel); lc >= 0; lc--) {
+            List<Candidate> candidates = searchLayer(vector, ep, efConstruction, lc, null);
+            List<Candidate> neighbours = selectNeighbours(candidates, m);
+            for (Candidate c : neighbours) {
+                node.addLink(lc, c.id);
+                connect(c.id, id, lc);
+            }
+            ep = candidates.get(0).id;
+        }
+        if (level > maxLevel) {
+            entryPoint = id;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Mark the node with the given path as deleted, if any.
+     *
+     * @return whether a node was deleted
+     */
+    public boolean delete(@NotNull String path) {
+        Integer id = ids.remove(path);
+        if (id == null) {
+            return false;
+        }
+        deleted.set(id);
+        return true;
+    }
+
+    /**
+     * Search the nearest live nodes of the given vector.
+     *
+     * @param vector the query vector
+     * @param k the number of results
+     * @param ef the size of the dynamic candidate list, larger values
+     *           improve the recall
+     * @return the nearest nodes, nearest first
+     */
+    @NotNull
+    public List<Result> search(@NotNull float[] vector, int k, int ef) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + dimension +
+                    ", got " + vector.length);
+        }
+        if (ids.isEmpty() || k <= 0) {
+            return Collections.emptyList();
+        }
+        int ep = entryPoint;
+        for (int lc = maxLevel; lc > 0; lc--) {
+            ep = greedySearch(vector, ep, lc);
+        }
+        List<Candidate> candidates = searchLayer(vector, ep, Math.max(ef, k), 0,
+                deleted.isEmpty() ? null : deleted);
+        List<Result> results = new ArrayList<>(Math.min(k, candidates.size()));
+        for (Candidate c : candidates) {
+            if (results.size() == k) {
+                break;
+            }
+            results.add(new Result(nodes.get(c.id).path, Math.sqrt(c.distance)));
+        }
+        return results;
+    }
+
+    /**
+     * Get the vector of the live node with the given path.
+     *
+     * @return the vector, or null if not found
+     */
+    @Nullable
+    public float[] getVector(@NotNull String path) {
+        Integer id = ids.get(path);
+        return id == null ? null : nodes.get(id).vector;
+    }
+
+    @NotNull
+    public Iterable<String> getPaths() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the number of live nodes
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return the number of nodes marked as deleted
+     */
+    public int getDeletedCount() {
+        return deleted.cardinality();
+    }
+
+    public void write(@NotNull DataOutput out) throws IOException {
+        CodecUtil.writeHeader(out, CODEC, VERSION);
+        out.writeVInt(dimension);
+        out.writeVInt(m);
+        out.writeVInt(efConstruction);
+        out.writeVInt(nodes.size());
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int id = 0; id < nodes.size(); id++) {
+            Node node = nodes.get(id);
+            out.writeString(node.path);
+            out.writeByte((byte) (deleted.get(id) ? 1 : 0));
+            for (float f : node.vector) {
+                out.writeInt(Float.floatToIntBits(f));
+            }
+            out.writeVInt(node.links.length);
+            for (int lc = 0; lc < node.links.length; lc++) {
+                out.writeVInt(node.linkCounts[lc]);
+                for (int i = 0; i < node.linkCounts[lc]; i++) {
+                    out.writeVInt(node.links[lc][i]);
+                }
+            }
+        }
+    }
+
+    @NotNull
+    public static HNSWGraph read(@NotNull DataInput in) throws IOException {
+        CodecUtil.checkHeader(in, CODEC, VERSION, VERSION);
+        int dimension = in.readVInt();
+        int m = in.readVInt();
+        int efConstruction = in.readVInt();
+        int size = in.readVInt();
+        HNSWGraph graph = new HNSWGraph(dimension, m, efConstruction, size);
+        graph.entryPoint = in.readInt();
+        graph.maxLevel = in.readInt();
+        for (int id = 0; id < size; id++) {
+            String path = in.readString();
+            boolean deleted = in.readByte() != 0;
+            float[] vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = Float.intBitsToFloat(in.readInt());
+            }
+            int levels = in.readVInt();
+            Node node = new Node(path, vector, levels - 1, m);
+            for (int lc = 0; lc < levels; lc++) {
+                int count = in.readVInt();
+                for (int i = 0; i < count; i++) {
+                    node.addLink(lc, in.readVInt());
+                }
+            }
+            graph.nodes.add(node);
+            if (deleted) {
+                graph.deleted.set(id);
+            } else {
+                graph.ids.put(path, id);
+            }
+        }
+        return graph;
+    }
+
+    //~---------------------------------------------< internal >
+
+    private int maxLinks(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private int greedySearch(float[] vector, int ep, int level) {
+        double best = distance(vector, nodes.get(ep).vector);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Node node = nodes.get(ep);
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int id = node.links[level][i];
+                double d = distance(vector, nodes.get(id).vector);
+                if (d < best) {
+                    best = d;
+                    ep = id;
+                    changed = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * Search a layer, starting from the given entry point.
+     *
+     * @param excluded the nodes to be navigated but not returned, or null
+     * @return the nearest (up to ef) nodes, nearest first
+     */
+    private List<Candidate> searchLayer(float[] vector, int ep, int ef, int level, @Nullable BitSet excluded) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Collections.reverseOrder());
+        Candidate start = new Candidate(ep, distance(vector, nodes.get(ep).vector));
+        visited.set(ep);
+        candidates.add(start);
+        if (excluded == null || !excluded.get(ep)) {
+            results.add(start);
+        }
+        while (!candidates.isEmpty()) {
+            Candidate c = candidates.poll();
+            if (results.size() >= ef && c.distance > results.peek().distance) {
+                break;
+            }
+            Node node = nodes.get(c.id);
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int id = node.links[level][i];
+                if (visited.get(id)) {
+                    continue;
+                }
+                visited.set(id);
+                double d = distance(vector, nodes.get(id).vector);
+                if (results.size() < ef || d < results.peek().distance) {
+                    Candidate n = new Candidate(id, d);
+                    candidates.add(n);
+                    if (excluded == null || !excluded.get(id)) {
+                        results.add(n);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        Candidate[] sorted = results.toArray(new Candidate[0]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    /**
+     * Select up to {@code max} neighbours from the given candidates (sorted
+     * nearest first), preferring candidates that are closer to the node than
+     * to any neighbour selected so far, so that the graph stays connected
+     * across clusters.
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> candidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate c : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] v = nodes.get(c.id).vector;
+            boolean good = true;
+            for (Candidate s : selected) {
+                if (distance(v, nodes.get(s.id).vector) < c.distance) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) {
+                selected.add(c);
+            } else {
+                skipped.add(c);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < max; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void connect(int from, int to, int level) {
+        Node node = nodes.get(from);
+        int max = maxLinks(level);
+        if (node.linkCounts[level] < max) {
+            node.addLink(level, to);
+            return;
+        }
+        // shrink the neighbour list
+        List<Candidate> candidates = new ArrayList<>(max + 1);
+        candidates.add(new Candidate(to, distance(node.vector, nodes.get(to).vector)));
+        for (int i = 0; i < node.linkCounts[level]; i++) {
+            int id = node.links[level][i];
+            candidates.add(new Candidate(id, distance(node.vector, nodes.get(id).vector)));
+        }
+        Collections.sort(candidates);
+        List<Candidate> selected = selectNeighbours(candidates, max);
+        node.linkCounts[level] = 0;
+        for (Candidate c : selected) {
+            node.addLink(level, c.id);
+        }
+    }
+
+    /**
+     * The squared euclidean distance.
+     */
+    private static double distance(float[] x, float[] y) {
+        double d = 0;
+        for (int i = 0; i < x.length; i++) {
+            double diff = x[i] - y[i];
+            d += diff * diff;
+        }
+        return d;
+    }
+
+    private static final class Node {
+        final String path;
+        final float[] vector;
+        final int[][] links;
+        final int[] linkCounts;
+
+        Node(String path, float[] vector, int level, int m) {
+            this.path = path;
+            this.vector = vector;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int lc = 0; lc <= level; lc++) {
+                // one more than the maximum, as the list is shrunk when full
+                links[lc] = new int[(lc == 0 ? 2 * m : m) + 1];
+            }
+        }
+
+        void addLink(int level, int id) {
+            links[level][linkCounts[level]++] = id;
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        final int id;
+        final double distance;
+
+        Candidate(int id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int c = Double.compare(distance, o.distance);
+            return c != 0 ? c : Integer.compare(id, o.id);
+        }
+    }
+
+    /**
+     * A search result: the path of the document, and its euclidean distance
+     * to the query vector.
+     */
+    public static final class Result {
+        private final String path;
+        private final double distance;
+
+        Result(String path, double distance) {
+            this.path = path;
+            this.distance = distance;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        @Override
+        public String toString() {
+            return path + ":" + distance;
+        }
+    }
+}
@@ -100,7 +100,15 @@ public class SimSearchUtils {
         return tokens;
     }
 
-    static Query getSimQuery(Analyzer analyzer, String fieldName, String text) throws IOException {
+    /**
+     * Create the LSH query for the given feature vector.
+     *
+     * @param analyzer the LSH analyzer
+     * @param fieldName the similarity field
+     * @param text the feature vector, as a space separated list of numbers
+     * @return the query
+     */
+    public static Query getSimQuery(Analyzer analyzer, String fieldName, String text) throws IOException {
         return createLSHQuery(fieldName, getTokens(analyzer, fieldName, text), 1f,1f);
     }
 
@@ -152,9 +160,15 @@ public class SimSearchUtils {
                         log.debug("adding similarity clause for property {}", pd.name);
                         String similarityFieldName = FieldNames.createSimilarityFieldName(pd.name);
                         String fvString = doc.get(similarityFieldName);
-                        if (fvString != null && fvString.trim().length() > 0) {
-                            log.trace("generating sim query on field {} and text {}", similarityFieldName, fvString);
-                            Query simQuery = SimSearchUtils.getSimQuery(analyzer, similarityFieldName, fvString);
+                        Query graphQuery = pd.similarityGraph ? getGraphQuery(reader, pd, doc) : null;
+                        if (graphQuery != null || (fvString != null && fvString.trim().length() > 0)) {
+                            Query simQuery;
+                            if (graphQuery != null) {
+                                simQuery = graphQuery;
+                            } else {
+                                log.trace("generating sim query on field {} and text {}", similarityFieldName, fvString);
+                                simQuery = SimSearchUtils.getSimQuery(analyzer, similarityFieldName, fvString);
+                            }
                             booleanQuery.add(new BooleanClause(simQuery, SHOULD));
                             String[] binaryTags = doc.getValues(FieldNames.SIMILARITY_TAGS);
                             if (binaryTags != null && binaryTags.length > 0) {
@@ -183,6 +197,36 @@ public class SimSearchUtils {
         }
     }
 
+    /**
+     * Create a query for the nearest neighbours of the feature vector of the
+     * given document, using the similarity graph of the property. Each
+     * neighbour is scored by its distance to the document.
+     *
+     * @return the query, or null if there is no graph for the property
+     */
+    private static Query getGraphQuery(IndexReader reader, PropertyDefinition pd, Document doc) {
+        BytesRef binaryValue = doc.getBinaryValue(FieldNames.createBinSimilarityFieldName(pd.name));
+        if (binaryValue == null) {
+            return null;
+        }
+        float[] vector = SimilarityGraphs.toFloatArray(binaryValue);
+        // one clause per neighbour
+        int k = Math.min(SimilarityGraphs.NEIGHBOURS, BooleanQuery.getMaxClauseCount());
+        List<HNSWGraph.Result> neighbours = SimilarityGraphs.search(reader, pd.name, vector, k);
+        if (neighbours == null) {
+            log.debug("no similarity graph found for property {}, using LSH", pd.name);
+            return null;
+        }
+        BooleanQuery query = new BooleanQuery(true);
+        for (HNSWGraph.Result r : neighbours) {
+            Query q = new ConstantScoreQuery(new TermQuery(new Term(FieldNames.PATH, r.getPath())));
+            q.setBoost((float) (1d / (1d + r.getDistance())));
+            query.add(q, SHOULD);
+        }
+        log.trace("similarity graph query for property {} with {} neighbours", pd.name, neighbours.size());
+        return query;
+    }
+
     private static Query createLSHQuery(String field, Collection<BytesRef> minhashes,
                                         float similarity, float expectedTruePositive) {
         int bandSize = 1;
@@ -0,0 +1,433 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.util.fv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.jackrabbit.oak.plugins.index.search.FieldNames;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.CompositeReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistence and lookup of the {@link HNSWGraph}s of the feature vector
+ * properties of an index.
+ * <p>
+ * A graph is built from the stored binary feature vectors of each property,
+ * and is written as a separate file to the index directory, next to the Lucene
+ * files, so that it is persisted (and copied) like any other index file. The
+ * name of the file contains the generation of the index commit it was built
+ * for, as index files are never overwritten. When updating a graph, the
+ * previous one is read, and only vectors of new or changed documents are
+ * added; if too many nodes were deleted since, the graph is built from
+ * scratch. Finding the new, changed and deleted documents requires to read
+ * the stored vectors of all documents of the index (not only of the segments
+ * added since), so an update costs a scan of the stored fields, and memory
+ * for the paths of all documents. This is why the graphs are only updated
+ * every {@link #UPDATE_FREQUENCY_MINUTES} minutes.
+ * <p>
+ * Each graph file contains a unique id. Loaded graphs are cached by this id,
+ * so that the graph is not read again when the index is reopened, as long as
+ * the graph did not change.
+ * <p>
+ * Documents which were indexed after the graph was built are not found until
+ * the graph is updated again.
+ */
+public final class SimilarityGraphs {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarityGraphs.class);
+
+    static final String FILE_PREFIX = "hnsw-";
+
+    static final String FILE_SUFFIX = ".graph";
+
+    /**
+     * Minimum time between two updates of the graphs of an index.
+     */
+    public static final int UPDATE_FREQUENCY_MINUTES =
+            Integer.getInteger("oak.lucene.similarityGraphUpdateFrequencyMinutes", 10);
+
+    /**
+     * Number of nearest neighbours returned by a similarity query.
+     */
+    public static final int NEIGHBOURS = Integer.getInteger("oak.lucene.similarityGraphNeighbours", 100);
+
+    /**
+     * Size of the dynamic candidate list when searching.
+     */
+    public static final int EF_SEARCH = Integer.getInteger("oak.lucene.similarityGraphEfSearch", 200);
+
+    /**
+     * The ratio of deleted nodes, after which a graph is built from scratch.
+     */
+    static final double MAX_DELETED_RATIO = 0.2;
+
+    /**
+     * The graphs of the opened index readers, by property name. Only loaded
+     * graphs are kept: if there is no graph for a reader, for example because
+     * the file was replaced by a newer graph, loading is tried again on the
+     * next query.
+     */
+    private static final Map<DirectoryReader, Map<String, HNSWGraph>> GRAPHS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * The loaded graphs, by the unique id of the graph file. A graph is kept
+     * as long as it is used by an opened index reader.
+     */
+    private static final Cache<String, HNSWGraph> LOADED = CacheBuilder.newBuilder().weakValues().build();
+
+    private SimilarityGraphs() {
+    }
+
+    /**
+     * Update the graphs of the given properties, for the latest commit of the
+     * directory.
+     *
+     * @param propertyNames the names of the feature vector properties
+     * @param directory the index directory
+     * @param rebuild whether to ignore the existing graphs
+     * @return whether any graph file was written or deleted
+     */
+    public static boolean updateGraphs(@NotNull Iterable<String> propertyNames, @NotNull Directory directory,
+                                       boolean rebuild) throws IOException {
+        boolean updated = false;
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            long generation = reader.getIndexCommit().getGeneration();
+            for (String propertyName : propertyNames) {
+                String[] files = directory.listAll();
+                String existing = getLatestFile(files, propertyName, Long.MAX_VALUE);
+                String fileName = getFileName(propertyName, generation);
+                if (fileName.equals(existing)) {
+                    // the index did not change since
+                    continue;
+                }
+                HNSWGraph graph = null;
+                if (!rebuild && existing != null) {
+                    graph = readGraph(directory, existing, propertyName);
+                }
+                graph = updateGraph(graph, reader, propertyName);
+                if (graph != null) {
+                    try (IndexOutput out = directory.createOutput(fileName, IOContext.DEFAULT)) {
+                        out.writeString(propertyName);
+                        out.writeString(UUID.randomUUID().toString());
+                        graph.write(out);
+                    }
+                    log.debug("Written similarity graph {} with {} nodes ({} deleted) for property {}",
+                            fileName, graph.size(), graph.getDeletedCount(), propertyName);
+                    updated = true;
+                }
+                for (String f : files) {
+                    if (isFileOf(f, propertyName) && !f.equals(fileName)) {
+                        directory.deleteFile(f);
+                        updated = true;
+                    }
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Search the nearest neighbours of the given feature vector, using the
+     * graphs of the given reader (and its sub readers).
+     *
+     * @param reader the index reader
+     * @param propertyName the name of the feature vector property
+     * @param vector the feature vector
+     * @param k the number of results
+     * @return the nearest documents, nearest first, or null if there is no
+     *         graph for the property
+     */
+    @Nullable
+    public static List<HNSWGraph.Result> search(@NotNull IndexReader reader, @NotNull String propertyName,
+                                                @NotNull float[] vector, int k) {
+        List<DirectoryReader> readers = new ArrayList<>();
+        collectDirectoryReaders(reader, readers);
+        List<HNSWGraph.Result> results = null;
+        for (DirectoryReader r : readers) {
+            HNSWGraph graph = getGraph(r, propertyName);
+            if (graph == null || graph.getDimension() != vector.length) {
+                continue;
+            }
+            if (results == null) {
+                results = new ArrayList<>();
+            }
+            results.addAll(graph.search(vector, k, Math.max(k, EF_SEARCH)));
+        }
+        if (results == null || readers.size() == 1) {
+            return results;
+        }
+        results.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        Map<String, HNSWGraph.Result> merged = new LinkedHashMap<>();
+        for (HNSWGraph.Result r : results) {
+            if (merged.size() == k) {
+                break;
+            }
+            merged.putIfAbsent(r.getPath(), r);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    @NotNull
+    public static float[] toFloatArray(@NotNull BytesRef bytes) {
+        int blockSize = Double.SIZE / Byte.SIZE;
+        ByteBuffer wrap = ByteBuffer.wrap(bytes.bytes, bytes.offset, bytes.length);
+        float[] vector = new float[bytes.length / blockSize];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) wrap.getDouble();
+        }
+        return vector;
+    }
+
+    //~---------------------------------------------< internal >
+
+    static String getFileName(String propertyName, long generation) {
+        return FILE_PREFIX + Integer.toHexString(propertyName.hashCode()) + "-" +
+                Long.toString(generation, Character.MAX_RADIX) + FILE_SUFFIX;
+    }
+
+    private static boolean isFileOf(String fileName, String propertyName) {
+        return fileName.startsWith(FILE_PREFIX + Integer.toHexString(propertyName.hashCode()) + "-")
+                && fileName.endsWith(FILE_SUFFIX);
+    }
+
+    /**
+     * Get the graph file of the given property with the highest generation
+     * that is not higher than the given one.
+     */
+    @Nullable
+    static String getLatestFile(String[] files, String propertyName, long maxGeneration) {
+        String latest = null;
+        long latestGeneration = -1;
+        for (String f : files) {
+            if (!isFileOf(f, propertyName)) {
+                continue;
+            }
+            String gen = f.substring(f.lastIndexOf('-') + 1, f.length() - FILE_SUFFIX.length());
+            long generation;
+            try {
+                generation = Long.parseLong(gen, Character.MAX_RADIX);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (generation > latestGeneration && generation <= maxGeneration) {
+                latest = f;
+                latestGeneration = generation;
+            }
+        }
+        return latest;
+    }
+
+    @Nullable
+    private static HNSWGraph readGraph(Directory directory, String fileName, String propertyName) {
+        try (IndexInput in = directory.openInput(fileName, IOContext.READ)) {
+            String name = in.readString();
+            if (!propertyName.equals(name)) {
+                // hash collision of the property names
+                return null;
+            }
+            // the id
+            in.readString();
+            return HNSWGraph.read(in);
+        } catch (IOException e) {
+            log.warn("Could not read similarity graph {} of property {}", fileName, propertyName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Update the graph with the feature vectors of the index. Only the paths
+     * of the documents, and the vectors of new or changed documents are kept
+     * in memory, unless the graph is built from scratch.
+     *
+     * @param graph the existing graph, or null
+     * @return the updated graph, or null if there are no feature vectors
+     */
+    @Nullable
+    private static HNSWGraph updateGraph(@Nullable HNSWGraph graph, IndexReader reader,
+                                         String propertyName) throws IOException {
+        if (graph != null) {
+            HNSWGraph existing = graph;
+            Set<String> paths = new HashSet<>();
+            Map<String, float[]> changed = new LinkedHashMap<>();
+            forEachVector(reader, propertyName, existing.getDimension(), (path, vector) -> {
+                paths.add(path);
+                float[] old = existing.getVector(path);
+                if (old == null || !Arrays.equals(vector, old)) {
+                    changed.put(path, vector);
+                }
+            });
+            List<String> stale = new ArrayList<>();
+            for (String path : existing.getPaths()) {
+                if (!paths.contains(path) || changed.containsKey(path)) {
+                    stale.add(path);
+                }
+            }
+            int deleted = existing.getDeletedCount() + stale.size();
+            if (!paths.isEmpty() && deleted <= MAX_DELETED_RATIO * (existing.size() + existing.getDeletedCount())) {
+                for (String path : stale) {
+                    existing.delete(path);
+                }
+                for (Map.Entry<String, float[]> e : changed.entrySet()) {
+                    existing.add(e.getKey(), e.getValue());
+                }
+                return existing;
+            }
+        }
+        // build from scratch
+        HNSWGraph[] result = new HNSWGraph[1];
+        forEachVector(reader, propertyName, -1, (path, vector) -> {
+            if (result[0] == null) {
+                result[0] = new HNSWGraph(vector.length);
+            }
+            if (result[0].getVector(path) == null) {
+                result[0].add(path, vector);
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * Read the feature vectors of all live documents.
+     *
+     * @param dimension the expected dimension, or -1 to use the dimension of
+     *        the first vector; vectors of other dimensions are ignored
+     */
+    private static void forEachVector(IndexReader reader, String propertyName, int dimension,
+                                      BiConsumer<String, float[]> consumer) throws IOException {
+        String field = FieldNames.createBinSimilarityFieldName(propertyName);
+        Set<String> fieldsToLoad = new HashSet<>(Arrays.asList(FieldNames.PATH, field));
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            if (liveDocs != null && !liveDocs.get(i)) {
+                continue;
+            }
+            Document doc = reader.document(i, fieldsToLoad);
+            BytesRef bytes = doc.getBinaryValue(field);
+            String path = doc.get(FieldNames.PATH);
+            if (bytes == null || path == null) {
+                continue;
+            }
+            float[] vector = toFloatArray(bytes);
+            if (dimension < 0) {
+                dimension = vector.length;
+            }
+            if (vector.length != dimension || dimension == 0) {
+                log.warn("Ignoring feature vector of {} for property {}: expected dimension {}, got {}",
+                        path, propertyName, dimension, vector.length);
+                continue;
+            }
+            consumer.accept(path, vector);
+        }
+    }
+
+    @Nullable
+    private static HNSWGraph getGraph(DirectoryReader reader, String propertyName) {
+        Map<String, HNSWGraph> graphs;
+        synchronized (GRAPHS) {
+            graphs = GRAPHS.computeIfAbsent(reader, r -> new ConcurrentHashMap<>());
+        }
+        HNSWGraph graph = graphs.get(propertyName);
+        if (graph == null) {
+            // not loaded within computeIfAbsent, as that could block
+            // queries on other properties
+            graph = loadGraph(reader, propertyName);
+            if (graph != null) {
+                HNSWGraph existing = graphs.putIfAbsent(propertyName, graph);
+                if (existing != null) {
+                    graph = existing;
+                }
+            }
+        }
+        return graph;
+    }
+
+    @Nullable
+    private static HNSWGraph loadGraph(DirectoryReader reader, String propertyName) {
+        String fileName = null;
+        try {
+            Directory directory = reader.directory();
+            fileName = getLatestFile(directory.listAll(), propertyName,
+                    reader.getIndexCommit().getGeneration());
+            if (fileName == null) {
+                return null;
+            }
+            try (IndexInput in = directory.openInput(fileName, IOContext.READ)) {
+                String name = in.readString();
+                if (!propertyName.equals(name)) {
+                    // hash collision of the property names
+                    return null;
+                }
+                String id = in.readString();
+                String file = fileName;
+                // only loaders of the same graph wait for each other
+                return LOADED.get(id, () -> {
+                    HNSWGraph graph = HNSWGraph.read(in);
+                    log.debug("Loaded similarity graph {} with {} nodes for property {}",
+                            file, graph.size(), propertyName);
+                    return graph;
+                });
+            }
+        } catch (IOException | ExecutionException e) {
+            log.warn("Could not load similarity graph {} of property {}", fileName, propertyName, e);
+            return null;
+        }
+    }
+
+    private static void collectDirectoryReaders(IndexReader reader, List<DirectoryReader> readers) {
+        if (reader instanceof DirectoryReader) {
+            readers.add((DirectoryReader) reader);
+            return;
+        }
+        IndexReaderContext context = reader.getContext();
+        if (context instanceof CompositeReaderContext) {
+            for (IndexReaderContext child : context.children()) {
+                collectDirectoryReaders(child.reader(), readers);
+            }
+        }
+    }
+}
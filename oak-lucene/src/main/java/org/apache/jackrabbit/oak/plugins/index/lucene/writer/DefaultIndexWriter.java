@@ -26,7 +26,9 @@ import static org.apache.jackrabbit.oak.plugins.index.lucene.writer.IndexWriterU
 import java.io.IOException;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
@@ -34,8 +36,12 @@ import org.apache.jackrabbit.oak.commons.PerfLogger;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.DirectoryFactory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.SuggestHelper;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.SimilarityGraphs;
 import org.apache.jackrabbit.oak.plugins.index.search.FieldNames;
+import org.apache.jackrabbit.oak.plugins.index.search.FulltextIndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
+import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition.IndexingRule;
+import org.apache.jackrabbit.oak.plugins.index.search.PropertyDefinition;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.util.ISO8601;
 import org.apache.lucene.analysis.Analyzer;
@@ -56,6 +62,7 @@ class DefaultIndexWriter implements LuceneIndexWriter {
     private static final Logger log = LoggerFactory.getLogger(DefaultIndexWriter.class);
     private static final PerfLogger PERF_LOGGER =
             new PerfLogger(LoggerFactory.getLogger(LuceneIndexWriter.class.getName() + ".perf"));
+    private static final String SIMILARITY_GRAPH_LAST_UPDATED = "similarityGraphLastUpdated";
 
     private final LuceneIndexDefinition definition;
     private final NodeBuilder definitionBuilder;
@@ -67,7 +74,7 @@ class DefaultIndexWriter implements LuceneIndexWriter {
     private volatile IndexWriter writer;
     private Directory directory;
     private long genAtStart = -1;
-    private boolean indexUpdated = false;
+    private volatile boolean indexUpdated = false;
 
     public DefaultIndexWriter(LuceneIndexDefinition definition, NodeBuilder definitionBuilder,
                               DirectoryFactory directoryFactory, String dirName, String suggestDirName,
@@ -132,6 +139,12 @@ class DefaultIndexWriter implements LuceneIndexWriter {
             log.debug("Would update suggester dictionary although no index changes were detected in current cycle");
             getWriter();
         }
+        Set<String> graphProperties = getSimilarityGraphProperties();
+        boolean updateGraphs = shouldUpdateSimilarityGraphs(graphProperties, currentTime);
+        if (writer == null && updateGraphs) {
+            log.debug("Would update similarity graphs although no index changes were detected in current cycle");
+            getWriter();
+        }
 
         if (writer != null) {
             if (log.isTraceEnabled()) {
@@ -153,6 +166,11 @@ class DefaultIndexWriter implements LuceneIndexWriter {
                 indexUpdated = genAtEnd != genAtStart;
             }
 
+            if (updateGraphs) {
+                indexUpdated |= updateSimilarityGraphs(graphProperties, currentTime);
+                PERF_LOGGER.end(start, -1, "Completed similarity graphs for directory {}", definition);
+            }
+
             directory.close();
             PERF_LOGGER.end(start, -1, "Closed directory for directory {}", definition);
         }
@@ -240,6 +258,65 @@ class DefaultIndexWriter implements LuceneIndexWriter {
         return updateSuggestions;
     }
 
+    /**
+     * Update the similarity graphs from the latest commit. The graphs are
+     * written to the index directory, so this needs to be done after the
+     * writer is closed, and before the directory is closed.
+     */
+    private boolean updateSimilarityGraphs(Set<String> graphProperties, Calendar currentTime) {
+        boolean updated = false;
+        try {
+            updated = SimilarityGraphs.updateGraphs(graphProperties, directory, reindex);
+            definitionBuilder.child(":status").setProperty(getSimilarityGraphStatusName(),
+                    ISO8601.format(currentTime), Type.DATE);
+        } catch (Throwable e) {
+            log.warn("could not update similarity graphs", e);
+        }
+        return updated;
+    }
+
+    /**
+     * Checks if the similarity graphs were last built sufficiently in the
+     * past, and the index was updated since.
+     * @return whether the similarity graphs should be updated
+     */
+    private boolean shouldUpdateSimilarityGraphs(Set<String> graphProperties, Calendar currentTime) {
+        if (graphProperties.isEmpty()) {
+            return false;
+        }
+        if (reindex) {
+            return true;
+        }
+        PropertyState lastUpdatedValue = definitionBuilder.child(":status").getProperty(getSimilarityGraphStatusName());
+        if (lastUpdatedValue == null) {
+            return true;
+        }
+        Calendar lastUpdatedTime = ISO8601.parse(lastUpdatedValue.getValue(Type.DATE));
+        Calendar nextUpdateTime = (Calendar) lastUpdatedTime.clone();
+        nextUpdateTime.add(Calendar.MINUTE, SimilarityGraphs.UPDATE_FREQUENCY_MINUTES);
+        return currentTime.after(nextUpdateTime) && (writer != null || isIndexUpdatedAfter(lastUpdatedTime));
+    }
+
+    /**
+     * @return the name of the status property, which is per mount
+     */
+    private String getSimilarityGraphStatusName() {
+        return FulltextIndexConstants.INDEX_DATA_CHILD_NAME.equals(dirName) ?
+                SIMILARITY_GRAPH_LAST_UPDATED : SIMILARITY_GRAPH_LAST_UPDATED + "-" + dirName;
+    }
+
+    private Set<String> getSimilarityGraphProperties() {
+        Set<String> names = new LinkedHashSet<>();
+        for (IndexingRule r : definition.getDefinedRules()) {
+            for (PropertyDefinition pd : r.getSimilarityProperties()) {
+                if (pd.similarityGraph) {
+                    names.add(pd.name);
+                }
+            }
+        }
+        return names;
+    }
+
     /**
      * @return {@code false} if persisted lastUpdated time for index is after {@code calendar}. {@code true} otherwise
      */
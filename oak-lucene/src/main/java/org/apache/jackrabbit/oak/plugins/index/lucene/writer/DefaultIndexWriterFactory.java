@@ -61,4 +61,15 @@ public class DefaultIndexWriterFactory implements LuceneIndexWriterFactory {
                 FulltextIndexConstants.INDEX_DATA_CHILD_NAME,
                 LuceneIndexConstants.SUGGEST_DATA_CHILD_NAME, reindex, writerConfig);
     }
+
+    /**
+     * Documents can be written concurrently if the index is written to a
+     * local directory. Otherwise, Lucene would flush segments of concurrent
+     * writes to the same NodeBuilder from multiple threads.
+     *
+     * @return whether the writers support concurrent updates
+     */
+    public boolean supportsConcurrentWrites() {
+        return !directoryFactory.remoteDirectory();
+    }
 }
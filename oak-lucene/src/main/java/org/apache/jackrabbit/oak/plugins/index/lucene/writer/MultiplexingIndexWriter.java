@@ -98,7 +98,7 @@ class MultiplexingIndexWriter implements LuceneIndexWriter {
         return getWriter(mount);
     }
 
-    private DefaultIndexWriter getWriter(Mount mount) {
+    private synchronized DefaultIndexWriter getWriter(Mount mount) {
         DefaultIndexWriter writer = writers.get(mount);
         if (writer == null) {
             writer = createWriter(mount);
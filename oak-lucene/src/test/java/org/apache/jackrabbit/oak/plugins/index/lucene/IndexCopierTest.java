@@ -25,12 +25,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -38,6 +41,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.openmbean.TabularData;
@@ -60,6 +64,7 @@ import org.apache.jackrabbit.oak.stats.Clock;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MergeInfo;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.RAMDirectory;
@@ -184,6 +189,61 @@ public class IndexCopierTest {
 
     }
 
+    @Test
+    public void prefetchSmallAndHotFilesFirst() throws Exception{
+        final List<String> copiedFiles = Collections.synchronizedList(Lists.<String>newArrayList());
+        Directory baseDir = new RAMDirectory(){
+            @Override
+            public IndexOutput createOutput(String name, IOContext context) throws IOException {
+                copiedFiles.add(name);
+                return super.createOutput(name, context);
+            }
+        };
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        IndexCopier c1 = new RAMIndexCopier(baseDir, sameThreadExecutor(), getWorkDir(), true);
+
+        Directory remote = new RAMDirectory();
+        writeFile(remote, "_0.fdt", 5000);
+        writeFile(remote, "_0.tim", 1000);
+        writeFile(remote, "_0.fdx", 200);
+        writeFile(remote, "segments_1", 100);
+
+        c1.wrapForRead("/foo", defn, remote, INDEX_DATA_CHILD_NAME);
+        assertThat(copiedFiles, contains("segments_1", "_0.fdx", "_0.tim", "_0.fdt"));
+    }
+
+    @Test
+    public void retryFailedCopy() throws Exception{
+        Directory baseDir = new RAMDirectory();
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        IndexCopier c1 = new RAMIndexCopier(baseDir, sameThreadExecutor(), getWorkDir());
+
+        final AtomicInteger failures = new AtomicInteger(1);
+        Directory remote = new RAMDirectory(){
+            @Override
+            public IndexInput openInput(String name, IOContext context) throws IOException {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IOException("boom");
+                }
+                return super.openInput(name, context);
+            }
+        };
+        byte[] t1 = writeFile(remote, "t1");
+
+        Directory wrapped = c1.wrapForRead("/foo", defn, remote, INDEX_DATA_CHILD_NAME);
+
+        //First copy fails, read from remote
+        readAndAssert(wrapped, "t1", t1);
+        assertFalse(baseDir.fileExists("t1"));
+        assertEquals(1, c1.getReaderRemoteReadCount());
+
+        //Copy is attempted again on next access
+        readAndAssert(wrapped, "t1", t1);
+        assertTrue(baseDir.fileExists("t1"));
+        assertEquals(1, c1.getReaderRemoteReadCount());
+        assertEquals(1, c1.getReaderLocalReadCount());
+    }
+
     @Test
     public void nonExistentFile() throws Exception{
         Directory baseDir = new RAMDirectory();
@@ -731,6 +791,91 @@ public class IndexCopierTest {
         assertFalse("t3 should also be deleted from local", baseDir.fileExists("t3"));
     }
 
+    @Test
+    public void cowMergedFilesUploadedOnClose() throws Exception{
+        Directory baseDir = new CloseSafeDir();
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        IndexCopier copier = new RAMIndexCopier(baseDir, sameThreadExecutor(), getWorkDir());
+        copier.setMergedUploadRate(100 * FileUtils.ONE_MB);
+
+        final Map<String, String> uploadThreads = new ConcurrentHashMap<>();
+        Directory remote = new CloseSafeDir() {
+            @Override
+            public IndexOutput createOutput(String name, IOContext context) throws IOException {
+                uploadThreads.put(name, Thread.currentThread().getName());
+                return super.createOutput(name, context);
+            }
+        };
+        Directory local = copier.wrapForWrite(defn, remote, false, INDEX_DATA_CHILD_NAME,
+                IndexCopier.COWDirectoryTracker.NOOP);
+
+        byte[] t1 = writeFile(local, "t1");
+        byte[] m1 = writeMergedFile(local, "m1", 100 * 1024);
+        byte[] m2 = writeMergedFile(local, "m2", 1000);
+
+        assertTrue("t1 should be copied to remote", remote.fileExists("t1"));
+        assertFalse("m1 should only be copied upon close", remote.fileExists("m1"));
+        assertEquals(2, copier.getScheduledForCopyCount());
+
+        //Merged away before upload
+        local.deleteFile("m2");
+        assertFalse(local.fileExists("m2"));
+        assertEquals(1, copier.getScheduledForCopyCount());
+
+        local.close();
+
+        readAndAssert(remote, "t1", t1);
+        readAndAssert(remote, "m1", m1);
+        assertFalse("m2 should never be copied to remote", remote.fileExists("m2"));
+        assertFalse("m2 should be deleted from local", baseDir.fileExists("m2"));
+        assertEquals(0, copier.getScheduledForCopyCount());
+        assertEquals(IOUtils.humanReadableByteCount(m2.length), copier.getSkippedFromUploadSize());
+        assertEquals(IOUtils.humanReadableByteCount(t1.length + m1.length), copier.getUploadSize());
+
+        String[] cycles = copier.getLastUploadCycleDetails();
+        assertEquals(1, cycles.length);
+        assertTrue(cycles[0], cycles[0].startsWith("/foo: uploaded 2 files"));
+        assertTrue(cycles[0], cycles[0].contains("thereof 1 merged files"));
+
+        //Throttled uploads do not use the shared executor
+        assertTrue(uploadThreads.get("m1"), uploadThreads.get("m1").startsWith("oak-lucene-upload-"));
+        assertFalse(uploadThreads.get("t1").startsWith("oak-lucene-upload-"));
+        copier.close();
+    }
+
+    @Test
+    public void cowMergedFilesUploadedRightAwayByDefault() throws Exception{
+        Directory baseDir = new CloseSafeDir();
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        IndexCopier copier = new RAMIndexCopier(baseDir, sameThreadExecutor(), getWorkDir());
+
+        Directory remote = new CloseSafeDir();
+        Directory local = copier.wrapForWrite(defn, remote, false, INDEX_DATA_CHILD_NAME,
+                IndexCopier.COWDirectoryTracker.NOOP);
+
+        byte[] m1 = writeMergedFile(local, "m1", 1000);
+        readAndAssert(remote, "m1", m1);
+        local.close();
+    }
+
+    @Test
+    public void throttleMergedUpload() throws Exception{
+        IndexCopier copier = new RAMIndexCopier(new CloseSafeDir(), sameThreadExecutor(), getWorkDir());
+
+        long start = System.nanoTime();
+        copier.throttleMergedUpload(1024 * 1024);
+        assertTrue("no limit by default", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        copier.setMergedUploadRate(10 * FileUtils.ONE_MB);
+        start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            copier.throttleMergedUpload(1024 * 1024);
+        }
+        //The first MB is uploaded right away, each further one takes 100 ms
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("elapsed " + elapsed, elapsed >= 250);
+    }
+
     @Test
     public void cowReadDoneFromLocalIfFileExist() throws Exception{
         final Set<String> readLocal = newHashSet();
@@ -1108,6 +1253,20 @@ public class IndexCopierTest {
         return data;
     }
 
+    private byte[] writeMergedFile(Directory dir, String name, int size) throws IOException {
+        byte[] data = randomBytes(size);
+        IndexOutput o = dir.createOutput(name, new IOContext(new MergeInfo(1, size, false, 1)));
+        o.writeBytes(data, data.length);
+        o.close();
+        return data;
+    }
+
+    private static void writeFile(Directory dir, String name, int size) throws IOException {
+        IndexOutput o = dir.createOutput(name, IOContext.DEFAULT);
+        o.writeBytes(new byte[size], size);
+        o.close();
+    }
+
     private static void updateLastModified(Directory dir, String name) throws IOException {
         DelayCopyingSimpleFSDirectory.updateLastModified(dir, name);
     }
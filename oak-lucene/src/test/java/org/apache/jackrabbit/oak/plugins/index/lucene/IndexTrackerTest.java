@@ -288,6 +288,41 @@ public class IndexTrackerTest {
         assertEquals(indexNodeId, indexNodeId2);
     }
 
+    @Test
+    public void generation() throws Exception{
+        NodeBuilder index = builder.child(INDEX_DEFINITIONS_NAME);
+        newLucenePropertyIndexDefinition(index, "lucene", ImmutableSet.of("foo"), "async");
+
+        NodeState before = builder.getNodeState();
+        builder.setProperty("foo", "bar");
+        NodeState after = builder.getNodeState();
+
+        NodeState indexed = hook.processCommit(before, after, CommitInfo.EMPTY);
+        tracker.update(indexed);
+
+        long generation = tracker.getGeneration();
+        tracker.acquireIndexNode("/oak:index/lucene").release();
+        // the index was opened
+        assertTrue(tracker.getGeneration() > generation);
+        generation = tracker.getGeneration();
+
+        // index data update: the index is re-opened, the generation stays
+        before = indexed;
+        builder = before.builder();
+        builder.setProperty("foo", "baz");
+        indexed = hook.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        tracker.update(indexed);
+        assertEquals(generation, tracker.getGeneration());
+
+        // the stored index definition changed
+        before = indexed;
+        builder = before.builder();
+        TestUtil.child(builder, "/oak:index/lucene/" + IndexDefinition.INDEX_DEFINITION_NODE)
+                .setProperty("foo", "bar");
+        tracker.update(builder.getNodeState());
+        assertTrue(tracker.getGeneration() > generation);
+    }
+
     private NodeState corruptIndex(String indexPath) {
         NodeBuilder dir = TestUtil.child(builder, PathUtils.concat(indexPath, ":data"));
         for (String name : dir.getChildNodeNames()){
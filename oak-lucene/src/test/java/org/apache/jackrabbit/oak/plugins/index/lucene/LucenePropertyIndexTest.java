@@ -30,6 +30,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -70,7 +71,9 @@ import org.apache.jackrabbit.oak.plugins.index.fulltext.ExtractedText.Extraction
 import org.apache.jackrabbit.oak.plugins.index.fulltext.PreExtractedTextProvider;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.CopyOnReadDirectory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.LuceneIndexDefinitionBuilder;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.HNSWGraph;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.SimSearchUtils;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.fv.SimilarityGraphs;
 import org.apache.jackrabbit.oak.plugins.index.nodetype.NodeTypeIndexProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
@@ -2944,6 +2947,61 @@ public class LucenePropertyIndexTest extends AbstractQueryTest {
         }
     }
 
+    @Test
+    public void testRepSimilarWithSimilarityGraph() throws Exception {
+        // the graph is built when reindexing, so the content is added first
+        Tree test = root.getTree("/").addChild("test");
+
+        URI uri = getClass().getResource("/org/apache/jackrabbit/oak/query/fvs.csv").toURI();
+        File file = new File(uri);
+
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+        for (String line : IOUtils.readLines(new FileInputStream(file), Charset.defaultCharset())) {
+            String[] split = line.split(",");
+            List<Double> values = new LinkedList<>();
+            float[] vector = new float[split.length - 1];
+            for (int i = 1; i < split.length; i++) {
+                values.add(Double.parseDouble(split[i]));
+                vector[i - 1] = (float) Double.parseDouble(split[i]);
+            }
+            Blob blob = root.createBlob(new ByteArrayInputStream(SimSearchUtils.toByteArray(values)));
+            Tree child = test.addChild(split[0]);
+            child.setProperty("fv", blob, Type.BINARY);
+            vectors.put(child.getPath(), vector);
+        }
+        root.commit();
+
+        IndexDefinitionBuilder idxb = new LuceneIndexDefinitionBuilder().noAsync();
+        idxb.indexRule("nt:base").property("fv").useInSimilarity().nodeScopeIndex().propertyIndex()
+                .getBuilderTree().setProperty(FulltextIndexConstants.PROP_SIMILARITY_GRAPH, true);
+        Tree idx = root.getTree("/").getChild("oak:index").addChild("test1");
+        idxb.build(idx);
+        root.commit();
+
+        NodeState status = NodeStateUtils.getNode(nodeStore.getRoot(), idx.getPath() + "/:status");
+        assertTrue(status.hasProperty("similarityGraphLastUpdated"));
+
+        for (Map.Entry<String, float[]> e : vectors.entrySet()) {
+            List<String> expected = new LinkedList<>();
+            LuceneIndexNode indexNode = provider.getTracker().acquireIndexNode(idx.getPath());
+            try {
+                List<HNSWGraph.Result> neighbours = SimilarityGraphs.search(
+                        indexNode.getSearcher().getIndexReader(), "fv", e.getValue(), SimilarityGraphs.NEIGHBOURS);
+                assertNotNull("similarity graph not found", neighbours);
+                for (HNSWGraph.Result r : neighbours) {
+                    expected.add(r.getPath());
+                }
+            } finally {
+                indexNode.release();
+            }
+            assertEquals(e.getKey(), expected.get(0));
+
+            // the query returns the nearest neighbours found in the graph, nearest first
+            String query = "select [jcr:path] from [nt:base] where similar(., '" + e.getKey() + "')";
+            assertEquals(expected, executeQuery(query, "JCR-SQL2", true, true));
+        }
+    }
+
     @Test
     public void injectRandomSeedDuringReindex() throws Exception{
         IndexDefinitionBuilder idxb = new LuceneIndexDefinitionBuilder().noAsync();
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.index.search.FieldNames;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LuceneResultCacheTest {
+
+    private final RAMDirectory dir = new RAMDirectory();
+    private IndexWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_47, new KeywordAnalyzer()));
+        for (int i = 0; i < 10; i++) {
+            addDoc("/a" + i, "bar");
+        }
+        writer.commit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        writer.close();
+        LuceneResultCache.setCacheSizeInMB(0);
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        LuceneResultCache cache = new LuceneResultCache(0);
+        assertFalse(cache.isEnabled());
+        assertNull(cache.getCacheStats());
+
+        IndexSearcher searcher = newSearcher();
+        TopDocs docs = cache.search("/oak:index/foo", 1, searcher, query("bar"), null, 5);
+        assertEquals(10, docs.totalHits);
+        assertEquals(5, docs.scoreDocs.length);
+    }
+
+    @Test
+    public void cachedPerGeneration() throws Exception {
+        LuceneResultCache cache = new LuceneResultCache(1024 * 1024);
+        CacheStats stats = cache.getCacheStats();
+        IndexSearcher searcher = newSearcher();
+
+        cache.search("/oak:index/foo", 1, searcher, query("bar"), null, 5);
+        TopDocs docs = cache.search("/oak:index/foo", 1, searcher, query("bar"), null, 5);
+        assertEquals(10, docs.totalHits);
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+
+        // different sort order, and different number of documents
+        Sort sort = new Sort(new SortField(FieldNames.PATH, SortField.Type.STRING, true));
+        TopDocs sorted = cache.search("/oak:index/foo", 1, searcher, query("bar"), sort, 5);
+        assertEquals("/a9", searcher.doc(sorted.scoreDocs[0].doc).get(FieldNames.PATH));
+        cache.search("/oak:index/foo", 1, searcher, query("bar"), null, 10);
+        assertEquals(3, stats.getMissCount());
+
+        // the index was updated
+        addDoc("/b", "bar");
+        writer.commit();
+        searcher = newSearcher();
+        docs = cache.search("/oak:index/foo", 2, searcher, query("bar"), null, 20);
+        assertEquals(11, docs.totalHits);
+        assertEquals(4, stats.getMissCount());
+        // entries of the older generation are evicted later
+        assertEquals(4, stats.getElementCount());
+
+        // a query that still uses the older searcher is not cached
+        cache.search("/oak:index/foo", 1, searcher, query("bar"), null, 5);
+        assertEquals(4, stats.getElementCount());
+        assertEquals(1, stats.getHitCount());
+    }
+
+    @Test
+    public void cachedDocsNotModified() throws Exception {
+        LuceneResultCache cache = new LuceneResultCache(1024 * 1024);
+        IndexSearcher searcher = newSearcher();
+
+        TopDocs docs = cache.search("/oak:index/foo", 1, searcher, query("bar"), null, 5);
+        int first = docs.scoreDocs[0].doc;
+        docs.scoreDocs[0].doc = -1;
+        docs.scoreDocs[1] = null;
+
+        docs = cache.search("/oak:index/foo", 1, searcher, query("bar"), null, 5);
+        assertEquals(first, docs.scoreDocs[0].doc);
+        assertTrue(docs.scoreDocs[1] != null);
+    }
+
+    private IndexSearcher newSearcher() throws Exception {
+        return new IndexSearcher(DirectoryReader.open(dir));
+    }
+
+    private static TermQuery query(String value) {
+        return new TermQuery(new Term("foo", value));
+    }
+
+    private void addDoc(String path, String value) throws Exception {
+        Document doc = new Document();
+        doc.add(new StringField(FieldNames.PATH, path, Field.Store.YES));
+        doc.add(new StringField("foo", value, Field.Store.NO));
+        writer.addDocument(doc);
+    }
+}
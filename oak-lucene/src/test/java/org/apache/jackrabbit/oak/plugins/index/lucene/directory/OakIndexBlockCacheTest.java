@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.plugins.blob.BlobStoreBlob;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
+import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.InitialContentHelper.INITIAL_CONTENT;
+import static org.apache.jackrabbit.oak.plugins.index.search.FulltextIndexConstants.INDEX_DATA_CHILD_NAME;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OakIndexBlockCacheTest {
+
+    private static final int BLOCK_SIZE = OakBufferedIndexFile.DEFAULT_BLOB_SIZE;
+
+    private final Random rnd = new Random(42);
+
+    private final MemoryBlobStore blobStore = new MemoryBlobStore();
+
+    @After
+    public void resetCache() {
+        OakIndexBlockCache.setCacheSizeInMB(0);
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        OakIndexBlockCache cache = new OakIndexBlockCache(0);
+        assertFalse(cache.isEnabled());
+
+        byte[] data = randomBytes(BLOCK_SIZE);
+        byte[] read = new byte[BLOCK_SIZE];
+        cache.readFully(createBlob(data), read, read.length);
+        assertArrayEquals(data, read);
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void readFromCache() throws Exception {
+        OakIndexBlockCache cache = new OakIndexBlockCache(1024 * 1024);
+        assertTrue(cache.isEnabled());
+
+        byte[] data = randomBytes(BLOCK_SIZE);
+        Blob blob = createBlob(data);
+        for (int i = 0; i < 3; i++) {
+            byte[] read = new byte[BLOCK_SIZE];
+            cache.readFully(blob, read, read.length);
+            assertArrayEquals(data, read);
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(BLOCK_SIZE, cache.getSize());
+    }
+
+    @Test
+    public void evictColdBlocks() throws Exception {
+        OakIndexBlockCache cache = new OakIndexBlockCache(4 * BLOCK_SIZE);
+
+        byte[] read = new byte[BLOCK_SIZE];
+        for (int i = 0; i < 20; i++) {
+            cache.readFully(createBlob(randomBytes(BLOCK_SIZE)), read, read.length);
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+    }
+
+    @Test
+    public void directoryReadsThroughCache() throws Exception {
+        OakIndexBlockCache.setCacheSizeInMB(1);
+        OakIndexBlockCache cache = OakIndexBlockCache.getInstance();
+
+        NodeState root = INITIAL_CONTENT;
+        NodeBuilder builder = root.builder();
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        byte[] data = randomBytes(3 * BLOCK_SIZE + 100);
+
+        OakDirectory dir = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, false, blobStore);
+        IndexOutput o = dir.createOutput("test.txt", IOContext.DEFAULT);
+        o.writeBytes(data, data.length);
+        o.close();
+        dir.close();
+
+        dir = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, true, blobStore);
+        for (int i = 0; i < 2; i++) {
+            IndexInput in = dir.openInput("test.txt", IOContext.DEFAULT);
+            byte[] read = new byte[data.length];
+            in.readBytes(read, 0, read.length);
+            in.close();
+            assertArrayEquals(data, read);
+        }
+        dir.close();
+
+        assertEquals(4, cache.getMissCount());
+        assertEquals(4, cache.getHitCount());
+    }
+
+    private Blob createBlob(byte[] data) throws Exception {
+        return new BlobStoreBlob(blobStore, blobStore.writeBlob(new ByteArrayInputStream(data)));
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        rnd.nextBytes(data);
+        return data;
+    }
+}
@@ -31,6 +31,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
@@ -110,6 +111,42 @@ public class DocumentQueueTest {
         assertFalse(queue.add(LuceneDoc.forDelete("foo", "bar")));
     }
 
+    @Test
+    public void capacitySharedByIndexes() throws Exception{
+        DocumentQueue queue = new DocumentQueue(2, tracker, NOOP_EXECUTOR);
+        assertTrue(queue.add(LuceneDoc.forDelete("foo", "bar")));
+        assertTrue(queue.addIfNotFullWithoutWait(LuceneDoc.forDelete("foo2", "bar")));
+
+        assertFalse(queue.addIfNotFullWithoutWait(LuceneDoc.forDelete("foo3", "bar")));
+        assertEquals(2, queue.getQueuedDocs().size());
+    }
+
+    @Test
+    public void batchPerIndex() throws Exception{
+        IndexTracker tracker = createTracker();
+        NodeState indexed = createAndPopulateAsyncIndex(FulltextIndexConstants.IndexingMode.NRT);
+        tracker.update(indexed);
+        List<Runnable> tasks = Lists.newArrayList();
+        DocumentQueue queue = new DocumentQueue(10, tracker, tasks::add);
+
+        queue.add(createDoc("/a/b", "bar"));
+        queue.add(createDoc("/a/c", "bar"));
+        queue.addIfNotFullWithoutWait(createDoc("/a/d", "bar"));
+        queue.add(LuceneDoc.forDelete("/oak:index/barIndex", "/a/b"));
+
+        //One task for each index, which processes all queued docs of that index
+        assertEquals(2, tasks.size());
+        //Running a task schedules the next one for the same index
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).run();
+        }
+        assertTrue(queue.getQueuedDocs().isEmpty());
+
+        List<NRTIndex> indexes = indexFactory.getIndexes("/oak:index/fooIndex");
+        NRTIndex index = indexes.get(indexes.size() - 1);
+        assertEquals(3, index.getPrimaryReaderForTest().numDocs());
+    }
+
     @Test
     public void noIssueIfNoIndex() throws Exception{
         DocumentQueue queue = new DocumentQueue(2, tracker, sameThreadExecutor());
@@ -117,6 +154,22 @@ public class DocumentQueueTest {
         assertTrue(queue.getQueuedDocs().isEmpty());
     }
 
+    @Test
+    public void laneRemovedIfNoIndex() throws Exception{
+        IndexTracker tracker = createTracker();
+        NodeState indexed = createAndPopulateAsyncIndex(FulltextIndexConstants.IndexingMode.NRT);
+        tracker.update(indexed);
+        DocumentQueue queue = new DocumentQueue(2, tracker, sameThreadExecutor());
+        assertTrue(queue.add(createDoc("/a/b", "bar")));
+        assertTrue(queue.add(LuceneDoc.forDelete("foo", "bar")));
+
+        //Only the lane of the tracked index is kept
+        assertEquals(1, queue.getLaneCount());
+        assertTrue(queue.add(LuceneDoc.forDelete("foo", "bar")));
+        assertTrue(queue.add(LuceneDoc.forDelete("foo", "bar")));
+        assertEquals(1, queue.getLaneCount());
+    }
+
     @Test
     public void closeQueue() throws Exception{
         DocumentQueue queue = new DocumentQueue(2, tracker, sameThreadExecutor());
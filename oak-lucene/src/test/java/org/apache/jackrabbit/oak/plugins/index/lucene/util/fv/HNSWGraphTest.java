@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.util.fv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HNSWGraph}
+ */
+public class HNSWGraphTest {
+
+    @Test
+    public void empty() {
+        HNSWGraph graph = new HNSWGraph(4);
+        assertEquals(0, graph.search(new float[4], 10, 10).size());
+    }
+
+    @Test
+    public void exactMatch() {
+        HNSWGraph graph = new HNSWGraph(2);
+        graph.add("/a", new float[]{0, 0});
+        graph.add("/b", new float[]{1, 1});
+        graph.add("/c", new float[]{5, 5});
+        List<HNSWGraph.Result> results = graph.search(new float[]{1, 1}, 2, 10);
+        assertEquals(2, results.size());
+        assertEquals("/b", results.get(0).getPath());
+        assertEquals(0, results.get(0).getDistance(), 0);
+        assertEquals("/a", results.get(1).getPath());
+        assertEquals(Math.sqrt(2), results.get(1).getDistance(), 1e-6);
+    }
+
+    @Test
+    public void recall() {
+        float[][] vectors = clusteredVectors(new Random(1), 2000, 32);
+        HNSWGraph graph = new HNSWGraph(32);
+        for (int i = 0; i < vectors.length; i++) {
+            graph.add("/n" + i, vectors[i]);
+        }
+        assertEquals(vectors.length, graph.size());
+        double recall = recall(graph, vectors, new Random(2), 100, 10);
+        assertTrue("recall@10 " + recall, recall >= 0.9);
+    }
+
+    @Test
+    public void delete() {
+        float[][] vectors = clusteredVectors(new Random(1), 500, 8);
+        HNSWGraph graph = new HNSWGraph(8);
+        for (int i = 0; i < vectors.length; i++) {
+            graph.add("/n" + i, vectors[i]);
+        }
+        assertTrue(graph.delete("/n0"));
+        assertFalse(graph.delete("/n0"));
+        assertNull(graph.getVector("/n0"));
+        assertEquals(499, graph.size());
+        assertEquals(1, graph.getDeletedCount());
+        for (HNSWGraph.Result r : graph.search(vectors[0], 10, 50)) {
+            assertFalse(r.getPath().equals("/n0"));
+        }
+
+        // adding a path again replaces the node
+        graph.add("/n1", vectors[0]);
+        assertEquals(2, graph.getDeletedCount());
+        assertEquals("/n1", graph.search(vectors[0], 1, 50).get(0).getPath());
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        float[][] vectors = clusteredVectors(new Random(1), 500, 16);
+        HNSWGraph graph = new HNSWGraph(16);
+        for (int i = 0; i < vectors.length; i++) {
+            graph.add("/n" + i, vectors[i]);
+        }
+        graph.delete("/n7");
+
+        RAMDirectory dir = new RAMDirectory();
+        try (IndexOutput out = dir.createOutput("test.graph", IOContext.DEFAULT)) {
+            graph.write(out);
+        }
+        HNSWGraph read;
+        try (IndexInput in = dir.openInput("test.graph", IOContext.READ)) {
+            read = HNSWGraph.read(in);
+        }
+        assertEquals(graph.size(), read.size());
+        assertEquals(1, read.getDeletedCount());
+        assertTrue(Arrays.equals(vectors[42], read.getVector("/n42")));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(graph.search(vectors[i], 10, 50).toString(),
+                    read.search(vectors[i], 10, 50).toString());
+        }
+
+        // the graph can still be updated
+        read.add("/new", new float[16]);
+        assertEquals("/new", read.search(new float[16], 1, 10).get(0).getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongDimension() {
+        new HNSWGraph(4).add("/a", new float[3]);
+    }
+
+    /**
+     * The average fraction of the true k nearest neighbours found by the
+     * graph, for random queries near the indexed vectors.
+     */
+    static double recall(HNSWGraph graph, float[][] vectors, Random r, int queries, int k) {
+        double found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = near(r, vectors[r.nextInt(vectors.length)]);
+            Set<String> expected = new HashSet<>(bruteForce(vectors, query, k));
+            for (HNSWGraph.Result result : graph.search(query, k, 100)) {
+                if (expected.contains(result.getPath())) {
+                    found++;
+                }
+            }
+        }
+        return found / (queries * k);
+    }
+
+    static List<String> bruteForce(float[][] vectors, float[] query, int k) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            ids.add(i);
+        }
+        ids.sort(Comparator.comparingDouble(i -> distance(vectors[i], query)));
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < k; i++) {
+            paths.add("/n" + ids.get(i));
+        }
+        return paths;
+    }
+
+    /**
+     * Vectors around a few random centers, similar to image embeddings.
+     */
+    static float[][] clusteredVectors(Random r, int count, int dimension) {
+        float[][] centers = new float[10][dimension];
+        for (float[] c : centers) {
+            for (int i = 0; i < dimension; i++) {
+                c[i] = r.nextFloat();
+            }
+        }
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = near(r, centers[r.nextInt(centers.length)]);
+        }
+        return vectors;
+    }
+
+    static float[] near(Random r, float[] v) {
+        float[] x = new float[v.length];
+        for (int i = 0; i < v.length; i++) {
+            x[i] = v[i] + (float) r.nextGaussian() * 0.1f;
+        }
+        return x;
+    }
+
+    private static double distance(float[] x, float[] y) {
+        double d = 0;
+        for (int i = 0; i < x.length; i++) {
+            d += (x[i] - y[i]) * (x[i] - y[i]);
+        }
+        return d;
+    }
+}
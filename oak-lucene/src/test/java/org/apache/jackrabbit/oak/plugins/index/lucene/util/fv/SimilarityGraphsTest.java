@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.util.fv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jackrabbit.oak.plugins.index.search.FieldNames;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SimilarityGraphs}
+ */
+public class SimilarityGraphsTest {
+
+    private static final String PROPERTY = "jcr:content/fv";
+
+    private final RAMDirectory dir = new RAMDirectory();
+
+    @Test
+    public void noGraph() throws Exception {
+        writeDocs(0, 10);
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertNull(SimilarityGraphs.search(reader, PROPERTY, vector(new Random(1)), 5));
+        }
+    }
+
+    @Test
+    public void missingGraphNotCached() throws Exception {
+        float[][] vectors = writeDocs(0, 10);
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertNull(SimilarityGraphs.search(reader, PROPERTY, vectors[3], 1));
+            // the graph of the same commit is written later
+            SimilarityGraphs.updateGraphs(Collections.singleton(PROPERTY), dir, false);
+            assertEquals("/n3", SimilarityGraphs.search(reader, PROPERTY, vectors[3], 1).get(0).getPath());
+        }
+    }
+
+    @Test
+    public void buildAndSearch() throws Exception {
+        float[][] vectors = writeDocs(0, 200);
+        assertTrue(SimilarityGraphs.updateGraphs(Collections.singleton(PROPERTY), dir, false));
+        assertEquals(1, graphFiles().size());
+
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            List<HNSWGraph.Result> results = SimilarityGraphs.search(reader, PROPERTY, vectors[42], 5);
+            assertNotNull(results);
+            assertEquals(5, results.size());
+            assertEquals("/n42", results.get(0).getPath());
+            assertEquals(0, results.get(0).getDistance(), 0);
+
+            // no graph for other properties
+            assertNull(SimilarityGraphs.search(reader, "other", vectors[42], 5));
+
+            // the graphs of sub readers are used
+            MultiReader multiReader = new MultiReader(new DirectoryReader[]{reader}, false);
+            assertEquals("/n42", SimilarityGraphs.search(multiReader, PROPERTY, vectors[42], 5).get(0).getPath());
+        }
+
+        // unchanged index
+        assertFalse(SimilarityGraphs.updateGraphs(Collections.singleton(PROPERTY), dir, false));
+    }
+
+    @Test
+    public void incrementalUpdate() throws Exception {
+        writeDocs(0, 200);
+        SimilarityGraphs.updateGraphs(Collections.singleton(PROPERTY), dir, false);
+        String first = graphFiles().get(0);
+
+        float[][] added = writeDocs(200, 10);
+        try (IndexWriter writer = newWriter()) {
+            writer.deleteDocuments(new Term(FieldNames.PATH, "/n0"));
+        }
+        assertTrue(SimilarityGraphs.updateGraphs(Collections.singleton(PROPERTY), dir, false));
+        List<String> files = graphFiles();
+        assertEquals(1, files.size());
+        assertFalse(first.equals(files.get(0)));
+
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals("/n205", SimilarityGraphs.search(reader, PROPERTY, added[5], 1).get(0).getPath());
+            for (HNSWGraph.Result r : SimilarityGraphs.search(reader, PROPERTY, added[5], 50)) {
+                assertFalse(r.getPath().equals("/n0"));
+            }
+        }
+    }
+
+    @Test
+    public void graphOfReaderGeneration() throws Exception {
+        writeDocs(0, 10);
+        SimilarityGraphs.updateGraphs(Collections.singleton(PROPERTY), dir, false);
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            long generation = reader.getIndexCommit().getGeneration();
+            String fileName = SimilarityGraphs.getFileName(PROPERTY, generation);
+            String[] files = {fileName, SimilarityGraphs.getFileName(PROPERTY, generation + 1), "_0.cfs"};
+            assertEquals(fileName, SimilarityGraphs.getLatestFile(files, PROPERTY, generation));
+            assertNull(SimilarityGraphs.getLatestFile(files, PROPERTY, generation - 1));
+            assertNull(SimilarityGraphs.getLatestFile(files, "other", generation));
+        }
+    }
+
+    private float[][] writeDocs(int start, int count) throws Exception {
+        Random r = new Random(start);
+        float[][] vectors = new float[count][];
+        try (IndexWriter writer = newWriter()) {
+            for (int i = 0; i < count; i++) {
+                vectors[i] = vector(r);
+                List<Double> values = new ArrayList<>();
+                for (float f : vectors[i]) {
+                    values.add((double) f);
+                }
+                Document doc = new Document();
+                doc.add(new StringField(FieldNames.PATH, "/n" + (start + i), Field.Store.YES));
+                doc.add(new StoredField(FieldNames.createBinSimilarityFieldName(PROPERTY),
+                        SimSearchUtils.toByteArray(values)));
+                writer.addDocument(doc);
+            }
+        }
+        return vectors;
+    }
+
+    private IndexWriter newWriter() throws Exception {
+        return new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_47, new KeywordAnalyzer()));
+    }
+
+    private List<String> graphFiles() throws Exception {
+        List<String> files = new ArrayList<>();
+        for (String f : dir.listAll()) {
+            if (f.startsWith(SimilarityGraphs.FILE_PREFIX)) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    private static float[] vector(Random r) {
+        float[] v = new float[16];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = r.nextFloat();
+        }
+        return v;
+    }
+}
@@ -68,6 +68,15 @@ public class CompositeQueryIndexProvider implements QueryIndexProvider {
         }
         return indexes;
     }
+
+    @Override
+    public long getGeneration() {
+        long generation = providers.size();
+        for (QueryIndexProvider provider : providers) {
+            generation = 31 * generation + provider.getGeneration();
+        }
+        return generation;
+    }
     
     @Override
     public String toString() {
@@ -39,4 +39,17 @@ public interface QueryIndexProvider {
     @NotNull
     List<? extends QueryIndex> getQueryIndexes(NodeState nodeState);
 
+    /**
+     * Get the generation of the indexes of this provider. The generation
+     * changes whenever an index is opened or closed, or its definition
+     * changes, so that information derived from the indexes, for example the
+     * index selected for a query, can be invalidated. It does not change
+     * when only the indexed data is updated.
+     *
+     * @return the generation, or 0 if this provider does not track changes
+     */
+    default long getGeneration() {
+        return 0;
+    }
+
 }
@@ -34,6 +34,17 @@ public interface QueryLimits {
     default String getStrictPathRestriction() {
         return StrictPathRestriction.DISABLE.name();
     }
+
+    /**
+     * Whether the query was cancelled, or ran for longer than allowed. Cursors
+     * and indexes that read many entries should check this regularly, and stop
+     * reading if it returns true.
+     *
+     * @return true if the query should stop
+     */
+    default boolean isCancelled() {
+        return false;
+    }
     
     /**
      * Retrieve the java package names / full qualified class names which should be
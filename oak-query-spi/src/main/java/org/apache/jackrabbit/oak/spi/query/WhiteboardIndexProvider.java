@@ -43,4 +43,9 @@ public class WhiteboardIndexProvider
         return composite.getQueryIndexes(nodeState);
     }
 
+    @Override
+    public long getGeneration() {
+        return CompositeQueryIndexProvider.compose(getServices()).getGeneration();
+    }
+
 }
@@ -37,4 +37,9 @@ public class ElasticIndexProvider implements QueryIndexProvider {
     public @NotNull List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
         return Collections.singletonList(new ElasticIndex(indexTracker));
     }
+
+    @Override
+    public long getGeneration() {
+        return indexTracker.getGeneration();
+    }
 }
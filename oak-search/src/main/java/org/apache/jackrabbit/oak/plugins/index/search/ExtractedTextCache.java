@@ -75,6 +75,7 @@ public class ExtractedTextCache {
     private static final String EMPTY_STRING = "";
     private static final Logger log = LoggerFactory.getLogger(ExtractedTextCache.class);
     private volatile PreExtractedTextProvider extractedTextProvider;
+    private volatile ExtractedTextStore textStore;
     private int textExtractionCount;
     private long totalBytesRead;
     private long totalTextSize;
@@ -142,6 +143,8 @@ public class ExtractedTextCache {
                 ExtractedText text = extractedTextProvider.getText(propertyPath, blob);
                 if (text != null) {
                     preFetchedCount++;
+                    //Not kept in the text store, as it might have been
+                    //truncated with an unknown extraction limit
                     result = getText(text);
                 }
             } catch (IOException e) {
@@ -155,10 +158,32 @@ public class ExtractedTextCache {
         if (result == null && id != null) {
             result = timeoutMap.get(id);
         }
+        ExtractedTextStore store = textStore;
+        if (result == null && id != null && store != null) {
+            ExtractedText text = store.get(id);
+            if (text != null) {
+                result = getText(text);
+                if (cache != null) {
+                    cache.put(id, result);
+                }
+            }
+        }
         return result;
     }
 
     public void put(@NotNull Blob blob, @NotNull ExtractedText extractedText) {
+        put(blob, extractedText, true);
+    }
+
+    /**
+     * Cache the extracted text for the given blob.
+     *
+     * @param complete whether the text is complete; text that was truncated
+     *        because of the extraction limit of an index definition is not
+     *        kept in the text store, as other index definitions might use a
+     *        higher limit
+     */
+    public void put(@NotNull Blob blob, @NotNull ExtractedText extractedText, boolean complete) {
         String id = blob.getContentIdentity();
         if (cache != null && id != null) {
             if (extractedText.getExtractionResult() == ExtractionResult.SUCCESS
@@ -166,6 +191,10 @@ public class ExtractedTextCache {
                 cache.put(id, getText(extractedText));
             }
         }
+        ExtractedTextStore store = textStore;
+        if (store != null && id != null && complete) {
+            store.put(id, extractedText);
+        }
     }
 
     public void putTimeout(@NotNull Blob blob, @NotNull ExtractedText extractedText) {
@@ -244,6 +273,35 @@ public class ExtractedTextCache {
             public int getTimeoutCount() {
                 return timeoutCount;
             }
+
+            @Override
+            public boolean isTextStoreConfigured() {
+                return textStore != null;
+            }
+
+            @Override
+            public long getTextStoreHitCount() {
+                ExtractedTextStore store = textStore;
+                return store != null ? store.getHitCount() : 0;
+            }
+
+            @Override
+            public long getTextStoreMissCount() {
+                ExtractedTextStore store = textStore;
+                return store != null ? store.getMissCount() : 0;
+            }
+
+            @Override
+            public int getTextStoreEntryCount() {
+                ExtractedTextStore store = textStore;
+                return store != null ? store.getEntryCount() : 0;
+            }
+
+            @Override
+            public String getTextStoreSize() {
+                ExtractedTextStore store = textStore;
+                return IOUtils.humanReadableByteCount(store != null ? store.getSize() : 0);
+            }
         };
     }
 
@@ -260,6 +318,20 @@ public class ExtractedTextCache {
         return extractedTextProvider;
     }
 
+    /**
+     * Set the persistent store of extracted text, which is consulted before
+     * extracting text, and keeps the text of new extractions. The store is
+     * closed when this cache is closed.
+     */
+    public void setTextStore(@Nullable ExtractedTextStore textStore) {
+        this.textStore = textStore;
+    }
+
+    @Nullable
+    public ExtractedTextStore getTextStore() {
+        return textStore;
+    }
+
     public void resetCache(){
         if (cache != null){
             cache.invalidateAll();
@@ -300,6 +372,15 @@ public class ExtractedTextCache {
         // don't clean the persistent map on purpose, so we don't re-try
         // after restarting the service or so
         closeExecutorService();
+        ExtractedTextStore store = textStore;
+        textStore = null;
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.warn("Error occurred while closing the extracted text store", e);
+            }
+        }
     }
 
     public void process(String name, Callable<Void> callable) throws Throwable {
@@ -0,0 +1,565 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import org.apache.jackrabbit.oak.plugins.index.fulltext.ExtractedText;
+import org.apache.jackrabbit.oak.plugins.index.fulltext.ExtractedText.ExtractionResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent store for extracted text, on the local disk, keyed by the
+ * content identity of the binary. As the key is derived from the content,
+ * entries do not become stale, so the store is shared by all index definitions
+ * and survives reindexing and restarts. Only the complete text of a binary
+ * should be stored, and not text that was truncated because of the
+ * extraction limit of an index definition, as other index definitions might
+ * use a higher limit.
+ * <p>
+ * The text is compressed, and appended to a data file. For each entry, the
+ * hash of the key and the position in the data file is appended to an index
+ * file, which is memory mapped and loaded into a hash table of primitive
+ * values when opening the store. Each data
+ * record also contains the key, so that hash collisions are detected when
+ * reading. Records that were not fully written (for example if the process
+ * was killed) are ignored.
+ * <p>
+ * The store consists of two generations, each of them using at most half of
+ * the maximum size. Once the current generation is full, the older
+ * generation is deleted, and a new one is started. Entries that are read
+ * from the older generation are copied to the current one, so that text of
+ * binaries that are still in use is kept, while text of binaries that were
+ * deleted is eventually reclaimed.
+ */
+public class ExtractedTextStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractedTextStore.class);
+
+    private static final Pattern DATA_FILE = Pattern.compile("text\\.(\\d+)\\.data");
+
+    /**
+     * Size of an entry in the index file: the hash of the key, and the
+     * position of the record in the data file.
+     */
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * Size of the record header: the length of the key, the extraction result,
+     * the length of the text, and the length of the compressed text.
+     */
+    private static final int RECORD_HEADER_SIZE = 2 + 1 + 4 + 4;
+
+    private static final byte RESULT_SUCCESS = 0;
+
+    private static final byte RESULT_EMPTY = 1;
+
+    private final File directory;
+
+    /**
+     * The maximum size of the data file of a generation.
+     */
+    private final long maxGenerationSize;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private volatile Generation current;
+
+    @Nullable
+    private volatile Generation previous;
+
+    private volatile boolean closed;
+
+    public ExtractedTextStore(@NotNull File directory, long maxSize) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory.getAbsolutePath());
+        }
+        this.directory = directory;
+        this.maxGenerationSize = maxSize / 2;
+        List<Integer> generations = listGenerations(directory);
+        // only the two newest generations are used
+        for (int i = 0; i < generations.size() - 2; i++) {
+            deleteGeneration(directory, generations.get(i));
+        }
+        int size = generations.size();
+        if (size == 0) {
+            current = new Generation(directory, 1);
+        } else {
+            current = new Generation(directory, generations.get(size - 1));
+            if (size > 1) {
+                previous = new Generation(directory, generations.get(size - 2));
+            }
+        }
+        log.info("Using extracted text store at {} with {} entries, {} bytes",
+                directory.getAbsolutePath(), getEntryCount(), getSize());
+    }
+
+    /**
+     * Get the stored text for the binary with the given content identity.
+     *
+     * @return the extracted text, or null if not found
+     */
+    @Nullable
+    public ExtractedText get(@NotNull String contentIdentity) {
+        if (closed) {
+            return null;
+        }
+        long hash = hash(contentIdentity);
+        ExtractedText result = current.read(hash, contentIdentity);
+        if (result == null) {
+            Generation prev = previous;
+            if (prev != null) {
+                result = prev.read(hash, contentIdentity);
+                if (result != null) {
+                    // keep the text of binaries that are in use
+                    put(contentIdentity, result);
+                }
+            }
+        }
+        if (result != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Store the extracted text of the binary with the given content identity.
+     * Only successful extractions are stored, as errors might be temporary.
+     * The text must not be truncated.
+     */
+    public void put(@NotNull String contentIdentity, @NotNull ExtractedText text) {
+        byte result;
+        if (text.getExtractionResult() == ExtractionResult.SUCCESS) {
+            result = RESULT_SUCCESS;
+        } else if (text.getExtractionResult() == ExtractionResult.EMPTY) {
+            result = RESULT_EMPTY;
+        } else {
+            return;
+        }
+        if (closed || current.contains(hash(contentIdentity))) {
+            return;
+        }
+        try {
+            byte[] record = createRecord(contentIdentity, result,
+                    result == RESULT_SUCCESS ? text.getExtractedText().toString() : "");
+            append(contentIdentity, record);
+        } catch (IOException e) {
+            log.warn("Could not store the extracted text of {} in {}",
+                    contentIdentity, directory, e);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of entries, where entries that were copied from the
+     * older to the current generation are counted twice
+     */
+    public int getEntryCount() {
+        Generation prev = previous;
+        return current.positions.size() + (prev == null ? 0 : prev.positions.size());
+    }
+
+    public synchronized long getSize() {
+        return current.dataSize + (previous == null ? 0 : previous.dataSize);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            current.close();
+        } finally {
+            if (previous != null) {
+                previous.close();
+            }
+        }
+    }
+
+    private synchronized void append(String contentIdentity, byte[] record) throws IOException {
+        long hash = hash(contentIdentity);
+        if (closed || current.contains(hash)) {
+            return;
+        }
+        if (record.length > maxGenerationSize) {
+            log.debug("Extracted text of {} is too large to be stored", contentIdentity);
+            return;
+        }
+        if (current.dataSize + record.length > maxGenerationSize) {
+            startNewGeneration();
+        }
+        current.append(hash, record);
+    }
+
+    private void startNewGeneration() throws IOException {
+        Generation old = previous;
+        Generation next = new Generation(directory, current.number + 1);
+        previous = current;
+        current = next;
+        if (old != null) {
+            old.close();
+            deleteGeneration(directory, old.number);
+        }
+        log.info("Extracted text store at {} reached the maximum size, started generation {}",
+                directory.getAbsolutePath(), next.number);
+    }
+
+    static File getDataFile(File directory, int generation) {
+        return new File(directory, "text." + generation + ".data");
+    }
+
+    static File getIndexFile(File directory, int generation) {
+        return new File(directory, "text." + generation + ".index");
+    }
+
+    private static List<Integer> listGenerations(File directory) {
+        List<Integer> generations = new ArrayList<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher m = DATA_FILE.matcher(name);
+                if (m.matches()) {
+                    generations.add(Integer.parseInt(m.group(1)));
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static void deleteGeneration(File directory, int generation) {
+        for (File f : new File[] {getDataFile(directory, generation), getIndexFile(directory, generation)}) {
+            if (f.exists() && !f.delete()) {
+                log.warn("Could not delete {}", f.getAbsolutePath());
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buff, long pos) throws IOException {
+        while (buff.hasRemaining()) {
+            pos += channel.write(buff, pos);
+        }
+    }
+
+    private static byte[] createRecord(String contentIdentity, byte result, String text) throws IOException {
+        byte[] key = contentIdentity.getBytes(StandardCharsets.UTF_8);
+        if (key.length > 0xffff) {
+            throw new IOException("Content identity too long: " + key.length);
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 16);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+            out.write(bytes);
+        } finally {
+            deflater.end();
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(
+                RECORD_HEADER_SIZE + key.length + compressed.size());
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeShort(key.length);
+        out.writeByte(result);
+        out.writeInt(bytes.length);
+        out.writeInt(compressed.size());
+        out.write(key);
+        compressed.writeTo(out);
+        out.flush();
+        return record.toByteArray();
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the key.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * A data file and its index file.
+     */
+    private final class Generation implements Closeable {
+
+        final int number;
+
+        private final FileChannel data;
+
+        private final FileChannel index;
+
+        /**
+         * The position of the records in the data file, by hash of the key.
+         */
+        final PositionTable positions = new PositionTable();
+
+        /**
+         * The size of the data file, guarded by the store.
+         */
+        long dataSize;
+
+        Generation(File directory, int number) throws IOException {
+            this.number = number;
+            this.data = FileChannel.open(getDataFile(directory, number).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.index = FileChannel.open(getIndexFile(directory, number).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            load();
+        }
+
+        boolean contains(long hash) {
+            return positions.get(hash) >= 0;
+        }
+
+        @Nullable
+        ExtractedText read(long hash, String contentIdentity) {
+            long pos = positions.get(hash);
+            if (pos < 0) {
+                return null;
+            }
+            try {
+                return readRecord(pos, contentIdentity);
+            } catch (ClosedChannelException e) {
+                // concurrently replaced by a new generation
+                return null;
+            } catch (IOException | DataFormatException e) {
+                log.warn("Could not read the extracted text of {} from {}",
+                        contentIdentity, directory, e);
+                return null;
+            }
+        }
+
+        void append(long hash, byte[] record) throws IOException {
+            long pos = dataSize;
+            writeFully(data, ByteBuffer.wrap(record), pos);
+            dataSize += record.length;
+
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putLong(hash).putLong(pos).flip();
+            writeFully(index, entry, index.size());
+            positions.put(hash, pos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                data.force(false);
+                index.force(false);
+            } finally {
+                data.close();
+                index.close();
+            }
+        }
+
+        private void load() throws IOException {
+            dataSize = data.size();
+            long indexSize = index.size() - index.size() % INDEX_ENTRY_SIZE;
+            if (indexSize > 0) {
+                MappedByteBuffer buff = index.map(FileChannel.MapMode.READ_ONLY, 0, indexSize);
+                while (buff.remaining() >= INDEX_ENTRY_SIZE) {
+                    long hash = buff.getLong();
+                    long pos = buff.getLong();
+                    if (pos >= 0 && pos < dataSize) {
+                        positions.put(hash, pos);
+                    }
+                }
+            }
+            // drop a partially written index entry
+            index.truncate(indexSize);
+        }
+
+        private ExtractedText readRecord(long pos, String contentIdentity) throws IOException, DataFormatException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            if (!readFully(header, pos)) {
+                return null;
+            }
+            header.flip();
+            int keyLength = header.getShort() & 0xffff;
+            byte result = header.get();
+            int textLength = header.getInt();
+            int compressedLength = header.getInt();
+            ByteBuffer body = ByteBuffer.allocate(keyLength + compressedLength);
+            if (!readFully(body, pos + RECORD_HEADER_SIZE)) {
+                return null;
+            }
+            byte[] bytes = body.array();
+            byte[] key = contentIdentity.getBytes(StandardCharsets.UTF_8);
+            if (!Arrays.equals(key, Arrays.copyOf(bytes, keyLength))) {
+                // hash collision
+                return null;
+            }
+            if (result == RESULT_EMPTY) {
+                return ExtractedText.EMPTY;
+            }
+            byte[] text = new byte[textLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(bytes, keyLength, compressedLength);
+                int n = 0;
+                while (n < textLength && !inflater.finished()) {
+                    int len = inflater.inflate(text, n, textLength - n);
+                    if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += len;
+                }
+                if (n != textLength) {
+                    throw new DataFormatException("Truncated record at position " + pos);
+                }
+            } finally {
+                inflater.end();
+            }
+            return new ExtractedText(ExtractionResult.SUCCESS, new String(text, StandardCharsets.UTF_8));
+        }
+
+        private boolean readFully(ByteBuffer buff, long pos) throws IOException {
+            while (buff.hasRemaining()) {
+                int n = data.read(buff, pos);
+                if (n < 0) {
+                    return false;
+                }
+                pos += n;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A hash table from the hash of a key to the position of its record, using
+     * open addressing with linear probing. An entry uses 16 to 32 bytes (and
+     * not around 100 bytes as a map of boxed values).
+     */
+    static final class PositionTable {
+
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] hashes = new long[MIN_CAPACITY];
+
+        /**
+         * The positions, or -1 for empty slots.
+         */
+        private long[] positions = emptyPositions(MIN_CAPACITY);
+
+        private int size;
+
+        /**
+         * Get the position for the given hash.
+         *
+         * @return the position, or -1 if not found
+         */
+        synchronized long get(long hash) {
+            int mask = hashes.length - 1;
+            for (int i = index(hash, mask);; i = (i + 1) & mask) {
+                long pos = positions[i];
+                if (pos < 0 || hashes[i] == hash) {
+                    return pos;
+                }
+            }
+        }
+
+        /**
+         * Set the position for the given hash, replacing the existing entry.
+         *
+         * @param pos the position (not negative)
+         */
+        synchronized void put(long hash, long pos) {
+            if (2 * (size + 1) > hashes.length) {
+                long[] oldHashes = hashes;
+                long[] oldPositions = positions;
+                hashes = new long[oldHashes.length * 2];
+                positions = emptyPositions(hashes.length);
+                size = 0;
+                for (int i = 0; i < oldHashes.length; i++) {
+                    if (oldPositions[i] >= 0) {
+                        insert(oldHashes[i], oldPositions[i]);
+                    }
+                }
+            }
+            insert(hash, pos);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void insert(long hash, long pos) {
+            int mask = hashes.length - 1;
+            int i = index(hash, mask);
+            while (positions[i] >= 0 && hashes[i] != hash) {
+                i = (i + 1) & mask;
+            }
+            if (positions[i] < 0) {
+                size++;
+            }
+            hashes[i] = hash;
+            positions[i] = pos;
+        }
+
+        private static int index(long hash, int mask) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private static long[] emptyPositions(int capacity) {
+            long[] positions = new long[capacity];
+            Arrays.fill(positions, -1);
+            return positions;
+        }
+    }
+}
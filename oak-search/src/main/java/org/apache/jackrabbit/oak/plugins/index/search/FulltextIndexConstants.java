@@ -285,6 +285,12 @@ public interface FulltextIndexConstants {
      */
     String PROP_SIMILARITY_TAGS = "similarityTags";
 
+    /**
+     * whether an approximate nearest neighbour (HNSW) graph should be built for the feature vectors of the
+     * property, and used for similarity search instead of the LSH based query
+     */
+    String PROP_SIMILARITY_GRAPH = "similarityGraph";
+
     /**
      * Property definition config indicating that null check support should be
      * enabled for this property
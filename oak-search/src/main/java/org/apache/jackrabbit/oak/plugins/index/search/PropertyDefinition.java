@@ -135,6 +135,7 @@ public class PropertyDefinition {
 
     public final boolean similarityRerank;
     public final boolean similarityTags;
+    public final boolean similarityGraph;
     private final int similaritySearchDVS;
 
     public PropertyDefinition(IndexingRule idxDefn, String nodeName, NodeState defn) {
@@ -170,6 +171,7 @@ public class PropertyDefinition {
         this.useInSimilarity = getOptionalValueIfIndexed(defn, FulltextIndexConstants.PROP_USE_IN_SIMILARITY, false);
         this.similarityRerank = getOptionalValueIfIndexed(defn, FulltextIndexConstants.PROP_SIMILARITY_RERANK, true);
         this.similarityTags = getOptionalValueIfIndexed(defn, FulltextIndexConstants.PROP_SIMILARITY_TAGS, false);
+        this.similarityGraph = getOptionalValueIfIndexed(defn, FulltextIndexConstants.PROP_SIMILARITY_GRAPH, false);
         this.nullCheckEnabled = getOptionalValueIfIndexed(defn, FulltextIndexConstants.PROP_NULL_CHECK_ENABLED, false);
         this.notNullCheckEnabled = getOptionalValueIfIndexed(defn, FulltextIndexConstants.PROP_NOT_NULL_CHECK_ENABLED, false);
         this.excludeFromAggregate = getOptionalValueIfIndexed(defn, FulltextIndexConstants.PROP_EXCLUDE_FROM_AGGREGATE, false);
@@ -79,4 +79,34 @@ public interface TextExtractionStatsMBean {
      * @return timeout count
      */
     int getTimeoutCount();
+
+    /**
+     * Check whether the persistent extracted text store is configured
+     * @return {@code true} if configured, {@code false} otherwise
+     */
+    boolean isTextStoreConfigured();
+
+    /**
+     * Number of lookups where the text was found in the persistent text store
+     * @return the hit count
+     */
+    long getTextStoreHitCount();
+
+    /**
+     * Number of lookups where the text was not found in the persistent text store
+     * @return the miss count
+     */
+    long getTextStoreMissCount();
+
+    /**
+     * Number of entries in the persistent text store
+     * @return the entry count
+     */
+    int getTextStoreEntryCount();
+
+    /**
+     * Size of the persistent text store on disk
+     * @return the store size
+     */
+    String getTextStoreSize();
 }
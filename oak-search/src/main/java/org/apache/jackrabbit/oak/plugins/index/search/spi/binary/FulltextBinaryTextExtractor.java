@@ -148,6 +148,7 @@ public class FulltextBinaryTextExtractor {
     long start = System.currentTimeMillis();
     long bytesRead = 0;
     long length = v.length();
+    boolean truncated = false;
     if (log.isDebugEnabled()) {
       log.debug("Extracting {}, {} bytes, id {}", path, length, v.getContentIdentity());
     }
@@ -202,6 +203,7 @@ public class FulltextBinaryTextExtractor {
         return TEXT_EXTRACTION_ERROR;
       } else {
         log.debug("Extracted text size exceeded configured limit({})", definition.getMaxExtractLength());
+        truncated = true;
       }
     }
     String result = handler.toString();
@@ -214,7 +216,7 @@ public class FulltextBinaryTextExtractor {
             path, time, bytesRead, len);
       }
     }
-    extractedTextCache.put(v,  new ExtractedText(ExtractedText.ExtractionResult.SUCCESS, result));
+    extractedTextCache.put(v,  new ExtractedText(ExtractedText.ExtractionResult.SUCCESS, result), !truncated);
     return result;
   }
 
@@ -228,21 +230,21 @@ public class FulltextBinaryTextExtractor {
 
   //~-------------------------------------------< Tika >
 
-  public TikaConfig getTikaConfig(){
+  public synchronized TikaConfig getTikaConfig(){
     if (tikaConfig == null) {
       tikaConfig = initializeTikaConfig(definition);
     }
     return tikaConfig.config;
   }
 
-  private Parser getParser() {
+  private synchronized Parser getParser() {
     if (parser == null){
       parser = initializeTikaParser(definition);
     }
     return parser;
   }
 
-  private boolean isSupportedMediaType(String type) {
+  private synchronized boolean isSupportedMediaType(String type) {
     if (supportedMediaTypes == null) {
       supportedMediaTypes = getParser().getSupportedTypes(new ParseContext());
       nonIndexedMediaType = getNonIndexedMediaTypes();
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.search.spi.editor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes documents and writes them to the index writer using a pool of worker
+ * threads, while the editor continues with the traversal. This is used while
+ * reindexing, where text extraction and analysis would otherwise run
+ * sequentially with the traversal. The writer must support concurrent
+ * updates.
+ * <p>
+ * The number of pending documents is bounded, so that the traversal blocks
+ * if the workers can not keep up. If making or writing a document fails, no
+ * further documents are accepted, and {@link #close()} fails with the error
+ * of the first failed node in traversal order (of those nodes that were
+ * processed). The error names the path of that node. If the indexing is
+ * aborted, {@link #abort()} stops the workers without processing the pending
+ * documents.
+ * <p>
+ * The workers only count the written documents; the caller reports them as
+ * index updates in its own thread, see {@link #takeWrittenCount()}.
+ */
+final class DocumentPipeline<D> {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentPipeline.class);
+
+    /**
+     * The number of pending documents per worker thread.
+     */
+    private static final int QUEUE_SIZE_PER_THREAD = 8;
+
+    private final FulltextIndexWriter<D> writer;
+
+    private final String indexName;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Semaphore pending;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private long sequence;
+
+    private Failure failure;
+
+    private volatile boolean failed;
+
+    private volatile boolean aborted;
+
+    DocumentPipeline(FulltextIndexWriter<D> writer, String indexName, int threads) {
+        this.writer = writer;
+        this.indexName = indexName;
+        this.pending = new Semaphore(threads * QUEUE_SIZE_PER_THREAD);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "oak-document-maker-" + indexName + "-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // the threads end if the traversal is aborted and the pipeline not closed
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Makes the document for the given node, and writes it, asynchronously.
+     * Blocks if too many documents are pending.
+     *
+     * @throws IOException if processing an earlier document failed (the
+     *         message names the failed node), or if interrupted
+     */
+    void submit(String path, DocumentMaker<D> maker, NodeState state, boolean isUpdate,
+                List<PropertyState> propertiesModified) throws IOException {
+        checkFailure();
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing " + path);
+        }
+        long seq = sequence++;
+        executor.execute(() -> {
+            try {
+                if (failed) {
+                    // the remaining documents are not needed anymore
+                    return;
+                }
+                D d = maker.makeDocument(state, isUpdate, propertiesModified);
+                if (d != null) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("[{}] Indexed document for {} is {}", indexName, path, d);
+                    }
+                    writer.updateDocument(path, d);
+                    writtenCount.incrementAndGet();
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Failed to index the node [{}]", path, e);
+            } catch (IOException | RuntimeException e) {
+                if (aborted) {
+                    // most likely caused by the interrupt of abort()
+                    log.debug("[{}] Indexing of {} aborted", indexName, path, e);
+                    return;
+                }
+                failed(seq, path, e);
+            } finally {
+                pending.release();
+            }
+        });
+    }
+
+    /**
+     * Waits until all submitted documents are written.
+     *
+     * @throws IOException if processing a document failed
+     */
+    void close() throws IOException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("[{}] Waiting for {} documents to be indexed", indexName, executor.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for documents of " + indexName);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops processing documents, for example because the commit failed.
+     * Pending documents are discarded, and documents that are currently
+     * processed are waited for, so that the writer is no longer used.
+     *
+     * @throws IOException if processing a document failed before, or if
+     *         interrupted
+     */
+    void abort() throws IOException {
+        aborted = true;
+        failed = true;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("[{}] Document maker threads did not stop within one minute", indexName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while aborting the indexing of " + indexName);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Get the number of documents written since the last call.
+     *
+     * @return the number of documents written
+     */
+    long takeWrittenCount() {
+        return writtenCount.getAndSet(0);
+    }
+
+    private synchronized void failed(long seq, String path, Exception e) {
+        log.warn("Failed to index the node [{}] due to {}", path, e.getMessage());
+        if (failure == null || seq < failure.sequence) {
+            failure = new Failure(seq, path, e);
+        }
+        failed = true;
+    }
+
+    private synchronized void checkFailure() throws IOException {
+        if (failure != null) {
+            // the failure is reported for a later node (or on close), so
+            // the message names the node that failed
+            throw new IOException("Failed to index the node " + failure.path, failure.cause);
+        }
+    }
+
+    private static final class Failure {
+        final long sequence;
+        final String path;
+        final Exception cause;
+
+        Failure(long sequence, String path, Exception cause) {
+            this.sequence = sequence;
+            this.path = path;
+            this.cause = cause;
+        }
+    }
+}
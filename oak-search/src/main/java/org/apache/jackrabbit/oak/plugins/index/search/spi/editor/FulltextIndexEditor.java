@@ -154,6 +154,14 @@ public class FulltextIndexEditor<D> implements IndexEditor, Aggregate.AggregateR
         callback.done();
       }
 
+      try {
+        context.closeDocumentPipeline();
+      } catch (IOException e) {
+        // the message names the node that failed
+        CommitFailedException ce = new CommitFailedException("Fulltext", 3, e.getMessage(), e);
+        context.getIndexingContext().indexUpdateFailed(ce);
+        throw ce;
+      }
       try {
         context.closeWriter();
       } catch (IOException e) {
@@ -248,6 +256,14 @@ public class FulltextIndexEditor<D> implements IndexEditor, Aggregate.AggregateR
   private boolean addOrUpdate(String path, NodeState state, boolean isUpdate)
       throws CommitFailedException {
     try {
+      DocumentPipeline<D> pipeline = context.getDocumentPipeline();
+      if (pipeline != null) {
+        if (isIndexable()) {
+          submit(pipeline, path, state, isUpdate);
+        }
+        // the node is counted once its document is written
+        return false;
+      }
       D d = makeDocument(path, state, isUpdate);
       if (d != null) {
         if (log.isTraceEnabled()) {
@@ -269,6 +285,19 @@ public class FulltextIndexEditor<D> implements IndexEditor, Aggregate.AggregateR
     return false;
   }
 
+  private void submit(DocumentPipeline<D> pipeline, String path, NodeState state, boolean isUpdate)
+      throws CommitFailedException {
+    try {
+      pipeline.submit(path, context.newDocumentMaker(indexingRule, path), state, isUpdate, propertiesModified);
+    } catch (IOException e) {
+      // an earlier node failed (the message names it), or interrupted
+      CommitFailedException ce = new CommitFailedException("Fulltext", 3, e.getMessage(), e);
+      context.getIndexingContext().indexUpdateFailed(ce);
+      throw ce;
+    }
+    context.documentsWritten(pipeline);
+  }
+
   private D makeDocument(String path, NodeState state, boolean isUpdate) throws IOException {
     if (!isIndexable()) {
       return null;
@@ -26,6 +26,7 @@ import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PerfLogger;
+import org.apache.jackrabbit.oak.plugins.index.IndexCommitCallback;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.IndexingContext;
@@ -61,6 +62,15 @@ public abstract class FulltextIndexEditorContext<D> {
   private static final PerfLogger PERF_LOGGER =
           new PerfLogger(LoggerFactory.getLogger(FulltextIndexEditorContext.class.getName() + ".perf"));
 
+  /**
+   * The number of threads used to make and write documents while reindexing,
+   * for index types that support concurrent writes. With 0 or 1, documents
+   * are made in the thread of the traversal.
+   */
+  public static final String DOCUMENT_MAKER_THREADS = "oak.search.reindexDocumentMakerThreads";
+
+  private static final int documentMakerThreads = Integer.getInteger(DOCUMENT_MAKER_THREADS, 0);
+
   protected IndexDefinition definition;
 
   protected final NodeBuilder definitionBuilder;
@@ -93,6 +103,8 @@ public abstract class FulltextIndexEditorContext<D> {
 
   private PropertyUpdateCallback propertyUpdateCallback;
 
+  private DocumentPipeline<D> documentPipeline;
+
   protected FulltextIndexEditorContext(NodeState root, NodeBuilder definition,
                                        @Nullable IndexDefinition indexDefinition,
                                        IndexUpdateCallback updateCallback,
@@ -135,6 +147,55 @@ public abstract class FulltextIndexEditorContext<D> {
     return writer;
   }
 
+  /**
+   * Whether the writer of this index type supports concurrent calls to
+   * {@link FulltextIndexWriter#updateDocument(String, Object)}, and documents
+   * can be made concurrently.
+   */
+  protected boolean supportsConcurrentWrites() {
+    return false;
+  }
+
+  /**
+   * @return the pipeline to make and write documents concurrently to the
+   * traversal, or null if documents should be made in the current thread
+   */
+  @Nullable
+  DocumentPipeline<D> getDocumentPipeline() {
+    if (documentPipeline == null && reindex && asyncIndexing
+            && documentMakerThreads > 1 && supportsConcurrentWrites()) {
+      documentPipeline = new DocumentPipeline<>(getWriter(), definition.getIndexName(), documentMakerThreads);
+      log.info("[{}] Reindexing with {} document maker threads", definition.getIndexName(), documentMakerThreads);
+      // if the commit fails, the writer is not closed: stop the workers then
+      indexingContext.registerIndexCommitCallback(progress -> {
+        if (progress != IndexCommitCallback.IndexProgress.COMMIT_SUCCEDED) {
+          abortDocumentPipeline();
+        }
+      });
+    }
+    return documentPipeline;
+  }
+
+  /**
+   * Stop the workers of the document pipeline, if any, without waiting for
+   * the pending documents, for example because indexing failed. Failures
+   * are reported as index update failures.
+   */
+  void abortDocumentPipeline() {
+    DocumentPipeline<D> pipeline = documentPipeline;
+    if (pipeline == null) {
+      return;
+    }
+    documentPipeline = null;
+    try {
+      pipeline.abort();
+    } catch (IOException e) {
+      CommitFailedException ce = new CommitFailedException("Fulltext", 4,
+          "Failed to index the Fulltext index " + indexingContext.getIndexPath(), e);
+      indexingContext.indexUpdateFailed(ce);
+    }
+  }
+
   public IndexingContext getIndexingContext() {
     return indexingContext;
   }
@@ -148,10 +209,54 @@ public abstract class FulltextIndexEditorContext<D> {
     this.propertyUpdateCallback = propertyUpdateCallback;
   }
 
+  /**
+   * Report the documents written by the document pipeline since the last
+   * call as index updates.
+   */
+  void documentsWritten(DocumentPipeline<D> pipeline) throws CommitFailedException {
+    for (long count = pipeline.takeWrittenCount(); count > 0; count--) {
+      indexUpdate();
+      incIndexedNodes();
+    }
+  }
+
+  /**
+   * Wait until the document pipeline, if any, has written all documents,
+   * and report them as index updates.
+   */
+  void closeDocumentPipeline() throws IOException, CommitFailedException {
+    DocumentPipeline<D> pipeline = documentPipeline;
+    if (pipeline == null) {
+      return;
+    }
+    documentPipeline = null;
+    try {
+      pipeline.close();
+    } catch (IOException | RuntimeException e) {
+      // make sure no worker uses the writer anymore
+      try {
+        pipeline.abort();
+      } catch (IOException e2) {
+        if (e2 != e) {
+          e.addSuppressed(e2);
+        }
+      }
+      throw e;
+    }
+    documentsWritten(pipeline);
+  }
+
   /**
    * close writer if it's not null
    */
   public void closeWriter() throws IOException {
+    if (documentPipeline != null) {
+      try {
+        closeDocumentPipeline();
+      } catch (CommitFailedException e) {
+        throw new IOException(e);
+      }
+    }
     Calendar currentTime = getCalendar();
     final long start = PERF_LOGGER.start();
     boolean indexUpdated = getWriter().close(currentTime.getTimeInMillis());
@@ -68,6 +68,12 @@ public abstract class FulltextIndexTracker<I extends IndexNodeManager<N>, N exte
 
     private volatile Map<String, I> indices = emptyMap();
 
+    /**
+     * Incremented whenever an index is opened or closed, or re-opened
+     * because its definition changed.
+     */
+    private volatile long generation;
+
     private volatile boolean refresh;
 
     protected abstract I openIndex(String path, NodeState root, NodeState node);
@@ -75,6 +81,7 @@ public abstract class FulltextIndexTracker<I extends IndexNodeManager<N>, N exte
     synchronized void close() {
         Map<String, I> indices = this.indices;
         this.indices = emptyMap();
+        generation++;
 
         for (Map.Entry<String, I> entry : indices.entrySet()) {
             entry.getValue().close();
@@ -121,6 +128,7 @@ public abstract class FulltextIndexTracker<I extends IndexNodeManager<N>, N exte
 
         Map<String, I> original = indices;
         final Map<String, I> updates = new HashMap<>();
+        final Set<String> changedIndexes = new HashSet<>();
 
         Set<String> indexPaths = new HashSet<>();
         indexPaths.addAll(original.keySet());
@@ -137,6 +145,10 @@ public abstract class FulltextIndexTracker<I extends IndexNodeManager<N>, N exte
                             I index = openIndex(path, root, after);
                             PERF_LOGGER.end(start, -1, "[{}] Index found to be updated. Reopening the IndexNode", path);
                             updates.put(path, index); // index can be null
+                            if (index == null || !original.containsKey(path)
+                                    || isIndexDefinitionChanged(before, after)) {
+                                changedIndexes.add(path);
+                            }
                         }
                     } catch (Exception e) {
                         badIndexTracker.markBadPersistedIndex(path, e);
@@ -148,6 +160,13 @@ public abstract class FulltextIndexTracker<I extends IndexNodeManager<N>, N exte
         EditorDiff.process(CompositeEditor.compose(editors), this.root, root);
         this.root = root;
 
+        if (!changedIndexes.isEmpty()) {
+            // an index was opened, closed, or its definition changed;
+            // re-opening an index because its data changed does not
+            // affect which indexes can be used for a query
+            generation++;
+        }
+
         if (!updates.isEmpty()) {
             indices = ImmutableMap.<String, I>builder()
                     .putAll(filterKeys(original, not(in(updates.keySet()))))
@@ -169,6 +188,17 @@ public abstract class FulltextIndexTracker<I extends IndexNodeManager<N>, N exte
         }
     }
 
+    /**
+     * Get the generation of the opened indexes. The generation changes when
+     * an index is opened or closed, or re-opened because its definition
+     * changed, but not when an index is re-opened because it was updated.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
     void refresh() {
         LOG.info("Marked tracker to refresh upon next cycle");
         refresh = true;
@@ -236,6 +266,7 @@ public abstract class FulltextIndexTracker<I extends IndexNodeManager<N>, N exte
                             .putAll(indices)
                             .put(path, index)
                             .build();
+                    generation++;
                     badIndexTracker.markGoodIndex(path);
                     return indexNode;
                 }
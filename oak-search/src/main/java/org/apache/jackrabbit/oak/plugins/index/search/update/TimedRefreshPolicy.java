@@ -28,13 +28,25 @@ import org.apache.jackrabbit.oak.stats.Clock;
  * This policy refreshes the index (if changed) if it wasn't refreshed for a
  * configured time. For example once per second.
  *
+ * If refreshing takes long, for example because the index is updated at a high
+ * rate, the time between refreshes is increased, so that at most a fraction
+ * of the time is spent refreshing. Refresh requests in between are coalesced.
+ *
  * It is the default policy for asynchronous indexes.
  */
 public class TimedRefreshPolicy implements ReaderRefreshPolicy, IndexUpdateListener {
+    /**
+     * The minimum ratio of the time between refreshes to the time needed for
+     * a refresh.
+     */
+    private static final int REFRESH_COST_FACTOR =
+            Integer.getInteger("oak.search.refreshCostFactor", 10);
+
     private final AtomicBoolean dirty = new AtomicBoolean();
     private final Clock clock;
     private final long refreshDelta;
     private volatile long lastRefreshTime;
+    private volatile long lastRefreshDuration;
 
     public TimedRefreshPolicy(Clock clock, TimeUnit unit, long refreshDelta) {
         this.clock = clock;
@@ -59,10 +71,12 @@ public class TimedRefreshPolicy implements ReaderRefreshPolicy, IndexUpdateListe
     private void refreshIfRequired(Runnable refreshCallback) {
         if (dirty.get()){
             long currentTime = clock.getTime();
-            if (currentTime - lastRefreshTime > refreshDelta
+            long delta = Math.max(refreshDelta, lastRefreshDuration * REFRESH_COST_FACTOR);
+            if (currentTime - lastRefreshTime > delta
                     && dirty.compareAndSet(true, false)){
                 lastRefreshTime = currentTime;
                 refreshCallback.run();
+                lastRefreshDuration = clock.getTime() - currentTime;
             }
         }
     }
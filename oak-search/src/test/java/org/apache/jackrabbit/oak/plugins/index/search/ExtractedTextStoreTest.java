@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.search;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.plugins.index.fulltext.ExtractedText;
+import org.apache.jackrabbit.oak.plugins.index.fulltext.ExtractedText.ExtractionResult;
+import org.apache.jackrabbit.oak.plugins.memory.ArrayBasedBlob;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ExtractedTextStoreTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void putAndGet() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextStore store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertNull(store.get("a"));
+
+        store.put("a", new ExtractedText(ExtractionResult.SUCCESS, "hello world"));
+        store.put("b", ExtractedText.EMPTY);
+        store.put("c", ExtractedText.ERROR);
+
+        assertEquals("hello world", store.get("a").getExtractedText().toString());
+        assertSame(ExtractedText.EMPTY, store.get("b"));
+        // errors might be temporary, so they are not stored
+        assertNull(store.get("c"));
+        assertEquals(2, store.getEntryCount());
+        assertEquals(2, store.getHitCount());
+        assertEquals(2, store.getMissCount());
+        store.close();
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        String text = largeText();
+        ExtractedTextStore store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        for (int i = 0; i < 100; i++) {
+            store.put("id" + i, new ExtractedText(ExtractionResult.SUCCESS, text + i));
+        }
+        long size = store.getSize();
+        // the text is compressed
+        assertEquals(true, size < 100 * text.length());
+        store.close();
+
+        store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertEquals(100, store.getEntryCount());
+        assertEquals(size, store.getSize());
+        assertEquals(text + 42, store.get("id42").getExtractedText().toString());
+        store.close();
+    }
+
+    @Test
+    public void incompleteWrite() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextStore store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        store.put("a", new ExtractedText(ExtractionResult.SUCCESS, "foo"));
+        store.put("b", new ExtractedText(ExtractionResult.SUCCESS, "bar"));
+        store.close();
+
+        // simulate a crash while writing the index, and the data of the last record
+        File index = ExtractedTextStore.getIndexFile(dir, 1);
+        try (RandomAccessFile f = new RandomAccessFile(index, "rw")) {
+            f.setLength(f.length() - 3);
+        }
+        File data = ExtractedTextStore.getDataFile(dir, 1);
+        try (RandomAccessFile f = new RandomAccessFile(data, "rw")) {
+            f.setLength(f.length() - 2);
+        }
+
+        store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertEquals(1, store.getEntryCount());
+        assertEquals("foo", store.get("a").getExtractedText().toString());
+        assertNull(store.get("b"));
+
+        store.put("b", new ExtractedText(ExtractionResult.SUCCESS, "bar"));
+        assertEquals("bar", store.get("b").getExtractedText().toString());
+        store.close();
+    }
+
+    @Test
+    public void maxSize() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextStore store = new ExtractedTextStore(dir, 400);
+        for (int i = 0; i < 100; i++) {
+            store.put("id" + i, new ExtractedText(ExtractionResult.SUCCESS, "text " + i));
+            // text that is read is kept
+            assertEquals("text 0", store.get("id0").getExtractedText().toString());
+        }
+        assertEquals(true, store.getSize() <= 400);
+        assertEquals("text 99", store.get("id99").getExtractedText().toString());
+        assertEquals("text 0", store.get("id0").getExtractedText().toString());
+        // older entries that were not read are discarded
+        assertNull(store.get("id1"));
+        store.close();
+
+        // only the two newest generations are kept
+        assertEquals(4, dir.list().length);
+        store = new ExtractedTextStore(dir, 400);
+        assertEquals("text 99", store.get("id99").getExtractedText().toString());
+        store.close();
+    }
+
+    @Test
+    public void usedByCache() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextCache cache = new ExtractedTextCache(0, 0);
+        cache.setTextStore(new ExtractedTextStore(dir, FileUtils.ONE_MB));
+        cache.put(new IdBlob("a"), new ExtractedText(ExtractionResult.SUCCESS, "hello"));
+        cache.close();
+
+        // a new cache, as used after a restart
+        cache = new ExtractedTextCache(0, 0);
+        cache.setTextStore(new ExtractedTextStore(dir, FileUtils.ONE_MB));
+        assertEquals("hello", cache.get("/a", "foo", new IdBlob("a"), true));
+        assertNull(cache.get("/b", "foo", new IdBlob("b"), true));
+
+        TextExtractionStatsMBean stats = cache.getStatsMBean();
+        assertEquals(true, stats.isTextStoreConfigured());
+        assertEquals(1, stats.getTextStoreHitCount());
+        assertEquals(1, stats.getTextStoreMissCount());
+        assertEquals(1, stats.getTextStoreEntryCount());
+        cache.close();
+    }
+
+    @Test
+    public void truncatedTextNotStored() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextCache cache = new ExtractedTextCache(0, 0);
+        cache.setTextStore(new ExtractedTextStore(dir, FileUtils.ONE_MB));
+        // truncated because of the extraction limit of an index definition
+        cache.put(new IdBlob("a"), new ExtractedText(ExtractionResult.SUCCESS, "hel"), false);
+        assertNull(cache.get("/a", "foo", new IdBlob("a"), true));
+
+        cache.put(new IdBlob("a"), new ExtractedText(ExtractionResult.SUCCESS, "hello"), true);
+        assertEquals("hello", cache.get("/a", "foo", new IdBlob("a"), true));
+        cache.close();
+    }
+
+    @Test
+    public void positionTable() {
+        ExtractedTextStore.PositionTable table = new ExtractedTextStore.PositionTable();
+        assertEquals(-1, table.get(0));
+        for (long i = 0; i < 10000; i++) {
+            table.put(ExtractedTextStore.hash("k" + i), i);
+        }
+        // hash 0 is a valid key
+        table.put(0, 1);
+        // replaced
+        table.put(ExtractedTextStore.hash("k42"), 4242);
+        assertEquals(10001, table.size());
+        for (long i = 0; i < 10000; i++) {
+            assertEquals(i == 42 ? 4242 : i, table.get(ExtractedTextStore.hash("k" + i)));
+        }
+        assertEquals(1, table.get(0));
+        assertEquals(-1, table.get(ExtractedTextStore.hash("missing")));
+    }
+
+    private static String largeText() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("lorem ipsum ");
+        }
+        return sb.toString();
+    }
+
+    private static class IdBlob extends ArrayBasedBlob {
+        final String id;
+
+        IdBlob(String id) {
+            super(id.getBytes());
+            this.id = id;
+        }
+
+        @Override
+        public String getContentIdentity() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.search.spi.editor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DocumentPipelineTest {
+
+    private final Map<String, String> written = new ConcurrentHashMap<>();
+
+    private final FulltextIndexWriter<String> writer = new FulltextIndexWriter<String>() {
+        @Override
+        public void updateDocument(String path, String doc) {
+            written.put(path, doc);
+        }
+
+        @Override
+        public void deleteDocuments(String path) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean close(long timestamp) {
+            return true;
+        }
+    };
+
+    @Test
+    public void writeAll() throws Exception {
+        DocumentPipeline<String> pipeline = new DocumentPipeline<>(writer, "test", 4);
+        for (int i = 0; i < 1000; i++) {
+            String path = "/n" + i;
+            pipeline.submit(path, (state, isUpdate, modified) -> "doc" + path,
+                    EMPTY_NODE, false, Collections.<PropertyState>emptyList());
+        }
+        // nodes without a document are skipped
+        pipeline.submit("/empty", (state, isUpdate, modified) -> null,
+                EMPTY_NODE, false, Collections.<PropertyState>emptyList());
+        pipeline.close();
+
+        assertEquals(1000, written.size());
+        assertEquals(1000, pipeline.takeWrittenCount());
+        assertEquals(0, pipeline.takeWrittenCount());
+        assertEquals("doc/n42", written.get("/n42"));
+    }
+
+    @Test
+    public void failure() throws Exception {
+        DocumentPipeline<String> pipeline = new DocumentPipeline<>(writer, "test", 2);
+        DocumentMaker<String> failing = (state, isUpdate, modified) -> {
+            throw new IOException("boom");
+        };
+        pipeline.submit("/a", failing, EMPTY_NODE, false, Collections.<PropertyState>emptyList());
+        try {
+            // the failure is reported on a later submit, or on close
+            for (int i = 0; i < 1000; i++) {
+                pipeline.submit("/n" + i, (state, isUpdate, modified) -> "doc",
+                        EMPTY_NODE, false, Collections.<PropertyState>emptyList());
+            }
+            pipeline.close();
+            fail();
+        } catch (IOException e) {
+            // the failed node is named, not the node submitted last
+            assertEquals("Failed to index the node /a", e.getMessage());
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void abort() throws Exception {
+        DocumentPipeline<String> pipeline = new DocumentPipeline<>(writer, "test", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit("/blocked", (state, isUpdate, modified) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return "doc";
+        }, EMPTY_NODE, false, Collections.<PropertyState>emptyList());
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit("/n" + i, (state, isUpdate, modified) -> "doc",
+                    EMPTY_NODE, false, Collections.<PropertyState>emptyList());
+        }
+        started.await();
+        // the running document is interrupted, the pending ones are discarded
+        pipeline.abort();
+        assertTrue(written.isEmpty());
+    }
+}
@@ -103,4 +103,34 @@ public class TimedRefreshPolicyTest {
         policy.refreshOnReadIfRequired(refreshCallback);
         refreshCallback.assertNotInvokedAndReset();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void slowRefreshIncreasesDelta() throws Exception{
+        clock.waitUntil(System.currentTimeMillis());
+        TimedRefreshPolicy policy = new TimedRefreshPolicy(clock, TimeUnit.SECONDS, 1);
+        long refreshTime = 500;
+        Runnable slowRefresh = () -> {
+            refreshCallback.run();
+            try {
+                clock.waitUntil(clock.getTime() + refreshTime);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        };
+
+        policy.updated();
+        policy.refreshOnWriteIfRequired(slowRefresh);
+        refreshCallback.assertInvokedAndReset();
+
+        //The configured delta elapsed, but refreshing took long,
+        //so the next refresh is delayed
+        policy.updated();
+        clock.waitUntil(clock.getTime() + TimeUnit.SECONDS.toMillis(2));
+        policy.refreshOnWriteIfRequired(slowRefresh);
+        refreshCallback.assertNotInvokedAndReset();
+
+        clock.waitUntil(clock.getTime() + refreshTime * 10);
+        policy.refreshOnReadIfRequired(slowRefresh);
+        refreshCallback.assertInvokedAndReset();
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.json.BlobSerializer;
+import org.apache.jackrabbit.oak.json.JsonSerializer;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingHandler;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
+import static org.apache.jackrabbit.guava.common.collect.Lists.partition;
+import static org.apache.jackrabbit.oak.api.CommitFailedException.MERGE;
+import static org.apache.jackrabbit.oak.api.CommitFailedException.OAK;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.apache.jackrabbit.oak.plugins.memory.PropertyStates.createProperty;
+
+/**
+ * Loads a tree of new nodes into a {@link DocumentNodeStore} without going
+ * through a regular commit for each node. The nodes are written depth-first
+ * in post-order as {@link NodeDocument}s, taking the bundling configuration
+ * into account, and with large {@link DocumentStore#create(Collection, List)}
+ * batches.
+ * <p>
+ * Each document below the root of the loaded tree is committed on its own,
+ * with a revision per batch. The documents are not reachable until the root
+ * node of the loaded tree is added with a regular trunk commit at the very
+ * end. The entire load therefore becomes visible atomically and a failed load
+ * removes the documents it already wrote.
+ * <p>
+ * Commit hooks are not run and the changes below the root of the loaded tree
+ * are not reported individually to observers. The loader is meant for
+ * initial content migration where a large amount of content is added to a
+ * store that is not yet in use otherwise.
+ */
+final class BulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkLoader.class);
+
+    private final DocumentNodeStore nodeStore;
+
+    private final DocumentStore store;
+
+    private final BlobSerializer blobs;
+
+    private final int batchSize;
+
+    private final JsopBuilder json = new JsopBuilder();
+
+    private final List<UpdateOp> batch = new ArrayList<>();
+
+    /**
+     * Ids of the documents created by this loader.
+     */
+    private final List<String> created = new ArrayList<>();
+
+    /**
+     * The revision for the documents in the current batch or {@code null}
+     * if a new revision must be created for the next document.
+     */
+    private Revision batchRevision;
+
+    private long numNodes;
+
+    BulkLoader(@NotNull DocumentNodeStore nodeStore, int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be greater than 0");
+        this.nodeStore = checkNotNull(nodeStore);
+        this.store = nodeStore.getDocumentStore();
+        this.blobs = nodeStore.getBlobSerializer();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Loads the given {@code state} as a new node at {@code path}. The parent
+     * of the node must exist and the node itself must not exist.
+     *
+     * @param path the path of the new node.
+     * @param state the node state to load including its subtree.
+     * @param info the commit info for the commit that adds the node.
+     * @return the root state after the load.
+     * @throws CommitFailedException if the node cannot be added.
+     */
+    @NotNull
+    NodeState load(@NotNull Path path,
+                   @NotNull NodeState state,
+                   @NotNull CommitInfo info)
+            throws CommitFailedException {
+        checkArgument(!checkNotNull(path).isRoot(), "Cannot load the root node");
+        checkNotNull(state);
+        checkNotNull(info);
+
+        DocumentNodeState root = nodeStore.getRoot();
+        BundlingHandler parentHandler = nodeStore.getBundlingConfigHandler().newBundlingHandler();
+        NodeState parent = root;
+        for (String name : path.getParent().elements()) {
+            parent = parent.getChildNode(name);
+            parentHandler = parentHandler.childChanged(name, parent, parent);
+        }
+        if (!parent.exists()) {
+            String msg = "Cannot load " + path + ". Parent does not exist";
+            throw new CommitFailedException(OAK, 201, msg);
+        }
+        if (parent.hasChildNode(path.getName())) {
+            String msg = "Cannot load " + path + ". Node already exists";
+            throw new CommitFailedException(MERGE, 202, msg);
+        }
+        BundlingHandler handler = parentHandler.childAdded(path.getName(), state);
+        if (handler.isBundledNode()) {
+            // the new node would become part of the parent document
+            LOG.info("Node {} is bundled with its parent. Using regular commit.", path);
+            return loadWithBuilder(root, path, state, info);
+        }
+        if (store.find(NODES, Utils.getIdFromPath(path)) != null) {
+            String msg = "Cannot load " + path + ". Document already exists";
+            throw new CommitFailedException(OAK, 203, msg);
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            RevisionVector head = loadAndCommit(root, handler, state, info);
+            success = true;
+            LOG.info("Loaded {} nodes into {} documents below {} in {} ms", numNodes,
+                    created.size() + 1, path, (System.nanoTime() - start) / 1000000);
+            return nodeStore.getRoot(head);
+        } catch (ConflictException e) {
+            throw e.asCommitFailedException();
+        } catch (DocumentStoreException e) {
+            throw new CommitFailedException(OAK, 204, "Failed to load " + path, e);
+        } finally {
+            if (!success) {
+                removeCreatedDocuments();
+            }
+        }
+    }
+
+    //-----------------------------< internal >---------------------------------
+
+    private RevisionVector loadAndCommit(DocumentNodeState root,
+                                         BundlingHandler handler,
+                                         NodeState state,
+                                         CommitInfo info)
+            throws ConflictException, DocumentStoreException {
+        // the document for the root of the loaded tree is written with a
+        // regular commit. all other documents are loaded before the commit
+        // revision is created, while the commit builder is populated
+        List<Path> loaded = new ArrayList<>();
+        Commit c = nodeStore.newCommit(commitBuilder -> {
+            commitBuilder.addNode(handler.getNodeFullPath());
+            addNode(handler, state, new CommitTarget(commitBuilder, handler.getRootBundlePath(), loaded));
+            flush();
+        }, root.getRootRevision(), null);
+        boolean success = false;
+        try {
+            // loaded nodes do not have an operation in the commit
+            for (Path p : loaded) {
+                c.markChanged(p);
+            }
+            c.apply();
+            RevisionVector head = nodeStore.done(c, false, info);
+            success = true;
+            return head;
+        } finally {
+            if (!success) {
+                nodeStore.canceled(c);
+            }
+        }
+    }
+
+    private NodeState loadWithBuilder(DocumentNodeState root,
+                                      Path path,
+                                      NodeState state,
+                                      CommitInfo info)
+            throws CommitFailedException {
+        NodeBuilder builder = root.builder();
+        NodeBuilder parent = builder;
+        for (String name : path.getParent().elements()) {
+            parent = parent.getChildNode(name);
+        }
+        parent.setChildNode(path.getName(), state);
+        return nodeStore.merge(builder, EmptyHook.INSTANCE, info);
+    }
+
+    /**
+     * Adds the node represented by the bundling handler to the given target
+     * and loads the documents for child nodes that are not bundled.
+     */
+    private void addNode(BundlingHandler handler,
+                         NodeState state,
+                         Target target) {
+        numNodes++;
+        for (PropertyState ps : handler.getMetaProps()) {
+            setProperty(handler, ps, target);
+        }
+        if (handler.isBundledNode()) {
+            target.addBundledNode(handler.getNodeFullPath());
+        }
+        for (PropertyState ps : state.getProperties()) {
+            setProperty(handler, ps, target);
+        }
+        for (ChildNodeEntry entry : state.getChildNodeEntries()) {
+            NodeState child = entry.getNodeState();
+            BundlingHandler childHandler = handler.childAdded(entry.getName(), child);
+            if (childHandler.isBundledNode()) {
+                setProperty(handler, createProperty(
+                        DocumentBundlor.META_PROP_BUNDLED_CHILD, Boolean.TRUE), target);
+                addNode(childHandler, child, target);
+            } else {
+                if (handler.isBundledNode()) {
+                    setProperty(handler, createProperty(
+                            DocumentBundlor.META_PROP_NON_BUNDLED_CHILD, Boolean.TRUE), target);
+                }
+                loadDocument(childHandler, child);
+                target.childAdded(childHandler.getNodeFullPath(), handler.isBundledNode());
+            }
+        }
+    }
+
+    private void loadDocument(BundlingHandler handler, NodeState state) {
+        Path path = handler.getNodeFullPath();
+        if (Utils.isNodeNameLong(path, store.getNodeNameLimit())) {
+            throw new DocumentStoreException("Node name is too long: " + path);
+        }
+        DocumentTarget target = new DocumentTarget();
+        addNode(handler, state, target);
+        add(target.asOperation(path, getBatchRevision()));
+    }
+
+    private void setProperty(BundlingHandler handler,
+                             PropertyState property,
+                             Target target) {
+        json.resetWriter();
+        JsonSerializer serializer = new JsonSerializer(json, blobs);
+        serializer.serialize(property);
+        target.setProperty(handler.getPropertyPath(property.getName()), serializer.toString());
+        if (property.getType() == Type.BINARY
+                || property.getType() == Type.BINARIES) {
+            target.markHavingBinary();
+        }
+    }
+
+    private Revision getBatchRevision() {
+        if (batchRevision == null) {
+            batchRevision = nodeStore.newRevision();
+        }
+        return batchRevision;
+    }
+
+    private void add(UpdateOp op) {
+        batch.add(op);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        boolean success = false;
+        try {
+            if (!store.create(NODES, batch)) {
+                throw new DocumentStoreException("Unable to create documents. " +
+                        "One or more documents in batch already exist: " + batch.get(0).getId() +
+                        " ... " + batch.get(batch.size() - 1).getId());
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                // some of the documents may have been created nevertheless
+                for (UpdateOp op : batch) {
+                    NodeDocument doc = store.find(NODES, op.getId());
+                    if (doc != null && doc.getLocalDeleted().containsKey(batchRevision)) {
+                        created.add(op.getId());
+                    }
+                }
+            }
+        }
+        for (UpdateOp op : batch) {
+            created.add(op.getId());
+        }
+        LOG.debug("Created {} documents with revision {}", batch.size(), batchRevision);
+        batch.clear();
+        batchRevision = null;
+    }
+
+    private void removeCreatedDocuments() {
+        if (created.isEmpty()) {
+            return;
+        }
+        LOG.info("Removing {} documents created by failed load", created.size());
+        try {
+            for (List<String> ids : partition(created, batchSize)) {
+                store.remove(NODES, ids);
+            }
+        } catch (DocumentStoreException e) {
+            LOG.warn("Unable to remove documents created by failed load", e);
+        }
+    }
+
+    /**
+     * A target for the changes of a single document.
+     */
+    private interface Target {
+
+        void setProperty(String propertyPath, String value);
+
+        void markHavingBinary();
+
+        void addBundledNode(Path path);
+
+        void childAdded(Path path, boolean parentIsBundled);
+    }
+
+    /**
+     * Target for the root document of the loaded tree, which is added with
+     * a regular commit.
+     */
+    private static final class CommitTarget implements Target {
+
+        private final CommitBuilder commitBuilder;
+
+        private final Path rootBundlePath;
+
+        private final List<Path> loaded;
+
+        CommitTarget(CommitBuilder commitBuilder,
+                     Path rootBundlePath,
+                     List<Path> loaded) {
+            this.commitBuilder = commitBuilder;
+            this.rootBundlePath = rootBundlePath;
+            this.loaded = loaded;
+        }
+
+        @Override
+        public void setProperty(String propertyPath, String value) {
+            commitBuilder.updateProperty(rootBundlePath, propertyPath, value);
+        }
+
+        @Override
+        public void markHavingBinary() {
+            commitBuilder.markNodeHavingBinary(rootBundlePath);
+        }
+
+        @Override
+        public void addBundledNode(Path path) {
+            commitBuilder.addBundledNode(path, rootBundlePath);
+        }
+
+        @Override
+        public void childAdded(Path path, boolean parentIsBundled) {
+            commitBuilder.addLoadedNode(path);
+            loaded.add(path);
+        }
+    }
+
+    /**
+     * Target for a document below the root of the loaded tree. The changes
+     * are collected and turned into an update operation once the document
+     * and all its descendants have been visited.
+     */
+    private static final class DocumentTarget implements Target {
+
+        private final Map<String, String> properties = new LinkedHashMap<>();
+
+        private boolean hasBinary;
+
+        private boolean hasChildren;
+
+        @Override
+        public void setProperty(String propertyPath, String value) {
+            properties.put(propertyPath, value);
+        }
+
+        @Override
+        public void markHavingBinary() {
+            hasBinary = true;
+        }
+
+        @Override
+        public void addBundledNode(Path path) {
+            // nothing to do
+        }
+
+        @Override
+        public void childAdded(Path path, boolean parentIsBundled) {
+            // children of bundled nodes are tracked with a meta property
+            if (!parentIsBundled) {
+                hasChildren = true;
+            }
+        }
+
+        UpdateOp asOperation(Path path, Revision revision) {
+            String id = Utils.getIdFromPath(path);
+            UpdateOp op = new UpdateOp(id, true);
+            if (Utils.isIdFromLongPath(id)) {
+                op.set(NodeDocument.PATH, path.toString());
+            }
+            NodeDocument.setModified(op, revision);
+            NodeDocument.setDeleted(op, revision, false);
+            // the document is its own commit root
+            NodeDocument.setRevision(op, revision, "c");
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                op.setMapEntry(Utils.escapePropertyName(e.getKey()), revision, e.getValue());
+            }
+            if (hasChildren) {
+                NodeDocument.setChildrenFlag(op, true);
+            }
+            if (hasBinary) {
+                NodeDocument.setHasBinary(op);
+            }
+            return op;
+        }
+    }
+}
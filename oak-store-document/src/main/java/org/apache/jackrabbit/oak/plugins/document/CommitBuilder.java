@@ -141,6 +141,23 @@ class CommitBuilder {
         return this;
     }
 
+    /**
+     * Adds a node to the commit, which was already written to the document
+     * store by a {@link BulkLoader} and becomes visible with this commit.
+     * Unlike {@link #addNode(Path)}, this method does not create an update
+     * operation for the node.
+     *
+     * @param path the path of the loaded node.
+     * @return {@code this} builder.
+     */
+    @NotNull
+    CommitBuilder addLoadedNode(@NotNull Path path) {
+        checkNotNull(path);
+
+        addedNodes.add(path);
+        return this;
+    }
+
     /**
      * Instructs the commit builder that the bundling root of the node at
      * {@code path} is at {@code bundlingRootPath}.
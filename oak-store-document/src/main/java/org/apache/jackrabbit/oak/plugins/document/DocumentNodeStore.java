@@ -192,6 +192,16 @@ public final class DocumentNodeStore
     private boolean disableJournalDiff = SystemPropertySupplier.create(SYS_PROP_DISABLE_JOURNAL, Boolean.FALSE).loggingTo(LOG)
             .get();
 
+    public static final String SYS_PROP_JOURNAL_CACHE_INVALIDATION = "oak.documentMK.journalCacheInvalidation";
+    /**
+     * Feature flag to invalidate cached documents changed by other cluster
+     * nodes based on the journal only, without checking their modification
+     * stamps in the store. The check on the full cache is still done when the
+     * journal cannot be read.
+     */
+    private boolean journalCacheInvalidation = SystemPropertySupplier.create(SYS_PROP_JOURNAL_CACHE_INVALIDATION, Boolean.FALSE)
+            .loggingTo(LOG).get();
+
     /**
      * Threshold for number of paths in journal entry to require a force push during commit
      * (instead of at background write)
@@ -211,10 +221,36 @@ public final class DocumentNodeStore
     private final int createOrUpdateBatchSize = SystemPropertySupplier.create("oak.documentMK.createOrUpdateBatchSize", 1000)
             .loggingTo(LOG).get();
 
+    /**
+     * The number of new documents to batch with a single call to
+     * {@link DocumentStore#create(Collection, List)} when nodes are loaded
+     * with {@link #bulkLoad(String, NodeState, CommitInfo)}.
+     */
+    private final int bulkLoadBatchSize = SystemPropertySupplier.create("oak.documentMK.bulkLoadBatchSize", 5000)
+            .loggingTo(LOG).get();
+
+    /**
+     * The number of threads used by the background sweep to process the
+     * candidate documents. The candidates are split into id range partitions,
+     * which are processed concurrently when more than one thread is used.
+     */
+    private final int sweepThreads = SystemPropertySupplier.create("oak.documentMK.sweepThreads", 1)
+            .loggingTo(LOG).validateWith(value -> value > 0).get();
+
     public static final String SYS_PROP_DISABLE_SWEEP2 = "oak.documentMK.disableSweep2";
     private boolean disableSweep2 = SystemPropertySupplier.create(SYS_PROP_DISABLE_SWEEP2, Boolean.FALSE).loggingTo(LOG)
             .get();
 
+    /**
+     * The boundaries of the id range partitions processed by the background
+     * sweep. Document ids start with the depth of the path and a colon. Each
+     * of the depths 1 to 19 has its own partition (the range "1:" to "1;"
+     * contains exactly the ids of depth 1), while the rare other depths share
+     * partitions. In the order of the ids, "10:" to "19:" sort before "1:",
+     * and "20:" to "29:" between "1;" and "2:".
+     */
+    static final String[] SWEEP_PARTITION_KEYS = createSweepPartitionKeys();
+
     // OAK-2682: time difference detection applied at startup with a default
     // max time diff of 2000 millis (2sec)
     static final long DEFAULT_MAX_SERVER_TIME_DIFFERENCE = 2000L;
@@ -2066,6 +2102,31 @@ public final class DocumentNodeStore
         return asDocumentRootBuilder(builder).merge(commitHook, info);
     }
 
+    /**
+     * Loads the given {@code state} including its subtree as a new node at
+     * {@code path}. Unlike a {@link #merge(NodeBuilder, CommitHook, CommitInfo)},
+     * the nodes are written directly as (bundled) documents with large
+     * batches and the new node becomes visible with a single commit at the
+     * end. Commit hooks are not run. This method is meant for initial content
+     * migration, where the nodes of {@code state} are provided in a
+     * depth-first traversal, e.g. when copied from another store.
+     *
+     * @param path the path of the new node. The parent must exist.
+     * @param state the state of the new node.
+     * @param info the commit info for the commit that adds the node.
+     * @return the root state after the load.
+     * @throws CommitFailedException if the node already exists, its parent
+     *          does not exist or the load failed.
+     */
+    @NotNull
+    public NodeState bulkLoad(@NotNull String path,
+                              @NotNull NodeState state,
+                              @NotNull CommitInfo info)
+            throws CommitFailedException {
+        return new BulkLoader(this, bulkLoadBatchSize)
+                .load(Path.fromString(path), state, info);
+    }
+
     @NotNull
     @Override
     public NodeState rebase(@NotNull NodeBuilder builder) {
@@ -2436,7 +2497,11 @@ public final class DocumentNodeStore
         return new ExternalChange(this) {
             @Override
             void invalidateCache(@NotNull Iterable<String> paths) {
-                stats.cacheStats = store.invalidateCache(pathToId(paths));
+                if (journalCacheInvalidation) {
+                    stats.cacheStats = JournalCacheInvalidation.invalidate(store, pathToId(paths));
+                } else {
+                    stats.cacheStats = store.invalidateCache(pathToId(paths));
+                }
             }
 
             @Override
@@ -2896,6 +2961,20 @@ public final class DocumentNodeStore
         }
     }
 
+    private static String[] createSweepPartitionKeys() {
+        List<String> keys = new ArrayList<>();
+        keys.add(NodeDocument.MIN_ID_VALUE);
+        for (int depth = 10; depth < 20; depth++) {
+            keys.add(depth + ":");
+        }
+        for (int depth = 1; depth < 10; depth++) {
+            keys.add(depth + ":");
+            keys.add(depth + ";");
+        }
+        keys.add(NodeDocument.MAX_ID_VALUE);
+        return keys.toArray(new String[0]);
+    }
+
     private int backgroundSweep() throws DocumentStoreException {
         // decide if it needs to run
         Revision head = getHeadRevision().getRevision(clusterId);
@@ -2940,7 +3019,8 @@ public final class DocumentNodeStore
             reason += "no sweepRevision for " + clusterId;
         }
 
-        int num = forceBackgroundSweep(startRev, reason);
+        Revision lastGarbage = garbage.isEmpty() ? null : garbage.last();
+        int num = forceBackgroundSweep(startRev, lastGarbage, reason);
         inDoubtTrunkCommits.removeAll(garbage);
         return num;
     }
@@ -2950,15 +3030,54 @@ public final class DocumentNodeStore
                 cluster.isOlderThanLastWrittenRootRevPredicate());
     }
 
-    private int forceBackgroundSweep(Revision startRev, String reason) throws DocumentStoreException {
+    private int forceBackgroundSweep(Revision startRev,
+                                     @Nullable Revision lastGarbage,
+                                     String reason)
+            throws DocumentStoreException {
         NodeDocumentSweeper sweeper = new NodeDocumentSweeper(this, false);
-        LOG.info("Starting document sweep. Head: {}, starting at {} (reason: {})",
-                sweeper.getHeadRevision(), startRev, reason);
-        Iterable<NodeDocument> docs = lastRevSeeker.getCandidates(startRev.getTimestamp());
+        Revision head = sweeper.getHeadRevision().getRevision(clusterId);
+        // resume from the recorded progress of a previous attempt if it
+        // covered all garbage revisions known now. The start revision of a
+        // sweep for garbage revisions is not known anymore after a restart
+        // (uncommitted changes of a crashed process are then cleaned up by
+        // the recovery), so in practice only the initial sweep (starting at
+        // revision zero) is resumed after a restart
+        SweepProgressDocument progress = SweepProgressDocument.readFrom(store, clusterId);
+        boolean resume = progress != null
+                && startRev.equals(progress.getStartRevision())
+                && progress.getHeadRevision() != null
+                && (lastGarbage == null || lastGarbage.compareRevisionTime(progress.getHeadRevision()) <= 0);
+        if (resume) {
+            LOG.info("Resuming document sweep. Head: {}, starting at {} (reason: {}, progress: {})",
+                    sweeper.getHeadRevision(), startRev, reason, progress);
+        } else {
+            progress = null;
+            LOG.info("Starting document sweep. Head: {}, starting at {} (reason: {})",
+                    sweeper.getHeadRevision(), startRev, reason);
+            if (head != null) {
+                SweepProgressDocument.start(store, clusterId, startRev, head);
+            }
+        }
+        List<Iterable<NodeDocument>> partitions = new ArrayList<>();
+        for (int i = 0; i < SWEEP_PARTITION_KEYS.length - 1; i++) {
+            String fromKey = SWEEP_PARTITION_KEYS[i];
+            String lastId = progress == null ? null : progress.getLastId(i);
+            if (NodeDocument.MAX_ID_VALUE.equals(lastId)) {
+                // partition already done
+                partitions.add(Collections.emptyList());
+            } else {
+                if (lastId != null) {
+                    fromKey = lastId;
+                }
+                partitions.add(lastRevSeeker.getCandidates(startRev.getTimestamp(),
+                        fromKey, SWEEP_PARTITION_KEYS[i + 1]));
+            }
+        }
+        long start = clock.getTime();
         try {
             final AtomicInteger numUpdates = new AtomicInteger();
 
-            Revision newSweepRev = sweeper.sweep(docs, new NodeDocumentSweepListener() {
+            Revision newSweepRev = sweeper.sweep(partitions, new NodeDocumentSweepListener() {
                 @Override
                 public void sweepUpdate(final Map<Path, UpdateOp> updates)
                         throws DocumentStoreException {
@@ -3010,14 +3129,29 @@ public final class DocumentNodeStore
                     numUpdates.addAndGet(updates.size());
                     LOG.debug("Background sweep updated {}", updates.keySet());
                 }
-            });
+            }, new NodeDocumentSweeper.ProgressListener() {
+                @Override
+                public void processed(int partition, @NotNull String lastId) {
+                    SweepProgressDocument.checkpoint(store, clusterId, partition, lastId);
+                }
+
+                @Override
+                public void done(int partition) {
+                    SweepProgressDocument.checkpoint(store, clusterId, partition, NodeDocument.MAX_ID_VALUE);
+                }
+            }, sweepThreads);
 
             if (newSweepRev != null) {
                 updateSweepRevision(newSweepRev);
+                SweepProgressDocument.remove(store, clusterId);
             }
+            nodeStoreStatsCollector.doneSweep(sweeper.getDocumentCount(),
+                    sweeper.getUpdateCount(), clock.getTime() - start);
             return numUpdates.get();
         } finally {
-            Utils.closeIfCloseable(docs);
+            for (Iterable<NodeDocument> docs : partitions) {
+                Utils.closeIfCloseable(docs);
+            }
         }
     }
 
@@ -46,6 +46,10 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     static final String BGW_NUM_WRITES_RATE = "DOCUMENT_NS_BGW_NUM_WRITE_RATE";
     private static final String BGW_TOTAL = "DOCUMENT_NS_BGW_TOTAL_TIME";
 
+    static final String SWEEP_NUM_DOCUMENTS_RATE = "DOCUMENT_NS_SWEEP_NUM_DOCUMENTS_RATE";
+    static final String SWEEP_NUM_UPDATES_RATE = "DOCUMENT_NS_SWEEP_NUM_UPDATES_RATE";
+    private static final String SWEEP_TIME = "DOCUMENT_NS_SWEEP_TIME";
+
     static final String LEASE_UPDATE = "DOCUMENT_NS_LEASE_UPDATE";
 
     private static final String MERGE_SUCCESS_NUM_RETRY = "DOCUMENT_NS_MERGE_SUCCESS_RETRY";
@@ -85,6 +89,11 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final TimerStats writeTotal;
     private final MeterStats numWritesRate;
 
+    // sweep stats
+    private final MeterStats sweepDocumentsRate;
+    private final MeterStats sweepUpdatesRate;
+    private final TimerStats sweepTime;
+
     // lease update
     private final TimerStats leaseUpdate;
 
@@ -127,6 +136,10 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         writeNum = sp.getHistogram(BGW_NUM, StatsOptions.METRICS_ONLY);
         numWritesRate = sp.getMeter(BGW_NUM_WRITES_RATE, StatsOptions.DEFAULT); //Enable time series
 
+        sweepDocumentsRate = sp.getMeter(SWEEP_NUM_DOCUMENTS_RATE, StatsOptions.METRICS_ONLY);
+        sweepUpdatesRate = sp.getMeter(SWEEP_NUM_UPDATES_RATE, StatsOptions.METRICS_ONLY);
+        sweepTime = sp.getTimer(SWEEP_TIME, StatsOptions.METRICS_ONLY);
+
         leaseUpdate = sp.getTimer(LEASE_UPDATE, StatsOptions.METRICS_ONLY);
 
         mergeSuccessRetries = sp.getHistogram(MERGE_SUCCESS_NUM_RETRY, StatsOptions.METRICS_ONLY);
@@ -178,6 +191,13 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         numWritesRate.mark(stats.num);
     }
 
+    @Override
+    public void doneSweep(long numDocuments, long numUpdates, long timeMillis) {
+        sweepDocumentsRate.mark(numDocuments);
+        sweepUpdatesRate.mark(numUpdates);
+        sweepTime.update(timeMillis, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public void doneLeaseUpdate(long timeMicros) {
         leaseUpdate.update(timeMicros, TimeUnit.MICROSECONDS);
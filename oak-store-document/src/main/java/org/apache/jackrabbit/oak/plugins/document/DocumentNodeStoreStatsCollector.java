@@ -35,6 +35,15 @@ public interface DocumentNodeStoreStatsCollector {
      */
     void doneBackgroundUpdate(BackgroundWriteStats stats);
 
+    /**
+     * Report to the collector that a document sweep was done.
+     *
+     * @param numDocuments the number of documents scanned by the sweep.
+     * @param numUpdates the number of documents updated by the sweep.
+     * @param timeMillis the time in milliseconds it took to sweep the documents.
+     */
+    void doneSweep(long numDocuments, long numUpdates, long timeMillis);
+
     /**
      * Report to the collector that a lease update was done.
      *
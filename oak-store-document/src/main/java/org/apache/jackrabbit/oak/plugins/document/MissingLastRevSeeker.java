@@ -40,6 +40,8 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.getSelectedD
  */
 public class MissingLastRevSeeker {
 
+    private static final int CANDIDATES_BATCH_SIZE = 100;
+
     private final DocumentStore store;
 
     protected final Clock clock;
@@ -93,6 +95,34 @@ public class MissingLastRevSeeker {
         });
     }
 
+    /**
+     * Get the candidates with modified time greater than or equal the specified
+     * {@code startTime} in milliseconds since the start of the epoch and an id
+     * within the given range. The candidates are returned in ascending id
+     * order.
+     *
+     * @param startTime the start time in milliseconds.
+     * @param fromKey the lower bound of the id range (exclusive).
+     * @param toKey the upper bound of the id range (exclusive).
+     * @return the candidates
+     */
+    @NotNull
+    public Iterable<NodeDocument> getCandidates(final long startTime,
+                                                @NotNull String fromKey,
+                                                @NotNull String toKey) {
+        Iterable<NodeDocument> nodes = getSelectedDocuments(store,
+                MODIFIED_IN_SECS, getModifiedInSecs(startTime),
+                fromKey, toKey, CANDIDATES_BATCH_SIZE);
+        return Iterables.filter(nodes, new Predicate<NodeDocument>() {
+            @Override
+            public boolean apply(NodeDocument input) {
+                Long modified = (Long) input.get(MODIFIED_IN_SECS);
+                Long sdType = (Long) input.get(SD_TYPE);
+                return (modified != null && (modified >= getModifiedInSecs(startTime)) && sdType == null);
+            }
+        });
+    }
+
     /**
      * Acquire a recovery lock for the given cluster node info document. This
      * method may break a lock when it determines the cluster node holding the
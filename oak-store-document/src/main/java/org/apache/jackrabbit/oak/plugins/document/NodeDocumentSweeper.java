@@ -16,11 +16,17 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.jackrabbit.guava.common.base.Function;
 import org.apache.jackrabbit.guava.common.base.Predicate;
 
 import org.apache.jackrabbit.oak.commons.TimeDurationFormatter;
@@ -30,12 +36,9 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
 import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
 import static org.apache.jackrabbit.guava.common.collect.Iterables.filter;
-import static org.apache.jackrabbit.guava.common.collect.Iterables.partition;
-import static org.apache.jackrabbit.guava.common.collect.Iterables.transform;
-import static org.apache.jackrabbit.guava.common.collect.Maps.immutableEntry;
-import static org.apache.jackrabbit.guava.common.collect.Maps.newHashMap;
 import static org.apache.jackrabbit.oak.plugins.document.NodeDocument.isDeletedEntry;
 import static org.apache.jackrabbit.oak.plugins.document.NodeDocument.removeCommitRoot;
 import static org.apache.jackrabbit.oak.plugins.document.NodeDocument.removeRevision;
@@ -46,7 +49,10 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.PROPERTY_OR_
  * The {@code NodeDocumentSweeper} is responsible for removing uncommitted
  * changes from {@code NodeDocument}s for a given clusterId.
  * <p>
- * This class is not thread-safe.
+ * This class is not thread-safe. A sweep over multiple partitions of
+ * documents ({@link #sweep(List, NodeDocumentSweepListener, ProgressListener, int)})
+ * processes the partitions concurrently, but the sweeper instance itself
+ * must not be used by multiple threads at the same time.
  */
 final class NodeDocumentSweeper {
 
@@ -54,8 +60,16 @@ final class NodeDocumentSweeper {
 
     private static final int INVALIDATE_BATCH_SIZE = 100;
 
+    /**
+     * The number of documents processed in a partition before the progress
+     * is reported to the {@link ProgressListener}.
+     */
+    static final int PROGRESS_INTERVAL = 10000;
+
     private static final long LOGINTERVALMS = TimeUnit.MINUTES.toMillis(1);
 
+    private static final AtomicInteger SWEEPER_THREAD_COUNTER = new AtomicInteger();
+
     /** holds the Predicate actually used in sweepOne. This is modifiable ONLY FOR TESTING PURPOSE */
     static Predicate<String> SWEEP_ONE_PREDICATE = PROPERTY_OR_DELETED_OR_COMMITROOT_OR_REVISIONS;
 
@@ -69,8 +83,12 @@ final class NodeDocumentSweeper {
 
     private Revision head;
 
+    private volatile boolean aborted;
+
+    // guarded by this
     private long totalCount;
     private long lastCount;
+    private long updateCount;
     private long startOfScan;
     private long lastLog;
 
@@ -122,7 +140,60 @@ final class NodeDocumentSweeper {
     Revision sweep(@NotNull Iterable<NodeDocument> documents,
                    @NotNull NodeDocumentSweepListener listener)
             throws DocumentStoreException {
-        return performSweep(documents, checkNotNull(listener));
+        checkNotNull(listener);
+        if (!startSweep()) {
+            return null;
+        }
+        sweepPartition(0, documents, listener, null);
+        sweepFinished();
+        return head;
+    }
+
+    /**
+     * Performs a sweep over multiple partitions of documents. The partitions
+     * are processed concurrently with up to {@code numThreads} threads. This
+     * means the sweep {@code listener} and the {@code progress} listener must
+     * be thread-safe when more than one thread is used. The progress listener
+     * is informed about the last document processed in a partition after the
+     * required updates up to this document were reported to the sweep
+     * listener. Documents of a partition are expected in ascending id order
+     * when the progress is used to resume a sweep.
+     * <p>
+     * Otherwise, this method behaves like
+     * {@link #sweep(Iterable, NodeDocumentSweepListener)}. If the sweep of
+     * one of the partitions fails, the sweep of the remaining partitions is
+     * stopped as well and the failure is propagated to the caller.
+     *
+     * @param partitions the partitions of documents to sweep.
+     * @param listener the listener to receive required sweep update operations.
+     * @param progress the listener to receive the progress per partition.
+     * @param numThreads the maximum number of threads to use.
+     * @return the new sweep revision or {@code null} if no updates were done.
+     * @throws DocumentStoreException if reading from the store or writing to
+     *          the store failed.
+     */
+    @Nullable
+    Revision sweep(@NotNull List<Iterable<NodeDocument>> partitions,
+                   @NotNull NodeDocumentSweepListener listener,
+                   @NotNull ProgressListener progress,
+                   int numThreads)
+            throws DocumentStoreException {
+        checkNotNull(listener);
+        checkNotNull(progress);
+        checkArgument(numThreads > 0, "numThreads must be > 0");
+        if (!startSweep()) {
+            return null;
+        }
+        if (numThreads == 1 || partitions.size() < 2) {
+            for (int i = 0; i < partitions.size(); i++) {
+                sweepPartition(i, partitions.get(i), listener, progress);
+            }
+        } else {
+            sweepConcurrently(partitions, listener, progress,
+                    Math.min(numThreads, partitions.size()));
+        }
+        sweepFinished();
+        return head;
     }
 
     /**
@@ -132,15 +203,54 @@ final class NodeDocumentSweeper {
         return headRevision;
     }
 
+    /**
+     * @return the number of documents processed by the most recent sweep.
+     */
+    synchronized long getDocumentCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the number of documents updated by the most recent sweep.
+     */
+    synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Receives the progress of a sweep over partitions of documents.
+     */
+    interface ProgressListener {
+
+        /**
+         * Called when all documents of a partition up to the given id were
+         * processed and the required updates were reported to the sweep
+         * listener.
+         *
+         * @param partition the partition.
+         * @param lastId the id of the last document processed.
+         * @throws DocumentStoreException if recording the progress fails.
+         */
+        void processed(int partition, @NotNull String lastId)
+                throws DocumentStoreException;
+
+        /**
+         * Called when all documents of a partition were processed.
+         *
+         * @param partition the partition.
+         * @throws DocumentStoreException if recording the progress fails.
+         */
+        void done(int partition) throws DocumentStoreException;
+    }
+
     //----------------------------< internal >----------------------------------
 
-    @Nullable
-    private Revision performSweep(Iterable<NodeDocument> documents,
-                                  NodeDocumentSweepListener listener)
-            throws DocumentStoreException {
+    private synchronized boolean startSweep() {
         head = headRevision.getRevision(clusterId);
+        aborted = false;
         totalCount = 0;
         lastCount = 0;
+        updateCount = 0;
         startOfScan = context.getClock().getTime();
         lastLog = startOfScan;
 
@@ -148,35 +258,112 @@ final class NodeDocumentSweeper {
             LOG.warn("Head revision does not have an entry for " +
                             "clusterId {}. Sweeping of documents is skipped.",
                     clusterId);
-            return null;
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void sweepFinished() {
+        long elapsed = context.getClock().getTime() - startOfScan;
+        if (LOG.isDebugEnabled()) {
+            TimeDurationFormatter df = TimeDurationFormatter.forLogging();
+            LOG.debug("Document sweep finished. {} nodes scanned and {} updated in {} (~{}/m)",
+                    totalCount, updateCount, df.format(elapsed, TimeUnit.MILLISECONDS),
+                    elapsed > 0 ? (totalCount * TimeUnit.MINUTES.toMillis(1)) / elapsed : totalCount);
         }
+    }
 
-        Iterable<Map.Entry<Path, UpdateOp>> ops = sweepOperations(documents);
-        for (List<Map.Entry<Path, UpdateOp>> batch : partition(ops, INVALIDATE_BATCH_SIZE)) {
-            Map<Path, UpdateOp> updates = newHashMap();
-            for (Map.Entry<Path, UpdateOp> entry : batch) {
-                updates.put(entry.getKey(), entry.getValue());
+    private void sweepConcurrently(List<Iterable<NodeDocument>> partitions,
+                                   NodeDocumentSweepListener listener,
+                                   ProgressListener progress,
+                                   int numThreads)
+            throws DocumentStoreException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "NodeDocumentSweeper-" + clusterId +
+                    "-" + SWEEPER_THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < partitions.size(); i++) {
+                int partition = i;
+                Iterable<NodeDocument> docs = partitions.get(i);
+                futures.add(executor.submit(() -> {
+                    sweepPartition(partition, docs, listener, progress);
+                    return null;
+                }));
             }
-            listener.sweepUpdate(updates);
+            // wait for all partitions, even if one of them failed. the
+            // remaining partitions stop at the next document after
+            // the sweep was aborted
+            DocumentStoreException failure = null;
+            for (Future<Void> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    aborted = true;
+                    Thread.currentThread().interrupt();
+                    if (failure == null) {
+                        failure = new DocumentStoreException(
+                                "Interrupted while waiting for sweep to finish", e);
+                    }
+                } catch (ExecutionException e) {
+                    aborted = true;
+                    if (failure == null) {
+                        failure = DocumentStoreException.convert(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdown();
         }
-        LOG.debug("Document sweep finished");
-        return head;
     }
 
-    private Iterable<Map.Entry<Path, UpdateOp>> sweepOperations(
-            final Iterable<NodeDocument> docs) {
-        return filter(transform(docs,
-                new Function<NodeDocument, Map.Entry<Path, UpdateOp>>() {
-            @Override
-            public Map.Entry<Path, UpdateOp> apply(NodeDocument doc) {
-                return immutableEntry(doc.getPath(), sweepOne(doc));
+    private void sweepPartition(int partition,
+                                Iterable<NodeDocument> documents,
+                                NodeDocumentSweepListener listener,
+                                @Nullable ProgressListener progress)
+            throws DocumentStoreException {
+        Map<Path, UpdateOp> updates = new HashMap<>();
+        int numProcessed = 0;
+        for (NodeDocument doc : documents) {
+            if (aborted) {
+                return;
             }
-        }), new Predicate<Map.Entry<Path, UpdateOp>>() {
-            @Override
-            public boolean apply(Map.Entry<Path, UpdateOp> input) {
-                return input.getValue() != null;
+            UpdateOp op = sweepOne(doc);
+            if (op != null) {
+                updates.put(doc.getPath(), op);
+                if (updates.size() >= INVALIDATE_BATCH_SIZE) {
+                    sweepUpdate(updates, listener);
+                }
             }
-        });
+            if (progress != null && ++numProcessed >= PROGRESS_INTERVAL) {
+                sweepUpdate(updates, listener);
+                progress.processed(partition, doc.getId());
+                numProcessed = 0;
+            }
+        }
+        sweepUpdate(updates, listener);
+        if (progress != null) {
+            progress.done(partition);
+        }
+    }
+
+    private void sweepUpdate(Map<Path, UpdateOp> updates,
+                             NodeDocumentSweepListener listener)
+            throws DocumentStoreException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        listener.sweepUpdate(new HashMap<>(updates));
+        synchronized (this) {
+            updateCount += updates.size();
+        }
+        updates.clear();
     }
 
     private UpdateOp sweepOne(NodeDocument doc) throws DocumentStoreException {
@@ -205,6 +392,12 @@ final class NodeDocumentSweeper {
             }
         }
 
+        documentProcessed();
+
+        return op.hasChanges() ? op : null;
+    }
+
+    private synchronized void documentProcessed() {
         totalCount++;
         lastCount++;
         long now = context.getClock().getTime();
@@ -226,8 +419,6 @@ final class NodeDocumentSweeper {
             lastLog = now;
             lastCount = 0;
         }
-
-        return op.hasChanges() ? op : null;
     }
 
     private void uncommitted(NodeDocument doc,
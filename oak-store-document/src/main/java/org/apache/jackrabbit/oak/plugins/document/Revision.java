@@ -262,7 +262,7 @@ public final class Revision implements CacheValue {
             int digit = c >= 'a' ? c - 'a' + 10 : c - '0';
             clusterId = (clusterId << 4) + digit;
         }
-        return new Revision(timestamp, counter, clusterId, isBranch);
+        return RevisionCache.get(timestamp, counter, clusterId, isBranch);
     }
 
     @Override
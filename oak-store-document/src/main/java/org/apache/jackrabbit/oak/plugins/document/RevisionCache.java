@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+/**
+ * Interns {@link Revision} and {@link RevisionVector} instances created when
+ * documents are read from the store. The same revision usually shows up many times within a
+ * document (e.g. in {@code _revisions}, {@code _deleted} and the maps of
+ * the changed properties) and across documents changed by the same commit.
+ * Like {@link StringCache}, this is a fixed size direct mapped cache, which
+ * simply replaces an entry on collision.
+ */
+final class RevisionCache {
+
+    // must be a power of 2
+    private static final int REVISION_CACHE_SIZE = 8192;
+
+    private static final Revision[] REVISION_CACHE = new Revision[REVISION_CACHE_SIZE];
+
+    // must be a power of 2
+    private static final int VECTOR_CACHE_SIZE = 1024;
+
+    private static final VectorEntry[] VECTOR_CACHE = new VectorEntry[VECTOR_CACHE_SIZE];
+
+    private RevisionCache() {
+    }
+
+    /**
+     * Returns a revision with the given values. The returned instance is
+     * either a cached revision with the same values or a new revision.
+     *
+     * @param timestamp the timestamp of the revision.
+     * @param counter the counter of the revision.
+     * @param clusterId the clusterId of the revision.
+     * @param branch whether this is a branch revision.
+     * @return the revision.
+     */
+    static Revision get(long timestamp, int counter, int clusterId, boolean branch) {
+        int hash = (int) (timestamp >>> 32) ^ (int) timestamp ^ counter ^ clusterId;
+        hash ^= hash >>> 16;
+        int index = hash & (REVISION_CACHE_SIZE - 1);
+        Revision cached = REVISION_CACHE[index];
+        if (cached == null
+                || cached.getTimestamp() != timestamp
+                || cached.getCounter() != counter
+                || cached.getClusterId() != clusterId
+                || cached.isBranch() != branch) {
+            cached = new Revision(timestamp, counter, clusterId, branch);
+            REVISION_CACHE[index] = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Returns the cached revision vector for the given string representation.
+     *
+     * @param s the string representation of the revision vector.
+     * @return the cached revision vector, or {@code null} if not cached.
+     */
+    static RevisionVector getVector(String s) {
+        int hash = s.hashCode();
+        VectorEntry e = VECTOR_CACHE[(hash ^ (hash >>> 16)) & (VECTOR_CACHE_SIZE - 1)];
+        if (e != null && e.string.equals(s)) {
+            return e.vector;
+        }
+        return null;
+    }
+
+    /**
+     * Caches the revision vector parsed from the given string.
+     *
+     * @param s the string representation of the revision vector.
+     * @param vector the revision vector.
+     */
+    static void putVector(String s, RevisionVector vector) {
+        int hash = s.hashCode();
+        VECTOR_CACHE[(hash ^ (hash >>> 16)) & (VECTOR_CACHE_SIZE - 1)] = new VectorEntry(s, vector);
+    }
+
+    /**
+     * The key and value are kept in one immutable object, so that a reader
+     * never sees the vector of a different key.
+     */
+    private static final class VectorEntry {
+
+        final String string;
+
+        final RevisionVector vector;
+
+        VectorEntry(String string, RevisionVector vector) {
+            this.string = string;
+            this.vector = vector;
+        }
+    }
+}
@@ -362,12 +362,18 @@ public final class RevisionVector implements Iterable<Revision>, Comparable<Revi
         if (s.isEmpty()) {
             return EMPTY;
         }
+        RevisionVector vector = RevisionCache.getVector(s);
+        if (vector != null) {
+            return vector;
+        }
         String[] list = s.split(",");
         Revision[] revisions = new Revision[list.length];
         for (int i = 0; i < list.length; i++) {
             revisions[i] = Revision.fromString(list[i]);
         }
-        return new RevisionVector(revisions);
+        vector = new RevisionVector(revisions);
+        RevisionCache.putVector(s, vector);
+        return vector;
     }
 
     /**
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Represents the progress of a background sweep of a cluster node as recorded
+ * in the settings collection. The sweep processes the candidate documents in
+ * id range partitions and records the id of the last document processed in
+ * each partition. A sweep that was interrupted, e.g. by a crash of the
+ * cluster node, can then resume from the recorded ids instead of processing
+ * all candidates again.
+ * <p>
+ * The progress is only valid for a sweep with the same start revision. As
+ * the garbage revisions that determine the start revision are only known in
+ * memory, a sweep for garbage revisions is only resumed by the same process,
+ * while the initial sweep of a cluster node (without a sweep revision, which
+ * starts at revision zero) is also resumed after a restart. The
+ * head revision recorded with the progress is the head revision of the sweep
+ * that processed the documents up to the recorded ids. Uncommitted changes
+ * newer than this head revision may still exist on those documents.
+ */
+final class SweepProgressDocument {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SweepProgressDocument.class);
+
+    static final String SWEEP_PROGRESS_ID_PREFIX = "sweepProgress-";
+
+    private static final String START_REVISION_PROPERTY = "startRev";
+    private static final String HEAD_REVISION_PROPERTY = "head";
+    private static final String PARTITION_PROPERTY_PREFIX = "p";
+
+    private final Document doc;
+
+    private SweepProgressDocument(Document doc) {
+        this.doc = doc;
+    }
+
+    /**
+     * Reads the sweep progress for the given clusterId.
+     *
+     * @param store the document store.
+     * @param clusterId the clusterId of the sweeping cluster node.
+     * @return the sweep progress or {@code null} if there is none.
+     */
+    @Nullable
+    static SweepProgressDocument readFrom(@NotNull DocumentStore store,
+                                          int clusterId) {
+        Document doc = store.find(Collection.SETTINGS, getId(clusterId),
+                -1 /* -1; avoid caching */);
+        if (doc == null) {
+            return null;
+        }
+        return new SweepProgressDocument(doc);
+    }
+
+    /**
+     * Records the start of a new sweep for the given clusterId. This replaces
+     * a previously recorded progress.
+     *
+     * @param store the document store.
+     * @param clusterId the clusterId of the sweeping cluster node.
+     * @param startRev the start revision of the sweep.
+     * @param head the head revision of the sweep.
+     */
+    static void start(@NotNull DocumentStore store,
+                      int clusterId,
+                      @NotNull Revision startRev,
+                      @NotNull Revision head) {
+        remove(store, clusterId);
+        UpdateOp op = new UpdateOp(getId(clusterId), true);
+        op.set(START_REVISION_PROPERTY, startRev.toString());
+        op.set(HEAD_REVISION_PROPERTY, head.toString());
+        store.createOrUpdate(Collection.SETTINGS, op);
+        LOG.debug("Recorded start of sweep for clusterId {} at {}", clusterId, startRev);
+    }
+
+    /**
+     * Records the id of the last document processed in the given partition.
+     *
+     * @param store the document store.
+     * @param clusterId the clusterId of the sweeping cluster node.
+     * @param partition the partition.
+     * @param lastId the id of the last document processed in the partition.
+     */
+    static void checkpoint(@NotNull DocumentStore store,
+                           int clusterId,
+                           int partition,
+                           @NotNull String lastId) {
+        UpdateOp op = new UpdateOp(getId(clusterId), false);
+        op.set(PARTITION_PROPERTY_PREFIX + partition, lastId);
+        if (store.findAndUpdate(Collection.SETTINGS, op) == null) {
+            LOG.warn("Unable to record sweep progress for clusterId {}, " +
+                    "partition {} at {}", clusterId, partition, lastId);
+        }
+    }
+
+    /**
+     * Removes the sweep progress for the given clusterId.
+     *
+     * @param store the document store.
+     * @param clusterId the clusterId of the sweeping cluster node.
+     */
+    static void remove(@NotNull DocumentStore store, int clusterId) {
+        store.remove(Collection.SETTINGS, getId(clusterId));
+    }
+
+    /**
+     * @return the start revision of the recorded sweep or {@code null} if
+     *      not available.
+     */
+    @Nullable
+    Revision getStartRevision() {
+        return getRevision(START_REVISION_PROPERTY);
+    }
+
+    /**
+     * @return the head revision of the recorded sweep or {@code null} if
+     *      not available.
+     */
+    @Nullable
+    Revision getHeadRevision() {
+        return getRevision(HEAD_REVISION_PROPERTY);
+    }
+
+    /**
+     * Returns the id of the last document processed in the given partition.
+     *
+     * @param partition the partition.
+     * @return the id of the last processed document or {@code null} if the
+     *      sweep did not record progress for the partition.
+     */
+    @Nullable
+    String getLastId(int partition) {
+        Object id = doc.get(PARTITION_PROPERTY_PREFIX + partition);
+        return id instanceof String ? (String) id : null;
+    }
+
+    @Override
+    public String toString() {
+        return doc.format();
+    }
+
+    private Revision getRevision(String property) {
+        Object value = doc.get(property);
+        return value instanceof String ? Revision.fromString((String) value) : null;
+    }
+
+    private static String getId(int clusterId) {
+        return SWEEP_PROGRESS_ID_PREFIX + clusterId;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.document.secondary;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.spi.filter.PathFilter;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+
+/**
+ * Tracks reads of paths not included in the secondary store and selects hot
+ * subtrees, which are then mirrored by the secondary store in addition to the
+ * configured included paths. Reads are counted per subtree at a fixed depth.
+ * A subtree becomes pending once its read count reaches the threshold. The
+ * {@link SecondaryStoreObserver} copies pending subtrees to the secondary
+ * store and activates them. Only then reads are served from the secondary
+ * store for paths within the subtree.
+ * <p>
+ * The read counts are halved regularly, which means a subtree must be read
+ * frequently to become hot. Once active, a subtree stays in the secondary
+ * store.
+ */
+public class HotSubtreeTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HotSubtreeTracker.class);
+
+    /**
+     * Read counts are halved after this number of reads.
+     */
+    static final int DECAY_INTERVAL = 10000;
+
+    private final List<String> includedPaths;
+
+    private final int depth;
+
+    private final int maxSubtrees;
+
+    private final long readThreshold;
+
+    private final ConcurrentMap<String, AtomicLong> reads = new ConcurrentHashMap<>();
+
+    private final AtomicLong numReads = new AtomicLong();
+
+    // guarded by this
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    // guarded by this
+    private final Set<String> active = new LinkedHashSet<>();
+
+    private volatile PathFilter pathFilter;
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param includedPaths the paths always included in the secondary store.
+     * @param depth the depth of the subtrees to track.
+     * @param maxSubtrees the maximum number of subtrees to add to the
+     *          secondary store.
+     * @param readThreshold the number of reads after which a subtree is
+     *          added to the secondary store.
+     */
+    public HotSubtreeTracker(@NotNull List<String> includedPaths,
+                             int depth,
+                             int maxSubtrees,
+                             long readThreshold) {
+        checkArgument(depth > 0, "depth must be > 0");
+        checkArgument(readThreshold > 0, "readThreshold must be > 0");
+        this.includedPaths = ImmutableList.copyOf(includedPaths);
+        this.depth = depth;
+        this.maxSubtrees = maxSubtrees;
+        this.readThreshold = readThreshold;
+        this.pathFilter = newPathFilter();
+    }
+
+    /**
+     * @return the path filter for the included paths and the active subtrees.
+     */
+    @NotNull
+    public PathFilter getPathFilter() {
+        return pathFilter;
+    }
+
+    /**
+     * Records a read of the given path, which is not included in the
+     * secondary store.
+     *
+     * @param path the path of the node read.
+     */
+    public void read(@NotNull Path path) {
+        if (path.getDepth() < depth) {
+            return;
+        }
+        String subtree = path.getAncestor(path.getDepth() - depth).toString();
+        AtomicLong count = reads.computeIfAbsent(subtree, k -> new AtomicLong());
+        if (count.incrementAndGet() >= readThreshold) {
+            promote(subtree);
+        }
+        if (numReads.incrementAndGet() % DECAY_INTERVAL == 0) {
+            decay();
+        }
+    }
+
+    /**
+     * @return the subtrees selected for the secondary store, but not yet
+     *      copied to it.
+     */
+    @NotNull
+    public synchronized Set<String> getPendingSubtrees() {
+        return ImmutableSet.copyOf(pending);
+    }
+
+    /**
+     * @return the subtrees added to the secondary store.
+     */
+    @NotNull
+    public synchronized Set<String> getActiveSubtrees() {
+        return ImmutableSet.copyOf(active);
+    }
+
+    /**
+     * Activates the given pending subtrees after they were copied to the
+     * secondary store.
+     *
+     * @param subtrees the subtrees copied to the secondary store.
+     */
+    synchronized void activate(@NotNull Collection<String> subtrees) {
+        if (subtrees.isEmpty()) {
+            return;
+        }
+        pending.removeAll(subtrees);
+        active.addAll(subtrees);
+        pathFilter = newPathFilter();
+        LOG.info("Secondary store now includes subtrees {}", subtrees);
+    }
+
+    /**
+     * Discards the given pending subtree. This is used when the subtree does
+     * not exist anymore.
+     *
+     * @param subtree the subtree to discard.
+     */
+    synchronized void discard(@NotNull String subtree) {
+        pending.remove(subtree);
+    }
+
+    //----------------------------< internal >----------------------------------
+
+    private synchronized void promote(String subtree) {
+        if (pending.contains(subtree) || active.contains(subtree)) {
+            return;
+        }
+        if (pending.size() + active.size() >= maxSubtrees) {
+            return;
+        }
+        if (pathFilter.filter(subtree) == PathFilter.Result.INCLUDE) {
+            return;
+        }
+        pending.add(subtree);
+        reads.remove(subtree);
+        LOG.info("Subtree {} selected for secondary store", subtree);
+    }
+
+    private void decay() {
+        for (Map.Entry<String, AtomicLong> e : reads.entrySet()) {
+            long count = e.getValue().get();
+            e.getValue().addAndGet(-(count - count / 2));
+            if (count / 2 == 0) {
+                reads.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private PathFilter newPathFilter() {
+        Set<String> includes = new LinkedHashSet<>(includedPaths);
+        includes.addAll(active);
+        return new PathFilter(includes, Collections.<String>emptyList());
+    }
+}
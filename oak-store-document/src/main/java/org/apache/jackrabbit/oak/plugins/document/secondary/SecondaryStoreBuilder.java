@@ -36,6 +36,7 @@ public class SecondaryStoreBuilder {
     private NodeStateDiffer differ = NodeStateDiffer.DEFAULT_DIFFER;
     private StatisticsProvider statsProvider = StatisticsProvider.NOOP;
     private List<String> metaPropNames = Collections.emptyList();
+    private HotSubtreeTracker hotSubtrees;
 
     public SecondaryStoreBuilder(NodeStore nodeStore) {
         this.store = nodeStore;
@@ -61,8 +62,13 @@ public class SecondaryStoreBuilder {
         return this;
     }
 
+    public SecondaryStoreBuilder hotSubtreeTracker(HotSubtreeTracker hotSubtrees) {
+        this.hotSubtrees = hotSubtrees;
+        return this;
+    }
+
     public SecondaryStoreCache buildCache() {
-        return new SecondaryStoreCache(store, differ, pathFilter, statsProvider);
+        return new SecondaryStoreCache(store, differ, pathFilter, hotSubtrees, statsProvider);
     }
 
     public SecondaryStoreObserver buildObserver(){
@@ -70,6 +76,6 @@ public class SecondaryStoreBuilder {
     }
 
     public SecondaryStoreObserver buildObserver(SecondaryStoreRootObserver secondaryStoreRootObserver) {
-        return new SecondaryStoreObserver(store, metaPropNames, differ, pathFilter, statsProvider, secondaryStoreRootObserver);
+        return new SecondaryStoreObserver(store, metaPropNames, differ, pathFilter, hotSubtrees, statsProvider, secondaryStoreRootObserver);
     }
 }
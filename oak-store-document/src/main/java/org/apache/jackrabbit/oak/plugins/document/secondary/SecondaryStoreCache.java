@@ -24,11 +24,13 @@ import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStateCache;
 import org.apache.jackrabbit.oak.plugins.document.NodeStateDiffer;
 import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
 import org.apache.jackrabbit.oak.spi.filter.PathFilter;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.MeterStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
@@ -43,6 +45,8 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
     private static final AbstractDocumentNodeState[] EMPTY = new AbstractDocumentNodeState[0];
     private final NodeStore store;
     private final PathFilter pathFilter;
+    @Nullable
+    private final HotSubtreeTracker hotSubtrees;
     private final NodeStateDiffer differ;
     private final MeterStats unknownPaths;
     private final MeterStats knownMissed;
@@ -51,15 +55,24 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
     private final MeterStats knownMissedInRange;
     private final MeterStats headRevMatched;
     private final MeterStats prevRevMatched;
+    private final MeterStats staleMissed;
+    private final HistogramStats staleness;
     private final int maxSize = 10000;
     private final EvictingQueue<AbstractDocumentNodeState> queue;
     private volatile AbstractDocumentNodeState[] previousRoots = EMPTY;
 
     public SecondaryStoreCache(NodeStore nodeStore, NodeStateDiffer differ, PathFilter pathFilter,
                                StatisticsProvider statisticsProvider) {
+        this(nodeStore, differ, pathFilter, null, statisticsProvider);
+    }
+
+    public SecondaryStoreCache(NodeStore nodeStore, NodeStateDiffer differ, PathFilter pathFilter,
+                               @Nullable HotSubtreeTracker hotSubtrees,
+                               StatisticsProvider statisticsProvider) {
         this.differ = differ;
         this.store = nodeStore;
         this.pathFilter = pathFilter;
+        this.hotSubtrees = hotSubtrees;
         this.unknownPaths = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_UNKNOWN", StatsOptions.DEFAULT);
         this.knownMissed = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_KNOWN_MISSED", StatsOptions.DEFAULT);
         this.knownMissedOld = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_KNOWN_MISSED_OLD", StatsOptions.DEFAULT);
@@ -68,6 +81,8 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
                 .DEFAULT);
         this.headRevMatched = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_HEAD", StatsOptions.DEFAULT);
         this.prevRevMatched = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_OLD", StatsOptions.DEFAULT);
+        this.staleMissed = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_STALE", StatsOptions.DEFAULT);
+        this.staleness = statisticsProvider.getHistogram("DOCUMENT_CACHE_SEC_STALENESS", StatsOptions.METRICS_ONLY);
         this.queue = EvictingQueue.create(maxSize);
     }
 
@@ -78,9 +93,12 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
         //TODO We might need skip the calls if they occur due to SecondaryStoreObserver
         //doing the diff or in the startup when we try to sync the state
         String p = path.toString();
-        PathFilter.Result result = pathFilter.filter(p);
+        PathFilter.Result result = getPathFilter().filter(p);
         if (result != PathFilter.Result.INCLUDE) {
             unknownPaths.mark();
+            if (hotSubtrees != null) {
+                hotSubtrees.read(path);
+            }
             return null;
         }
 
@@ -93,6 +111,8 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
         //If the root rev is < lastRev then secondary store is lagging and would
         //not have the matching result
         if (lastRev.compareTo(currentRoot.getLastRevision()) > 0){
+            staleMissed.mark();
+            staleness.update(getLagMillis(lastRev, currentRoot.getLastRevision()));
             return null;
         }
 
@@ -118,7 +138,11 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
 
     @Override
     public boolean isCached(Path path) {
-        return pathFilter.filter(path.toString()) == PathFilter.Result.INCLUDE;
+        return getPathFilter().filter(path.toString()) == PathFilter.Result.INCLUDE;
+    }
+
+    PathFilter getPathFilter() {
+        return hotSubtrees != null ? hotSubtrees.getPathFilter() : pathFilter;
     }
 
     @Nullable
@@ -212,6 +236,23 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
         return null;  // key not found.
     }
 
+    /**
+     * Returns how many milliseconds the {@code available} revision lags
+     * behind the {@code requested} revision. The lag is the maximum time
+     * difference of the revisions of a clusterId present in both revision
+     * vectors.
+     */
+    static long getLagMillis(RevisionVector requested, RevisionVector available) {
+        long lag = 0;
+        for (Revision r : requested) {
+            Revision a = available.getRevision(r.getClusterId());
+            if (a != null) {
+                lag = Math.max(lag, r.getTimestamp() - a.getTimestamp());
+            }
+        }
+        return lag;
+    }
+
     private static AbstractDocumentNodeState asDocState(NodeState state) {
         return (AbstractDocumentNodeState)state;
     }
@@ -86,6 +86,27 @@ public class SecondaryStoreCacheService {
                 description = "Observer queue size. Used if 'enableAsyncObserver' is set to true"
         )
         int observerQueueSize() default BackgroundObserver.DEFAULT_QUEUE_SIZE;
+
+        @AttributeDefinition(
+                name = "Hot Subtree Depth",
+                description = "Depth of the subtrees which are added to the secondary store when they " +
+                        "are read frequently. A value of 0 disables the selection of hot subtrees and " +
+                        "only the 'Included Paths' are kept in the secondary store"
+        )
+        int hotSubtreeDepth() default 0;
+
+        @AttributeDefinition(
+                name = "Hot Subtree Max Count",
+                description = "Maximum number of hot subtrees added to the secondary store"
+        )
+        int hotSubtreeMaxCount() default 10;
+
+        @AttributeDefinition(
+                name = "Hot Subtree Read Threshold",
+                description = "Number of reads of nodes in a subtree, which are not served from the " +
+                        "secondary store, after which the subtree is added to the secondary store"
+        )
+        long hotSubtreeReadThreshold() default 1000;
     }
 
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -122,6 +143,8 @@ public class SecondaryStoreCacheService {
 
     private PathFilter pathFilter;
 
+    private HotSubtreeTracker hotSubtreeTracker;
+
     private final MultiplexingNodeStateDiffer differ = new MultiplexingNodeStateDiffer();
 
     @Activate
@@ -140,6 +163,13 @@ public class SecondaryStoreCacheService {
                 .metaPropNames(DocumentNodeStore.META_PROP_NAMES)
                 .statisticsProvider(statisticsProvider)
                 .pathFilter(pathFilter);
+        if (config.hotSubtreeDepth() > 0) {
+            hotSubtreeTracker = new HotSubtreeTracker(asList(includedPaths), config.hotSubtreeDepth(),
+                    config.hotSubtreeMaxCount(), config.hotSubtreeReadThreshold());
+            builder.hotSubtreeTracker(hotSubtreeTracker);
+            log.info("Selecting up to {} hot subtrees at depth {} for secondary store",
+                    config.hotSubtreeMaxCount(), config.hotSubtreeDepth());
+        }
         SecondaryStoreCache cache = builder.buildCache();
         SecondaryStoreObserver observer = builder.buildObserver(cache);
         registerObserver(observer, config);
@@ -165,6 +195,10 @@ public class SecondaryStoreCacheService {
         return pathFilter;
     }
 
+    HotSubtreeTracker getHotSubtreeTracker() {
+        return hotSubtreeTracker;
+    }
+
     protected void bindDocumentNodeStore(DocumentNodeStore documentNodeStore){
         log.info("Registering DocumentNodeStore as the differ");
         differ.setDelegate(documentNodeStore);
@@ -19,13 +19,18 @@
 
 package org.apache.jackrabbit.oak.plugins.document.secondary;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.guava.common.base.Stopwatch;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.NodeStateDiffer;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
 import org.apache.jackrabbit.oak.spi.commit.Observer;
@@ -33,23 +38,32 @@ import org.apache.jackrabbit.oak.spi.filter.PathFilter;
 import org.apache.jackrabbit.oak.spi.state.ApplyDiff;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.apache.jackrabbit.oak.stats.TimerStats;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static java.util.Collections.singletonList;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
 public class SecondaryStoreObserver implements Observer {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final NodeStore nodeStore;
     private final PathFilter pathFilter;
+    @Nullable
+    private final HotSubtreeTracker hotSubtrees;
     private final List<String> metaPropNames;
     private final SecondaryStoreRootObserver secondaryObserver;
     private final NodeStateDiffer differ;
     private final TimerStats local;
     private final TimerStats external;
+    private final HistogramStats lag;
     private boolean firstEventProcessed;
 
     public SecondaryStoreObserver(NodeStore nodeStore,
@@ -58,13 +72,26 @@ public class SecondaryStoreObserver implements Observer {
                                   PathFilter pathFilter,
                                   StatisticsProvider statisticsProvider,
                                   SecondaryStoreRootObserver secondaryObserver) {
+        this(nodeStore, metaPropNames, differ, pathFilter, null,
+                statisticsProvider, secondaryObserver);
+    }
+
+    public SecondaryStoreObserver(NodeStore nodeStore,
+                                  List<String> metaPropNames,
+                                  NodeStateDiffer differ,
+                                  PathFilter pathFilter,
+                                  @Nullable HotSubtreeTracker hotSubtrees,
+                                  StatisticsProvider statisticsProvider,
+                                  SecondaryStoreRootObserver secondaryObserver) {
         this.nodeStore = nodeStore;
         this.pathFilter = pathFilter;
+        this.hotSubtrees = hotSubtrees;
         this.secondaryObserver = secondaryObserver;
         this.differ = differ;
         this.metaPropNames = metaPropNames;
         this.local = statisticsProvider.getTimer("DOCUMENT_CACHE_SEC_LOCAL", StatsOptions.DEFAULT);
         this.external = statisticsProvider.getTimer("DOCUMENT_CACHE_SEC_EXTERNAL", StatsOptions.DEFAULT);
+        this.lag = statisticsProvider.getHistogram("DOCUMENT_CACHE_SEC_LAG", StatsOptions.METRICS_ONLY);
     }
 
     @Override
@@ -80,19 +107,27 @@ public class SecondaryStoreObserver implements Observer {
         NodeState secondaryRoot = nodeStore.getRoot();
         NodeState base = DelegatingDocumentNodeState.wrapIfPossible(secondaryRoot, differ);
         NodeBuilder builder = secondaryRoot.builder();
-        ApplyDiff diff = new PathFilteringDiff(builder, pathFilter, metaPropNames, target);
+        PathFilter filter = hotSubtrees != null ? hotSubtrees.getPathFilter() : pathFilter;
+        ApplyDiff diff = new PathFilteringDiff(builder, filter, metaPropNames, target);
 
         //Copy the root node meta properties
         PathFilteringDiff.copyMetaProperties(target, builder, metaPropNames);
 
         //Apply the rest of properties
         target.compareAgainstBaseState(base, diff);
+
+        //Copy subtrees newly selected by read statistics
+        List<String> copied = copyPendingSubtrees(target, builder);
         try {
             NodeState updatedSecondaryRoot = nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            if (hotSubtrees != null) {
+                hotSubtrees.activate(copied);
+            }
             secondaryObserver.contentChanged(DelegatingDocumentNodeState.wrap(updatedSecondaryRoot, differ));
 
             TimerStats timer = info.isExternal() ? external : local;
             timer.update(w.elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            lag.update(getLagMillis(target));
 
             if (!firstEventProcessed){
                 log.info("Time taken for initial sync {}", w);
@@ -104,4 +139,48 @@ public class SecondaryStoreObserver implements Observer {
         }
     }
 
+    private List<String> copyPendingSubtrees(AbstractDocumentNodeState target,
+                                             NodeBuilder builder) {
+        List<String> copied = new ArrayList<>();
+        if (hotSubtrees == null) {
+            return copied;
+        }
+        Set<String> pending = hotSubtrees.getPendingSubtrees();
+        for (String path : pending) {
+            NodeState state = NodeStateUtils.getNode(target, path);
+            if (!state.exists()) {
+                hotSubtrees.discard(path);
+                continue;
+            }
+            //Create the ancestors with their meta properties
+            NodeState parent = target;
+            NodeBuilder childBuilder = builder;
+            for (String name : PathUtils.elements(path)) {
+                parent = parent.getChildNode(name);
+                childBuilder = childBuilder.child(name);
+                PathFilteringDiff.copyMetaProperties((AbstractDocumentNodeState) parent,
+                        childBuilder, metaPropNames);
+            }
+            PathFilter subtreeFilter = new PathFilter(singletonList(path), Collections.<String>emptyList());
+            AbstractDocumentNodeState subtree = (AbstractDocumentNodeState) state;
+            subtree.compareAgainstBaseState(EMPTY_NODE,
+                    new PathFilteringDiff(childBuilder, subtreeFilter, metaPropNames, subtree));
+            copied.add(path);
+            log.info("Copied subtree {} to secondary store", path);
+        }
+        return copied;
+    }
+
+    /**
+     * @return the time in milliseconds between the most recent change in the
+     *      given root state and now.
+     */
+    private static long getLagMillis(AbstractDocumentNodeState root) {
+        long newest = 0;
+        for (Revision r : root.getRootRevision()) {
+            newest = Math.max(newest, r.getTimestamp());
+        }
+        return Math.max(0, Revision.getCurrentTimestamp() - newest);
+    }
+
 }
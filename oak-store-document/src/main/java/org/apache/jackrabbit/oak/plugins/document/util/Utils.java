@@ -722,9 +722,38 @@ public class Utils {
         return internalGetSelectedDocuments(store, indexedProperty, startValue, DEFAULT_BATCH_SIZE);
     }
 
+    /**
+     * Like {@link #getSelectedDocuments(DocumentStore, String, long, int)},
+     * but restricted to documents with an id within the given range.
+     *
+     * @param store a {@link DocumentStore}.
+     * @param indexedProperty the name of the indexed property.
+     * @param startValue the lower bound value for the indexed property
+     *                   (inclusive).
+     * @param fromKey the lower bound of the id range (exclusive).
+     * @param toKey the upper bound of the id range (exclusive).
+     * @param batchSize number of documents to fetch at once
+     * @return an {@link Iterable} over all documents in the given id range
+     *         matching the condition
+     */
+    public static Iterable<NodeDocument> getSelectedDocuments(
+            DocumentStore store, String indexedProperty, long startValue,
+            String fromKey, String toKey, int batchSize) {
+        return internalGetSelectedDocuments(store, indexedProperty, startValue,
+                fromKey, toKey, batchSize);
+    }
+
     private static Iterable<NodeDocument> internalGetSelectedDocuments(
             final DocumentStore store, final String indexedProperty,
             final long startValue, final int batchSize) {
+        return internalGetSelectedDocuments(store, indexedProperty, startValue,
+                NodeDocument.MIN_ID_VALUE, NodeDocument.MAX_ID_VALUE, batchSize);
+    }
+
+    private static Iterable<NodeDocument> internalGetSelectedDocuments(
+            final DocumentStore store, final String indexedProperty,
+            final long startValue, final String fromKey, final String toKey,
+            final int batchSize) {
         if (batchSize < 2) {
             throw new IllegalArgumentException("batchSize must be > 1");
         }
@@ -733,7 +762,7 @@ public class Utils {
             public Iterator<NodeDocument> iterator() {
                 return new AbstractIterator<NodeDocument>() {
 
-                    private String startId = NodeDocument.MIN_ID_VALUE;
+                    private String startId = fromKey;
 
                     private Iterator<NodeDocument> batch = nextBatch();
 
@@ -757,8 +786,8 @@ public class Utils {
 
                     private Iterator<NodeDocument> nextBatch() {
                         List<NodeDocument> result = indexedProperty == null ? store.query(Collection.NODES, startId,
-                                NodeDocument.MAX_ID_VALUE, batchSize) : store.query(Collection.NODES, startId,
-                                NodeDocument.MAX_ID_VALUE, indexedProperty, startValue, batchSize);
+                                toKey, batchSize) : store.query(Collection.NODES, startId,
+                                toKey, indexedProperty, startValue, batchSize);
                         return result.iterator();
                     }
                 };
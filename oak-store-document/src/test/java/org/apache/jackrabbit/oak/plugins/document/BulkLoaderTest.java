@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundledTypesRegistry;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigInitializer;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.BUNDLOR;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.DOCUMENT_NODE_STORE;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.apache.jackrabbit.oak.spi.state.NodeStateUtils.getNode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkLoaderTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private FailingDocumentStore store = new FailingDocumentStore(new MemoryDocumentStore());
+
+    private DocumentNodeStore ns;
+
+    @Before
+    public void before() throws Exception {
+        ns = builderProvider.newBuilder().setDocumentStore(store)
+                .setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        BundlingConfigInitializer.INSTANCE.initialize(builder);
+        NodeState registry = BundledTypesRegistry.builder()
+                .forType("app:Asset")
+                    .include("jcr:content")
+                    .include("jcr:content/metadata")
+                .build();
+        builder.child("jcr:system").child(DOCUMENT_NODE_STORE).child(BUNDLOR)
+                .setChildNode("app:Asset", registry.getChildNode("app:Asset"));
+        builder.child("content");
+        merge(ns, builder);
+        ns.runBackgroundOperations();
+    }
+
+    @Test
+    public void load() throws Exception {
+        NodeState tree = createTree(3, 4);
+        new BulkLoader(ns, 7).load(Path.fromString("/content/tree"), tree, CommitInfo.EMPTY);
+
+        NodeState loaded = getNode(ns.getRoot(), "/content/tree");
+        assertTrue(loaded.exists());
+        assertEqualTrees(tree, loaded);
+        assertNotNull(store.find(NODES, Utils.getIdFromPath("/content/tree/n-1/n-2/n-3")));
+    }
+
+    @Test
+    public void loadBundled() throws Exception {
+        NodeBuilder asset = EMPTY_NODE.builder();
+        asset.setProperty(JCR_PRIMARYTYPE, "app:Asset", Type.NAME);
+        NodeBuilder content = asset.child("jcr:content");
+        content.setProperty("title", "foo");
+        content.child("metadata").setProperty("size", 42L);
+        content.child("comments").child("c-1").setProperty("text", "bar");
+        NodeBuilder tree = EMPTY_NODE.builder();
+        tree.setChildNode("asset", asset.getNodeState());
+
+        ns.bulkLoad("/content/tree", tree.getNodeState(), CommitInfo.EMPTY);
+
+        NodeState loaded = getNode(ns.getRoot(), "/content/tree/asset");
+        assertEqualTrees(asset.getNodeState(), loaded);
+        assertNotNull(store.find(NODES, Utils.getIdFromPath("/content/tree/asset")));
+        assertNull(store.find(NODES, Utils.getIdFromPath("/content/tree/asset/jcr:content")));
+        assertNull(store.find(NODES, Utils.getIdFromPath("/content/tree/asset/jcr:content/metadata")));
+        assertNotNull(store.find(NODES, Utils.getIdFromPath("/content/tree/asset/jcr:content/comments")));
+    }
+
+    @Test
+    public void loadVisibleAfterRestart() throws Exception {
+        NodeState tree = createTree(2, 3);
+        ns.bulkLoad("/content/tree", tree, CommitInfo.EMPTY);
+        ns.dispose();
+
+        ns = builderProvider.newBuilder().setDocumentStore(store)
+                .setAsyncDelay(0).getNodeStore();
+        assertEqualTrees(tree, getNode(ns.getRoot(), "/content/tree"));
+    }
+
+    @Test
+    public void loadAndModify() throws Exception {
+        ns.bulkLoad("/content/tree", createTree(2, 2), CommitInfo.EMPTY);
+
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("content").child("tree").child("n-0").child("n-1").setProperty("p", "changed");
+        builder.child("content").child("tree").child("n-1").remove();
+        merge(ns, builder);
+
+        NodeState tree = getNode(ns.getRoot(), "/content/tree");
+        assertEquals("changed", tree.getChildNode("n-0").getChildNode("n-1").getString("p"));
+        assertFalse(tree.hasChildNode("n-1"));
+    }
+
+    @Test
+    public void existingNode() throws Exception {
+        try {
+            ns.bulkLoad("/content", createTree(1, 1), CommitInfo.EMPTY);
+            fail("must fail with CommitFailedException");
+        } catch (CommitFailedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void missingParent() throws Exception {
+        try {
+            ns.bulkLoad("/missing/tree", createTree(1, 1), CommitInfo.EMPTY);
+            fail("must fail with CommitFailedException");
+        } catch (CommitFailedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void failureRemovesDocuments() throws Exception {
+        store.fail().on(NODES).after(10).once();
+        try {
+            new BulkLoader(ns, 4).load(Path.fromString("/content/tree"),
+                    createTree(3, 3), CommitInfo.EMPTY);
+            fail("must fail with CommitFailedException");
+        } catch (CommitFailedException e) {
+            // expected
+        } finally {
+            store.fail().never();
+        }
+        assertFalse(getNode(ns.getRoot(), "/content/tree").exists());
+        assertNull(store.find(NODES, Utils.getIdFromPath("/content/tree/n-0/n-0/n-0")));
+        assertNull(store.find(NODES, Utils.getIdFromPath("/content/tree/n-0/n-0/n-1")));
+
+        // must succeed now
+        NodeState tree = createTree(3, 3);
+        ns.bulkLoad("/content/tree", tree, CommitInfo.EMPTY);
+        assertEqualTrees(tree, getNode(ns.getRoot(), "/content/tree"));
+    }
+
+    private static NodeState createTree(int depth, int numChildren) {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setProperty("depth", (long) depth);
+        if (depth > 0) {
+            for (int i = 0; i < numChildren; i++) {
+                builder.setChildNode("n-" + i, createTree(depth - 1, numChildren));
+            }
+        }
+        return builder.getNodeState();
+    }
+
+    private static void assertEqualTrees(NodeState expected, NodeState actual) {
+        assertTrue(actual.exists());
+        assertEquals(expected.getPropertyCount(), actual.getPropertyCount());
+        expected.getProperties().forEach(p -> assertEquals(p, actual.getProperty(p.getName())));
+        assertEquals(expected.getChildNodeCount(Long.MAX_VALUE), actual.getChildNodeCount(Long.MAX_VALUE));
+        expected.getChildNodeEntries().forEach(e ->
+                assertEqualTrees(e.getNodeState(), actual.getChildNode(e.getName())));
+    }
+}
@@ -63,6 +63,14 @@ public class DocumentNodeStoreStatsTest {
         assertEquals(7, getMeter(DocumentNodeStoreStats.BGW_NUM_WRITES_RATE).getCount());
     }
 
+    @Test
+    public void sweep() {
+        stats.doneSweep(100, 3, 20);
+        stats.doneSweep(50, 1, 10);
+        assertEquals(150, getMeter(DocumentNodeStoreStats.SWEEP_NUM_DOCUMENTS_RATE).getCount());
+        assertEquals(4, getMeter(DocumentNodeStoreStats.SWEEP_NUM_UPDATES_RATE).getCount());
+    }
+
     @Test
     public void leaseUpdate() {
         stats.doneLeaseUpdate(47);
@@ -16,8 +16,10 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.TimeUnit;
 
@@ -281,6 +283,79 @@ public class DocumentNodeStoreSweepTest {
         assertEquals(startValue, modified.longValue());
     }
 
+    @Test
+    public void sweepPartitionPerDepth() {
+        String[] keys = DocumentNodeStore.SWEEP_PARTITION_KEYS;
+        for (int i = 1; i < keys.length; i++) {
+            assertTrue(keys[i - 1].compareTo(keys[i]) < 0);
+        }
+        // each of the depths 1 to 19 has its own partition
+        Set<Integer> partitions = new HashSet<>();
+        String path = "";
+        for (int depth = 1; depth < 20; depth++) {
+            path += "/n";
+            partitions.add(partitionOf(keys, getIdFromPath(path)));
+            // a sibling is in the same partition
+            assertEquals(partitionOf(keys, getIdFromPath(path)), partitionOf(keys, getIdFromPath(path + "x")));
+        }
+        assertEquals(19, partitions.size());
+    }
+
+    private static int partitionOf(String[] keys, String id) {
+        for (int i = 0; i < keys.length - 1; i++) {
+            if (keys[i].compareTo(id) <= 0 && id.compareTo(keys[i + 1]) < 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(id);
+    }
+
+    @Test
+    public void resumeSweep() throws Exception {
+        int clusterId = ns.getClusterId();
+        Revision uncommitted = createUncommittedChanges();
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("foo");
+        merge(ns, builder);
+        ns.runBackgroundUpdateOperations();
+
+        // record progress of a sweep that already processed all partitions
+        Revision head = ns.getHeadRevision().getRevision(clusterId);
+        assertNotNull(head);
+        SweepProgressDocument.start(store, clusterId, uncommitted, head);
+        for (int i = 0; i < DocumentNodeStore.SWEEP_PARTITION_KEYS.length - 1; i++) {
+            SweepProgressDocument.checkpoint(store, clusterId, i, NodeDocument.MAX_ID_VALUE);
+        }
+
+        ns.runBackgroundSweepOperation();
+        // the sweep must have resumed and skipped all documents
+        assertUncommittedChanges();
+        // progress is removed when the sweep finished
+        assertNull(SweepProgressDocument.readFrom(store, clusterId));
+    }
+
+    @Test
+    public void ignoreProgressOfOtherSweep() throws Exception {
+        int clusterId = ns.getClusterId();
+        createUncommittedChanges();
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("foo");
+        merge(ns, builder);
+        ns.runBackgroundUpdateOperations();
+
+        // record progress of a sweep with a different start revision
+        Revision head = ns.getHeadRevision().getRevision(clusterId);
+        assertNotNull(head);
+        SweepProgressDocument.start(store, clusterId, new Revision(0, 0, clusterId), head);
+        for (int i = 0; i < DocumentNodeStore.SWEEP_PARTITION_KEYS.length - 1; i++) {
+            SweepProgressDocument.checkpoint(store, clusterId, i, NodeDocument.MAX_ID_VALUE);
+        }
+
+        ns.runBackgroundSweepOperation();
+        assertCleanStore();
+        assertNull(SweepProgressDocument.readFrom(store, clusterId));
+    }
+
     private void assertNodeExists(String path) {
         NodeState n = ns.getRoot();
         for (String name : PathUtils.elements(path)) {
@@ -289,7 +364,7 @@ public class DocumentNodeStoreSweepTest {
         }
     }
 
-    private void createUncommittedChanges() throws Exception {
+    private Revision createUncommittedChanges() throws Exception {
         ns.setMaxBackOffMillis(0);
         NodeBuilder builder = ns.getRoot().builder();
         for (int i = 0; i < 10; i++) {
@@ -318,6 +393,19 @@ public class DocumentNodeStoreSweepTest {
         SortedMap<Revision, String> deleted = doc.getLocalDeleted();
         assertEquals(1, deleted.size());
         assertNull(ns.getCommitValue(deleted.firstKey(), doc));
+        return deleted.firstKey();
+    }
+
+    private void assertUncommittedChanges() {
+        for (NodeDocument doc : getAllDocuments(store)) {
+            if (doc.getPath().toString().startsWith("/node-")) {
+                SortedMap<Revision, String> deleted = doc.getLocalDeleted();
+                assertEquals(1, deleted.size());
+                assertNull(ns.getCommitValue(deleted.firstKey(), doc));
+                return;
+            }
+        }
+        fail("no document with uncommitted changes");
     }
 
     private void assertCleanStore() {
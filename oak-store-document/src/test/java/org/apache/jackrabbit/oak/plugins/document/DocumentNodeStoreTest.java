@@ -3470,6 +3470,15 @@ public class DocumentNodeStoreTest {
                         candidateCalls.incrementAndGet();
                         return super.getCandidates(startTime);
                     }
+
+                    @NotNull
+                    @Override
+                    public Iterable<NodeDocument> getCandidates(long startTime,
+                                                                @NotNull String fromKey,
+                                                                @NotNull String toKey) {
+                        candidateCalls.incrementAndGet();
+                        return super.getCandidates(startTime, fromKey, toKey);
+                    }
                 };
             }
         };
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.plugins.document.cache.CacheInvalidationStats;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore.SYS_PROP_JOURNAL_CACHE_INVALIDATION;
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class JournalCacheInvalidationTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private final MemoryDocumentStore store = new MemoryDocumentStore();
+
+    @After
+    public void clearProperty() {
+        System.clearProperty(SYS_PROP_JOURNAL_CACHE_INVALIDATION);
+    }
+
+    @Test
+    public void invalidateOnlyCached() {
+        RecordingDocumentStore recording = new RecordingDocumentStore(store);
+        UpdateOp op = new UpdateOp(Utils.getIdFromPath("/foo"), true);
+        store.create(Collection.NODES, asList(op));
+
+        CacheInvalidationStats stats = JournalCacheInvalidation.invalidate(recording,
+                asList(Utils.getIdFromPath("/foo"), Utils.getIdFromPath("/bar")));
+        assertEquals(asList(Utils.getIdFromPath("/foo")), recording.invalidated);
+        assertThat(stats.summaryReport(), containsString("processedCount=2"));
+        assertThat(stats.summaryReport(), containsString("invalidationCount=1"));
+    }
+
+    @Test
+    public void backgroundRead() throws Exception {
+        DocumentNodeStore ns1 = builderProvider.newBuilder().setAsyncDelay(0)
+                .setDocumentStore(store).setClusterId(1).getNodeStore();
+
+        System.setProperty(SYS_PROP_JOURNAL_CACHE_INVALIDATION, "true");
+        RecordingDocumentStore recording = new RecordingDocumentStore(store);
+        DocumentNodeStore ns2 = builderProvider.newBuilder().setAsyncDelay(0)
+                .setDocumentStore(recording).setClusterId(2).getNodeStore();
+
+        NodeBuilder builder = ns1.getRoot().builder();
+        builder.child("foo").setProperty("p", "v");
+        merge(ns1, builder);
+        ns1.runBackgroundOperations();
+
+        recording.invalidated.clear();
+        ns2.runBackgroundOperations();
+
+        assertThat(recording.invalidated, hasItem(Utils.getIdFromPath("/foo")));
+        assertEquals(0, recording.modStampChecks.get());
+        assertTrue(ns2.getRoot().getChildNode("foo").hasProperty("p"));
+    }
+
+    private static final class RecordingDocumentStore extends DocumentStoreWrapper {
+
+        final List<String> invalidated = new ArrayList<>();
+
+        final AtomicInteger modStampChecks = new AtomicInteger();
+
+        RecordingDocumentStore(DocumentStore store) {
+            super(store);
+        }
+
+        @Override
+        public CacheInvalidationStats invalidateCache(Iterable<String> keys) {
+            modStampChecks.incrementAndGet();
+            return super.invalidateCache(keys);
+        }
+
+        @Override
+        public <T extends Document> void invalidateCache(Collection<T> collection,
+                                                         String key) {
+            if (collection == Collection.NODES) {
+                invalidated.add(key);
+            }
+            super.invalidateCache(collection, key);
+        }
+    }
+}
@@ -16,15 +16,19 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.jackrabbit.guava.common.collect.Lists;
+import org.apache.jackrabbit.guava.common.collect.Sets;
 
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Key;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.stats.Clock;
+import org.jetbrains.annotations.NotNull;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.Rule;
@@ -40,6 +44,7 @@ import static org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation.Type
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.getIdFromPath;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class NodeDocumentSweeperTest {
 
@@ -191,6 +196,59 @@ public class NodeDocumentSweeperTest {
         assertEquals(SET_MAP_ENTRY, changes.get(k).type);
     }
 
+    @Test
+    public void sweepPartitions() throws Exception {
+        Revision uncommitted = ns.newRevision();
+        NodeBuilder b = ns.getRoot().builder();
+        for (int i = 0; i < 10; i++) {
+            b.child("a-" + i).child("b").child("c");
+        }
+        merge(ns, b);
+        ns.runBackgroundUpdateOperations();
+
+        for (int i = 0; i < 10; i++) {
+            for (String path : new String[]{"/a-" + i, "/a-" + i + "/b/c"}) {
+                UpdateOp op = new UpdateOp(getIdFromPath(path), false);
+                op.setMapEntry("foo", uncommitted, "value");
+                setCommitRoot(op, uncommitted, 0);
+                setModified(op, uncommitted);
+                assertNotNull(store.findAndUpdate(NODES, op));
+            }
+        }
+
+        NodeDocumentSweeper sweeper = new NodeDocumentSweeper(ns, false);
+        Revision startRev = ns.getSweepRevisions().getRevision(ns.getClusterId());
+        assertNotNull(startRev);
+        List<Iterable<NodeDocument>> partitions = Lists.newArrayList();
+        partitions.add(seeker.getCandidates(startRev.getTimestamp(), NodeDocument.MIN_ID_VALUE, "2"));
+        partitions.add(seeker.getCandidates(startRev.getTimestamp(), "2", "3"));
+        partitions.add(seeker.getCandidates(startRev.getTimestamp(), "3", NodeDocument.MAX_ID_VALUE));
+        final List<UpdateOp> ops = Collections.synchronizedList(Lists.newArrayList());
+        final Set<Integer> done = Collections.synchronizedSet(Sets.newHashSet());
+        Revision nextSweepStart = sweeper.sweep(partitions, new NodeDocumentSweepListener() {
+            @Override
+            public void sweepUpdate(Map<Path, UpdateOp> updates)
+                    throws DocumentStoreException {
+                ops.addAll(updates.values());
+            }
+        }, new NodeDocumentSweeper.ProgressListener() {
+            @Override
+            public void processed(int partition, @NotNull String lastId) {
+            }
+
+            @Override
+            public void done(int partition) {
+                done.add(partition);
+            }
+        }, 3);
+
+        assertEquals(ns.getHeadRevision().getRevision(ns.getClusterId()), nextSweepStart);
+        assertEquals(20, ops.size());
+        assertEquals(20, sweeper.getUpdateCount());
+        assertTrue(sweeper.getDocumentCount() >= 20);
+        assertEquals(Sets.newHashSet(0, 1, 2), done);
+    }
+
     private Revision sweep(final List<UpdateOp> ops) throws Exception {
         NodeDocumentSweeper sweeper = new NodeDocumentSweeper(ns, false);
         Revision startRev = ns.getSweepRevisions().getRevision(ns.getClusterId());
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.junit.Assert.assertNotNull;
+
+public class RevisionCachePerformance {
+
+    @Test
+    public void fromString() {
+        String[] revs = new String[1024];
+        for (int i = 0; i < revs.length; i++) {
+            revs[i] = Revision.newRevision(i % 4 + 1).toString();
+        }
+        long time = System.nanoTime();
+        for (int i = 0; i < 1000000; i++) {
+            Revision.fromString(revs[i & (revs.length - 1)]);
+        }
+        time = System.nanoTime() - time;
+        System.out.println("time: " + TimeUnit.NANOSECONDS.toMicros(time) + " us.");
+    }
+
+    /**
+     * Reads a document with a large history from its serialized form (as
+     * done by the persistent cache and the document stores) and gets the
+     * node state at the head revision.
+     */
+    @Test
+    public void getNodeAtRevision() throws Exception {
+        DocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns = new DocumentMK.Builder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                NodeBuilder builder = ns.getRoot().builder();
+                NodeBuilder test = builder.child("test");
+                test.setProperty("p" + (i % 10), i);
+                merge(ns, builder);
+            }
+            String json = store.find(NODES, Utils.getIdFromPath("/test")).asString();
+            RevisionVector head = ns.getHeadRevision();
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            for (int run = 0; run < 5; run++) {
+                long allocated = allocatedBytes(threads);
+                long time = System.nanoTime();
+                for (int i = 0; i < 200; i++) {
+                    NodeDocument doc = NodeDocument.fromString(store, json);
+                    assertNotNull(doc.getNodeAtRevision(ns, head, null));
+                }
+                time = System.nanoTime() - time;
+                allocated = allocatedBytes(threads) - allocated;
+                System.out.println("time: " + TimeUnit.NANOSECONDS.toMillis(time) + " ms, allocated: "
+                        + (allocated < 0 ? "n/a" : allocated / 1024 / 1024 + " MB"));
+            }
+        } finally {
+            ns.dispose();
+        }
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -91,6 +92,20 @@ public class RevisionTest {
         }
     }
 
+    @Test
+    public void fromStringInterned() {
+        Revision r = Revision.newRevision(1);
+        Revision r1 = Revision.fromString(r.toString());
+        Revision r2 = Revision.fromString(r.toString());
+        assertEquals(r, r1);
+        assertSame(r1, r2);
+
+        Revision b = Revision.fromString(r.asBranchRevision().toString());
+        assertTrue(b.isBranch());
+        assertEquals(r.asBranchRevision(), b);
+        assertFalse(Revision.fromString(r.toString()).isBranch());
+    }
+
     @Test
     public void difference() throws InterruptedException {
         long t0 = Revision.getCurrentTimestamp();
@@ -403,6 +403,22 @@ public class RevisionVectorTest {
         assertEquals(rv, rvFromStr);
     }
 
+    @Test
+    public void fromStringInterned() {
+        RevisionVector rv = new RevisionVector(
+                Revision.newRevision(1),
+                Revision.newRevision(2)
+        );
+        RevisionVector rv1 = RevisionVector.fromString(rv.asString());
+        RevisionVector rv2 = RevisionVector.fromString(rv.asString());
+        assertEquals(rv, rv1);
+        assertSame(rv1, rv2);
+
+        RevisionVector branch = RevisionVector.fromString(rv.asBranchRevision(1).asString());
+        assertTrue(branch.isBranch());
+        assertEquals(rv.asBranchRevision(1), branch);
+    }
+
     @Test
     public void toStringBuilder() throws Exception {
         RevisionVector rv = new RevisionVector();
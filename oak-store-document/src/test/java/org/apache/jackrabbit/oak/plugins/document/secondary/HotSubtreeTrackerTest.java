@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.document.secondary;
+
+import java.util.Collections;
+
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.spi.filter.PathFilter;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.apache.jackrabbit.guava.common.collect.ImmutableSet.of;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotSubtreeTrackerTest {
+
+    @Test
+    public void promote() {
+        HotSubtreeTracker tracker = new HotSubtreeTracker(asList("/a"), 2, 10, 2);
+        tracker.read(Path.fromString("/x/y/z"));
+        assertTrue(tracker.getPendingSubtrees().isEmpty());
+        tracker.read(Path.fromString("/x/y"));
+        assertEquals(of("/x/y"), tracker.getPendingSubtrees());
+
+        // paths above the tracked depth are ignored
+        tracker.read(Path.fromString("/x"));
+        tracker.read(Path.fromString("/x"));
+        assertEquals(of("/x/y"), tracker.getPendingSubtrees());
+    }
+
+    @Test
+    public void activate() {
+        HotSubtreeTracker tracker = new HotSubtreeTracker(asList("/a"), 1, 10, 1);
+        assertEquals(PathFilter.Result.EXCLUDE, tracker.getPathFilter().filter("/x/y"));
+        tracker.read(Path.fromString("/x/y"));
+        tracker.activate(tracker.getPendingSubtrees());
+        assertTrue(tracker.getPendingSubtrees().isEmpty());
+        assertEquals(of("/x"), tracker.getActiveSubtrees());
+        assertEquals(PathFilter.Result.INCLUDE, tracker.getPathFilter().filter("/x/y"));
+        assertEquals(PathFilter.Result.INCLUDE, tracker.getPathFilter().filter("/a"));
+    }
+
+    @Test
+    public void maxSubtrees() {
+        HotSubtreeTracker tracker = new HotSubtreeTracker(asList("/a"), 1, 2, 1);
+        tracker.read(Path.fromString("/x"));
+        tracker.read(Path.fromString("/y"));
+        tracker.read(Path.fromString("/z"));
+        assertEquals(of("/x", "/y"), tracker.getPendingSubtrees());
+        tracker.discard("/x");
+        tracker.read(Path.fromString("/z"));
+        assertEquals(of("/y", "/z"), tracker.getPendingSubtrees());
+    }
+
+    @Test
+    public void decay() {
+        HotSubtreeTracker tracker = new HotSubtreeTracker(Collections.<String>emptyList(), 1, 10, 10);
+        for (int i = 0; i < 9; i++) {
+            tracker.read(Path.fromString("/x"));
+        }
+        // reads of other subtrees halve the count for /x
+        for (int i = 0; i < HotSubtreeTracker.DECAY_INTERVAL - 9; i++) {
+            tracker.read(Path.fromString("/y-" + i));
+        }
+        tracker.read(Path.fromString("/x"));
+        assertTrue(tracker.getPendingSubtrees().isEmpty());
+    }
+}
@@ -258,6 +258,59 @@ public class SecondaryStoreCacheTest {
         merge(builder);
     }
 
+    @Test
+    public void hotSubtree() throws Exception {
+        HotSubtreeTracker tracker = new HotSubtreeTracker(of("/a"), 2, 1, 3);
+        SecondaryStoreBuilder builder = createBuilder(new PathFilter(of("/a"), empty));
+        builder.metaPropNames(DocumentNodeStore.META_PROP_NAMES);
+        builder.hotSubtreeTracker(tracker);
+        SecondaryStoreCache cache = builder.buildCache();
+        primary.addObserver(builder.buildObserver(cache));
+
+        NodeBuilder nb = primary.getRoot().builder();
+        create(nb, "/a/b", "/x/y/z", "/x/w");
+        AbstractDocumentNodeState r1 = merge(nb);
+
+        AbstractDocumentNodeState z = documentState(r1, "/x/y/z");
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.getDocumentNodeState(Path.fromString("/x/y/z"), r1.getRootRevision(), z.getLastRevision()));
+        }
+        assertEquals(of("/x/y"), Lists.newArrayList(tracker.getPendingSubtrees()));
+        assertFalse(cache.isCached(Path.fromString("/x/y/z")));
+
+        //Next change copies the hot subtree to the secondary store
+        nb = primary.getRoot().builder();
+        create(nb, "/a/c");
+        AbstractDocumentNodeState r2 = merge(nb);
+        assertTrue(tracker.getPendingSubtrees().isEmpty());
+        assertEquals(of("/x/y"), Lists.newArrayList(tracker.getActiveSubtrees()));
+        assertTrue(cache.isCached(Path.fromString("/x/y/z")));
+        assertFalse(cache.isCached(Path.fromString("/x/w")));
+
+        z = documentState(r2, "/x/y/z");
+        AbstractDocumentNodeState result = cache.getDocumentNodeState(Path.fromString("/x/y/z"),
+                r2.getRootRevision(), z.getLastRevision());
+        assertTrue(EqualsDiff.equals(z, result));
+
+        //Changes to the hot subtree are mirrored
+        nb = primary.getRoot().builder();
+        nb.child("x").child("y").child("z").setProperty("foo", "bar");
+        AbstractDocumentNodeState r3 = merge(nb);
+        z = documentState(r3, "/x/y/z");
+        result = cache.getDocumentNodeState(Path.fromString("/x/y/z"),
+                r3.getRootRevision(), z.getLastRevision());
+        assertTrue(EqualsDiff.equals(z, result));
+        assertEquals("bar", result.getString("foo"));
+    }
+
+    @Test
+    public void lagMillis() {
+        RevisionVector requested = new RevisionVector(new Revision(100, 0, 1), new Revision(50, 0, 2));
+        RevisionVector available = new RevisionVector(new Revision(70, 0, 1), new Revision(50, 0, 2));
+        assertEquals(30, SecondaryStoreCache.getLagMillis(requested, available));
+        assertEquals(0, SecondaryStoreCache.getLagMillis(available, requested));
+    }
+
     private SecondaryStoreCache createCache(PathFilter pathFilter){
         SecondaryStoreBuilder builder = createBuilder(pathFilter);
         builder.metaPropNames(DocumentNodeStore.META_PROP_NAMES);